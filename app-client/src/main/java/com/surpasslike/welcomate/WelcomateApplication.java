@@ -0,0 +1,31 @@
+package com.surpasslike.welcomate;
+
+import android.annotation.SuppressLint;
+import android.app.Application;
+import android.content.Context;
+
+import com.surpasslike.common.diagnostics.Diagnostics;
+import com.surpasslike.welcomate.service.EditOutbox;
+
+/**
+ * 客户端的 Application
+ * 负责进程级的初始化
+ */
+public class WelcomateApplication extends Application {
+    @SuppressLint("StaticFieldLeak")
+    private static Context context;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        context = getApplicationContext();
+        // 调试版本中启用 StrictMode、主线程看门狗和主线程调用标记
+        Diagnostics.install(this, "client");
+        // 上次退出时尚未提交的修改在服务连接后继续提交
+        EditOutbox.getInstance();
+    }
+
+    public static Context getContext() {
+        return context;
+    }
+}
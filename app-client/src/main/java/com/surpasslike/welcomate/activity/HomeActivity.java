@@ -2,12 +2,12 @@ package com.surpasslike.welcomate.activity;
 
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.Observer;
+import androidx.lifecycle.ViewModelProvider;
 
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.os.Bundle;
-import android.os.RemoteException;
-import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.widget.EditText;
@@ -17,7 +17,8 @@ import com.surpasslike.welcomate.constants.AppConstants;
 import com.surpasslike.welcomate.databinding.ActivityHomeBinding;
 import com.surpasslike.welcomate.utils.ToastUtils;
 import com.surpasslike.welcomate.utils.ValidationUtils;
-import com.surpasslike.welcomateservice.IAdminService;
+import com.surpasslike.welcomate.viewmodel.HomeViewModel;
+import com.surpasslike.welcomate.viewmodel.Resource;
 
 /**
  * 用户主页面
@@ -31,8 +32,8 @@ public class HomeActivity extends AppCompatActivity {
     // 视图绑定对象
     private ActivityHomeBinding mActivityHomeBinding;
     
-    // AdminService实例
-    private IAdminService mAdminService;
+    // 修改密码和删除用户在 ViewModel 中异步执行
+    private HomeViewModel mHomeViewModel;
 
     /**
      * 活动创建时的初始化方法
@@ -47,11 +48,46 @@ public class HomeActivity extends AppCompatActivity {
         // 获取传递的用户名
         String username = getIntent().getStringExtra(AppConstants.IntentExtra.USERNAME);
         
-        // 获取AdminService实例
-        mAdminService = MainActivity.getAdminService();
+        mHomeViewModel = new ViewModelProvider(this).get(HomeViewModel.class);
         
         // 初始化界面
         initViews(username);
+        observeViewModel();
+    }
+
+    /**
+     * 观察修改密码和删除用户的状态
+     */
+    private void observeViewModel() {
+        mHomeViewModel.getPasswordChangeResult().observe(this, new Observer<Resource<String>>() {
+            @Override
+            public void onChanged(Resource<String> resource) {
+                mActivityHomeBinding.btnChangePassword.setEnabled(!resource.isLoading());
+                if (resource.getStatus() == Resource.Status.SUCCESS) {
+                    ToastUtils.showShort(HomeActivity.this, getString(R.string.password_changed, resource.getData()));
+                } else if (resource.getStatus() == Resource.Status.QUEUED) {
+                    ToastUtils.showShort(HomeActivity.this, R.string.edit_queued);
+                } else if (resource.getStatus() == Resource.Status.ERROR) {
+                    ToastUtils.showShort(HomeActivity.this, resource.getErrorMessage());
+                }
+            }
+        });
+        mHomeViewModel.getDeleteResult().observe(this, new Observer<Resource<String>>() {
+            @Override
+            public void onChanged(Resource<String> resource) {
+                mActivityHomeBinding.btnLogout.setEnabled(!resource.isLoading());
+                if (resource.getStatus() == Resource.Status.SUCCESS) {
+                    ToastUtils.showShort(HomeActivity.this, R.string.user_deleted);
+                    finish(); // 删除成功后关闭当前页面
+                } else if (resource.getStatus() == Resource.Status.QUEUED) {
+                    // 删除已保存，服务可用后自动提交，当前用户不应继续使用
+                    ToastUtils.showShort(HomeActivity.this, R.string.edit_queued);
+                    finish();
+                } else if (resource.getStatus() == Resource.Status.ERROR) {
+                    ToastUtils.showShort(HomeActivity.this, resource.getErrorMessage());
+                }
+            }
+        });
     }
     
     /**
@@ -165,17 +201,8 @@ public class HomeActivity extends AppCompatActivity {
      * @param newPassword 新密码
      */
     private void changeUserPassword(String username, String newPassword) {
-        if (mAdminService != null) {
-            try {
-                mAdminService.updateUserPassword(username, newPassword);
-                ToastUtils.showShort(this, getString(R.string.password_changed, username));
-            } catch (RemoteException e) {
-                Log.e(TAG, "Failed to update password", e);
-                ToastUtils.showShort(this, R.string.service_not_available);
-            }
-        } else {
-            ToastUtils.showShort(this, R.string.service_not_available);
-        }
+        // 在后台调用服务，结果由 observeViewModel 处理
+        mHomeViewModel.changePassword(username, newPassword);
     }
 
     /**
@@ -211,18 +238,8 @@ public class HomeActivity extends AppCompatActivity {
      * @param username 要删除的用户名
      */
     private void deleteUser(String username) {
-        if (mAdminService != null) {
-            try {
-                mAdminService.deleteUser(username);
-                ToastUtils.showShort(this, R.string.user_deleted);
-                finish(); // 删除成功后关闭当前页面
-            } catch (RemoteException e) {
-                Log.e(TAG, "Failed to delete user", e);
-                ToastUtils.showShort(this, R.string.service_not_available);
-            }
-        } else {
-            ToastUtils.showShort(this, R.string.service_not_available);
-        }
+        // 在后台调用服务，结果由 observeViewModel 处理
+        mHomeViewModel.deleteUser(username);
     }
     
     /**
@@ -2,10 +2,11 @@ package com.surpasslike.welcomate.activity;
 
 import androidx.appcompat.app.AppCompatActivity;
 
+import androidx.lifecycle.Observer;
+import androidx.lifecycle.ViewModelProvider;
+
 import android.content.Intent;
 import android.os.Bundle;
-import android.os.RemoteException;
-import android.util.Log;
 import android.view.View;
 
 import com.surpasslike.welcomate.R;
@@ -13,7 +14,8 @@ import com.surpasslike.welcomate.constants.AppConstants;
 import com.surpasslike.welcomate.databinding.ActivityLoginBinding;
 import com.surpasslike.welcomate.utils.ToastUtils;
 import com.surpasslike.welcomate.utils.ValidationUtils;
-import com.surpasslike.welcomateservice.IAdminService;
+import com.surpasslike.welcomate.viewmodel.LoginViewModel;
+import com.surpasslike.welcomate.viewmodel.Resource;
 
 /**
  * 用户登录页面
@@ -27,6 +29,9 @@ public class LoginActivity extends AppCompatActivity {
     // 视图绑定对象
     private ActivityLoginBinding mActivityLoginBinding;
 
+    // 登录调用在 ViewModel 中异步执行
+    private LoginViewModel mLoginViewModel;
+
     /**
      * 活动创建时的初始化方法
      * @param savedInstanceState 保存的实例状态
@@ -36,9 +41,28 @@ public class LoginActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         mActivityLoginBinding = ActivityLoginBinding.inflate(getLayoutInflater());
         setContentView(mActivityLoginBinding.getRoot());
+        mLoginViewModel = new ViewModelProvider(this).get(LoginViewModel.class);
         
         // 初始化界面
         initViews();
+        observeViewModel();
+    }
+
+    /**
+     * 观察登录状态：登录中禁用按钮，完成后处理结果
+     */
+    private void observeViewModel() {
+        mLoginViewModel.getLoginResult().observe(this, new Observer<Resource<String>>() {
+            @Override
+            public void onChanged(Resource<String> resource) {
+                mActivityLoginBinding.btnLogin.setEnabled(!resource.isLoading());
+                if (resource.getStatus() == Resource.Status.SUCCESS) {
+                    handleLoginResult(resource.getData());
+                } else if (resource.getStatus() == Resource.Status.ERROR) {
+                    ToastUtils.showShort(LoginActivity.this, resource.getErrorMessage());
+                }
+            }
+        });
     }
     
     /**
@@ -67,20 +91,8 @@ public class LoginActivity extends AppCompatActivity {
             return;
         }
         
-        // 获取已经绑定的AdminService对象
-        IAdminService adminService = MainActivity.getAdminService();
-        
-        if (adminService != null) {
-            try {
-                String username = adminService.loginAdmin(account, password);
-                handleLoginResult(username);
-            } catch (RemoteException e) {
-                Log.e(TAG, "Remote service call failed", e);
-                ToastUtils.showShort(this, R.string.service_not_available);
-            }
-        } else {
-            ToastUtils.showShort(this, R.string.service_not_available);
-        }
+        // 在后台调用登录服务，结果由 observeViewModel 处理
+        mLoginViewModel.login(account, password);
     }
     
     /**
@@ -90,13 +102,13 @@ public class LoginActivity extends AppCompatActivity {
      * @return true表示输入有效，false表示输入无效
      */
     private boolean validateInput(String account, String password) {
-        if (!ValidationUtils.isValidAccount(account)) {
+        if (!ValidationUtils.isValidLoginAccount(account)) {
             ToastUtils.showShort(this, R.string.account_empty);
             mActivityLoginBinding.etAccount.requestFocus();
             return false;
         }
         
-        if (!ValidationUtils.isValidPassword(password)) {
+        if (!ValidationUtils.isValidLoginPassword(password)) {
             ToastUtils.showShort(this, getString(R.string.password_too_short, 
                 AppConstants.TextLimit.PASSWORD_MIN_LENGTH));
             mActivityLoginBinding.etPassword.requestFocus();
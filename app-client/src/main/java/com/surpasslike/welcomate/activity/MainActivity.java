@@ -14,22 +14,20 @@ import android.widget.Button;
 
 import com.surpasslike.welcomate.R;
 import com.surpasslike.welcomate.constants.AppConstants;
+import com.surpasslike.welcomate.service.AdminServiceGateway;
 import com.surpasslike.welcomate.utils.ToastUtils;
 import com.surpasslike.welcomateservice.IAdminService;
 
 /**
  * 主活动页面
  * 提供用户登录、注册和游客模式的入口
- * 负责绑定AdminService服务
+ * 负责绑定AdminService服务，并把服务代理交给 {@link AdminServiceGateway}，其他页面经由 ViewModel 访问服务
  */
 public class MainActivity extends AppCompatActivity {
 
     /** 日志标签 */
     private static final String TAG = "MainActivity";
 
-    // AdminService实例，用于与服务端通信
-    static IAdminService mAdminService;
-
     // 服务连接对象，用于处理服务绑定和解绑
     private ServiceConnection mServiceConnection = new ServiceConnection() {
         /**
@@ -40,7 +38,7 @@ public class MainActivity extends AppCompatActivity {
         @Override
         public void onServiceConnected(ComponentName name, IBinder service) {
             // 绑定成功时调用，获取AdminService的代理对象
-            mAdminService = IAdminService.Stub.asInterface(service);
+            AdminServiceGateway.getInstance().setService(IAdminService.Stub.asInterface(service));
         }
 
         /**
@@ -50,7 +48,7 @@ public class MainActivity extends AppCompatActivity {
         @Override
         public void onServiceDisconnected(ComponentName name) {
             // 解绑时调用
-            mAdminService = null;
+            AdminServiceGateway.getInstance().setService(null);
         }
     };
 
@@ -131,17 +129,9 @@ public class MainActivity extends AppCompatActivity {
     protected void onDestroy() {
         super.onDestroy();
         // 解绑AdminService服务
-        if (mAdminService != null) {
+        if (AdminServiceGateway.getInstance().isServiceBound()) {
             unbindService(mServiceConnection);
+            AdminServiceGateway.getInstance().setService(null);
         }
     }
-
-    /**
-     * 静态方法，用于获取已绑定的IAdminService对象
-     *
-     * @return IAdminService实例，如果未绑定则返回null
-     */
-    public static IAdminService getAdminService() {
-        return mAdminService;
-    }
 }
\ No newline at end of file
@@ -1,18 +1,21 @@
 package com.surpasslike.welcomate.activity;
 
 import android.os.Bundle;
-import android.os.RemoteException;
-import android.util.Log;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.View;
 
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.Observer;
+import androidx.lifecycle.ViewModelProvider;
 
 import com.surpasslike.welcomate.R;
 import com.surpasslike.welcomate.constants.AppConstants;
 import com.surpasslike.welcomate.databinding.ActivityRegisterBinding;
 import com.surpasslike.welcomate.utils.ToastUtils;
 import com.surpasslike.welcomate.utils.ValidationUtils;
-import com.surpasslike.welcomateservice.IAdminService;
+import com.surpasslike.welcomate.viewmodel.RegisterViewModel;
+import com.surpasslike.welcomate.viewmodel.Resource;
 
 /**
  * 用户注册页面
@@ -22,12 +25,12 @@ public class RegisterActivity extends AppCompatActivity {
 
     /** 日志标签 */
     private static final String TAG = "RegisterActivity";
-    
+
     // 视图绑定对象
     private ActivityRegisterBinding mActivityRegisterBinding;
     
-    // AdminService实例
-    private IAdminService mAdminService;
+    // 注册和账号查询在 ViewModel 中异步执行
+    private RegisterViewModel mRegisterViewModel;
 
     /**
      * 活动创建时的初始化方法
@@ -39,11 +42,39 @@ public class RegisterActivity extends AppCompatActivity {
         mActivityRegisterBinding = ActivityRegisterBinding.inflate(getLayoutInflater());
         setContentView(mActivityRegisterBinding.getRoot());
 
-        // 获取AdminService实例
-        mAdminService = MainActivity.getAdminService();
+        mRegisterViewModel = new ViewModelProvider(this).get(RegisterViewModel.class);
         
         // 初始化界面
         initViews();
+        observeViewModel();
+    }
+
+    /**
+     * 观察注册和账号可用性查询的状态
+     */
+    private void observeViewModel() {
+        mRegisterViewModel.getRegisterResult().observe(this, new Observer<Resource<Boolean>>() {
+            @Override
+            public void onChanged(Resource<Boolean> resource) {
+                mActivityRegisterBinding.btnRegister.setEnabled(!resource.isLoading());
+                if (resource.getStatus() == Resource.Status.SUCCESS) {
+                    handleRegisterResult(Boolean.TRUE.equals(resource.getData()));
+                } else if (resource.getStatus() == Resource.Status.ERROR) {
+                    ToastUtils.showShort(RegisterActivity.this, resource.getErrorMessage());
+                }
+            }
+        });
+        mRegisterViewModel.getAccountAvailability().observe(this, new Observer<Resource<Boolean>>() {
+            @Override
+            public void onChanged(Resource<Boolean> resource) {
+                if (resource != null && resource.getStatus() == Resource.Status.SUCCESS
+                        && Boolean.FALSE.equals(resource.getData())) {
+                    mActivityRegisterBinding.etAccount.setError(getString(R.string.account_taken));
+                } else {
+                    mActivityRegisterBinding.etAccount.setError(null);
+                }
+            }
+        });
     }
     
     /**
@@ -57,8 +88,24 @@ public class RegisterActivity extends AppCompatActivity {
                 performRegister();
             }
         });
+
+        // 输入账号时实时检查是否已被注册
+        mActivityRegisterBinding.etAccount.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                mRegisterViewModel.onAccountChanged(s.toString().trim());
+            }
+        });
     }
-    
+
     /**
      * 执行注册操作
      * 验证输入并调用服务进行注册
@@ -108,6 +155,13 @@ public class RegisterActivity extends AppCompatActivity {
             mActivityRegisterBinding.etAccount.requestFocus();
             return false;
         }
+
+        // 已知账号被占用时不再发起注册
+        if (mRegisterViewModel.isKnownTaken(account)) {
+            ToastUtils.showShort(this, R.string.account_taken);
+            mActivityRegisterBinding.etAccount.requestFocus();
+            return false;
+        }
         
         // 验证密码
         if (!ValidationUtils.isValidPassword(password)) {
@@ -141,17 +195,8 @@ public class RegisterActivity extends AppCompatActivity {
      * @param password 密码
      */
     private void registerUser(String username, String account, String password) {
-        if (mAdminService != null) {
-            try {
-                boolean isRegistered = mAdminService.registerUser(username, account, password);
-                handleRegisterResult(isRegistered);
-            } catch (RemoteException e) {
-                Log.e(TAG, "Remote service call failed", e);
-                ToastUtils.showShort(this, R.string.service_not_available);
-            }
-        } else {
-            ToastUtils.showShort(this, R.string.service_not_available);
-        }
+        // 在后台调用注册服务，结果由 observeViewModel 处理
+        mRegisterViewModel.register(username, account, password);
     }
     
     /**
@@ -1,5 +1,7 @@
 package com.surpasslike.welcomate.constants;
 
+import com.surpasslike.common.InputRules;
+
 /**
  * 应用程序常量类
  * 定义应用中使用的各种常量值
@@ -26,16 +28,16 @@ public class AppConstants {
     
     
     /**
-     * 文本长度限制常量
+     * 文本长度限制常量（与服务端共用 {@link InputRules} 中的定义）
      */
     public static class TextLimit {
         /** 用户名最小长度 */
-        public static final int USERNAME_MIN_LENGTH = 1;
+        public static final int USERNAME_MIN_LENGTH = InputRules.USERNAME_MIN_LENGTH;
         /** 用户名最大长度 */
-        public static final int USERNAME_MAX_LENGTH = 20;
+        public static final int USERNAME_MAX_LENGTH = InputRules.USERNAME_MAX_LENGTH;
         /** 密码最小长度 */
-        public static final int PASSWORD_MIN_LENGTH = 1;
+        public static final int PASSWORD_MIN_LENGTH = InputRules.PASSWORD_MIN_LENGTH;
         /** 密码最大长度 */
-        public static final int PASSWORD_MAX_LENGTH = 20;
+        public static final int PASSWORD_MAX_LENGTH = InputRules.PASSWORD_MAX_LENGTH;
     }
 }
\ No newline at end of file
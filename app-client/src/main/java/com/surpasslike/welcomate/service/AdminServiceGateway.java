@@ -0,0 +1,289 @@
+package com.surpasslike.welcomate.service;
+
+import android.os.RemoteException;
+import android.os.ServiceSpecificException;
+
+import com.surpasslike.common.Deadline;
+import com.surpasslike.common.diagnostics.MainThreadCalls;
+import com.surpasslike.common.trace.RequestTrace;
+import com.surpasslike.welcomateservice.CallHeader;
+import com.surpasslike.welcomateservice.IAdminService;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AdminService 的统一访问入口
+ * 客户端对 IAdminService 的所有调用都经由这里提交到共享的 IPC 线程池执行，界面线程不再直接发起 Binder 调用
+ * MainActivity 在服务连接和断开时更新这里持有的代理对象
+ * 每次调用在提交时生成请求 ID，放在请求头中传给服务端；从提交到完成是一个异步追踪区段，
+ * 其中真正发出 Binder 调用的部分是一个同步区段，两者之差就是在 IPC 线程池中排队的时间
+ * <p>
+ * 每次调用还有一个截止时间，同样放在请求头中：服务端在哈希、查询和提交之前检查，超时后不再继续执行；
+ * 客户端在本地执行同一个截止时间：排队期间已超时的调用不再发出，到期仍未返回的调用立即以
+ * {@link CallTimeoutException} 失败，之后到达的结果被丢弃
+ */
+public class AdminServiceGateway {
+
+    /** IPC 线程数：一个慢调用（例如注册时的哈希）不会阻塞输入时的轻量查询 */
+    private static final int IPC_THREADS = 2;
+
+    /** 未指定超时时间的调用使用的超时毫秒数 */
+    public static final long DEFAULT_TIMEOUT_MILLIS = 5_000;
+
+    /**
+     * 一次对 AdminService 的调用
+     * @param <T> 调用结果类型
+     */
+    public interface Call<T> {
+        /**
+         * 在 IPC 线程上执行调用
+         * @param service 已绑定的服务代理
+         * @param header 本次调用的请求头，原样传给服务代理的方法
+         * @return 调用结果
+         * @throws RemoteException 远程调用失败时抛出
+         */
+        T execute(IAdminService service, CallHeader header) throws RemoteException;
+    }
+
+    /**
+     * 调用完成的回调，在 IPC 线程上执行
+     * @param <T> 调用结果类型
+     */
+    public interface Callback<T> {
+        /**
+         * 调用成功
+         * @param result 调用结果
+         */
+        void onSuccess(T result);
+
+        /**
+         * 调用失败，包括服务未绑定的情况
+         * @param error 失败原因
+         */
+        void onError(RemoteException error);
+    }
+
+    private static volatile AdminServiceGateway sInstance;
+
+    // 已绑定的服务代理，未绑定时为 null
+    private volatile IAdminService mService;
+
+    // 服务连接成功时通知的监听器，例如让离线队列立即提交
+    private final CopyOnWriteArrayList<Runnable> mConnectedListeners = new CopyOnWriteArrayList<>();
+
+    private final ExecutorService mIpcExecutor = Executors.newFixedThreadPool(IPC_THREADS, new ThreadFactory() {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "admin-ipc-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    // 到期时让尚未完成的调用失败；调用按时完成时取消对应的定时任务
+    private final ScheduledThreadPoolExecutor mDeadlineTimer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "admin-ipc-deadline");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private AdminServiceGateway() {
+        mDeadlineTimer.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * 获取单例
+     * @return AdminServiceGateway 实例
+     */
+    public static AdminServiceGateway getInstance() {
+        if (sInstance == null) {
+            synchronized (AdminServiceGateway.class) {
+                if (sInstance == null) {
+                    sInstance = new AdminServiceGateway();
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * 更新服务代理，由服务连接回调调用
+     * @param service 服务代理，断开连接时传入 null
+     */
+    public void setService(IAdminService service) {
+        // 调试版本中包一层代理，任何在主线程上发生的调用都会被记录
+        mService = MainThreadCalls.wrap(IAdminService.class, service);
+        if (service != null) {
+            for (Runnable listener : mConnectedListeners) {
+                listener.run();
+            }
+        }
+    }
+
+    /**
+     * 添加服务连接成功时的监听器，在调用 {@link #setService} 的线程上执行，应尽快返回
+     * @param listener 监听器
+     */
+    public void addOnConnectedListener(Runnable listener) {
+        mConnectedListeners.add(listener);
+    }
+
+    /**
+     * 服务当前是否已绑定
+     * @return true表示已绑定
+     */
+    public boolean isServiceBound() {
+        return mService != null;
+    }
+
+    /**
+     * 在 IPC 线程池中执行一次调用，超时时间为 {@link #DEFAULT_TIMEOUT_MILLIS}
+     * @param name 调用名称，用于追踪区段，例如 loginAdmin
+     * @param call 要执行的调用
+     * @param callback 完成回调，在 IPC 线程上执行
+     * @param <T> 调用结果类型
+     * @return 可用于取消的句柄；取消无法中断已经发出的 Binder 调用，但被取消的调用不会再回调
+     */
+    public <T> Future<?> submit(String name, Call<T> call, Callback<T> callback) {
+        return submit(name, DEFAULT_TIMEOUT_MILLIS, call, callback);
+    }
+
+    /**
+     * 在 IPC 线程池中执行一次调用
+     * @param name 调用名称，用于追踪区段，例如 loginAdmin
+     * @param timeoutMillis 从提交开始计算的超时毫秒数，包括排队时间；小于等于 0 表示不限时
+     * @param call 要执行的调用
+     * @param callback 完成回调，在 IPC 线程或超时定时线程上执行，每次调用最多回调一次
+     * @param <T> 调用结果类型
+     * @return 可用于取消的句柄；取消无法中断已经发出的 Binder 调用，但被取消的调用不会再回调
+     */
+    public <T> Future<?> submit(final String name, final long timeoutMillis, final Call<T> call, Callback<T> callback) {
+        final CallHeader header = new CallHeader();
+        header.requestId = RequestTrace.newRequestId();
+        header.deadlineElapsedMillis = Deadline.after(timeoutMillis);
+        final String asyncSection = "client." + name;
+        final String binderSection = "binder." + name;
+        final OnceCallback<T> once = new OnceCallback<>(callback);
+        final ScheduledFuture<?>[] timer = new ScheduledFuture<?>[1];
+        RequestTrace.beginAsync(header.requestId, asyncSection);
+        final FutureTask<Void> task = new FutureTask<Void>(new Runnable() {
+            @Override
+            public void run() {
+                execute(call, header, binderSection, name, timeoutMillis, once);
+            }
+        }, null) {
+            @Override
+            protected void done() {
+                // 正常完成和取消（包括尚未开始就被取消）都会走到这里
+                if (timer[0] != null) {
+                    timer[0].cancel(false);
+                }
+                RequestTrace.endAsync(header.requestId, asyncSection);
+            }
+        };
+        // 定时任务在提交到线程池之前设置，done() 一定能看到它
+        if (header.deadlineElapsedMillis != Deadline.NONE) {
+            timer[0] = mDeadlineTimer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    // 先回调超时再取消，调用方看到的是超时错误而不是取消
+                    once.onError(new CallTimeoutException(name, timeoutMillis));
+                    task.cancel(true);
+                }
+            }, timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        mIpcExecutor.execute(task);
+        return task;
+    }
+
+    /**
+     * 在 IPC 线程上执行调用并回调结果
+     */
+    private <T> void execute(Call<T> call, CallHeader header, String section, String name, long timeoutMillis,
+                             Callback<T> callback) {
+        IAdminService service = mService;
+        if (service == null) {
+            callback.onError(new RemoteException("Admin service is not bound"));
+            return;
+        }
+        // 在线程池中排队时已经超时，不再发出调用
+        if (Deadline.isExpired(header.deadlineElapsedMillis)) {
+            callback.onError(new CallTimeoutException(name, timeoutMillis));
+            return;
+        }
+        T result;
+        try (RequestTrace.Span span = RequestTrace.begin(header.requestId, section)) {
+            result = call.execute(service, header);
+        } catch (ServiceSpecificException e) {
+            if (!Thread.currentThread().isInterrupted()) {
+                callback.onError(toRemoteException(name, timeoutMillis, e));
+            }
+            return;
+        } catch (RemoteException | RuntimeException e) {
+            if (!Thread.currentThread().isInterrupted()) {
+                callback.onError(e instanceof RemoteException
+                        ? (RemoteException) e : new RemoteException(String.valueOf(e.getMessage())));
+            }
+            return;
+        }
+        if (!Thread.currentThread().isInterrupted()) {
+            callback.onSuccess(result);
+        }
+    }
+
+    /**
+     * 把服务端的错误码转换为客户端的异常：超时和通道已满都可以重试，其他错误原样传递消息
+     */
+    private static RemoteException toRemoteException(String name, long timeoutMillis, ServiceSpecificException e) {
+        switch (e.errorCode) {
+            case IAdminService.ERROR_DEADLINE_EXCEEDED:
+                return new CallTimeoutException(name, timeoutMillis);
+            case IAdminService.ERROR_OVERLOADED:
+                return new ServiceOverloadedException(name, String.valueOf(e.getMessage()));
+            default:
+                return new RemoteException(String.valueOf(e.getMessage()));
+        }
+    }
+
+    /**
+     * 保证只回调一次：超时定时线程和 IPC 线程可能同时得到结果，先到的一方生效
+     * @param <T> 调用结果类型
+     */
+    private static final class OnceCallback<T> implements Callback<T> {
+        private final Callback<T> mCallback;
+        private final AtomicBoolean mDelivered = new AtomicBoolean();
+
+        OnceCallback(Callback<T> callback) {
+            mCallback = callback;
+        }
+
+        @Override
+        public void onSuccess(T result) {
+            if (mDelivered.compareAndSet(false, true)) {
+                mCallback.onSuccess(result);
+            }
+        }
+
+        @Override
+        public void onError(RemoteException error) {
+            if (mDelivered.compareAndSet(false, true)) {
+                mCallback.onError(error);
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.surpasslike.welcomate.service;
+
+import android.os.RemoteException;
+
+/**
+ * 调用在截止时间之前没有完成
+ * 可能是在本地排队时就已超时、服务端在处理途中发现超时，或者等待 Binder 调用返回时超时
+ */
+public class CallTimeoutException extends RemoteException {
+
+    /**
+     * @param name 调用名称，例如 loginAdmin
+     * @param timeoutMillis 调用的超时毫秒数
+     */
+    public CallTimeoutException(String name, long timeoutMillis) {
+        super(name + " timed out after " + timeoutMillis + " ms");
+    }
+}
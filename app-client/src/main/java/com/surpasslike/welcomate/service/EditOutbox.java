@@ -0,0 +1,531 @@
+package com.surpasslike.welcomate.service;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.os.RemoteException;
+import android.util.Log;
+
+import com.surpasslike.welcomate.WelcomateApplication;
+import com.surpasslike.welcomateservice.CallHeader;
+import com.surpasslike.welcomateservice.IAdminService;
+import com.surpasslike.welcomateservice.PendingEdit;
+
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 改密和删除的离线队列
+ * 修改先写入本地数据库，再由队列线程成批通过 {@link IAdminService#applyEdits} 提交：
+ * 一连串修改在短暂的等待后合并为一次调用；服务未连接或调用失败时修改留在队列中，按指数退避重试，
+ * 服务连接成功时立即重试；进程退出后未提交的修改在下次启动时继续提交
+ * <p>
+ * 调用方通过 {@link Listener} 得知每条修改的状态：仍在队列中等待、已完成或被服务端拒绝
+ * 每条修改在加入队列时生成幂等键，超时后重试时服务端直接返回第一次执行的结果，不会重复执行
+ * 新密码用 Android Keystore 中的密钥加密后才写入数据库（见 {@link PasswordCipher}），提交后立即删除，
+ * 数据库开启 secure_delete，删除的内容被覆盖而不是留在空闲页中；
+ * 密钥丢失（例如系统清除了 Keystore）时无法解密的改密按被拒绝处理
+ * <p>
+ * 数据库读写和状态变化都在唯一的队列线程上执行，不需要额外加锁
+ */
+public class EditOutbox {
+
+    /** 日志标签 */
+    private static final String TAG = "EditOutbox";
+
+    /** 入队后等待多久再提交（毫秒），期间的其他修改合并到同一次调用 */
+    private static final long FLUSH_DELAY_MILLIS = 200;
+    /** 第一次重试的等待时间（毫秒），之后每次失败翻倍 */
+    private static final long INITIAL_BACKOFF_MILLIS = 1_000;
+    /** 重试等待时间的上限（毫秒） */
+    private static final long MAX_BACKOFF_MILLIS = 60_000;
+    /** 一次批量提交的超时时间（毫秒） */
+    private static final long FLUSH_TIMEOUT_MILLIS = 10_000;
+    /** 服务端执行失败的修改最多尝试的次数，超过后按被拒绝处理 */
+    private static final int MAX_ATTEMPTS = 8;
+
+    /**
+     * 一条修改的状态回调，在队列线程上执行
+     */
+    public interface Listener {
+        /**
+         * 修改暂时无法提交，仍在队列中等待重试
+         */
+        void onQueued();
+
+        /**
+         * 修改已经在服务端执行
+         * @param affectedRows 受影响的行数
+         */
+        void onCompleted(long affectedRows);
+
+        /**
+         * 服务端拒绝了修改，或者多次执行失败，修改已从队列中移除
+         */
+        void onRejected();
+    }
+
+    private static volatile EditOutbox sInstance;
+
+    private final OutboxDatabase mDatabase;
+    private final AdminServiceGateway mGateway = AdminServiceGateway.getInstance();
+    private final ScheduledThreadPoolExecutor mExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "admin-outbox");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    // 以下状态只在队列线程上访问
+    private final Map<Long, Listener> mListeners = new HashMap<>();
+    private ScheduledFuture<?> mScheduledFlush;
+    private long mScheduledAt;
+    private boolean mFlushing;
+    private long mBackoffMillis = INITIAL_BACKOFF_MILLIS;
+
+    private EditOutbox(Context context) {
+        mDatabase = new OutboxDatabase(context);
+        mGateway.addOnConnectedListener(new Runnable() {
+            @Override
+            public void run() {
+                mExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        // 服务刚刚连接，不必等到退避结束
+                        mBackoffMillis = INITIAL_BACKOFF_MILLIS;
+                        scheduleFlush(FLUSH_DELAY_MILLIS);
+                    }
+                });
+            }
+        });
+        // 上次进程退出时留下的修改
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                scheduleFlush(FLUSH_DELAY_MILLIS);
+            }
+        });
+    }
+
+    /**
+     * 获取单例
+     * @return EditOutbox 实例
+     */
+    public static EditOutbox getInstance() {
+        if (sInstance == null) {
+            synchronized (EditOutbox.class) {
+                if (sInstance == null) {
+                    sInstance = new EditOutbox(WelcomateApplication.getContext());
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * 把一次改密加入队列
+     * @param username 用户名
+     * @param newPassword 新密码
+     * @param listener 该修改的状态回调
+     */
+    public void enqueuePasswordChange(String username, String newPassword, Listener listener) {
+        enqueue(IAdminService.EDIT_PASSWORD_CHANGE, username, newPassword, listener);
+    }
+
+    /**
+     * 把一次删除加入队列
+     * @param username 用户名
+     * @param listener 该修改的状态回调
+     */
+    public void enqueueDelete(String username, Listener listener) {
+        enqueue(IAdminService.EDIT_DELETE, username, null, listener);
+    }
+
+    /**
+     * 移除状态回调，例如页面退出时；修改本身仍会提交
+     * @param listener 加入队列时传入的回调
+     */
+    public void removeListener(final Listener listener) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mListeners.values().remove(listener);
+            }
+        });
+    }
+
+    private void enqueue(final int type, final String username, final String newPassword, final Listener listener) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long id;
+                try {
+                    id = mDatabase.insert(type, username, newPassword);
+                } catch (RuntimeException | GeneralSecurityException e) {
+                    Log.e(TAG, "Failed to persist edit", e);
+                    listener.onRejected();
+                    return;
+                }
+                mListeners.put(id, listener);
+                scheduleFlush(FLUSH_DELAY_MILLIS);
+            }
+        });
+    }
+
+    /**
+     * 在 delayMillis 之后提交；已经安排了更早的提交时保持不变
+     */
+    private void scheduleFlush(long delayMillis) {
+        long at = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        if (mScheduledFlush != null) {
+            if (mScheduledAt - at <= 0) {
+                return;
+            }
+            mScheduledFlush.cancel(false);
+        }
+        mScheduledAt = at;
+        mScheduledFlush = mExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                mScheduledFlush = null;
+                flush();
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 取出队首的一批修改并提交；同一时间只有一次提交在进行
+     */
+    private void flush() {
+        if (mFlushing) {
+            return;
+        }
+        final List<Entry> entries = mDatabase.load(IAdminService.MAX_EDITS_PER_CALL);
+        if (entries.isEmpty()) {
+            mBackoffMillis = INITIAL_BACKOFF_MILLIS;
+            return;
+        }
+        if (dropUnreadable(entries)) {
+            // 队列中可能还有更多修改
+            scheduleFlush(0);
+            return;
+        }
+        if (!mGateway.isServiceBound()) {
+            // 服务连接后会再次提交，不需要退避重试
+            notifyQueued(entries);
+            return;
+        }
+        mFlushing = true;
+        final PendingEdit[] edits = new PendingEdit[entries.size()];
+        for (int i = 0; i < edits.length; i++) {
+            edits[i] = entries.get(i).toPendingEdit();
+        }
+        mGateway.submit("applyEdits", FLUSH_TIMEOUT_MILLIS, new AdminServiceGateway.Call<long[]>() {
+            @Override
+            public long[] execute(IAdminService service, CallHeader header) throws RemoteException {
+                return service.applyEdits(header, edits);
+            }
+        }, new AdminServiceGateway.Callback<long[]>() {
+            @Override
+            public void onSuccess(final long[] results) {
+                mExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        onFlushed(entries, results);
+                    }
+                });
+            }
+
+            @Override
+            public void onError(final RemoteException error) {
+                mExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        Log.w(TAG, "Flush of " + entries.size() + " edits failed: " + error.getMessage());
+                        onFlushFailed(entries);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * 把新密码已无法解密的改密移出队列并按被拒绝处理
+     *
+     * @return 有这样的修改时返回 true，调用方重新取出一批
+     */
+    private boolean dropUnreadable(List<Entry> entries) {
+        List<Entry> unreadable = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry.type == IAdminService.EDIT_PASSWORD_CHANGE && entry.newPassword == null) {
+                unreadable.add(entry);
+            }
+        }
+        if (unreadable.isEmpty()) {
+            return false;
+        }
+        Log.w(TAG, "Dropping " + unreadable.size() + " password changes that can no longer be decrypted");
+        mDatabase.finish(unreadable, new ArrayList<Entry>());
+        for (Entry entry : unreadable) {
+            Listener listener = mListeners.remove(entry.id);
+            if (listener != null) {
+                listener.onRejected();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 处理一批修改的结果：完成和被拒绝的修改移出队列，执行失败的修改留待重试
+     */
+    private void onFlushed(List<Entry> entries, long[] results) {
+        if (results == null || results.length != entries.size()) {
+            // 服务端整批拒绝（例如超出条数上限），稍后重试；通道已满时走 onError
+            onFlushFailed(entries);
+            return;
+        }
+        mFlushing = false;
+        List<Entry> retry = new ArrayList<>();
+        List<Entry> done = new ArrayList<>();
+        boolean[] retried = new boolean[results.length];
+        for (int i = 0; i < results.length; i++) {
+            Entry entry = entries.get(i);
+            retried[i] = results[i] == IAdminService.EDIT_FAILED && entry.attempts + 1 < MAX_ATTEMPTS;
+            if (retried[i]) {
+                retry.add(entry);
+            } else {
+                done.add(entry);
+            }
+        }
+        mDatabase.finish(done, retry);
+        for (int i = 0; i < results.length; i++) {
+            if (retried[i]) {
+                continue;
+            }
+            Listener listener = mListeners.remove(entries.get(i).id);
+            if (listener == null) {
+                continue;
+            }
+            if (results[i] >= 0) {
+                listener.onCompleted(results[i]);
+            } else {
+                listener.onRejected();
+            }
+        }
+        if (retry.isEmpty()) {
+            // 队列中可能还有更多修改
+            mBackoffMillis = INITIAL_BACKOFF_MILLIS;
+            scheduleFlush(0);
+        } else {
+            notifyQueued(retry);
+            backOff();
+        }
+    }
+
+    /**
+     * 整批没有送达或没有执行（服务断开、超时、通道已满）：不计入尝试次数，退避后重试
+     */
+    private void onFlushFailed(List<Entry> entries) {
+        mFlushing = false;
+        notifyQueued(entries);
+        backOff();
+    }
+
+    private void backOff() {
+        scheduleFlush(mBackoffMillis);
+        mBackoffMillis = Math.min(mBackoffMillis * 2, MAX_BACKOFF_MILLIS);
+    }
+
+    private void notifyQueued(List<Entry> entries) {
+        for (Entry entry : entries) {
+            Listener listener = mListeners.get(entry.id);
+            if (listener != null) {
+                listener.onQueued();
+            }
+        }
+    }
+
+    /**
+     * 队列中的一条修改
+     */
+    private static final class Entry {
+        final long id;
+        final int type;
+        final String username;
+        // 已解密的新密码；删除为 null，无法解密的改密也为 null
+        final String newPassword;
+        final String idempotencyKey;
+        final int attempts;
+
+        Entry(long id, int type, String username, String newPassword, String idempotencyKey, int attempts) {
+            this.id = id;
+            this.type = type;
+            this.username = username;
+            this.newPassword = newPassword;
+            this.idempotencyKey = idempotencyKey;
+            this.attempts = attempts;
+        }
+
+        PendingEdit toPendingEdit() {
+            PendingEdit edit = new PendingEdit();
+            edit.id = id;
+            edit.type = type;
+            edit.username = username;
+            edit.newPassword = newPassword;
+            edit.idempotencyKey = idempotencyKey;
+            return edit;
+        }
+    }
+
+    /**
+     * 保存队列的数据库，只在队列线程上访问
+     */
+    private static final class OutboxDatabase extends SQLiteOpenHelper {
+        private static final String DATABASE_NAME = "edit_outbox.db";
+        // 版本 2：增加幂等键列
+        // 版本 3：新密码改为加密保存
+        private static final int DATABASE_VERSION = 3;
+
+        private static final String TABLE_EDITS = "edits";
+        private static final String COLUMN_ID = "_id";
+        private static final String COLUMN_TYPE = "type";
+        private static final String COLUMN_USERNAME = "username";
+        private static final String COLUMN_NEW_PASSWORD = "new_password";
+        private static final String COLUMN_IDEMPOTENCY_KEY = "idempotency_key";
+        private static final String COLUMN_ATTEMPTS = "attempts";
+
+        private final PasswordCipher mCipher = new PasswordCipher();
+
+        OutboxDatabase(Context context) {
+            super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        }
+
+        @Override
+        public void onConfigure(SQLiteDatabase db) {
+            super.onConfigure(db);
+            // 删除的行在文件中被覆盖为 0，已提交的密文不会留在空闲页里
+            try (Cursor cursor = db.rawQuery("PRAGMA secure_delete = ON", null)) {
+                cursor.moveToFirst();
+            }
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + TABLE_EDITS + " ("
+                    + COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + COLUMN_TYPE + " INTEGER NOT NULL, "
+                    + COLUMN_USERNAME + " TEXT NOT NULL, "
+                    + COLUMN_NEW_PASSWORD + " TEXT, "
+                    + COLUMN_IDEMPOTENCY_KEY + " TEXT, "
+                    + COLUMN_ATTEMPTS + " INTEGER NOT NULL DEFAULT 0)");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            if (oldVersion < 2) {
+                // 升级前入队的修改没有幂等键，按原来的方式提交
+                db.execSQL("ALTER TABLE " + TABLE_EDITS + " ADD COLUMN " + COLUMN_IDEMPOTENCY_KEY + " TEXT");
+            }
+            if (oldVersion < 3) {
+                encryptStoredPasswords(db);
+            }
+        }
+
+        /**
+         * 把升级前以明文保存的新密码就地加密；无法加密的改密直接移出队列，不再保留明文
+         */
+        private void encryptStoredPasswords(SQLiteDatabase db) {
+            try (Cursor cursor = db.query(TABLE_EDITS, new String[]{COLUMN_ID, COLUMN_NEW_PASSWORD},
+                    COLUMN_NEW_PASSWORD + " IS NOT NULL", null, null, null, null)) {
+                while (cursor.moveToNext()) {
+                    String[] id = {String.valueOf(cursor.getLong(0))};
+                    try {
+                        ContentValues values = new ContentValues();
+                        values.put(COLUMN_NEW_PASSWORD, mCipher.encrypt(cursor.getString(1)));
+                        db.update(TABLE_EDITS, values, COLUMN_ID + " = ?", id);
+                    } catch (GeneralSecurityException e) {
+                        Log.e(TAG, "Cannot encrypt queued password change, dropping it", e);
+                        db.delete(TABLE_EDITS, COLUMN_ID + " = ?", id);
+                    }
+                }
+            }
+        }
+
+        /**
+         * @throws GeneralSecurityException 新密码无法加密，修改没有保存
+         */
+        long insert(int type, String username, String newPassword) throws GeneralSecurityException {
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_TYPE, type);
+            values.put(COLUMN_USERNAME, username);
+            values.put(COLUMN_NEW_PASSWORD, newPassword != null ? mCipher.encrypt(newPassword) : null);
+            values.put(COLUMN_IDEMPOTENCY_KEY, UUID.randomUUID().toString());
+            return getWritableDatabase().insertOrThrow(TABLE_EDITS, null, values);
+        }
+
+        /**
+         * @param limit 最多取出的条数
+         * @return 按加入顺序排列的修改，新密码已解密
+         */
+        List<Entry> load(int limit) {
+            List<Entry> entries = new ArrayList<>();
+            try (Cursor cursor = getReadableDatabase().query(TABLE_EDITS,
+                    new String[]{COLUMN_ID, COLUMN_TYPE, COLUMN_USERNAME, COLUMN_NEW_PASSWORD, COLUMN_IDEMPOTENCY_KEY,
+                            COLUMN_ATTEMPTS},
+                    null, null, null, null, COLUMN_ID, String.valueOf(limit))) {
+                while (cursor.moveToNext()) {
+                    entries.add(new Entry(cursor.getLong(0), cursor.getInt(1), cursor.getString(2),
+                            decrypt(cursor.getString(3)), cursor.getString(4), cursor.getInt(5)));
+                }
+            }
+            return entries;
+        }
+
+        /**
+         * @return 解密后的新密码；没有密码或无法解密时返回 null
+         */
+        private String decrypt(String stored) {
+            if (stored == null) {
+                return null;
+            }
+            try {
+                return mCipher.decrypt(stored);
+            } catch (GeneralSecurityException e) {
+                Log.e(TAG, "Cannot decrypt queued password change", e);
+                return null;
+            }
+        }
+
+        /**
+         * 在一个事务中移除已经结束的修改，并为服务端执行失败、需要重试的修改累加尝试次数
+         */
+        void finish(List<Entry> done, List<Entry> retry) {
+            SQLiteDatabase db = getWritableDatabase();
+            db.beginTransaction();
+            try {
+                for (Entry entry : done) {
+                    db.delete(TABLE_EDITS, COLUMN_ID + " = ?", new String[]{String.valueOf(entry.id)});
+                }
+                for (Entry entry : retry) {
+                    db.execSQL("UPDATE " + TABLE_EDITS + " SET " + COLUMN_ATTEMPTS + " = " + COLUMN_ATTEMPTS
+                            + " + 1 WHERE " + COLUMN_ID + " = ?", new Object[]{entry.id});
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+    }
+}
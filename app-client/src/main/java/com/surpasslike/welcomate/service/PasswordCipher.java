@@ -0,0 +1,99 @@
+package com.surpasslike.welcomate.service;
+
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+import android.util.Base64;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * 离线队列中新密码的加密，见 {@link EditOutbox}
+ * 使用 Android Keystore 中的 AES-256 密钥做 AES/GCM 加密：密钥由系统保管、不可导出，
+ * 只拿到 edit_outbox.db 文件无法还原密码；GCM 同时校验完整性，被改动的密文解密失败
+ * 密文格式为 Base64（12 字节 IV + 密文和 16 字节认证标签）
+ * 只在队列线程上使用
+ */
+final class PasswordCipher {
+    private static final String KEYSTORE = "AndroidKeyStore";
+    private static final String KEY_ALIAS = "edit_outbox_password";
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_BITS = 128;
+
+    private SecretKey mKey;
+
+    /**
+     * @param password 新密码
+     * @return 可以保存到数据库中的密文
+     * @throws GeneralSecurityException 密钥不可用或加密失败
+     */
+    String encrypt(String password) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        // Keystore 密钥要求由系统生成随机 IV
+        cipher.init(Cipher.ENCRYPT_MODE, key());
+        byte[] iv = cipher.getIV();
+        byte[] sealed = cipher.doFinal(password.getBytes(StandardCharsets.UTF_8));
+        ByteBuffer out = ByteBuffer.allocate(iv.length + sealed.length);
+        out.put(iv).put(sealed);
+        return Base64.encodeToString(out.array(), Base64.NO_WRAP);
+    }
+
+    /**
+     * @param stored {@link #encrypt} 的结果
+     * @return 新密码
+     * @throws GeneralSecurityException 密钥已不存在（例如系统清除了 Keystore）、密文格式错误或被改动
+     */
+    String decrypt(String stored) throws GeneralSecurityException {
+        byte[] bytes;
+        try {
+            bytes = Base64.decode(stored, Base64.NO_WRAP);
+        } catch (IllegalArgumentException e) {
+            throw new GeneralSecurityException("Malformed ciphertext", e);
+        }
+        if (bytes.length <= IV_LENGTH) {
+            throw new GeneralSecurityException("Ciphertext too short");
+        }
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.DECRYPT_MODE, key(), new GCMParameterSpec(TAG_BITS, bytes, 0, IV_LENGTH));
+        return new String(cipher.doFinal(bytes, IV_LENGTH, bytes.length - IV_LENGTH), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 取出 Keystore 中的密钥，第一次使用时生成
+     */
+    private SecretKey key() throws GeneralSecurityException {
+        if (mKey != null) {
+            return mKey;
+        }
+        KeyStore keyStore = KeyStore.getInstance(KEYSTORE);
+        try {
+            keyStore.load(null);
+        } catch (IOException e) {
+            throw new KeyStoreException(e);
+        }
+        KeyStore.Entry entry = keyStore.getEntry(KEY_ALIAS, null);
+        if (entry instanceof KeyStore.SecretKeyEntry) {
+            mKey = ((KeyStore.SecretKeyEntry) entry).getSecretKey();
+            return mKey;
+        }
+        KeyGenerator generator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, KEYSTORE);
+        generator.init(new KeyGenParameterSpec.Builder(KEY_ALIAS,
+                KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                .setKeySize(256)
+                .build());
+        mKey = generator.generateKey();
+        return mKey;
+    }
+}
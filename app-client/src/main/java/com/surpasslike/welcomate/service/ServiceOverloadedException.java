@@ -0,0 +1,18 @@
+package com.surpasslike.welcomate.service;
+
+import android.os.RemoteException;
+
+/**
+ * 服务端对应的通道已满，请求没有执行
+ * 与登录失败、账户已占用等正常结果不同，这只是暂时的拒绝，稍后重试即可
+ */
+public class ServiceOverloadedException extends RemoteException {
+
+    /**
+     * @param name 调用名称，例如 loginAdmin
+     * @param message 服务端给出的原因
+     */
+    public ServiceOverloadedException(String name, String message) {
+        super(name + " rejected, service overloaded: " + message);
+    }
+}
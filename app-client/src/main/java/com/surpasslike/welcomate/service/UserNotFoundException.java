@@ -0,0 +1,17 @@
+package com.surpasslike.welcomate.service;
+
+import android.os.RemoteException;
+
+/**
+ * 修改已经在服务端执行，但没有影响任何行：用户名不存在，或者已经被其他人删除
+ * 与服务不可用不同，重试也不会成功
+ */
+public class UserNotFoundException extends RemoteException {
+
+    /**
+     * @param username 修改针对的用户名
+     */
+    public UserNotFoundException(String username) {
+        super("No user named " + username);
+    }
+}
@@ -1,12 +1,10 @@
 package com.surpasslike.welcomate.utils;
 
-import android.text.TextUtils;
-
-import com.surpasslike.welcomate.constants.AppConstants;
+import com.surpasslike.common.InputRules;
 
 /**
  * 输入验证工具类
- * 提供统一的输入验证方法
+ * 提供统一的输入验证方法，规则来自与服务端共用的 {@link InputRules}
  */
 public class ValidationUtils {
     
@@ -17,13 +15,7 @@ public class ValidationUtils {
      * @return true表示有效，false表示无效
      */
     public static boolean isValidUsername(String username) {
-        if (TextUtils.isEmpty(username)) {
-            return false;
-        }
-        
-        int length = username.trim().length();
-        return length >= AppConstants.TextLimit.USERNAME_MIN_LENGTH && 
-               length <= AppConstants.TextLimit.USERNAME_MAX_LENGTH;
+        return InputRules.checkUsername(username) == null;
     }
     
     /**
@@ -33,22 +25,36 @@ public class ValidationUtils {
      * @return true表示有效，false表示无效
      */
     public static boolean isValidPassword(String password) {
-        if (TextUtils.isEmpty(password)) {
-            return false;
-        }
-        
-        int length = password.length();
-        return length >= AppConstants.TextLimit.PASSWORD_MIN_LENGTH && 
-               length <= AppConstants.TextLimit.PASSWORD_MAX_LENGTH;
+        return InputRules.checkPassword(password) == null;
     }
     
     /**
-     * 验证账号是否有效（非空）
+     * 验证账号是否有效（非空且不超过最大长度）
      * 
      * @param account 账号
      * @return true表示有效，false表示无效
      */
     public static boolean isValidAccount(String account) {
-        return !TextUtils.isEmpty(account) && !TextUtils.isEmpty(account.trim());
+        return InputRules.checkAccount(account) == null;
+    }
+    
+    /**
+     * 验证登录时输入的账号是否有效（非空），已有账号不受注册时的长度规则限制
+     * 
+     * @param account 账号
+     * @return true表示有效，false表示无效
+     */
+    public static boolean isValidLoginAccount(String account) {
+        return InputRules.checkExistingAccount(account) == null;
+    }
+    
+    /**
+     * 验证登录时输入的密码是否有效（非空），已有密码不受注册时的长度规则限制
+     * 
+     * @param password 密码
+     * @return true表示有效，false表示无效
+     */
+    public static boolean isValidLoginPassword(String password) {
+        return InputRules.checkExistingPassword(password) == null;
     }
 }
\ No newline at end of file
@@ -0,0 +1,143 @@
+package com.surpasslike.welcomate.viewmodel;
+
+import android.os.RemoteException;
+import android.util.Log;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.ViewModel;
+
+import com.surpasslike.welcomate.service.AdminServiceGateway;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Future;
+
+/**
+ * 调用 AdminService 的 ViewModel 基类
+ * 调用经由 {@link AdminServiceGateway} 在 IPC 线程上执行，结果以 {@link Resource} 的形式发布到 LiveData
+ * 页面退出（ViewModel 被清除）时取消所有尚未完成的调用，其结果不会再发布
+ */
+public abstract class AdminCallViewModel extends ViewModel {
+
+    /** 日志标签 */
+    private static final String TAG = "AdminCallViewModel";
+
+    private final AdminServiceGateway mGateway = AdminServiceGateway.getInstance();
+
+    // 尚未完成的调用
+    private final Set<Future<?>> mRunning = new HashSet<>();
+    private boolean mCleared;
+
+    /**
+     * 调用成功并且结果将要发布时的回调，在 IPC 线程上执行；超时、失败或已取消的调用不会回调
+     * @param <T> 调用结果类型
+     */
+    protected interface OnSuccess<T> {
+        void onSuccess(T result);
+    }
+
+    /**
+     * 发起一次调用，并把状态发布到 target，超时时间为 {@link AdminServiceGateway#DEFAULT_TIMEOUT_MILLIS}
+     * @param target 接收状态的 LiveData，调用开始时立即变为加载中
+     * @param name 调用名称，用于追踪区段
+     * @param call 要执行的调用
+     * @param <T> 调用结果类型
+     * @return 可用于单独取消该调用的句柄
+     */
+    protected <T> Future<?> launch(MutableLiveData<Resource<T>> target, String name, AdminServiceGateway.Call<T> call) {
+        return launch(target, name, AdminServiceGateway.DEFAULT_TIMEOUT_MILLIS, call);
+    }
+
+    /**
+     * 发起一次调用，并把状态发布到 target
+     * @param target 接收状态的 LiveData，调用开始时立即变为加载中
+     * @param name 调用名称，用于追踪区段
+     * @param timeoutMillis 超时毫秒数，超时后发布 {@link Resource#isTimedOut()} 为 true 的失败状态
+     * @param call 要执行的调用
+     * @param <T> 调用结果类型
+     * @return 可用于单独取消该调用的句柄
+     */
+    protected <T> Future<?> launch(MutableLiveData<Resource<T>> target, String name, long timeoutMillis,
+                                   AdminServiceGateway.Call<T> call) {
+        return launch(target, name, timeoutMillis, call, null);
+    }
+
+    /**
+     * 发起一次调用，并把状态发布到 target；调用真正成功时先执行 onSuccess
+     * @param target 接收状态的 LiveData，调用开始时立即变为加载中
+     * @param name 调用名称，用于追踪区段
+     * @param timeoutMillis 超时毫秒数，超时后发布 {@link Resource#isTimedOut()} 为 true 的失败状态
+     * @param call 要执行的调用
+     * @param onSuccess 成功结果发布之前的回调，可以为 null
+     * @param <T> 调用结果类型
+     * @return 可用于单独取消该调用的句柄
+     */
+    protected <T> Future<?> launch(final MutableLiveData<Resource<T>> target, String name, long timeoutMillis,
+                                   AdminServiceGateway.Call<T> call, final OnSuccess<T> onSuccess) {
+        target.setValue(Resource.<T>loading());
+        final Future<?>[] self = new Future<?>[1];
+        // 持锁提交，保证回调发布结果时已经能看到自己的句柄
+        synchronized (mRunning) {
+            self[0] = mGateway.submit(name, timeoutMillis, call, new AdminServiceGateway.Callback<T>() {
+                @Override
+                public void onSuccess(T result) {
+                    publish(self[0], target, Resource.success(result), onSuccess);
+                }
+
+                @Override
+                public void onError(RemoteException error) {
+                    Log.e(TAG, "Admin service call failed", error);
+                    publish(self[0], target, Resource.<T>error(error), null);
+                }
+            });
+            if (mCleared) {
+                self[0].cancel(true);
+            } else {
+                mRunning.add(self[0]);
+            }
+        }
+        return self[0];
+    }
+
+    /**
+     * @param state 某个调用的状态
+     * @return true表示该调用仍在进行中
+     */
+    protected static boolean isLoading(LiveData<? extends Resource<?>> state) {
+        Resource<?> resource = state.getValue();
+        return resource != null && resource.isLoading();
+    }
+
+    /**
+     * 发布调用结果；已取消的调用不发布，也不执行成功回调
+     */
+    private <T> void publish(Future<?> future, MutableLiveData<Resource<T>> target, Resource<T> resource,
+                             OnSuccess<T> onSuccess) {
+        synchronized (mRunning) {
+            if (mCleared || future.isCancelled()) {
+                return;
+            }
+            mRunning.remove(future);
+        }
+        if (onSuccess != null) {
+            onSuccess.onSuccess(resource.getData());
+        }
+        target.postValue(resource);
+    }
+
+    /**
+     * 页面退出时取消所有尚未完成的调用
+     */
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        synchronized (mRunning) {
+            mCleared = true;
+            for (Future<?> future : mRunning) {
+                future.cancel(true);
+            }
+            mRunning.clear();
+        }
+    }
+}
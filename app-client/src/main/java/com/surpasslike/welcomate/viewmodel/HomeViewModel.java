@@ -0,0 +1,110 @@
+package com.surpasslike.welcomate.viewmodel;
+
+import android.os.RemoteException;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.surpasslike.welcomate.service.EditOutbox;
+import com.surpasslike.welcomate.service.UserNotFoundException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 用户主页面的 ViewModel
+ * 修改密码和删除用户经由 {@link EditOutbox} 提交：服务暂时不可用时修改保存在离线队列中，
+ * 状态变为 {@link Resource.Status#QUEUED}，服务可用后自动提交并发布最终结果；
+ * 服务端执行了修改却没有影响任何行（用户不存在）时发布 {@link UserNotFoundException}，而不是成功
+ */
+public class HomeViewModel extends AdminCallViewModel {
+
+    private final EditOutbox mOutbox = EditOutbox.getInstance();
+
+    // 修改密码结果，成功时携带用户名
+    private final MutableLiveData<Resource<String>> mPasswordChangeResult = new MutableLiveData<>();
+    // 删除用户结果，成功时携带用户名
+    private final MutableLiveData<Resource<String>> mDeleteResult = new MutableLiveData<>();
+
+    // 本页面加入队列的修改的回调，页面退出时移除
+    private final List<EditOutbox.Listener> mListeners = new ArrayList<>();
+
+    /**
+     * @return 修改密码状态
+     */
+    public LiveData<Resource<String>> getPasswordChangeResult() {
+        return mPasswordChangeResult;
+    }
+
+    /**
+     * @return 删除用户状态
+     */
+    public LiveData<Resource<String>> getDeleteResult() {
+        return mDeleteResult;
+    }
+
+    /**
+     * 修改用户密码
+     * @param username 用户名
+     * @param newPassword 新密码
+     */
+    public void changePassword(final String username, final String newPassword) {
+        if (isLoading(mPasswordChangeResult)) {
+            return;
+        }
+        mPasswordChangeResult.setValue(Resource.<String>loading());
+        mOutbox.enqueuePasswordChange(username, newPassword, track(mPasswordChangeResult, username));
+    }
+
+    /**
+     * 删除用户
+     * @param username 用户名
+     */
+    public void deleteUser(final String username) {
+        if (isLoading(mDeleteResult)) {
+            return;
+        }
+        mDeleteResult.setValue(Resource.<String>loading());
+        mOutbox.enqueueDelete(username, track(mDeleteResult, username));
+    }
+
+    /**
+     * 创建把队列中修改的状态发布到 target 的回调
+     */
+    private EditOutbox.Listener track(final MutableLiveData<Resource<String>> target, final String username) {
+        EditOutbox.Listener listener = new EditOutbox.Listener() {
+            @Override
+            public void onQueued() {
+                target.postValue(Resource.queued(username));
+            }
+
+            @Override
+            public void onCompleted(long affectedRows) {
+                if (affectedRows > 0) {
+                    target.postValue(Resource.success(username));
+                } else {
+                    target.postValue(Resource.<String>error(new UserNotFoundException(username)));
+                }
+            }
+
+            @Override
+            public void onRejected() {
+                target.postValue(Resource.<String>error(new RemoteException("Edit rejected for " + username)));
+            }
+        };
+        mListeners.add(listener);
+        return listener;
+    }
+
+    /**
+     * 页面退出时不再接收状态；已加入队列的修改仍会提交
+     */
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        for (EditOutbox.Listener listener : mListeners) {
+            mOutbox.removeListener(listener);
+        }
+        mListeners.clear();
+    }
+}
@@ -0,0 +1,43 @@
+package com.surpasslike.welcomate.viewmodel;
+
+import android.os.RemoteException;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.surpasslike.welcomate.service.AdminServiceGateway;
+import com.surpasslike.welcomateservice.CallHeader;
+import com.surpasslike.welcomateservice.IAdminService;
+
+/**
+ * 登录页面的 ViewModel
+ */
+public class LoginViewModel extends AdminCallViewModel {
+
+    // 登录结果，成功时携带用户名（null表示账号或密码错误）
+    private final MutableLiveData<Resource<String>> mLoginResult = new MutableLiveData<>();
+
+    /**
+     * @return 登录状态
+     */
+    public LiveData<Resource<String>> getLoginResult() {
+        return mLoginResult;
+    }
+
+    /**
+     * 发起登录，正在登录时忽略重复请求
+     * @param account 账号
+     * @param password 密码
+     */
+    public void login(final String account, final String password) {
+        if (isLoading(mLoginResult)) {
+            return;
+        }
+        launch(mLoginResult, "loginAdmin", new AdminServiceGateway.Call<String>() {
+            @Override
+            public String execute(IAdminService service, CallHeader header) throws RemoteException {
+                return service.loginAdmin(header, account, password);
+            }
+        });
+    }
+}
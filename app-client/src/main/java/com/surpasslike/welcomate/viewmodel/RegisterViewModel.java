@@ -0,0 +1,144 @@
+package com.surpasslike.welcomate.viewmodel;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.RemoteException;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.surpasslike.welcomate.service.AdminServiceGateway;
+import com.surpasslike.welcomate.utils.ValidationUtils;
+import com.surpasslike.welcomateservice.CallHeader;
+import com.surpasslike.welcomateservice.IAdminService;
+
+import java.util.UUID;
+import java.util.concurrent.Future;
+
+/**
+ * 注册页面的 ViewModel
+ * 除注册外还负责输入账号时的可用性查询：输入停顿后才查询，新的输入会取消之前的查询
+ */
+public class RegisterViewModel extends AdminCallViewModel {
+
+    /** 账号停止输入多久后才查询是否可用（毫秒） */
+    private static final long ACCOUNT_CHECK_DELAY_MS = 300;
+
+    /** 账号可用性查询的超时时间（毫秒）：只是输入时的提示，过时的结果没有意义，比其他调用短 */
+    private static final long ACCOUNT_CHECK_TIMEOUT_MS = 1_000;
+
+    // 注册结果
+    private final MutableLiveData<Resource<Boolean>> mRegisterResult = new MutableLiveData<>();
+    // 最近一次账号可用性查询的结果，值为 null 表示没有进行中的查询或结果
+    private final MutableLiveData<Resource<Boolean>> mAccountAvailability = new MutableLiveData<>();
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private Runnable mPendingAccountCheck;
+    private Future<?> mRunningAccountCheck;
+    // 最近一次成功的查询得知已被占用的账号
+    private volatile String mTakenAccount;
+    // 注册请求的幂等键：以相同的输入再次注册（例如超时后重试）时沿用，服务端不会重复注册
+    private String mRegisterKey;
+    private String mRegisterInputs;
+
+    /**
+     * @return 注册状态
+     */
+    public LiveData<Resource<Boolean>> getRegisterResult() {
+        return mRegisterResult;
+    }
+
+    /**
+     * @return 账号可用性查询状态，成功时 true 表示账号可以注册
+     */
+    public LiveData<Resource<Boolean>> getAccountAvailability() {
+        return mAccountAvailability;
+    }
+
+    /**
+     * 注册新用户，正在注册时忽略重复请求
+     * 输入与上一次注册相同时使用相同的幂等键，上一次超时但实际已在服务端完成时直接得到它的结果
+     * @param username 用户名
+     * @param account 账号
+     * @param password 密码
+     */
+    public void register(final String username, final String account, final String password) {
+        if (isLoading(mRegisterResult)) {
+            return;
+        }
+        String inputs = username + '\n' + account + '\n' + password;
+        if (mRegisterKey == null || !inputs.equals(mRegisterInputs)) {
+            mRegisterKey = UUID.randomUUID().toString();
+            mRegisterInputs = inputs;
+        }
+        final String idempotencyKey = mRegisterKey;
+        launch(mRegisterResult, "registerUser", new AdminServiceGateway.Call<Boolean>() {
+            @Override
+            public Boolean execute(IAdminService service, CallHeader header) throws RemoteException {
+                header.idempotencyKey = idempotencyKey;
+                return service.registerUser(header, username, account, password);
+            }
+        });
+    }
+
+    /**
+     * 账号输入变化时调用，停顿 {@link #ACCOUNT_CHECK_DELAY_MS} 毫秒后查询账号是否可用
+     * @param account 当前输入的账号
+     */
+    public void onAccountChanged(final String account) {
+        cancelAccountCheck();
+        mAccountAvailability.setValue(null);
+        if (!ValidationUtils.isValidAccount(account)) {
+            return;
+        }
+        mPendingAccountCheck = new Runnable() {
+            @Override
+            public void run() {
+                mPendingAccountCheck = null;
+                mRunningAccountCheck = launch(mAccountAvailability, "isAccountAvailable", ACCOUNT_CHECK_TIMEOUT_MS, new AdminServiceGateway.Call<Boolean>() {
+                    @Override
+                    public Boolean execute(IAdminService service, CallHeader header) throws RemoteException {
+                        return service.isAccountAvailable(header, account);
+                    }
+                }, new OnSuccess<Boolean>() {
+                    @Override
+                    public void onSuccess(Boolean available) {
+                        // 只有服务端真正回答“已占用”才记录；超时、繁忙或已取消的查询不影响之后的注册
+                        if (Boolean.FALSE.equals(available)) {
+                            mTakenAccount = account;
+                        }
+                    }
+                });
+            }
+        };
+        mMainHandler.postDelayed(mPendingAccountCheck, ACCOUNT_CHECK_DELAY_MS);
+    }
+
+    /**
+     * @param account 账号
+     * @return true表示已知该账号被占用，无需再发起注册
+     */
+    public boolean isKnownTaken(String account) {
+        return account.equals(mTakenAccount);
+    }
+
+    /**
+     * 取消尚未执行的查询；已经发出的查询无法中断 Binder 调用，但其结果不会再发布
+     */
+    private void cancelAccountCheck() {
+        if (mPendingAccountCheck != null) {
+            mMainHandler.removeCallbacks(mPendingAccountCheck);
+            mPendingAccountCheck = null;
+        }
+        if (mRunningAccountCheck != null) {
+            mRunningAccountCheck.cancel(true);
+            mRunningAccountCheck = null;
+        }
+    }
+
+    @Override
+    protected void onCleared() {
+        cancelAccountCheck();
+        super.onCleared();
+    }
+}
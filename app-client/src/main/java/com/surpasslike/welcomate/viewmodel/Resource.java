@@ -0,0 +1,122 @@
+package com.surpasslike.welcomate.viewmodel;
+
+import android.os.RemoteException;
+
+import androidx.annotation.StringRes;
+
+import com.surpasslike.welcomate.R;
+import com.surpasslike.welcomate.service.CallTimeoutException;
+import com.surpasslike.welcomate.service.ServiceOverloadedException;
+import com.surpasslike.welcomate.service.UserNotFoundException;
+
+/**
+ * 一次服务调用在界面上的状态：加载中、已加入离线队列、成功或失败
+ * @param <T> 成功时携带的数据类型
+ */
+public class Resource<T> {
+
+    /**
+     * 调用状态
+     */
+    public enum Status {
+        LOADING,
+        QUEUED,
+        SUCCESS,
+        ERROR
+    }
+
+    private final Status mStatus;
+    private final T mData;
+    private final RemoteException mError;
+
+    private Resource(Status status, T data, RemoteException error) {
+        mStatus = status;
+        mData = data;
+        mError = error;
+    }
+
+    /**
+     * @return 加载中状态
+     */
+    public static <T> Resource<T> loading() {
+        return new Resource<>(Status.LOADING, null, null);
+    }
+
+    /**
+     * @param data 已保存的请求内容，例如用户名
+     * @return 已加入离线队列、等待服务可用后提交的状态
+     */
+    public static <T> Resource<T> queued(T data) {
+        return new Resource<>(Status.QUEUED, data, null);
+    }
+
+    /**
+     * @param data 调用结果
+     * @return 成功状态
+     */
+    public static <T> Resource<T> success(T data) {
+        return new Resource<>(Status.SUCCESS, data, null);
+    }
+
+    /**
+     * @param error 失败原因
+     * @return 失败状态
+     */
+    public static <T> Resource<T> error(RemoteException error) {
+        return new Resource<>(Status.ERROR, null, error);
+    }
+
+    public Status getStatus() {
+        return mStatus;
+    }
+
+    public T getData() {
+        return mData;
+    }
+
+    public RemoteException getError() {
+        return mError;
+    }
+
+    /**
+     * @return true表示仍在等待调用结果
+     */
+    public boolean isLoading() {
+        return mStatus == Status.LOADING;
+    }
+
+    /**
+     * @return true表示调用因超过截止时间而失败
+     */
+    public boolean isTimedOut() {
+        return mError instanceof CallTimeoutException;
+    }
+
+    /**
+     * @return true表示服务端繁忙，请求没有执行，可以稍后重试
+     */
+    public boolean isOverloaded() {
+        return mError instanceof ServiceOverloadedException;
+    }
+
+    /**
+     * @return true表示修改已经执行，但用户不存在，没有影响任何行
+     */
+    public boolean isNotFound() {
+        return mError instanceof UserNotFoundException;
+    }
+
+    /**
+     * @return 失败时给用户看的提示：超时、繁忙、用户不存在和其他不可用的情况分开提示
+     */
+    @StringRes
+    public int getErrorMessage() {
+        if (isNotFound()) {
+            return R.string.user_not_found;
+        }
+        if (isTimedOut()) {
+            return R.string.service_timeout;
+        }
+        return isOverloaded() ? R.string.service_busy : R.string.service_not_available;
+    }
+}
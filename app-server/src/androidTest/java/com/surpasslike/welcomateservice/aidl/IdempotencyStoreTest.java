@@ -0,0 +1,113 @@
+package com.surpasslike.welcomateservice.aidl;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * IdempotencyStore 的仪器测试
+ * 验证相同的键只执行一次、失败不被保存，以及数量上限和过期
+ */
+@RunWith(AndroidJUnit4.class)
+public class IdempotencyStoreTest {
+    private static final int UID = 10001;
+
+    @Test
+    public void replayReturnsStoredResultWithoutRunning() throws Exception {
+        IdempotencyStore store = new IdempotencyStore(16, 60_000);
+        AtomicInteger runs = new AtomicInteger();
+        assertEquals(Integer.valueOf(1), store.execute(UID, "registerUser", "k", runs::incrementAndGet));
+        assertEquals(Integer.valueOf(1), store.execute(UID, "registerUser", "k", runs::incrementAndGet));
+        assertEquals(1, runs.get());
+        // 不同的调用方和方法互不影响
+        assertEquals(Integer.valueOf(2), store.execute(UID + 1, "registerUser", "k", runs::incrementAndGet));
+        assertEquals(Integer.valueOf(3), store.execute(UID, "deleteUser", "k", runs::incrementAndGet));
+        // 没有键时总是执行
+        assertEquals(Integer.valueOf(4), store.execute(UID, "registerUser", null, runs::incrementAndGet));
+    }
+
+    @Test
+    public void failuresAreNotStored() throws Exception {
+        IdempotencyStore store = new IdempotencyStore(16, 60_000);
+        try {
+            store.execute(UID, "registerUser", "k", () -> {
+                throw new IllegalStateException("lane full");
+            });
+            fail();
+        } catch (IllegalStateException expected) {
+            // 第一次失败
+        }
+        assertEquals("retried", store.execute(UID, "registerUser", "k", () -> "retried"));
+    }
+
+    @Test
+    public void concurrentReplayWaitsForTheFirstExecution() throws Exception {
+        IdempotencyStore store = new IdempotencyStore(16, 60_000);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Integer> first = executor.submit(() -> store.execute(UID, "registerUser", "k", () -> {
+                started.countDown();
+                release.await();
+                return runs.incrementAndGet();
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<Integer> replay = executor.submit(() -> store.execute(UID, "registerUser", "k", runs::incrementAndGet));
+            release.countDown();
+            assertEquals(Integer.valueOf(1), first.get(5, TimeUnit.SECONDS));
+            assertEquals(Integer.valueOf(1), replay.get(5, TimeUnit.SECONDS));
+            assertEquals(1, runs.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void claimedKeyIsNotExecutedAgainWhileInFlight() throws Exception {
+        IdempotencyStore store = new IdempotencyStore(16, 60_000);
+        IdempotencyStore.Claim first = store.claim(UID, "applyEdits", "k");
+        assertTrue(first.isOwner());
+        // 同一个键在执行期间再次提交，不能成为所有者
+        IdempotencyStore.Claim retry = store.claim(UID, "applyEdits", "k");
+        assertFalse(retry.isOwner());
+        first.complete(1L);
+        assertTrue(retry.await());
+        assertEquals(1L, retry.getResult());
+
+        // 执行失败后释放键，等待的请求重新占用
+        IdempotencyStore.Claim failing = store.claim(UID, "applyEdits", "f");
+        IdempotencyStore.Claim waiting = store.claim(UID, "applyEdits", "f");
+        failing.fail();
+        assertFalse(waiting.await());
+        assertTrue(store.claim(UID, "applyEdits", "f").isOwner());
+    }
+
+    @Test
+    public void oldestKeysAreEvictedAndResultsExpire() throws Exception {
+        IdempotencyStore store = new IdempotencyStore(2, 60_000);
+        AtomicInteger runs = new AtomicInteger();
+        store.execute(UID, "applyEdits", "a", runs::incrementAndGet);
+        store.execute(UID, "applyEdits", "b", runs::incrementAndGet);
+        store.execute(UID, "applyEdits", "c", runs::incrementAndGet);
+        // a 已被淘汰，重新执行；c 仍然保存
+        assertEquals(Integer.valueOf(3), store.execute(UID, "applyEdits", "c", runs::incrementAndGet));
+        assertEquals(Integer.valueOf(4), store.execute(UID, "applyEdits", "a", runs::incrementAndGet));
+
+        IdempotencyStore shortLived = new IdempotencyStore(16, 1);
+        shortLived.execute(UID, "applyEdits", "a", () -> 1L);
+        Thread.sleep(10);
+        assertEquals(2L, (long) shortLived.execute(UID, "applyEdits", "a", () -> 2L));
+    }
+}
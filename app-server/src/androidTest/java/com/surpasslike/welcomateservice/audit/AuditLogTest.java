@@ -0,0 +1,270 @@
+package com.surpasslike.welcomateservice.audit;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 审计日志的仪器测试
+ * 在临时目录中写入记录，验证 CRC 拒绝写了一半的槽位、分段轮转和保留数量、重新打开时对未写完结尾的处理、
+ * 键在字符边界处截断，以及读取器的完整遍历和增量读取
+ */
+@RunWith(AndroidJUnit4.class)
+public class AuditLogTest {
+    private File directory;
+
+    @Before
+    public void setUp() {
+        directory = new File(InstrumentationRegistry.getInstrumentation().getTargetContext().getCacheDir(), "audit-test");
+        deleteDirectory();
+        assertTrue(directory.mkdirs());
+    }
+
+    @After
+    public void tearDown() {
+        deleteDirectory();
+    }
+
+    @Test
+    public void crcRejectsHalfWrittenSlots() throws IOException {
+        AuditLog log = new AuditLog(directory);
+        log.append(AuditRecord.Type.REGISTER, "crc_account", 7);
+
+        byte[] slot = readSlot(0, 0);
+        AuditRecord record = AuditLog.decode(slot);
+        assertNotNull(record);
+        assertEquals(1, record.getSequence());
+        assertEquals(AuditRecord.Type.REGISTER, record.getType());
+        assertEquals("crc_account", record.getKey());
+        assertEquals(7, record.getResult());
+
+        // 只写了前半部分：后半部分（包括 CRC）还是 0
+        byte[] half = slot.clone();
+        for (int i = AuditLog.RECORD_SIZE / 2; i < AuditLog.RECORD_SIZE; i++) {
+            half[i] = 0;
+        }
+        assertNull(AuditLog.decode(half));
+        // 只写了后半部分
+        byte[] tail = slot.clone();
+        for (int i = 0; i < AuditLog.RECORD_SIZE / 2; i++) {
+            tail[i] = 0;
+        }
+        assertNull(AuditLog.decode(tail));
+        // 键中的一个字节损坏
+        byte[] flipped = slot.clone();
+        flipped[30] ^= 1;
+        assertNull(AuditLog.decode(flipped));
+
+        byte[] empty = new byte[AuditLog.RECORD_SIZE];
+        assertTrue(AuditLog.isEmpty(empty));
+        assertNull(AuditLog.decode(empty));
+    }
+
+    @Test
+    public void keysAreCutOnCodePointBoundaries() {
+        StringBuilder ascii = new StringBuilder();
+        for (int i = 0; i < AuditLog.KEY_CAPACITY - 1; i++) {
+            ascii.append('a');
+        }
+        StringBuilder twoByte = new StringBuilder();
+        for (int i = 0; i <= AuditLog.KEY_CAPACITY / 2; i++) {
+            twoByte.append('é');
+        }
+        String emoji = "😀";
+        AuditLog log = new AuditLog(directory);
+        // 95 字节之后的 4 字节字符放不下，整个舍去
+        log.append(AuditRecord.Type.DELETE, ascii + emoji, 1);
+        // 49 个 2 字节字符只能放下 48 个
+        log.append(AuditRecord.Type.DELETE, twoByte.toString(), 1);
+        log.append(AuditRecord.Type.DELETE, emoji + "short", 1);
+        log.append(AuditRecord.Type.DELETE, null, 1);
+
+        List<AuditRecord> records = readAll();
+        assertEquals(4, records.size());
+        assertEquals(ascii.toString(), records.get(0).getKey());
+        assertEquals(twoByte.substring(0, AuditLog.KEY_CAPACITY / 2), records.get(1).getKey());
+        assertEquals(emoji + "short", records.get(2).getKey());
+        assertEquals("", records.get(3).getKey());
+    }
+
+    @Test
+    public void segmentsRotateAndOldOnesAreDeleted() {
+        AuditLog log = new AuditLog(directory);
+        int segments = AuditLog.MAX_SEGMENTS + 3;
+        long total = (long) (segments - 1) * AuditLog.RECORDS_PER_SEGMENT + 5;
+        for (long i = 0; i < total; i++) {
+            log.append(AuditRecord.Type.PASSWORD_CHANGE, "rotation", i);
+        }
+
+        long[] indexes = AuditLogReader.listSegments(directory);
+        assertEquals(AuditLog.MAX_SEGMENTS, indexes.length);
+        assertEquals(segments - AuditLog.MAX_SEGMENTS, indexes[0]);
+        assertEquals(segments - 1, indexes[indexes.length - 1]);
+
+        // 保留下来的记录从最旧分段的第一条开始，序号连续
+        final long first = indexes[0] * AuditLog.RECORDS_PER_SEGMENT + 1;
+        final long[] expected = {first};
+        new AuditLogReader(directory).forEach(record -> {
+            assertEquals(expected[0], record.getSequence());
+            assertEquals(expected[0] - 1, record.getResult());
+            expected[0]++;
+            return true;
+        });
+        assertEquals(total + 1, expected[0]);
+    }
+
+    @Test
+    public void reopeningAfterCleanTailContinuesInSameSegment() {
+        AuditLog log = new AuditLog(directory);
+        for (int i = 0; i < 3; i++) {
+            log.append(AuditRecord.Type.REGISTER, "clean_" + i, i);
+        }
+        new AuditLog(directory).append(AuditRecord.Type.REGISTER, "clean_3", 3);
+
+        assertArrayEquals(new long[]{0}, AuditLogReader.listSegments(directory));
+        List<AuditRecord> records = readAll();
+        assertEquals(4, records.size());
+        assertEquals(4, records.get(3).getSequence());
+    }
+
+    @Test
+    public void reopeningAfterTornTailStartsNewSegment() throws IOException {
+        AuditLog log = new AuditLog(directory);
+        for (int i = 0; i < 3; i++) {
+            log.append(AuditRecord.Type.REGISTER, "torn_" + i, i);
+        }
+        // 模拟进程在写最后一条记录时退出：槽位只写了一半
+        tearSlot(0, 2);
+
+        new AuditLog(directory).append(AuditRecord.Type.REGISTER, "after_restart", 9);
+
+        assertArrayEquals(new long[]{0, 1}, AuditLogReader.listSegments(directory));
+        List<AuditRecord> records = readAll();
+        assertEquals(3, records.size());
+        assertEquals("torn_1", records.get(1).getKey());
+        assertEquals(AuditLog.RECORDS_PER_SEGMENT + 1, records.get(2).getSequence());
+        assertEquals("after_restart", records.get(2).getKey());
+    }
+
+    @Test
+    public void reopeningAfterReservedGapStartsNewSegment() throws IOException {
+        AuditLog log = new AuditLog(directory);
+        for (int i = 0; i < 3; i++) {
+            log.append(AuditRecord.Type.REGISTER, "gap_" + i, i);
+        }
+        // 模拟一个预留了却没写的槽位：它之后还有完整的记录
+        clearSlot(0, 1);
+
+        new AuditLog(directory).append(AuditRecord.Type.REGISTER, "after_restart", 9);
+
+        assertArrayEquals(new long[]{0, 1}, AuditLogReader.listSegments(directory));
+        List<AuditRecord> records = readAll();
+        // 较旧分段中的无效槽位被跳过，之后的记录照常读出
+        assertEquals(3, records.size());
+        assertEquals("gap_2", records.get(1).getKey());
+        assertEquals(AuditLog.RECORDS_PER_SEGMENT + 1, records.get(2).getSequence());
+    }
+
+    @Test
+    public void readerTailsIncrementally() throws IOException {
+        AuditLog log = new AuditLog(directory);
+        for (int i = 0; i < 5; i++) {
+            log.append(AuditRecord.Type.DELETE, "tail_" + i, i);
+        }
+        AuditLogReader reader = new AuditLogReader(directory);
+
+        List<AuditRecord> seen = new ArrayList<>();
+        long position = reader.tail(0, collect(seen));
+        assertEquals(5, position);
+        assertEquals(5, seen.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i + 1, seen.get(i).getSequence());
+            assertEquals("tail_" + i, seen.get(i).getKey());
+        }
+
+        seen.clear();
+        assertEquals(5, reader.tail(position, collect(seen)));
+        assertTrue(seen.isEmpty());
+
+        log.append(AuditRecord.Type.DELETE, "tail_5", 5);
+        log.append(AuditRecord.Type.DELETE, "tail_6", 6);
+        position = reader.tail(position, collect(seen));
+        assertEquals(7, position);
+        assertEquals(2, seen.size());
+        assertEquals("tail_5", seen.get(0).getKey());
+
+        // 访问者返回 false 时停在当前记录
+        final int[] visited = new int[1];
+        assertEquals(2, reader.tail(0, record -> ++visited[0] < 2));
+        assertEquals(2, visited[0]);
+
+        // 最新分段中尚未写完的槽位挡住之后的记录，直到它写完
+        log.append(AuditRecord.Type.DELETE, "tail_7", 7);
+        log.append(AuditRecord.Type.DELETE, "tail_8", 8);
+        tearSlot(0, 7);
+        seen.clear();
+        assertEquals(7, reader.tail(position, collect(seen)));
+        assertTrue(seen.isEmpty());
+    }
+
+    private static AuditLogReader.Visitor collect(final List<AuditRecord> into) {
+        return record -> {
+            into.add(record);
+            return true;
+        };
+    }
+
+    private List<AuditRecord> readAll() {
+        List<AuditRecord> records = new ArrayList<>();
+        new AuditLogReader(directory).forEach(collect(records));
+        return records;
+    }
+
+    private byte[] readSlot(long segment, int slot) throws IOException {
+        byte[] bytes = new byte[AuditLog.RECORD_SIZE];
+        try (RandomAccessFile raf = new RandomAccessFile(AuditLog.segmentFile(directory, segment), "r")) {
+            raf.seek((long) slot * AuditLog.RECORD_SIZE);
+            raf.readFully(bytes);
+        }
+        return bytes;
+    }
+
+    /**
+     * 把槽位的后半部分清零，相当于只写了一半
+     */
+    private void tearSlot(long segment, int slot) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(AuditLog.segmentFile(directory, segment), "rw")) {
+            raf.seek((long) slot * AuditLog.RECORD_SIZE + AuditLog.RECORD_SIZE / 2);
+            raf.write(new byte[AuditLog.RECORD_SIZE / 2]);
+        }
+    }
+
+    private void clearSlot(long segment, int slot) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(AuditLog.segmentFile(directory, segment), "rw")) {
+            raf.seek((long) slot * AuditLog.RECORD_SIZE);
+            raf.write(new byte[AuditLog.RECORD_SIZE]);
+        }
+    }
+
+    private void deleteDirectory() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                assertTrue(file.delete());
+            }
+        }
+        directory.delete();
+    }
+}
@@ -0,0 +1,125 @@
+package com.surpasslike.welcomateservice.data;
+
+import android.database.Cursor;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.surpasslike.welcomateservice.data.db.DatabaseHelper;
+import com.surpasslike.welcomateservice.data.model.ChangePage;
+import com.surpasslike.welcomateservice.data.model.User;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * 重新分片的仪器测试
+ * 在 1 → 4 → 1 个分片之间来回迁移，每次迁移后验证列表、多分片排序归并、登录、删除都与迁移前一致，
+ * 迁移前的变更日志游标要求重新同步；仓库在独立的存储上运行，从 1 个分片开始
+ */
+@RunWith(AndroidJUnit4.class)
+public class ReshardTest {
+    private static final String PREFIX = "reshard_";
+    private static final int COUNT = 100;
+
+    private UserRepository repository;
+
+    @Before
+    public void setUp() {
+        repository = ScratchUserRepository.open();
+        assertEquals(1, repository.getShardCount());
+        for (int i = 0; i < COUNT; i++) {
+            assertNotEquals(-1, repository.addUser(PREFIX + i, PREFIX + "account_" + i, "password"));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        ScratchUserRepository.close(repository);
+    }
+
+    @Test
+    public void reshardsOutAndBackWithoutLosingUsers() {
+        int total = repository.getUserCount();
+
+        assertResharded(4, total, 0);
+        assertResharded(1, total - 1, 1);
+    }
+
+    /**
+     * 重新分片并验证存储内容
+     *
+     * @param shardCount 目标分片数量
+     * @param total      迁移前的用户总数
+     * @param deleteAt   迁移后删除的用户序号
+     */
+    private void assertResharded(int shardCount, int total, int deleteAt) {
+        ChangePage before = repository.getChangesSince(0, null, 1);
+        repository.reshard(shardCount);
+        assertEquals(shardCount, repository.getShardCount());
+
+        // 列表
+        assertEquals(total, repository.getUserCount());
+        int listed = 0;
+        for (User user : repository.getAllUsers()) {
+            if (user.getUsername().startsWith(PREFIX)) {
+                listed++;
+            }
+        }
+        assertEquals(COUNT - deleteAt, listed);
+
+        // 各分片按用户名归并后仍然有序，并且不丢行
+        for (UserSort sort : new UserSort[]{UserSort.USERNAME_ASC, UserSort.ACCOUNT_DESC}) {
+            try (Cursor cursor = repository.queryUsers(sort)) {
+                assertEquals(total, cursor.getCount());
+                int column = cursor.getColumnIndexOrThrow(sort.column);
+                String previous = null;
+                while (cursor.moveToNext()) {
+                    String value = cursor.getString(column);
+                    if (previous != null) {
+                        int cmp = SortedMergeCursor.compareCodePoints(previous, value);
+                        assertTrue(previous + " / " + value, sort.descending ? cmp >= 0 : cmp <= 0);
+                    }
+                    previous = value;
+                }
+            }
+        }
+        assertEquals(COUNT - deleteAt, countPrefixed(repository.queryUsers()));
+
+        // 密码哈希原样迁移
+        assertEquals(PREFIX + (COUNT - 1), repository.loginAdmin(PREFIX + "account_" + (COUNT - 1), "password"));
+        assertNull(repository.loginAdmin(PREFIX + "account_" + (COUNT - 1), "wrong"));
+
+        // 删除分发到新的分片
+        repository.deleteUser(PREFIX + deleteAt);
+        assertTrue(repository.isAccountAvailable(PREFIX + "account_" + deleteAt));
+        assertFalse(repository.hasUsername(PREFIX + deleteAt));
+        assertEquals(total - 1, repository.getUserCount());
+
+        // 迁移前的游标属于旧的日志，必须重新同步；新的游标可以继续增量读取
+        ChangePage stale = repository.getChangesSince(before.getJournalId(), before.getSequences(), 100);
+        assertTrue(stale.isResyncRequired());
+        assertNotEquals(before.getJournalId(), stale.getJournalId());
+        assertEquals(shardCount, stale.getSequences().length);
+        ChangePage resumed = repository.getChangesSince(stale.getJournalId(), stale.getSequences(), 100);
+        assertFalse(resumed.isResyncRequired());
+    }
+
+    private static int countPrefixed(Cursor cursor) {
+        try {
+            int column = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_USERNAME);
+            int count = 0;
+            while (cursor.moveToNext()) {
+                if (cursor.getString(column).startsWith(PREFIX)) {
+                    count++;
+                }
+            }
+            return count;
+        } finally {
+            cursor.close();
+        }
+    }
+}
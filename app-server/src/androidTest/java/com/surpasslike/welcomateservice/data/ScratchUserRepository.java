@@ -0,0 +1,85 @@
+package com.surpasslike.welcomateservice.data;
+
+import android.content.Context;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import java.io.File;
+
+/**
+ * 测试用的独立用户存储
+ * 数据库文件、SharedPreferences 和版本文件都使用单独的名称，测试中的插入、恢复和重新分片不会碰到正式的用户数据；
+ * 打开前和关闭后删除这些文件，每个测试都从空存储开始
+ */
+public final class ScratchUserRepository {
+    public static final String STORAGE_NAME = "scratch_users";
+    static final String PREFERENCES_NAME = "scratch_user_storage";
+    static final String VERSION_FILE_NAME = "scratch_user_store.version";
+
+    // install 替换掉的单例
+    private static UserRepository replaced;
+
+    private ScratchUserRepository() {
+    }
+
+    /**
+     * 在空的独立存储上打开一个 UserRepository
+     *
+     * @return 新的实例，用完后交给 {@link #close}
+     */
+    public static UserRepository open() {
+        Context context = context();
+        delete(context);
+        return new UserRepository(context, STORAGE_NAME, PREFERENCES_NAME, VERSION_FILE_NAME);
+    }
+
+    /**
+     * 关闭实例并删除它的所有文件
+     *
+     * @param repository 由 {@link #open} 打开的实例
+     */
+    public static void close(UserRepository repository) {
+        repository.close();
+        delete(context());
+    }
+
+    /**
+     * 打开独立存储并把它作为 UserRepository 的单例，供通过 getInstance 取得仓库的界面测试使用
+     *
+     * @return 作为单例的实例
+     */
+    public static UserRepository install() {
+        UserRepository repository = open();
+        replaced = UserRepository.replaceInstance(repository);
+        return repository;
+    }
+
+    /**
+     * 恢复原来的单例，关闭并删除 {@link #install} 打开的存储
+     */
+    public static void uninstall() {
+        close(UserRepository.replaceInstance(replaced));
+        replaced = null;
+    }
+
+    /**
+     * @return 独立存储的版本文件，测试用它模拟另一个进程
+     */
+    static File versionFile() {
+        return new File(context().getFilesDir(), VERSION_FILE_NAME);
+    }
+
+    private static void delete(Context context) {
+        for (String name : context.databaseList()) {
+            if (name.startsWith(STORAGE_NAME) && name.endsWith(".db")) {
+                context.deleteDatabase(name);
+            }
+        }
+        context.deleteSharedPreferences(PREFERENCES_NAME);
+        versionFile().delete();
+    }
+
+    private static Context context() {
+        return InstrumentationRegistry.getInstrumentation().getTargetContext();
+    }
+}
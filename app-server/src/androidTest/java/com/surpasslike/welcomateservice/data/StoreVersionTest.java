@@ -0,0 +1,67 @@
+package com.surpasslike.welcomateservice.data;
+
+import android.content.Context;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * StoreVersion 的仪器测试
+ * 同一个版本文件的两个实例分别代表界面进程和服务进程，验证各自只把对方的写入识别为外部变化
+ */
+@RunWith(AndroidJUnit4.class)
+public class StoreVersionTest {
+    private File file;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        file = new File(context.getCacheDir(), "store-version-test");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void otherProcessWritesAreDetected() throws Exception {
+        StoreVersion ui = new StoreVersion(file);
+        StoreVersion service = new StoreVersion(file);
+        assertFalse(ui.sync());
+        assertFalse(service.sync());
+
+        // 自己的写入不是外部变化
+        assertFalse(service.bump());
+        assertFalse(service.sync());
+        // 对方只在第一次检查时看到变化
+        assertTrue(ui.sync());
+        assertFalse(ui.sync());
+
+        // 两边先后写入：后写的一方发现期间有外部写入
+        assertFalse(ui.bump());
+        assertTrue(service.bump());
+        assertTrue(ui.sync());
+        assertEquals(ui.current(), service.current());
+    }
+
+    @Test
+    public void shardCountIsShared() throws Exception {
+        StoreVersion ui = new StoreVersion(file);
+        StoreVersion service = new StoreVersion(file);
+        assertEquals(0, service.getShardCount());
+        assertFalse(ui.publishShardCount(4));
+        assertTrue(service.sync());
+        assertEquals(4, service.getShardCount());
+    }
+}
@@ -0,0 +1,132 @@
+package com.surpasslike.welcomateservice.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.surpasslike.welcomateservice.data.db.DatabaseHelper;
+import com.surpasslike.welcomateservice.data.model.ChangePage;
+import com.surpasslike.welcomateservice.data.model.UserChange;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 变更日志的仪器测试
+ * 验证触发器按顺序记录增删改、游标失效时要求重新同步，以及日志的自动截断；仓库在独立的存储上运行
+ */
+@RunWith(AndroidJUnit4.class)
+public class UserChangeJournalTest {
+    private static final String NAME = "journal_user";
+    private static final String ACCOUNT = "journal_account";
+    private static final String SCRATCH_DATABASE = "journal_test.db";
+
+    private UserRepository repository;
+
+    @Before
+    public void setUp() {
+        repository = ScratchUserRepository.open();
+    }
+
+    @After
+    public void tearDown() {
+        ScratchUserRepository.close(repository);
+        InstrumentationRegistry.getInstrumentation().getTargetContext().deleteDatabase(SCRATCH_DATABASE);
+    }
+
+    @Test
+    public void firstCallRequiresResyncAndReturnsHead() {
+        ChangePage page = repository.getChangesSince(0, null, 100);
+        assertTrue(page.isResyncRequired());
+        assertTrue(page.getChanges().isEmpty());
+        assertEquals(repository.getShardCount(), page.getSequences().length);
+
+        ChangePage caughtUp = repository.getChangesSince(page.getJournalId(), page.getSequences(), 100);
+        assertFalse(caughtUp.isResyncRequired());
+        assertTrue(caughtUp.getChanges().isEmpty());
+        assertArrayEquals(page.getSequences(), caughtUp.getSequences());
+    }
+
+    @Test
+    public void writesAreJournaledInOrder() {
+        ChangePage start = repository.getChangesSince(0, null, 100);
+        assertNotEquals(-1, repository.addUser(NAME, ACCOUNT, "password"));
+        repository.updateUserPassword(NAME, "changed");
+        repository.deleteUser(NAME);
+
+        List<Integer> ops = new ArrayList<>();
+        long journalId = start.getJournalId();
+        long[] cursor = start.getSequences();
+        ChangePage page;
+        do {
+            // 每次只取一条，验证游标在多次调用之间正确推进
+            page = repository.getChangesSince(journalId, cursor, 1);
+            assertFalse(page.isResyncRequired());
+            for (UserChange change : page.getChanges()) {
+                if (ACCOUNT.equals(change.getAccount())) {
+                    ops.add(change.getOp());
+                }
+            }
+            cursor = page.getSequences();
+        } while (page.hasMore());
+        List<Integer> expected = new ArrayList<>();
+        expected.add(DatabaseHelper.CHANGE_INSERT);
+        expected.add(DatabaseHelper.CHANGE_UPDATE);
+        expected.add(DatabaseHelper.CHANGE_DELETE);
+        assertEquals(expected, ops);
+    }
+
+    @Test
+    public void staleCursorRequiresResync() {
+        ChangePage start = repository.getChangesSince(0, null, 100);
+        assertTrue(repository.getChangesSince(start.getJournalId() + 1, start.getSequences(), 100).isResyncRequired());
+        assertTrue(repository.getChangesSince(start.getJournalId(), new long[start.getSequences().length + 1], 100)
+                .isResyncRequired());
+        // 比日志还新的游标
+        long[] ahead = start.getSequences().clone();
+        ahead[0] += 1000;
+        assertTrue(repository.getChangesSince(start.getJournalId(), ahead, 100).isResyncRequired());
+    }
+
+    @Test
+    public void journalIsTruncatedAutomatically() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(SCRATCH_DATABASE);
+        DatabaseHelper helper = new DatabaseHelper(context, SCRATCH_DATABASE);
+        try {
+            SQLiteDatabase db = helper.getWritableDatabase();
+            int rows = DatabaseHelper.JOURNAL_LIMIT + 10;
+            db.beginTransaction();
+            try {
+                ContentValues values = new ContentValues();
+                for (int i = 0; i < rows; i++) {
+                    values.put(DatabaseHelper.COLUMN_USERNAME, "journal_" + i);
+                    values.put(DatabaseHelper.COLUMN_ACCOUNT, "journal_" + i);
+                    db.insert(DatabaseHelper.TABLE_USERS, null, values);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            assertEquals(DatabaseHelper.JOURNAL_LIMIT,
+                    DatabaseUtils.queryNumEntries(db, DatabaseHelper.TABLE_CHANGES));
+            assertEquals(rows, DatabaseUtils.longForQuery(db, UserStatements.JOURNAL_HEAD, null));
+            assertEquals(11, DatabaseUtils.longForQuery(db,
+                    "SELECT MIN(" + DatabaseHelper.COLUMN_SEQ + ") FROM " + DatabaseHelper.TABLE_CHANGES, null));
+            assertNotEquals(0, DatabaseUtils.longForQuery(db, UserStatements.JOURNAL_ID, null));
+        } finally {
+            helper.close();
+        }
+    }
+}
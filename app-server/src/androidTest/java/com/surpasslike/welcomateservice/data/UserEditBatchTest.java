@@ -0,0 +1,66 @@
+package com.surpasslike.welcomateservice.data;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.surpasslike.welcomateservice.data.model.UserEdit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 批量改密和删除的仪器测试
+ * 验证每条修改得到自己的结果，并且整批修改在每个分片上只占一次组提交；仓库在独立的存储上运行
+ */
+@RunWith(AndroidJUnit4.class)
+public class UserEditBatchTest {
+    private static final String[] NAMES = {"batch_a", "batch_b", "batch_c"};
+
+    private UserRepository repository;
+
+    @Before
+    public void setUp() {
+        repository = ScratchUserRepository.open();
+        for (int i = 0; i < NAMES.length; i++) {
+            assertNotEquals(-1, repository.addUser(NAMES[i], "batch_account_" + i, "password"));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        ScratchUserRepository.close(repository);
+    }
+
+    @Test
+    public void batchAppliesEveryEditInOneCommitPerShard() {
+        List<UserEdit> edits = Arrays.asList(
+                UserEdit.passwordChange("batch_a", "changed-a"),
+                UserEdit.passwordChange("batch_b", "changed-b"),
+                UserEdit.deletion("batch_c"),
+                UserEdit.deletion("batch_missing"));
+        List<WritePipeline.Stats> before = repository.getWriteStats();
+
+        long[] results = repository.applyUserEdits(edits);
+
+        assertArrayEquals(new long[]{1, 1, 1, 0}, results);
+        List<WritePipeline.Stats> after = repository.getWriteStats();
+        for (int shard = 0; shard < after.size(); shard++) {
+            assertEquals("shard " + shard, before.get(shard).batches + 1, after.get(shard).batches);
+        }
+        assertEquals("batch_a", repository.loginAdmin("batch_account_0", "changed-a"));
+        assertNull(repository.loginAdmin("batch_account_1", "password"));
+        assertTrue(repository.isAccountAvailable("batch_account_2"));
+    }
+
+    @Test
+    public void emptyBatchHasNoResults() {
+        assertEquals(0, repository.applyUserEdits(new ArrayList<UserEdit>()).length);
+    }
+}
@@ -0,0 +1,115 @@
+package com.surpasslike.welcomateservice.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.surpasslike.welcomateservice.data.db.DatabaseHelper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * UserPopulationGenerator 的仪器测试
+ * 验证生成的数据库与 DatabaseHelper 创建的结构完全相同，并且每一行都可以由生成器还原
+ */
+@RunWith(AndroidJUnit4.class)
+public class UserPopulationGeneratorTest {
+    private static final String TAG = "UserPopulationGeneratorTest";
+
+    private Context context;
+    private File generated;
+    private File reference;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        generated = new File(context.getCacheDir(), "population-test.db");
+        reference = new File(context.getCacheDir(), "population-reference.db");
+        SQLiteDatabase.deleteDatabase(generated);
+        SQLiteDatabase.deleteDatabase(reference);
+    }
+
+    @After
+    public void tearDown() {
+        SQLiteDatabase.deleteDatabase(generated);
+        SQLiteDatabase.deleteDatabase(reference);
+    }
+
+    @Test
+    public void schemaMatchesDatabaseHelper() throws Exception {
+        new UserPopulationGenerator(context, new UserPopulationGenerator.Spec().userCount(10)).generate(generated);
+        DatabaseHelper helper = new DatabaseHelper(context, reference.getAbsolutePath());
+        helper.getWritableDatabase();
+        helper.close();
+
+        SQLiteDatabase expected = open(reference);
+        SQLiteDatabase actual = open(generated);
+        try {
+            assertEquals(describeSchema(expected), describeSchema(actual));
+            assertEquals(expected.getVersion(), actual.getVersion());
+        } finally {
+            expected.close();
+            actual.close();
+        }
+    }
+
+    @Test
+    public void rowsCanBeReproducedFromTheSpec() throws Exception {
+        UserPopulationGenerator.Spec spec = new UserPopulationGenerator.Spec()
+                .userCount(100_000)
+                .usernames(UserPopulationGenerator.UsernameDistribution.ZIPF)
+                .accounts(UserPopulationGenerator.AccountDistribution.RANDOM)
+                .batchSize(20_000);
+        UserPopulationGenerator generator = new UserPopulationGenerator(context, spec);
+        UserPopulationGenerator.Result result = generator.generate(generated);
+        Log.i(TAG, "Generated " + result);
+
+        SQLiteDatabase db = open(generated);
+        try {
+            assertEquals(100_000, DatabaseUtils.queryNumEntries(db, DatabaseHelper.TABLE_USERS));
+            for (int index : new int[]{0, 1, 12_345, 99_999}) {
+                try (Cursor cursor = db.query(DatabaseHelper.TABLE_USERS,
+                        new String[]{DatabaseHelper.COLUMN_USERNAME, DatabaseHelper.COLUMN_PASSWORD},
+                        DatabaseHelper.COLUMN_ACCOUNT + " = ?", new String[]{generator.accountFor(index)},
+                        null, null, null)) {
+                    assertTrue(cursor.moveToFirst());
+                    assertEquals(generator.usernameFor(index), cursor.getString(0));
+                    assertEquals(UserRepository.hashPassword(generator.passwordFor(index)), cursor.getString(1));
+                }
+            }
+            // Zipf 分布下最常见的名字应当被很多用户共用
+            assertTrue(DatabaseUtils.queryNumEntries(db, DatabaseHelper.TABLE_USERS,
+                    DatabaseHelper.COLUMN_USERNAME + " = ?", new String[]{"name_0"}) > 1_000);
+        } finally {
+            db.close();
+        }
+    }
+
+    private static SQLiteDatabase open(File file) {
+        return SQLiteDatabase.openDatabase(file.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+    }
+
+    private static String describeSchema(SQLiteDatabase db) {
+        StringBuilder schema = new StringBuilder();
+        try (Cursor cursor = db.rawQuery("SELECT type, name, sql FROM sqlite_master "
+                + "WHERE name NOT LIKE 'sqlite_%' AND name != 'android_metadata' ORDER BY name", null)) {
+            while (cursor.moveToNext()) {
+                schema.append(cursor.getString(0)).append(' ').append(cursor.getString(1)).append(": ")
+                        .append(cursor.getString(2)).append('\n');
+            }
+        }
+        return schema.toString();
+    }
+}
@@ -0,0 +1,276 @@
+package com.surpasslike.welcomateservice.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.surpasslike.welcomateservice.data.db.DatabaseHelper;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * UserRepository 所有 SQL 语句的查询计划回归测试
+ * 在 100000 行的合成数据库上对 {@link UserStatements} 中的每一条语句执行 EXPLAIN QUERY PLAN：
+ * 按账户或用户名的查找、更新和删除必须走索引，按 ID 排序的列表不能使用临时 B 树排序，
+ * 需要读取全部行的语句只扫描一遍，能用覆盖索引的不读表
+ * 用执行时间估算的访问行数只记录在日志中供对比，受设备负载影响，不作为判定条件
+ */
+@RunWith(AndroidJUnit4.class)
+public class UserQueryPlanTest {
+    private static final String TAG = "UserQueryPlanTest";
+
+    private static final int ROWS = 100_000;
+    private static final String ACCOUNT_INDEX = "sqlite_autoindex_users_1";
+    private static final String USERNAME_INDEX = "idx_users_username";
+    private static final int TIMING_RUNS = 15;
+
+    private static File databaseFile;
+    private static SQLiteDatabase db;
+    private static UserPopulationGenerator generator;
+
+    @BeforeClass
+    public static void seed() throws Exception {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        databaseFile = new File(context.getCacheDir(), "query-plan-test.db");
+        generator = new UserPopulationGenerator(context, new UserPopulationGenerator.Spec()
+                .userCount(ROWS)
+                .accounts(UserPopulationGenerator.AccountDistribution.RANDOM));
+        generator.generate(databaseFile);
+        db = SQLiteDatabase.openDatabase(databaseFile.getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+        // 让查询规划器拿到与正式数据库运行一段时间后相同的统计信息
+        db.execSQL("ANALYZE");
+    }
+
+    @AfterClass
+    public static void cleanUp() {
+        if (db != null) {
+            db.close();
+        }
+        SQLiteDatabase.deleteDatabase(databaseFile);
+    }
+
+    @Test
+    public void loginUsesAccountIndex() {
+        assertSearches(UserStatements.LOGIN, ACCOUNT_INDEX, account());
+        logRowsVisited(UserStatements.LOGIN, account());
+    }
+
+    @Test
+    public void journalCatchUpUsesAccountIndex() {
+        assertSearches(UserStatements.USERNAME_BY_ACCOUNT, ACCOUNT_INDEX, account());
+        logRowsVisited(UserStatements.USERNAME_BY_ACCOUNT, account());
+    }
+
+    @Test
+    public void accountCheckUsesAccountIndex() {
+        assertSearches(UserStatements.COUNT_BY_ACCOUNT, ACCOUNT_INDEX, account());
+        logRowsVisited(UserStatements.COUNT_BY_ACCOUNT, account());
+    }
+
+    @Test
+    public void usernameCheckUsesUsernameIndex() {
+        assertSearches(UserStatements.COUNT_BY_USERNAME, USERNAME_INDEX, username());
+        logRowsVisited(UserStatements.COUNT_BY_USERNAME, username());
+    }
+
+    @Test
+    public void deleteUsesUsernameIndex() {
+        assertSearches(UserStatements.DELETE_BY_USERNAME, USERNAME_INDEX, username());
+        logRowsVisited(UserStatements.DELETE_BY_USERNAME, username());
+    }
+
+    @Test
+    public void passwordUpdateUsesUsernameIndex() {
+        assertSearches(UserStatements.UPDATE_PASSWORD, USERNAME_INDEX, "hash", username());
+        logRowsVisited(UserStatements.UPDATE_PASSWORD, "hash", username());
+    }
+
+    @Test
+    public void deletedAccountsLookupUsesUsernameIndex() {
+        assertSearches(UserStatements.ACCOUNTS_BY_USERNAME, USERNAME_INDEX, username());
+        logRowsVisited(UserStatements.ACCOUNTS_BY_USERNAME, username());
+    }
+
+    @Test
+    public void sortedListingsReadAlongIndexes() {
+        for (UserSort sort : UserSort.values()) {
+            if (sort.column == null) {
+                continue;
+            }
+            String sql = UserStatements.query(UserStatements.LIST_COLUMNS, null,
+                    sort.column + (sort.descending ? " DESC" : " ASC"), -1);
+            assertNoTempSort(sql);
+            assertTrue(sql + " should read along an index",
+                    plan(sql).toString().contains(UserSort.USERNAME_ASC.column.equals(sort.column)
+                            ? USERNAME_INDEX : ACCOUNT_INDEX));
+        }
+    }
+
+    @Test
+    public void providerLookupsUseIndexes() {
+        String[] columns = {DatabaseHelper.COLUMN_USERNAME, DatabaseHelper.COLUMN_ACCOUNT};
+        String byUsername = UserStatements.query(columns, DatabaseHelper.COLUMN_USERNAME + " = ?", null, -1);
+        String byAccount = UserStatements.query(columns, DatabaseHelper.COLUMN_ACCOUNT + " = ?", null, -1);
+        assertSearches(byUsername, USERNAME_INDEX, username());
+        assertSearches(byAccount, ACCOUNT_INDEX, account());
+        // 按账户排序的分页直接沿账户索引读取，不需要先排序全部行
+        String sortedPage = UserStatements.query(columns, null, DatabaseHelper.COLUMN_ACCOUNT + " ASC", 50);
+        assertNoTempSort(sortedPage);
+        logRowsVisited(sortedPage);
+    }
+
+    @Test
+    public void orderedListingsDoNotSort() {
+        for (String sql : Arrays.asList(UserStatements.LIST_BY_ID, UserStatements.EXPORT, UserStatements.ROWS)) {
+            assertNoTempSort(sql);
+        }
+    }
+
+    @Test
+    public void journalReadsAlongPrimaryKey() {
+        List<String> plan = plan(UserStatements.CHANGES_SINCE, "0", "500");
+        Log.i(TAG, UserStatements.CHANGES_SINCE + " -> " + plan);
+        assertTrue(plan.toString(), plan.toString().contains("SEARCH " + DatabaseHelper.TABLE_CHANGES
+                + " USING INTEGER PRIMARY KEY"));
+        assertNoTempSort(UserStatements.CHANGES_SINCE);
+    }
+
+    @Test
+    public void fullScansAreOnlyWhereExpected() {
+        // 以下语句本来就要读取全部行，但只能扫描一遍
+        assertSingleScan(UserStatements.LIST_NAMES, null);
+        // 只用到一列的统计读取更小的覆盖索引，不读表
+        assertSingleScan(UserStatements.COUNT_ALL, "COVERING INDEX");
+        assertSingleScan(UserStatements.FIRST_CHARS_USERNAME, "COVERING INDEX " + USERNAME_INDEX);
+        assertSingleScan(UserStatements.FIRST_CHARS_ACCOUNT, "COVERING INDEX " + ACCOUNT_INDEX);
+    }
+
+    // ---- 断言 ----
+
+    /**
+     * 语句对 users 表的每一次访问都必须是使用指定索引的 SEARCH
+     */
+    private static void assertSearches(String sql, String index, String... args) {
+        List<String> plan = plan(sql, args);
+        Log.i(TAG, sql + " -> " + plan);
+        boolean found = false;
+        for (String step : plan) {
+            assertFalse("Full table scan in " + sql + ": " + plan, step.startsWith("SCAN " + DatabaseHelper.TABLE_USERS));
+            if (step.startsWith("SEARCH " + DatabaseHelper.TABLE_USERS) && step.contains("INDEX " + index)) {
+                found = true;
+            }
+        }
+        assertTrue("Expected " + index + " in " + sql + ": " + plan, found);
+    }
+
+    /**
+     * 语句对 users 表只有一次访问，并且是 SCAN
+     *
+     * @param using 扫描必须使用的索引，null 表示不限
+     */
+    private static void assertSingleScan(String sql, String using) {
+        List<String> plan = plan(sql);
+        Log.i(TAG, sql + " -> " + plan);
+        int scans = 0;
+        for (String step : plan) {
+            assertFalse("Unexpected search in " + sql + ": " + plan, step.startsWith("SEARCH " + DatabaseHelper.TABLE_USERS));
+            if (step.startsWith("SCAN " + DatabaseHelper.TABLE_USERS)) {
+                scans++;
+                if (using != null) {
+                    assertTrue("Expected " + using + " in " + sql + ": " + plan, step.contains(using));
+                }
+            }
+        }
+        assertEquals("Expected one scan in " + sql + ": " + plan, 1, scans);
+    }
+
+    private static void assertNoTempSort(String sql) {
+        List<String> plan = plan(sql);
+        Log.i(TAG, sql + " -> " + plan);
+        for (String step : plan) {
+            assertFalse("Temporary sort in " + sql + ": " + plan, step.contains("TEMP B-TREE"));
+        }
+    }
+
+    /**
+     * 用执行时间估算语句访问的行数：全表扫描每行的平均耗时乘以语句的耗时之比
+     * Android 没有暴露 SQLite 的语句扫描计数，估算只写入日志；是否走索引由上面的查询计划断言判定
+     */
+    private static void logRowsVisited(String sql, String... args) {
+        // password 列没有索引，按它计数必然扫描全表，作为每行耗时的基准
+        String fullScan = "SELECT COUNT(*) FROM " + DatabaseHelper.TABLE_USERS
+                + " WHERE " + DatabaseHelper.COLUMN_PASSWORD + " = ?";
+        long scanNanos = medianNanos(fullScan, "no-such-hash");
+        long statementNanos = medianNanos(sql, args);
+        long estimatedRows = statementNanos * ROWS / Math.max(1, scanNanos);
+        Log.i(TAG, sql + ": ~" + estimatedRows + " of " + ROWS + " rows visited (" + statementNanos
+                + " ns vs full scan " + scanNanos + " ns)");
+    }
+
+    // ---- 工具 ----
+
+    private static List<String> plan(String sql, String... args) {
+        List<String> steps = new ArrayList<>();
+        try (Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args)) {
+            int detail = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                steps.add(cursor.getString(detail));
+            }
+        }
+        return steps;
+    }
+
+    /**
+     * 多次执行语句取耗时中位数；写语句在回滚的事务中执行，不改变数据
+     */
+    private static long medianNanos(String sql, String... args) {
+        boolean write = !sql.startsWith("SELECT");
+        long[] samples = new long[TIMING_RUNS];
+        for (int run = 0; run < TIMING_RUNS; run++) {
+            long start;
+            if (write) {
+                db.beginTransaction();
+                try {
+                    start = SystemClock.elapsedRealtimeNanos();
+                    db.execSQL(sql, args);
+                    samples[run] = SystemClock.elapsedRealtimeNanos() - start;
+                } finally {
+                    db.endTransaction();
+                }
+            } else {
+                start = SystemClock.elapsedRealtimeNanos();
+                try (Cursor cursor = db.rawQuery(sql, args)) {
+                    while (cursor.moveToNext()) {
+                        // 读完所有结果行
+                    }
+                }
+                samples[run] = SystemClock.elapsedRealtimeNanos() - start;
+            }
+        }
+        Arrays.sort(samples);
+        return samples[TIMING_RUNS / 2];
+    }
+
+    private static String account() {
+        return generator.accountFor(ROWS / 2);
+    }
+
+    private static String username() {
+        return generator.usernameFor(ROWS / 2);
+    }
+}
@@ -0,0 +1,208 @@
+package com.surpasslike.welcomateservice.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.surpasslike.welcomateservice.data.db.DatabaseHelper;
+import com.surpasslike.welcomateservice.data.model.User;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * UserRepository 内存读模型的仪器测试，在独立的存储上运行（见 {@link ScratchUserRepository}）
+ * 验证读模型启用时，列表、计数和存在性检查在插入和删除之后与数据库保持一致；
+ * 重建在后台完成，删除作为增量应用，叠加层积累到上限后合并进新的基础快照；
+ * 并发的插入和删除按提交顺序应用；其他进程的写入按变更日志应用，视图不需要重建
+ */
+@RunWith(AndroidJUnit4.class)
+public class UserReadModelTest {
+    private static final String PREFIX = "read_model_";
+    private static final int COUNT = 200;
+    private static final long REBUILD_TIMEOUT_MS = 10_000;
+
+    private UserRepository repository;
+
+    @Before
+    public void setUp() throws InterruptedException {
+        repository = ScratchUserRepository.open();
+        awaitBuilt();
+    }
+
+    @After
+    public void tearDown() {
+        ScratchUserRepository.close(repository);
+    }
+
+    @Test
+    public void readsFollowInsertsAndDeletes() {
+        int before = repository.getUserCount();
+        for (int i = 0; i < COUNT; i++) {
+            assertNotEquals(-1, repository.addUser(PREFIX + i, PREFIX + i, "password"));
+        }
+        assertEquals(before + COUNT, repository.getUserCount());
+        assertFalse(repository.isAccountAvailable(PREFIX + 7));
+        assertTrue(repository.hasUsername(PREFIX + 7));
+        assertEquals(-1, repository.addUser("other", PREFIX + 7, "password"));
+
+        repository.deleteUser(PREFIX + 7);
+        // 删除作为增量应用，视图不需要重建
+        assertTrue(repository.describeReadModel(), repository.describeReadModel().contains("users"));
+        assertTrue(repository.isAccountAvailable(PREFIX + 7));
+        assertFalse(repository.hasUsername(PREFIX + 7));
+        assertEquals(before + COUNT - 1, repository.getUserCount());
+
+        int listed = 0;
+        for (User user : repository.getAllUsers()) {
+            if (user.getUsername().startsWith(PREFIX)) {
+                listed++;
+            }
+        }
+        assertEquals(COUNT - 1, listed);
+    }
+
+    @Test
+    public void overlayIsMergedIntoBase() throws InterruptedException {
+        int before = repository.getUserCount();
+        int count = UserReadModel.MERGE_THRESHOLD + COUNT;
+        for (int i = 0; i < count; i++) {
+            assertNotEquals(-1, repository.addUser(PREFIX + i, PREFIX + i, "password"));
+        }
+        repository.deleteUser(PREFIX + 3);
+        assertTrue(repository.awaitReadModel(REBUILD_TIMEOUT_MS));
+        String described = repository.describeReadModel();
+        int overlay = Integer.parseInt(described.substring(described.indexOf('(') + 1, described.indexOf(" in overlay")));
+        assertTrue(described, overlay < UserReadModel.MERGE_THRESHOLD);
+
+        assertEquals(before + count - 1, repository.getUserCount());
+        assertTrue(repository.isAccountAvailable(PREFIX + 3));
+        assertFalse(repository.hasUsername(PREFIX + 3));
+        assertFalse(repository.isAccountAvailable(PREFIX + (count - 1)));
+        String previous = null;
+        int listed = 0;
+        for (User user : repository.getAllUsers()) {
+            if (previous != null) {
+                assertTrue(SortedMergeCursor.compareCodePoints(previous, user.getUsername()) <= 0);
+            }
+            previous = user.getUsername();
+            if (user.getUsername().startsWith(PREFIX)) {
+                listed++;
+            }
+        }
+        assertEquals(count - 1, listed);
+    }
+
+    @Test
+    public void disabledReadModelMatchesEnabled() {
+        for (int i = 0; i < COUNT; i++) {
+            repository.addUser(PREFIX + i, PREFIX + i, "password");
+        }
+        int enabledCount = repository.getUserCount();
+        repository.setReadModelEnabled(false);
+        assertEquals("disabled", repository.describeReadModel());
+        assertEquals(enabledCount, repository.getUserCount());
+        assertFalse(repository.isAccountAvailable(PREFIX + 1));
+        assertTrue(repository.hasUsername(PREFIX + 1));
+    }
+
+    @Test
+    public void concurrentInsertsAndDeletesReachReadModelInCommitOrder() throws Exception {
+        // 同一个账户的插入和删除在两个线程上同时提交，读模型的最终状态必须与数据库一致
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread inserter = new Thread(() -> {
+            awaitQuietly(start);
+            for (int i = 0; i < COUNT; i++) {
+                repository.addUser(PREFIX + i, PREFIX + i, "password");
+            }
+        });
+        Thread deleter = new Thread(() -> {
+            awaitQuietly(start);
+            for (int i = 0; i < COUNT; i++) {
+                repository.deleteUser(PREFIX + i);
+            }
+        });
+        inserter.start();
+        deleter.start();
+        start.countDown();
+        inserter.join();
+        deleter.join();
+
+        boolean[] available = new boolean[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            available[i] = repository.isAccountAvailable(PREFIX + i);
+        }
+        int count = repository.getUserCount();
+        repository.setReadModelEnabled(false);
+        for (int i = 0; i < COUNT; i++) {
+            assertEquals(PREFIX + i, repository.isAccountAvailable(PREFIX + i), available[i]);
+        }
+        assertEquals(repository.getUserCount(), count);
+    }
+
+    @Test
+    public void otherProcessWritesAreAppliedFromJournal() throws Exception {
+        assertNotEquals(-1, repository.addUser(PREFIX + 1, PREFIX + 1, "password"));
+        int before = repository.getUserCount();
+        long epoch = epochOf(repository.describeReadModel());
+
+        // 模拟另一个进程：通过自己的连接写入分片数据库，再把共享版本号加一
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        int shardCount = repository.getShardCount();
+        StoreVersion otherProcess = new StoreVersion(ScratchUserRepository.versionFile());
+        DatabaseHelper inserted = new DatabaseHelper(context, DatabaseHelper.databaseName(
+                ScratchUserRepository.STORAGE_NAME, ShardSet.indexFor(PREFIX + 2, shardCount), shardCount));
+        DatabaseHelper deleted = new DatabaseHelper(context, DatabaseHelper.databaseName(
+                ScratchUserRepository.STORAGE_NAME, ShardSet.indexFor(PREFIX + 1, shardCount), shardCount));
+        try {
+            ContentValues values = new ContentValues();
+            values.put(DatabaseHelper.COLUMN_USERNAME, PREFIX + 2);
+            values.put(DatabaseHelper.COLUMN_ACCOUNT, PREFIX + 2);
+            assertNotEquals(-1, inserted.getWritableDatabase().insert(DatabaseHelper.TABLE_USERS, null, values));
+            assertEquals(1, deleted.getWritableDatabase().delete(DatabaseHelper.TABLE_USERS,
+                    DatabaseHelper.COLUMN_ACCOUNT + " = ?", new String[]{PREFIX + 1}));
+            otherProcess.bump();
+        } finally {
+            inserted.close();
+            deleted.close();
+        }
+
+        assertEquals(before, repository.getUserCount());
+        assertFalse(repository.isAccountAvailable(PREFIX + 2));
+        assertTrue(repository.isAccountAvailable(PREFIX + 1));
+        assertTrue(repository.hasUsername(PREFIX + 2));
+        // 变化作为增量应用，视图没有失效
+        String described = repository.describeReadModel();
+        assertTrue(described, described.contains("users"));
+        assertEquals(epoch, epochOf(described));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static long epochOf(String described) {
+        return Long.parseLong(described.substring(described.lastIndexOf(' ') + 1));
+    }
+
+    /**
+     * 触发一次读取并等待后台重建完成
+     */
+    private void awaitBuilt() throws InterruptedException {
+        repository.getUserCount();
+        assertTrue(repository.awaitReadModel(REBUILD_TIMEOUT_MS));
+        assertTrue(repository.describeReadModel(), repository.describeReadModel().contains("users"));
+    }
+}
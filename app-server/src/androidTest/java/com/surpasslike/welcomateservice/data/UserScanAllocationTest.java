@@ -0,0 +1,141 @@
+package com.surpasslike.welcomateservice.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Debug;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.surpasslike.welcomateservice.data.db.DatabaseHelper;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * 游标扫描的分配基准测试
+ * 在 100000 行的合成数据库上，比较逐行 getColumnIndex + getString 的旧扫描方式与 {@link RowScanner} 的分配量，
+ * 以及 String 哈希比较与原始字节比较的分配量；分配量取自 ART 的累计分配字节数 (art.gc.bytes-allocated)
+ * 每种方式运行多次取最小值，排除其他线程偶尔分配的干扰
+ */
+@RunWith(AndroidJUnit4.class)
+public class UserScanAllocationTest {
+    private static final String TAG = "UserScanAllocationTest";
+
+    private static final int ROWS = 100_000;
+    private static final int RUNS = 5;
+    private static final int LOGINS = 10_000;
+
+    private static File databaseFile;
+    private static SQLiteDatabase db;
+    private static UserPopulationGenerator generator;
+
+    private interface Workload {
+        void run();
+    }
+
+    @BeforeClass
+    public static void seed() throws Exception {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        databaseFile = new File(context.getCacheDir(), "scan-allocation-test.db");
+        generator = new UserPopulationGenerator(context, new UserPopulationGenerator.Spec()
+                .userCount(ROWS)
+                .accounts(UserPopulationGenerator.AccountDistribution.EMAIL));
+        generator.generate(databaseFile);
+        db = SQLiteDatabase.openDatabase(databaseFile.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+    }
+
+    @AfterClass
+    public static void cleanUp() {
+        if (db != null) {
+            db.close();
+        }
+        SQLiteDatabase.deleteDatabase(databaseFile);
+    }
+
+    @Test
+    public void scannerAllocatesLessPerRow() {
+        long legacy = minAllocatedBytes(new Workload() {
+            @Override
+            public void run() {
+                try (Cursor cursor = db.rawQuery(UserStatements.LIST_NAMES, null)) {
+                    int rows = 0;
+                    while (cursor.moveToNext()) {
+                        String username = cursor.getString(cursor.getColumnIndex(DatabaseHelper.COLUMN_USERNAME));
+                        String account = cursor.getString(cursor.getColumnIndex(DatabaseHelper.COLUMN_ACCOUNT));
+                        rows += username.length() + account.length() > 0 ? 1 : 0;
+                    }
+                    assertEquals(ROWS, rows);
+                }
+            }
+        });
+        long scanner = minAllocatedBytes(new Workload() {
+            @Override
+            public void run() {
+                try (Cursor cursor = db.rawQuery(UserStatements.LIST_NAMES, null)) {
+                    RowScanner row = new RowScanner(cursor, DatabaseHelper.COLUMN_USERNAME, DatabaseHelper.COLUMN_ACCOUNT);
+                    int rows = 0;
+                    while (row.next()) {
+                        rows += row.length(0) + row.length(1) > 0 ? 1 : 0;
+                    }
+                    assertEquals(ROWS, rows);
+                }
+            }
+        });
+        Log.i(TAG, String.format("scan bytes/row: getString %.1f, RowScanner %.1f",
+                (double) legacy / ROWS, (double) scanner / ROWS));
+        assertTrue("RowScanner should allocate less than half of the getString scan: " + scanner + " vs " + legacy,
+                scanner * 2 < legacy);
+    }
+
+    @Test
+    public void rawDigestComparisonAllocatesLess() {
+        final String password = generator.passwordFor(3);
+        final String stored = UserRepository.hashPassword(password);
+        final char[] storedChars = stored.toCharArray();
+        long encoded = minAllocatedBytes(new Workload() {
+            @Override
+            public void run() {
+                for (int i = 0; i < LOGINS; i++) {
+                    assertTrue(stored.equals(UserRepository.hashPassword(password)));
+                }
+            }
+        });
+        long raw = minAllocatedBytes(new Workload() {
+            @Override
+            public void run() {
+                for (int i = 0; i < LOGINS; i++) {
+                    assertTrue(UserRepository.hashMatches(UserRepository.digestPassword(password),
+                            storedChars, storedChars.length));
+                }
+            }
+        });
+        Log.i(TAG, String.format("hash check bytes/login: Base64 String %.1f, raw digest %.1f",
+                (double) encoded / LOGINS, (double) raw / LOGINS));
+        assertTrue("Raw digest comparison should allocate less: " + raw + " vs " + encoded, raw < encoded);
+    }
+
+    private static long minAllocatedBytes(Workload workload) {
+        // 预热一次，排除类加载和首次编译的分配
+        workload.run();
+        long min = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            long before = allocatedBytes();
+            workload.run();
+            min = Math.min(min, allocatedBytes() - before);
+        }
+        return min;
+    }
+
+    private static long allocatedBytes() {
+        return Long.parseLong(Debug.getRuntimeStat("art.gc.bytes-allocated"));
+    }
+}
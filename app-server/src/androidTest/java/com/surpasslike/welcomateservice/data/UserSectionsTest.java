@@ -0,0 +1,96 @@
+package com.surpasslike.welcomateservice.data;
+
+import android.database.Cursor;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * 排序列表和首字符分组的仪器测试
+ * 验证在插入和删除之后，由读模型统计的分组位置仍然与排序游标中每个首字符第一次出现的位置一致；
+ * 读模型停用时由数据库分组计数得到的分组也一致；仓库在独立的存储上运行
+ */
+@RunWith(AndroidJUnit4.class)
+public class UserSectionsTest {
+    private static final String[] NAMES = {"Mia", "mason", "Zoe", "alex", "Max", "42nd", "émile", "bob", "Mia"};
+
+    private static final long REBUILD_TIMEOUT_MS = 10_000;
+
+    private UserRepository repository;
+
+    @Before
+    public void setUp() {
+        repository = ScratchUserRepository.open();
+    }
+
+    @After
+    public void tearDown() {
+        ScratchUserRepository.close(repository);
+    }
+
+    @Test
+    public void sectionsFollowInsertsAndDeletes() throws InterruptedException {
+        // 先构建读模型，后面的插入和删除都走增量更新
+        repository.getSections(UserSort.USERNAME_ASC);
+        assertTrue(repository.awaitReadModel(REBUILD_TIMEOUT_MS));
+        for (int i = 0; i < NAMES.length; i++) {
+            assertNotEquals(-1, repository.addUser(NAMES[i], "sections_" + i, "password"));
+        }
+        for (UserSort sort : UserSort.values()) {
+            if (sort.column != null) {
+                assertSectionsMatchCursor(sort);
+            }
+        }
+
+        repository.deleteUser("Mia");
+        repository.deleteUser("émile");
+        for (UserSort sort : UserSort.values()) {
+            if (sort.column != null) {
+                assertSectionsMatchCursor(sort);
+            }
+        }
+    }
+
+    @Test
+    public void databaseSectionsMatchCursor() {
+        repository.setReadModelEnabled(false);
+        for (int i = 0; i < NAMES.length; i++) {
+            assertNotEquals(-1, repository.addUser(NAMES[i], "sections_" + i, "password"));
+        }
+        for (UserSort sort : UserSort.values()) {
+            if (sort.column != null) {
+                assertSectionsMatchCursor(sort);
+            }
+        }
+    }
+
+    @Test
+    public void insertionOrderHasNoSections() {
+        assertNull(repository.getSections(UserSort.INSERTION));
+    }
+
+    private void assertSectionsMatchCursor(UserSort sort) {
+        UserSections sections = repository.getSections(sort);
+        try (Cursor cursor = repository.queryUsers(sort)) {
+            assertEquals(cursor.getCount(), sections.getTotal());
+            int column = cursor.getColumnIndexOrThrow(sort.column);
+            for (int i = 0; i < sections.size(); i++) {
+                assertTrue(cursor.moveToPosition(sections.getPosition(i)));
+                String value = cursor.getString(column);
+                assertEquals(sort + " section " + i, sections.getLabel(i),
+                        SectionIndex.labelOf(SectionIndex.bucketOf(value)));
+                if (sections.getPosition(i) > 0) {
+                    assertTrue(cursor.moveToPrevious());
+                    assertNotEquals(sort + " section " + i + " starts late", sections.getLabel(i),
+                            SectionIndex.labelOf(SectionIndex.bucketOf(cursor.getString(column))));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.surpasslike.welcomateservice.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.surpasslike.welcomateservice.data.db.DatabaseHelper;
+import com.surpasslike.welcomateservice.data.model.ChangePage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * UserRepository 快照与恢复的仪器测试
+ * 在真实的 SQLite 上验证：快照在持续写入期间生成，并且是一个完整、一致的数据库；恢复替换存储中的全部用户，
+ * 并且换成新的变更日志标识，而不是逐行记录
+ * 仓库在独立的存储上运行，恢复不会影响正式的用户数据
+ */
+@RunWith(AndroidJUnit4.class)
+public class UserSnapshotTest {
+    private static final String SEED_PREFIX = "snapshot_seed_";
+    private static final String LIVE_PREFIX = "snapshot_live_";
+    private static final int SEED_COUNT = 500;
+
+    private UserRepository repository;
+    private File snapshotFile;
+    private final AtomicInteger liveWritten = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        repository = ScratchUserRepository.open();
+        snapshotFile = new File(context.getCacheDir(), "users-snapshot-test.db");
+        snapshotFile.delete();
+        for (int i = 0; i < SEED_COUNT; i++) {
+            assertNotEquals(-1, repository.addUser(SEED_PREFIX + i, SEED_PREFIX + i, "password"));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        ScratchUserRepository.close(repository);
+        snapshotFile.delete();
+    }
+
+    @Test
+    public void snapshotIsCompleteWhileWritesAreRunning() throws Exception {
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final CopyOnWriteArrayList<Throwable> errors = new CopyOnWriteArrayList<>();
+        Thread writer = new Thread(() -> {
+            try {
+                while (running.get()) {
+                    int n = liveWritten.get();
+                    if (repository.addUser(LIVE_PREFIX + n, LIVE_PREFIX + n, "password") == -1) {
+                        throw new AssertionError("Insert failed for " + n);
+                    }
+                    liveWritten.incrementAndGet();
+                }
+            } catch (Throwable t) {
+                errors.add(t);
+            }
+        });
+        writer.start();
+        while (liveWritten.get() < 20 && errors.isEmpty()) {
+            Thread.sleep(1);
+        }
+
+        repository.snapshotTo(snapshotFile);
+        int writtenAfterSnapshot = liveWritten.get();
+
+        running.set(false);
+        writer.join();
+        assertTrue("Writer failed: " + errors, errors.isEmpty());
+        assertTrue(snapshotFile.exists());
+
+        SQLiteDatabase snapshot = SQLiteDatabase.openDatabase(snapshotFile.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+        try {
+            try (Cursor cursor = snapshot.rawQuery("PRAGMA integrity_check", null)) {
+                assertTrue(cursor.moveToFirst());
+                assertEquals("ok", cursor.getString(0));
+            }
+            // 快照开始前已提交的数据必须全部存在
+            assertEquals(SEED_COUNT, countByPrefix(snapshot, SEED_PREFIX));
+            // 并发写入按顺序进行，一致的快照只能包含它们的一个无空洞的前缀
+            int liveInSnapshot = countByPrefix(snapshot, LIVE_PREFIX);
+            assertTrue(liveInSnapshot >= 20 && liveInSnapshot <= writtenAfterSnapshot);
+            for (int i = 0; i < liveInSnapshot; i++) {
+                assertEquals(1, countAccount(snapshot, LIVE_PREFIX + i));
+            }
+        } finally {
+            snapshot.close();
+        }
+    }
+
+    @Test
+    public void restoreReplacesUsersWithSnapshotContents() throws Exception {
+        repository.snapshotTo(snapshotFile);
+        assertNotEquals(-1, repository.addUser(LIVE_PREFIX + 0, LIVE_PREFIX + 0, "password"));
+        repository.deleteUser(SEED_PREFIX + 0);
+        ChangePage before = repository.getChangesSince(0, null, 1);
+
+        repository.restoreFrom(snapshotFile);
+
+        assertNotNull(repository.loginAdmin(SEED_PREFIX + 0, "password"));
+        assertNull(repository.loginAdmin(LIVE_PREFIX + 0, "password"));
+        assertEquals(SEED_COUNT, repository.getUserCount());
+
+        // 恢复换了新的日志标识，旧游标直接重新同步；恢复的行没有逐行写入日志
+        ChangePage stale = repository.getChangesSince(before.getJournalId(), before.getSequences(), 100);
+        assertTrue(stale.isResyncRequired());
+        assertNotEquals(before.getJournalId(), stale.getJournalId());
+        assertArrayEquals(before.getSequences(), stale.getSequences());
+        // 之后的写入照常记录，新游标可以增量读取
+        assertNotEquals(-1, repository.addUser(LIVE_PREFIX + 1, LIVE_PREFIX + 1, "password"));
+        ChangePage resumed = repository.getChangesSince(stale.getJournalId(), stale.getSequences(), 100);
+        assertFalse(resumed.isResyncRequired());
+        assertEquals(1, resumed.getChanges().size());
+        assertEquals(LIVE_PREFIX + 1, resumed.getChanges().get(0).getAccount());
+    }
+
+    private static int countByPrefix(SQLiteDatabase db, String prefix) {
+        try (Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM " + DatabaseHelper.TABLE_USERS +
+                " WHERE " + DatabaseHelper.COLUMN_ACCOUNT + " LIKE ?", new String[]{prefix + "%"})) {
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        }
+    }
+
+    private static int countAccount(SQLiteDatabase db, String account) {
+        try (Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM " + DatabaseHelper.TABLE_USERS +
+                " WHERE " + DatabaseHelper.COLUMN_ACCOUNT + " = ?", new String[]{account})) {
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.surpasslike.welcomateservice.data.db;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * 数据库维护任务的仪器测试
+ * 在单独的数据库文件上验证：新数据库直接使用增量回收，回收归还空闲页并能中途让出；
+ * 旧数据库只有很小时才在空闲维护中转换，更大的需要明确转换；写回 WAL 报告写回的帧数
+ */
+@RunWith(AndroidJUnit4.class)
+public class MaintenanceJobTest {
+    private static final String DATABASE_NAME = "maintenance_test.db";
+    private static final int ROW_COUNT = 5000;
+    // 足够小，转换前的数据库不超过 MaintenanceJob.CONVERT_MAX_PAGES
+    private static final int SMALL_ROW_COUNT = 200;
+    private static final long AUTO_VACUUM_INCREMENTAL = 2;
+
+    private Context context;
+    private DatabaseHelper helper;
+    private SQLiteDatabase db;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+        helper = new DatabaseHelper(context, DATABASE_NAME);
+        db = helper.getWritableDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        helper.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void newDatabaseFreesPagesIncrementally() {
+        assertEquals(AUTO_VACUUM_INCREMENTAL, autoVacuum());
+
+        // 第一步之后就让出，只回收一部分
+        fillAndDelete();
+        long free = freelistCount();
+        AtomicInteger steps = new AtomicInteger();
+        MaintenanceResult partial = MaintenanceJob.INCREMENTAL_VACUUM.run(db, () -> steps.getAndIncrement() > 1);
+        assertTrue(partial.yielded);
+        assertTrue(partial.pagesFreed > 0);
+        assertTrue(partial.pagesFreed < free);
+
+        MaintenanceResult rest = MaintenanceJob.INCREMENTAL_VACUUM.run(db, () -> false);
+        assertFalse(rest.yielded);
+        assertEquals(free, partial.pagesFreed + rest.pagesFreed);
+        assertEquals(0, freelistCount());
+    }
+
+    @Test
+    public void smallLegacyDatabaseIsConvertedWhileIdle() {
+        makeLegacy();
+        insertRows(SMALL_ROW_COUNT);
+        db.delete(DatabaseHelper.TABLE_USERS, null, null);
+        assertTrue(pageCount() <= MaintenanceJob.CONVERT_MAX_PAGES);
+
+        MaintenanceResult converted = MaintenanceJob.INCREMENTAL_VACUUM.run(db, () -> false);
+        assertTrue(converted.pagesFreed > 0);
+        assertEquals(AUTO_VACUUM_INCREMENTAL, autoVacuum());
+    }
+
+    @Test
+    public void largeLegacyDatabaseIsOnlyConvertedExplicitly() {
+        makeLegacy();
+        fillAndDelete();
+        assertTrue(pageCount() > MaintenanceJob.CONVERT_MAX_PAGES);
+
+        // 空闲维护不做无法让出的完整 VACUUM
+        MaintenanceResult skipped = MaintenanceJob.INCREMENTAL_VACUUM.run(db, () -> false);
+        assertEquals(0, skipped.pagesFreed);
+        assertNotEquals(AUTO_VACUUM_INCREMENTAL, autoVacuum());
+
+        MaintenanceResult converted = MaintenanceJob.CONVERT_TO_INCREMENTAL.run(db, () -> false);
+        assertTrue(converted.pagesFreed > 0);
+        assertEquals(AUTO_VACUUM_INCREMENTAL, autoVacuum());
+        assertEquals(0, MaintenanceJob.CONVERT_TO_INCREMENTAL.run(db, () -> false).pagesFreed);
+    }
+
+    @Test
+    public void checkpointWritesBackWalFrames() {
+        fillAndDelete();
+        MaintenanceResult result = MaintenanceJob.CHECKPOINT.run(db, () -> false);
+        assertTrue(result.framesCheckpointed > 0);
+        assertFalse(result.yielded);
+    }
+
+    @Test
+    public void analyzeCollectsStatistics() {
+        fillAndDelete();
+        insertRows();
+        MaintenanceJob.ANALYZE.run(db, () -> false);
+        assertTrue(DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM sqlite_stat1", null) > 0);
+    }
+
+    @Test
+    public void yieldsBeforeStarting() {
+        MaintenanceResult result = MaintenanceJob.ANALYZE.run(db, () -> true);
+        assertTrue(result.yielded);
+        assertEquals(DATABASE_NAME, result.database);
+    }
+
+    private void fillAndDelete() {
+        insertRows();
+        db.delete(DatabaseHelper.TABLE_USERS, null, null);
+    }
+
+    /**
+     * 把数据库改回不自动回收，相当于升级前创建的旧数据库
+     */
+    private void makeLegacy() {
+        db.execSQL("PRAGMA auto_vacuum = NONE");
+        db.execSQL("VACUUM");
+        assertEquals(0, autoVacuum());
+    }
+
+    private void insertRows() {
+        insertRows(ROW_COUNT);
+    }
+
+    private void insertRows(int count) {
+        char[] padding = new char[200];
+        Arrays.fill(padding, 'x');
+        db.beginTransaction();
+        try {
+            ContentValues values = new ContentValues();
+            for (int i = 0; i < count; i++) {
+                values.put(DatabaseHelper.COLUMN_USERNAME, "maintenance_" + i);
+                values.put(DatabaseHelper.COLUMN_ACCOUNT, "maintenance_" + i);
+                values.put(DatabaseHelper.COLUMN_PASSWORD, new String(padding));
+                db.insert(DatabaseHelper.TABLE_USERS, null, values);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private long autoVacuum() {
+        return DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum", null);
+    }
+
+    private long pageCount() {
+        return DatabaseUtils.longForQuery(db, "PRAGMA page_count", null);
+    }
+
+    private long freelistCount() {
+        return DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null);
+    }
+}
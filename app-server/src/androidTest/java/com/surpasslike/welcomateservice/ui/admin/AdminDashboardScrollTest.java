@@ -0,0 +1,154 @@
+package com.surpasslike.welcomateservice.ui.admin;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+import android.view.FrameMetrics;
+import android.view.Window;
+
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.surpasslike.welcomateservice.R;
+import com.surpasslike.welcomateservice.data.ScratchUserRepository;
+import com.surpasslike.welcomateservice.data.UserRepository;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * 管理员用户列表的滑动帧耗时测试
+ * 在 2000 个用户的列表上反复快速滑动，通过 FrameMetrics 统计每一帧的总耗时，
+ * 超过该帧截止时间的记为卡顿帧；结果写入日志和仪器状态，卡顿帧的比例不能超过上限
+ * 用户写入独立的存储，测试期间它替换仓库的单例，见 {@link ScratchUserRepository#install}
+ */
+@RunWith(AndroidJUnit4.class)
+public class AdminDashboardScrollTest {
+    private static final String TAG = "AdminDashboardScrollTest";
+
+    private static final String PREFIX = "scroll_";
+    private static final int USERS = 2000;
+    private static final int FLINGS = 6;
+    private static final long SETTLE_TIMEOUT_MS = 10_000;
+    // 卡顿帧比例的上限，用于发现明显的退化；模拟器上的帧耗时波动较大，因此留有余量
+    private static final int MAX_JANK_PERCENT = 25;
+
+    @BeforeClass
+    public static void seed() throws Exception {
+        final UserRepository repository = ScratchUserRepository.install();
+        // 并发注册，让写管道把它们合并成较少的提交
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Long>> results = new ArrayList<>();
+            for (int i = 0; i < USERS; i++) {
+                final String name = PREFIX + i;
+                results.add(executor.submit(() -> repository.addUser(name, name, "password")));
+            }
+            for (Future<Long> result : results) {
+                assertNotEquals(-1L, (long) result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @AfterClass
+    public static void cleanUp() {
+        ScratchUserRepository.uninstall();
+    }
+
+    @Test
+    public void reportsJankyFramesWhileFlinging() throws Exception {
+        final AtomicInteger frames = new AtomicInteger();
+        final AtomicInteger janky = new AtomicInteger();
+        final AtomicLong worstNanos = new AtomicLong();
+        final Window.OnFrameMetricsAvailableListener listener = (window, metrics, dropped) -> {
+            if (metrics.getMetric(FrameMetrics.FIRST_DRAW_FRAME) == 1) {
+                return;
+            }
+            long total = metrics.getMetric(FrameMetrics.TOTAL_DURATION);
+            frames.incrementAndGet();
+            if (total > metrics.getMetric(FrameMetrics.DEADLINE)) {
+                janky.incrementAndGet();
+            }
+            worstNanos.accumulateAndGet(total, Math::max);
+        };
+        HandlerThread metricsThread = new HandlerThread("frame-metrics");
+        metricsThread.start();
+        final Handler metricsHandler = new Handler(metricsThread.getLooper());
+        try (ActivityScenario<AdminDashboardActivity> scenario = ActivityScenario.launch(AdminDashboardActivity.class)) {
+            awaitLoaded(scenario);
+            scenario.onActivity(activity -> activity.getWindow().addOnFrameMetricsAvailableListener(listener, metricsHandler));
+            for (int i = 0; i < FLINGS; i++) {
+                final int direction = i % 2 == 0 ? 1 : -1;
+                scenario.onActivity(activity -> {
+                    RecyclerView list = activity.findViewById(R.id.recyclerView);
+                    list.fling(0, direction * list.getMaxFlingVelocity());
+                });
+                awaitIdle(scenario);
+            }
+            scenario.onActivity(activity -> activity.getWindow().removeOnFrameMetricsAvailableListener(listener));
+        } finally {
+            metricsThread.quitSafely();
+        }
+
+        int total = frames.get();
+        int jankyFrames = janky.get();
+        String report = jankyFrames + "/" + total + " janky frames, worst " + worstNanos.get() / 1_000_000 + " ms";
+        Log.i(TAG, report);
+        Bundle status = new Bundle();
+        status.putInt("frames", total);
+        status.putInt("jankyFrames", jankyFrames);
+        status.putLong("worstFrameMillis", worstNanos.get() / 1_000_000);
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, status);
+
+        assertTrue("No frames were rendered", total > 0);
+        assertTrue(report, jankyFrames * 100 <= total * MAX_JANK_PERCENT);
+    }
+
+    /**
+     * 等待列表在后台加载完成并显示出来
+     */
+    private static void awaitLoaded(ActivityScenario<AdminDashboardActivity> scenario) throws InterruptedException {
+        final AtomicInteger items = new AtomicInteger();
+        long deadline = System.currentTimeMillis() + SETTLE_TIMEOUT_MS;
+        do {
+            Thread.sleep(100);
+            scenario.onActivity(activity -> {
+                RecyclerView.Adapter<?> adapter = ((RecyclerView) activity.findViewById(R.id.recyclerView)).getAdapter();
+                items.set(adapter == null ? 0 : adapter.getItemCount());
+            });
+        } while (items.get() < USERS && System.currentTimeMillis() < deadline);
+        assertTrue("List did not load", items.get() >= USERS);
+    }
+
+    /**
+     * 等待列表停止滚动
+     */
+    private static void awaitIdle(ActivityScenario<AdminDashboardActivity> scenario) throws InterruptedException {
+        final AtomicBoolean idle = new AtomicBoolean();
+        long deadline = System.currentTimeMillis() + SETTLE_TIMEOUT_MS;
+        do {
+            Thread.sleep(100);
+            scenario.onActivity(activity -> idle.set(((RecyclerView) activity.findViewById(R.id.recyclerView))
+                    .getScrollState() == RecyclerView.SCROLL_STATE_IDLE));
+        } while (!idle.get() && System.currentTimeMillis() < deadline);
+        assertTrue("List did not settle", idle.get());
+    }
+}
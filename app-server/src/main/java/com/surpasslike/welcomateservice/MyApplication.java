@@ -4,6 +4,8 @@ import android.annotation.SuppressLint;
 import android.app.Application;
 import android.content.Context;
 
+import com.surpasslike.common.diagnostics.Diagnostics;
+
 public class MyApplication extends Application {
     @SuppressLint("StaticFieldLeak")
     private static Context context;
@@ -12,9 +14,23 @@ public class MyApplication extends Application {
     public void onCreate() {
         super.onCreate();
         context = getApplicationContext();
+        // 调试版本中启用 StrictMode、主线程看门狗和主线程调用标记
+        // 服务进程使用单独的标识，两个进程的诊断报告和追踪文件不会互相覆盖
+        Diagnostics.install(this, "server" + getProcessSuffix());
     }
 
     public static Context getContext() {
         return context;
     }
+
+    /**
+     * 获取当前进程名中包名之后的部分，用于区分界面进程和服务进程各自的本地文件
+     *
+     * @return 主进程返回空字符串，:service 进程返回 "-service"
+     */
+    public static String getProcessSuffix() {
+        String processName = Application.getProcessName();
+        int separator = processName.indexOf(':');
+        return separator < 0 ? "" : "-" + processName.substring(separator + 1);
+    }
 }
@@ -1,16 +1,57 @@
 package com.surpasslike.welcomateservice.aidl;
 
+import android.os.Binder;
+import android.os.ParcelFileDescriptor;
+import android.os.ServiceSpecificException;
+import android.util.Log;
+
+import com.surpasslike.common.Deadline;
+import com.surpasslike.common.InputRules;
+import com.surpasslike.common.trace.RequestTrace;
+import com.surpasslike.welcomateservice.CallHeader;
+import com.surpasslike.welcomateservice.ChangeBatch;
+import com.surpasslike.welcomateservice.ChangeEntry;
 import com.surpasslike.welcomateservice.IAdminService;
+import com.surpasslike.welcomateservice.PendingEdit;
 import com.surpasslike.welcomateservice.data.UserRepository;
+import com.surpasslike.welcomateservice.data.model.ChangePage;
+import com.surpasslike.welcomateservice.data.model.UserChange;
+import com.surpasslike.welcomateservice.data.model.UserEdit;
+import com.surpasslike.welcomateservice.scheduler.Lane;
+import com.surpasslike.welcomateservice.scheduler.LaneScheduler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * AIDL 接口 IAdminService 的具体实现
  * 此类处理所有客户端通过 AIDL 请求的业务逻辑，包括用户认证和管理
- * 它将所有数据操作委托给 UserRepository
+ * 它将所有数据操作委托给 UserRepository；参数先经过 {@link RequestAdmission} 检查，非法请求不会到达仓库层
+ * 每个方法按其性质在一个 {@link Lane} 上执行：登录和查询是交互式的，增删改和变更同步是普通的，导出是批量的；
+ * 通道已满时请求直接失败，而不是排在其他通道的积压之后：客户端收到错误码为 {@link IAdminService#ERROR_OVERLOADED}
+ * 的 ServiceSpecificException，不会把它误当成登录失败、账户已占用或写操作已完成
+ * 每个方法都以请求头中的请求 ID 开始一个追踪区段，见 {@link RequestTrace}
+ * 请求头中的截止时间在整个调用期间绑定到处理线程（见 {@link Deadline}）；请求在完成前超时时，
+ * 客户端收到错误码为 {@link IAdminService#ERROR_DEADLINE_EXCEEDED} 的 ServiceSpecificException
+ * 注册、删除、改密和批量修改接受客户端提供的幂等键（见 {@link IdempotencyStore}），超时后的重试不会重复执行
  * 注意：此类中的方法将在 Binder 线程池中执行
  */
 public class AdminApiImpl extends IAdminService.Stub {
+    private static final String TAG = "AdminApiImpl";
+
+    // 幂等键最多保存 1024 个，每个保存 10 分钟，足以覆盖客户端的超时重试和离线队列的退避
+    private static final int IDEMPOTENCY_MAX_ENTRIES = 1024;
+    private static final long IDEMPOTENCY_TTL_MILLIS = 10 * 60 * 1000;
     private final UserRepository userRepository;
+    private final RequestAdmission admission = new RequestAdmission();
+    private final LaneScheduler scheduler = LaneScheduler.getInstance();
+    private final AtomicLong deadlineExceeded = new AtomicLong();
+    private final IdempotencyStore idempotency = new IdempotencyStore(IDEMPOTENCY_MAX_ENTRIES, IDEMPOTENCY_TTL_MILLIS);
 
     /**
      * 构造函数，初始化用户仓库
@@ -22,47 +63,442 @@ public class AdminApiImpl extends IAdminService.Stub {
     /**
      * 验证管理员登录
      *
+     * @param header   请求头
      * @param account  用户输入的账户
      * @param password 用户输入的原始密码
      * @return 如果登录成功，返回用户名；否则返回 null
+     * @throws ServiceSpecificException 交互式通道已满时抛出，错误码为 {@link IAdminService#ERROR_OVERLOADED}
      */
     @Override
-    public String loginAdmin(String account, String password) {
-        return userRepository.loginAdmin(account, password);
+    public String loginAdmin(CallHeader header, String account, String password) {
+        try (RequestTrace.Span span = RequestTrace.begin(requestId(header), "server.loginAdmin");
+             Deadline.Scope scope = Deadline.bind(deadline(header))) {
+            if (!admission.admit("loginAdmin", InputRules.checkLogin(account, password))) {
+                return null;
+            }
+            try {
+                return callOnLane(Lane.INTERACTIVE, () -> userRepository.loginAdmin(account, password));
+            } catch (LaneScheduler.LaneFullException e) {
+                throw overloaded(e);
+            }
+        }
     }
 
     /**
      * 注册一个新用户
      *
+     * @param header   请求头
      * @param username 用户名
      * @param account  账户
      * @param password 原始密码
      * @return 如果注册成功，返回 true；否则返回 false
+     * @throws ServiceSpecificException 普通通道已满时抛出，错误码为 {@link IAdminService#ERROR_OVERLOADED}
      */
     @Override
-    public boolean registerUser(String username, String account, String password) {
-        long rowId = userRepository.addUser(username, account, password);
-        return rowId != -1;
+    public boolean registerUser(CallHeader header, String username, String account, String password) {
+        try (RequestTrace.Span span = RequestTrace.begin(requestId(header), "server.registerUser");
+             Deadline.Scope scope = Deadline.bind(deadline(header))) {
+            if (!admission.admit("registerUser", InputRules.checkRegistration(username, account, password))) {
+                return false;
+            }
+            try {
+                long rowId = callIdempotent(header, "registerUser", Lane.NORMAL,
+                        () -> userRepository.addUser(username, account, password));
+                return rowId != -1;
+            } catch (LaneScheduler.LaneFullException e) {
+                throw overloaded(e);
+            }
+        }
     }
 
     /**
      * 根据用户名删除一个用户
      *
+     * @param header   请求头
      * @param username 要删除的用户的用户名
+     * @throws ServiceSpecificException 普通通道已满时抛出，错误码为 {@link IAdminService#ERROR_OVERLOADED}
      */
     @Override
-    public void deleteUser(String username) {
-        userRepository.deleteUser(username);
+    public void deleteUser(CallHeader header, String username) {
+        try (RequestTrace.Span span = RequestTrace.begin(requestId(header), "server.deleteUser");
+             Deadline.Scope scope = Deadline.bind(deadline(header))) {
+            if (!admission.admit("deleteUser", InputRules.checkExistingUsername(username))) {
+                return;
+            }
+            try {
+                callIdempotent(header, "deleteUser", Lane.NORMAL, () -> {
+                    userRepository.deleteUser(username);
+                    return null;
+                });
+            } catch (LaneScheduler.LaneFullException e) {
+                throw overloaded(e);
+            }
+        }
     }
 
     /**
      * 更新指定用户的密码
      *
+     * @param header      请求头
      * @param username    要更新密码的用户的用户名
      * @param newPassword 新的原始密码
+     * @throws ServiceSpecificException 普通通道已满时抛出，错误码为 {@link IAdminService#ERROR_OVERLOADED}
+     */
+    @Override
+    public void updateUserPassword(CallHeader header, String username, String newPassword) {
+        try (RequestTrace.Span span = RequestTrace.begin(requestId(header), "server.updateUserPassword");
+             Deadline.Scope scope = Deadline.bind(deadline(header))) {
+            if (!admission.admit("updateUserPassword", InputRules.checkPasswordChange(username, newPassword))) {
+                return;
+            }
+            try {
+                callIdempotent(header, "updateUserPassword", Lane.NORMAL, () -> {
+                    userRepository.updateUserPassword(username, newPassword);
+                    return null;
+                });
+            } catch (LaneScheduler.LaneFullException e) {
+                throw overloaded(e);
+            }
+        }
+    }
+
+    /**
+     * 检查账户是否可以注册，供注册界面在输入时实时提示
+     *
+     * @param header  请求头
+     * @param account 账户
+     * @return 账户合法且未被使用时返回 true
+     * @throws ServiceSpecificException 交互式通道已满时抛出，错误码为 {@link IAdminService#ERROR_OVERLOADED}
+     */
+    @Override
+    public boolean isAccountAvailable(CallHeader header, String account) {
+        try (RequestTrace.Span span = RequestTrace.begin(requestId(header), "server.isAccountAvailable");
+             Deadline.Scope scope = Deadline.bind(deadline(header))) {
+            if (!admission.admit("isAccountAvailable", InputRules.checkAccount(account))) {
+                return false;
+            }
+            try {
+                return callOnLane(Lane.INTERACTIVE, () -> userRepository.isAccountAvailable(account));
+            } catch (LaneScheduler.LaneFullException e) {
+                throw overloaded(e);
+            }
+        }
+    }
+
+    /**
+     * 批量执行客户端离线队列中的改密和删除
+     * 每条修改单独经过准入检查，合法的修改在普通通道上一次交给仓库层，由各分片的写管道合并提交
+     * 带幂等键的修改在执行前占用自己的键（见 {@link IdempotencyStore#claim}）：已经执行过的直接返回保存的结果，
+     * 另一次提交（例如离线队列超时后重试的同一批）正在执行的，等本批执行完后返回那一次的结果，不会再执行一次；
+     * 那一次执行失败时返回 {@link IdempotencyStore} 不保存的 {@link IAdminService#EDIT_FAILED}，由客户端重试
+     *
+     * @param header 请求头
+     * @param edits  修改，最多 {@link IAdminService#MAX_EDITS_PER_CALL} 条
+     * @return 与 edits 一一对应的结果：受影响的行数、{@link IAdminService#EDIT_REJECTED} 或
+     * {@link IAdminService#EDIT_FAILED}；整批超出条数上限时返回 null
+     * @throws ServiceSpecificException 普通通道已满时抛出，错误码为 {@link IAdminService#ERROR_OVERLOADED}，客户端应稍后重试
+     */
+    @Override
+    public long[] applyEdits(CallHeader header, PendingEdit[] edits) {
+        try (RequestTrace.Span span = RequestTrace.begin(requestId(header), "server.applyEdits");
+             Deadline.Scope scope = Deadline.bind(deadline(header))) {
+            if (edits == null || edits.length > MAX_EDITS_PER_CALL) {
+                Log.w(TAG, "applyEdits rejected: " + (edits == null ? "null" : edits.length + " edits"));
+                return null;
+            }
+            int uid = Binder.getCallingUid();
+            long[] results = new long[edits.length];
+            // 每条修改对幂等键的占用，没有幂等键或被拒绝时为 null
+            IdempotencyStore.Claim[] claims = new IdempotencyStore.Claim[edits.length];
+            // 需要执行的修改在 edits 中的位置
+            int[] positions = new int[edits.length];
+            List<UserEdit> admitted = new ArrayList<>(edits.length);
+            for (int i = 0; i < edits.length; i++) {
+                UserEdit edit = admit(edits[i]);
+                if (edit == null) {
+                    results[i] = EDIT_REJECTED;
+                    continue;
+                }
+                String key = edits[i].idempotencyKey;
+                if (key != null && !key.isEmpty()) {
+                    claims[i] = idempotency.claim(uid, "applyEdits", key);
+                    if (!claims[i].isOwner()) {
+                        // 已经执行过或正在执行（也可能是本批中更早的同键修改），本批执行完后再取结果
+                        continue;
+                    }
+                }
+                positions[admitted.size()] = i;
+                admitted.add(edit);
+            }
+            long[] applied = null;
+            try {
+                if (!admitted.isEmpty()) {
+                    applied = callOnLane(Lane.NORMAL, () -> userRepository.applyUserEdits(admitted));
+                }
+            } catch (LaneScheduler.LaneFullException e) {
+                throw overloaded(e);
+            } finally {
+                if (applied == null) {
+                    // 没有执行，释放占用的键，等待这些键的请求会自己执行
+                    for (int j = 0; j < admitted.size(); j++) {
+                        IdempotencyStore.Claim claim = claims[positions[j]];
+                        if (claim != null) {
+                            claim.fail();
+                        }
+                    }
+                }
+            }
+            for (int j = 0; j < admitted.size(); j++) {
+                int i = positions[j];
+                IdempotencyStore.Claim claim = claims[i];
+                if (applied[j] < 0) {
+                    results[i] = EDIT_FAILED;
+                    if (claim != null) {
+                        claim.fail();
+                    }
+                } else {
+                    results[i] = applied[j];
+                    if (claim != null) {
+                        claim.complete(applied[j]);
+                    }
+                }
+            }
+            // 自己占用的键都已完成，再等待其他请求占用的键，同一批中重复的键不会等待自己
+            for (int i = 0; i < edits.length; i++) {
+                if (claims[i] != null && !claims[i].isOwner()) {
+                    results[i] = awaitReplayedEdit(claims[i]);
+                }
+            }
+            return results;
+        }
+    }
+
+    /**
+     * 读取变更日志中游标之后的变更，见 {@link UserRepository#getChangesSince}
+     * 镜像用户列表的一方只需读取两次同步之间的变更，而不是每次都读取全部用户
+     *
+     * @param header    请求头
+     * @param journalId 上一次结果中的日志标识，从未同步过时为 0
+     * @param sequences 上一次结果中的序号，从未同步过时为 null
+     * @param limit     最多返回的变更数，超过 {@link IAdminService#MAX_CHANGES_PER_CALL} 时按上限处理
+     * @return 变更和下一次使用的游标
+     * @throws ServiceSpecificException 普通通道已满时抛出，错误码为 {@link IAdminService#ERROR_OVERLOADED}
      */
     @Override
-    public void updateUserPassword(String username, String newPassword) {
-        userRepository.updateUserPassword(username, newPassword);
+    public ChangeBatch getChangesSince(CallHeader header, long journalId, long[] sequences, int limit) {
+        try (RequestTrace.Span span = RequestTrace.begin(requestId(header), "server.getChangesSince");
+             Deadline.Scope scope = Deadline.bind(deadline(header))) {
+            int bounded = Math.max(1, Math.min(limit, MAX_CHANGES_PER_CALL));
+            ChangePage page;
+            try {
+                page = callOnLane(Lane.NORMAL, () -> userRepository.getChangesSince(journalId, sequences, bounded));
+            } catch (LaneScheduler.LaneFullException e) {
+                throw overloaded(e);
+            }
+            ChangeBatch batch = new ChangeBatch();
+            batch.journalId = page.getJournalId();
+            batch.sequences = page.getSequences();
+            batch.resyncRequired = page.isResyncRequired();
+            batch.hasMore = page.hasMore();
+            List<UserChange> changes = page.getChanges();
+            batch.changes = new ChangeEntry[changes.size()];
+            for (int i = 0; i < batch.changes.length; i++) {
+                UserChange change = changes.get(i);
+                ChangeEntry entry = new ChangeEntry();
+                entry.shard = change.getShard();
+                entry.seq = change.getSeq();
+                // 日志中的操作类型与 IAdminService.CHANGE_* 取值相同
+                entry.op = change.getOp();
+                entry.account = change.getAccount();
+                batch.changes[i] = entry;
+            }
+            return batch;
+        }
+    }
+
+    /**
+     * 检查一条批量修改的参数
+     *
+     * @return 合法时返回对应的修改，否则返回 null
+     */
+    private UserEdit admit(PendingEdit edit) {
+        if (edit == null) {
+            return null;
+        }
+        switch (edit.type) {
+            case EDIT_PASSWORD_CHANGE:
+                return admission.admit("applyEdits", InputRules.checkPasswordChange(edit.username, edit.newPassword))
+                        ? UserEdit.passwordChange(edit.username, edit.newPassword) : null;
+            case EDIT_DELETE:
+                return admission.admit("applyEdits", InputRules.checkExistingUsername(edit.username))
+                        ? UserEdit.deletion(edit.username) : null;
+            default:
+                Log.w(TAG, "applyEdits rejected unknown edit type " + edit.type);
+                return null;
+        }
+    }
+
+    /**
+     * 获取准入检查按原因统计的拒绝次数
+     *
+     * @return 拒绝原因到次数的映射
+     */
+    public Map<InputRules.Violation, Long> getRejectionCounts() {
+        return admission.getRejectionCounts();
+    }
+
+    /**
+     * 导出所有用户
+     * 返回一个可靠管道的读端，批量通道的线程将用户逐行写入写端（格式见 {@link UserRepository#exportUsers}）
+     * 客户端以恒定内存读取任意数量的行，数据不经过 Binder 事务缓冲区，因此不受事务大小限制
+     * 如果导出中途失败，写端会带错误关闭，读端可通过 {@link ParcelFileDescriptor#checkError()} 感知
+     *
+     * @param header 请求头
+     * @return 管道读端；创建管道失败时返回 null
+     * @throws ServiceSpecificException 批量通道已满时抛出，错误码为 {@link IAdminService#ERROR_OVERLOADED}
+     */
+    @Override
+    public ParcelFileDescriptor exportUsers(CallHeader header) {
+        try (RequestTrace.Span span = RequestTrace.begin(requestId(header), "server.exportUsers")) {
+            final ParcelFileDescriptor[] pipe;
+            try {
+                pipe = ParcelFileDescriptor.createReliablePipe();
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to create export pipe", e);
+                return null;
+            }
+            final ParcelFileDescriptor writeSide = pipe[1];
+            try {
+                scheduler.execute(Lane.BULK, () -> exportTo(writeSide));
+            } catch (LaneScheduler.LaneFullException e) {
+                closeQuietly(pipe[0]);
+                closeQuietly(writeSide);
+                throw overloaded(e);
+            }
+            return pipe[0];
+        }
+    }
+
+    /**
+     * 把所有用户写入管道写端，完成后关闭；失败时带错误关闭，让读端感知
+     *
+     * @param writeSide 管道写端
+     */
+    private void exportTo(ParcelFileDescriptor writeSide) {
+        OutputStream out = new ParcelFileDescriptor.AutoCloseOutputStream(writeSide);
+        try {
+            int rows = userRepository.exportUsers(out);
+            out.close();
+            Log.d(TAG, "Exported " + rows + " users.");
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "User export failed", e);
+            try {
+                writeSide.closeWithError(String.valueOf(e.getMessage()));
+            } catch (IOException ignored) {
+                // 读端已经关闭，无需再通知
+            }
+        }
+    }
+
+    /**
+     * 获取因超过截止时间而未完成的请求数
+     *
+     * @return 超时次数
+     */
+    public long getDeadlineExceededCount() {
+        return deadlineExceeded.get();
+    }
+
+    /**
+     * @return 幂等键的数量和命中次数
+     */
+    public String getIdempotencyStats() {
+        return idempotency.getStats();
+    }
+
+    /**
+     * 在通道上执行任务并等待结果；任务因超过截止时间而中止时，转换为可以跨进程传递的 ServiceSpecificException
+     *
+     * @throws ServiceSpecificException 截止时间已过时抛出，错误码为 {@link IAdminService#ERROR_DEADLINE_EXCEEDED}
+     */
+    private <T> T callOnLane(Lane lane, Callable<T> task) throws LaneScheduler.LaneFullException {
+        try {
+            return scheduler.call(lane, task);
+        } catch (Deadline.DeadlineExceededException e) {
+            throw deadlineExceeded(e);
+        }
+    }
+
+    /**
+     * 按请求头中的幂等键在通道上执行任务：相同的键已经执行过时直接返回保存的结果，不再执行
+     * 必须在 Binder 线程上调用，幂等键按调用方的 uid 区分
+     */
+    private <T> T callIdempotent(CallHeader header, String method, Lane lane, Callable<T> task)
+            throws LaneScheduler.LaneFullException {
+        String key = header == null ? null : header.idempotencyKey;
+        try {
+            return idempotency.execute(Binder.getCallingUid(), method, key, () -> callOnLane(lane, task));
+        } catch (Deadline.DeadlineExceededException e) {
+            // 等待同一个键的第一次执行时超时
+            throw deadlineExceeded(e);
+        } catch (LaneScheduler.LaneFullException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            // 只有等待第一次执行时被中断才会走到这里
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 等待另一次提交执行同一个键的修改
+     *
+     * @return 那一次的结果；那一次失败时返回 {@link IAdminService#EDIT_FAILED}
+     */
+    private long awaitReplayedEdit(IdempotencyStore.Claim claim) {
+        try {
+            return claim.await() ? (Long) claim.getResult() : EDIT_FAILED;
+        } catch (Deadline.DeadlineExceededException e) {
+            throw deadlineExceeded(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private ServiceSpecificException deadlineExceeded(Deadline.DeadlineExceededException e) {
+        deadlineExceeded.incrementAndGet();
+        Log.w(TAG, e.getMessage());
+        return new ServiceSpecificException(ERROR_DEADLINE_EXCEEDED, e.getMessage());
+    }
+
+    /**
+     * 通道已满时告诉客户端请求没有执行，而不是返回一个看起来正常的结果
+     */
+    private static ServiceSpecificException overloaded(LaneScheduler.LaneFullException e) {
+        Log.w(TAG, e.getMessage());
+        return new ServiceSpecificException(ERROR_OVERLOADED, e.getMessage());
+    }
+
+    /**
+     * 取出截止时间；客户端传 null 作为请求头时按不限时处理
+     */
+    private static long deadline(CallHeader header) {
+        return header == null ? Deadline.NONE : header.deadlineElapsedMillis;
+    }
+
+    /**
+     * 取出请求 ID；AIDL 允许传 null 作为请求头，这时没有请求 ID
+     */
+    private static long requestId(CallHeader header) {
+        return header == null ? RequestTrace.NO_REQUEST : header.requestId;
+    }
+
+    private static void closeQuietly(ParcelFileDescriptor fd) {
+        try {
+            fd.close();
+        } catch (IOException ignored) {
+            // 关闭失败无需处理
+        }
     }
 }
@@ -0,0 +1,229 @@
+package com.surpasslike.welcomateservice.aidl;
+
+import android.os.SystemClock;
+
+import com.surpasslike.common.Deadline;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 写操作的幂等键和结果
+ * 客户端在超时后重试时带上与第一次相同的幂等键；第一次已经完成时直接返回保存的结果，
+ * 第一次仍在执行时等待它的结果，都不会再执行一次哈希和写事务
+ * <p>
+ * 键按调用方的 uid 和方法名区分，不同应用或不同方法使用相同的键互不影响；
+ * 只保存成功完成的结果，失败（例如通道已满、超过截止时间）的请求在重试时重新执行
+ * 最多保存 maxEntries 个键，每个键在完成后保留 ttlMillis 毫秒；超出数量时淘汰最早的键
+ */
+class IdempotencyStore {
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    // 按插入顺序排列，最早的键在最前面；全部由 this 保护
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    private long replays;
+
+    /**
+     * @param maxEntries 最多保存的键数
+     * @param ttlMillis  结果保存的毫秒数
+     */
+    IdempotencyStore(int maxEntries, long ttlMillis) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * 按幂等键执行操作
+     *
+     * @param uid       调用方 uid
+     * @param method    接口方法名
+     * @param key       客户端提供的幂等键，为 null 或空时直接执行操作
+     * @param operation 操作
+     * @param <T>       结果类型
+     * @return 操作结果，或者相同键第一次执行的结果
+     * @throws Exception 操作本身抛出的异常；等待同一个键的执行时超过截止时间则抛出
+     *                   {@link Deadline.DeadlineExceededException}
+     */
+    <T> T execute(int uid, String method, String key, Callable<T> operation) throws Exception {
+        if (key == null || key.isEmpty()) {
+            return operation.call();
+        }
+        while (true) {
+            Claim claim = claim(uid, method, key);
+            if (claim.isOwner()) {
+                T result;
+                try {
+                    result = operation.call();
+                } catch (Exception | Error e) {
+                    claim.fail();
+                    throw e;
+                }
+                claim.complete(result);
+                return result;
+            }
+            if (claim.await()) {
+                @SuppressWarnings("unchecked")
+                T result = (T) claim.getResult();
+                return result;
+            }
+            // 第一次执行失败，已经移除，由本次请求重新执行
+        }
+    }
+
+    /**
+     * 在执行前占用一个键，供不能把执行包进 {@link #execute} 的调用方使用，例如批量操作中的单条修改
+     * 键没有被占用时本次请求成为所有者，执行后必须调用 {@link Claim#complete} 或 {@link Claim#fail}；
+     * 否则键正在执行或已经完成，用 {@link Claim#await} 等待第一次执行的结果。
+     * 同一个调用方需要先完成自己占用的键再等待其他键，否则同一批中重复的键会等待自己
+     *
+     * @param key 客户端提供的幂等键，调用方已经排除 null 和空字符串
+     * @return 键的占用
+     */
+    Claim claim(int uid, String method, String key) {
+        String id = uid + "/" + method + "/" + key;
+        synchronized (this) {
+            evict(SystemClock.elapsedRealtime());
+            Entry entry = entries.get(id);
+            if (entry == null) {
+                entry = new Entry();
+                entries.put(id, entry);
+                return new Claim(id, entry, true);
+            }
+            replays++;
+            return new Claim(id, entry, false);
+        }
+    }
+
+    /**
+     * @return 保存的键数和命中次数，用于诊断输出
+     */
+    synchronized String getStats() {
+        return "entries=" + entries.size() + ", replays=" + replays;
+    }
+
+    /**
+     * 移除过期的键，并在超出数量时淘汰最早的已完成键；调用方必须持有 this
+     */
+    private void evict(long now) {
+        int excess = entries.size() - maxEntries;
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next().getValue();
+            if (entry.done.getCount() > 0) {
+                // 仍在执行的键不淘汰，否则等待它的请求会重新执行
+                continue;
+            }
+            if (excess > 0 || entry.expiresAt - now <= 0) {
+                it.remove();
+                excess--;
+            } else {
+                // 其余的键完成得更晚，通常也更晚过期；个别键最多晚一个 ttl 被清理
+                break;
+            }
+        }
+    }
+
+    /**
+     * 对一个键的占用，由 {@link #claim} 返回
+     */
+    final class Claim {
+        private final String id;
+        private final Entry entry;
+        private final boolean owner;
+
+        private Claim(String id, Entry entry, boolean owner) {
+            this.id = id;
+            this.entry = entry;
+            this.owner = owner;
+        }
+
+        /**
+         * @return 本次请求是否占用了这个键、需要自己执行
+         */
+        boolean isOwner() {
+            return owner;
+        }
+
+        /**
+         * 所有者执行成功后保存结果，唤醒等待这个键的请求
+         */
+        void complete(Object result) {
+            synchronized (IdempotencyStore.this) {
+                entry.complete(result, SystemClock.elapsedRealtime() + ttlMillis);
+                // 移到队尾，淘汰顺序与完成顺序一致，刚完成的结果至少保留 ttl
+                entries.remove(id);
+                entries.put(id, entry);
+                evict(SystemClock.elapsedRealtime());
+            }
+        }
+
+        /**
+         * 所有者执行失败后释放这个键，等待的请求会重新占用并执行
+         */
+        void fail() {
+            synchronized (IdempotencyStore.this) {
+                entries.remove(id, entry);
+            }
+            entry.fail();
+        }
+
+        /**
+         * 等待第一次执行结束，最多等到当前请求的截止时间
+         *
+         * @return 第一次执行成功时返回 true，结果由 {@link #getResult()} 取得
+         * @throws Deadline.DeadlineExceededException 超过截止时间时抛出
+         */
+        boolean await() throws InterruptedException {
+            return entry.await();
+        }
+
+        /**
+         * @return 第一次执行的结果，只在 {@link #await()} 返回 true 之后有效
+         */
+        Object getResult() {
+            return entry.result;
+        }
+    }
+
+    /**
+     * 一个键的执行状态
+     */
+    private static final class Entry {
+        final CountDownLatch done = new CountDownLatch(1);
+        // 以下字段在 done 计数归零之前写入
+        volatile boolean succeeded;
+        volatile Object result;
+        volatile long expiresAt;
+
+        void complete(Object value, long expiresAt) {
+            this.result = value;
+            this.expiresAt = expiresAt;
+            this.succeeded = true;
+            done.countDown();
+        }
+
+        void fail() {
+            done.countDown();
+        }
+
+        /**
+         * 等待第一次执行结束，最多等到当前请求的截止时间
+         *
+         * @return 第一次执行成功时返回 true
+         */
+        boolean await() throws InterruptedException {
+            long deadline = Deadline.current();
+            if (deadline == Deadline.NONE) {
+                done.await();
+            } else if (!done.await(Deadline.remainingMillis(deadline, SystemClock.elapsedRealtime()), TimeUnit.MILLISECONDS)) {
+                throw new Deadline.DeadlineExceededException("idempotent replay");
+            }
+            return succeeded;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.surpasslike.welcomateservice.aidl;
+
+import android.util.Log;
+
+import com.surpasslike.common.InputRules;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * AIDL 请求的准入检查
+ * 在请求进入 UserRepository 之前按 {@link InputRules} 检查参数，非法请求在哈希和数据库操作之前就被拒绝
+ * 每种拒绝原因单独计数，便于观察客户端是否在绕过自己的校验
+ */
+class RequestAdmission {
+    private static final String TAG = "RequestAdmission";
+
+    // 每拒绝多少次输出一次统计日志
+    private static final int LOG_INTERVAL_REJECTIONS = 64;
+
+    private final AtomicLongArray rejections = new AtomicLongArray(InputRules.Violation.values().length);
+
+    /**
+     * 根据检查结果决定是否放行请求
+     *
+     * @param method    被调用的接口方法名，只用于日志
+     * @param violation InputRules 的检查结果
+     * @return 合法时返回 true；否则记录拒绝原因并返回 false
+     */
+    boolean admit(String method, InputRules.Violation violation) {
+        if (violation == null) {
+            return true;
+        }
+        long count = rejections.incrementAndGet(violation.ordinal());
+        Log.w(TAG, method + " rejected: " + violation);
+        if (count % LOG_INTERVAL_REJECTIONS == 0) {
+            Log.d(TAG, "Rejections so far: " + getRejectionCounts());
+        }
+        return false;
+    }
+
+    /**
+     * 获取各拒绝原因的累计次数
+     *
+     * @return 拒绝原因到次数的映射，只包含出现过的原因
+     */
+    Map<InputRules.Violation, Long> getRejectionCounts() {
+        Map<InputRules.Violation, Long> counts = new EnumMap<>(InputRules.Violation.class);
+        for (InputRules.Violation violation : InputRules.Violation.values()) {
+            long count = rejections.get(violation.ordinal());
+            if (count > 0) {
+                counts.put(violation, count);
+            }
+        }
+        return counts;
+    }
+}
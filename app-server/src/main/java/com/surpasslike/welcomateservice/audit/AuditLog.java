@@ -0,0 +1,369 @@
+package com.surpasslike.welcomateservice.audit;
+
+import android.util.Log;
+
+import com.surpasslike.welcomateservice.MyApplication;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * 账户变更的审计日志
+ * 记录以固定长度的二进制格式追加到内存映射 (mmap) 的分段文件中，写入不需要系统调用，也不需要加锁：
+ * 每个写线程先通过原子操作在当前分段中预留一个记录槽位，然后只写自己的槽位
+ * 只有在分段写满、需要切换到新分段时才会短暂加锁
+ * <p>
+ * 每条记录固定 128 字节（小端序）：
+ * <pre>
+ *   0  long  序号
+ *   8  long  时间戳（毫秒）
+ *  16  long  操作结果
+ *  24  byte  操作类型编码
+ *  25  byte  键的 UTF-8 字节数
+ *  26  byte[96] 键（超长时在字符边界处截断）
+ * 124  int   前 124 字节的 CRC32
+ * </pre>
+ * CRC 校验同时用来区分空槽位、写了一半的槽位和完整的记录，因此读取方不需要与写入方同步
+ * 序号由槽位位置决定（分段序号 × 每段记录数 + 槽位 + 1），因此按序号增量读取时可以直接定位到文件和偏移
+ * 这是一个单例，以确保整个应用只有一个写入位置
+ */
+public class AuditLog {
+    private static final String TAG = "AuditLog";
+
+    static final String DIRECTORY_NAME = "audit";
+    static final String SEGMENT_PREFIX = "audit-";
+    static final String SEGMENT_SUFFIX = ".log";
+
+    static final int RECORD_SIZE = 128;
+    static final int KEY_CAPACITY = 96;
+    private static final int OFFSET_SEQUENCE = 0;
+    private static final int OFFSET_TIMESTAMP = 8;
+    private static final int OFFSET_RESULT = 16;
+    private static final int OFFSET_TYPE = 24;
+    private static final int OFFSET_KEY_LENGTH = 25;
+    private static final int OFFSET_KEY = 26;
+    private static final int OFFSET_CRC = 124;
+
+    // 每个分段 1 MB，即 8192 条记录；最多保留 16 个分段
+    static final int SEGMENT_SIZE = 1024 * 1024;
+    static final int RECORDS_PER_SEGMENT = SEGMENT_SIZE / RECORD_SIZE;
+    static final int MAX_SEGMENTS = 16;
+
+    /**
+     * 一个已映射到内存的分段
+     */
+    private static final class Segment {
+        final long index;
+        final MappedByteBuffer buffer;
+        // 下一个可预留的字节偏移，可能超过分段大小，超过即表示该分段已满
+        final AtomicLong reserved;
+
+        Segment(long index, MappedByteBuffer buffer, long reserved) {
+            this.index = index;
+            this.buffer = buffer;
+            this.reserved = new AtomicLong(reserved);
+        }
+    }
+
+    /**
+     * 每个线程自己的编码缓冲区，写入时不产生额外对象
+     */
+    private static final class Scratch {
+        final byte[] bytes = new byte[RECORD_SIZE];
+        final ByteBuffer view = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        // 键的编码结果直接写进 bytes 的键区域
+        final ByteBuffer keyBytes = ByteBuffer.wrap(bytes, OFFSET_KEY, KEY_CAPACITY).slice();
+        // 超过 KEY_CAPACITY 个字符的部分一定放不下，不需要复制
+        final char[] chars = new char[KEY_CAPACITY];
+        final CharBuffer keyChars = CharBuffer.wrap(chars);
+        final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        final CRC32 crc = new CRC32();
+    }
+
+    private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    // 单例模式实现
+    private static volatile AuditLog INSTANCE;
+
+    private final File directory;
+    private volatile Segment current;
+
+    /**
+     * 打开审计目录并定位到最新分段的末尾；应用中使用 {@link #getInstance()}，测试可以指向临时目录
+     *
+     * @param directory 审计日志目录
+     */
+    AuditLog(File directory) {
+        this.directory = directory;
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Cannot create " + directory);
+            }
+            current = openLatestSegment();
+        } catch (IOException e) {
+            // 审计失败不应影响账户操作本身，记录错误后禁用审计
+            Log.e(TAG, "Audit log disabled", e);
+            current = null;
+        }
+    }
+
+    /**
+     * 获取 AuditLog 的单例
+     *
+     * @return AuditLog 的唯一实例
+     */
+    public static AuditLog getInstance() {
+        if (INSTANCE == null) {
+            synchronized (AuditLog.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new AuditLog(getDirectory());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * 获取本进程审计日志所在的目录，供 {@link AuditLogReader} 使用
+     * 槽位预留只在进程内是原子的，因此界面进程和服务进程各写自己的目录（服务进程为 audit-service）
+     *
+     * @return 审计日志目录
+     */
+    public static File getDirectory() {
+        return new File(MyApplication.getContext().getFilesDir(), DIRECTORY_NAME + MyApplication.getProcessSuffix());
+    }
+
+    /**
+     * 追加一条审计记录
+     * 快速路径只有一次原子加法和对映射内存的写入；分段写满时由越界的线程切换到新分段
+     *
+     * @param type   操作类型
+     * @param key    注册时为账户，删除和改密时为用户名
+     * @param result 操作结果
+     */
+    public void append(AuditRecord.Type type, String key, long result) {
+        Segment segment = current;
+        if (segment == null) {
+            return;
+        }
+        Scratch scratch = SCRATCH.get();
+        long timestamp = System.currentTimeMillis();
+        while (segment != null) {
+            long offset = segment.reserved.getAndAdd(RECORD_SIZE);
+            if (offset + RECORD_SIZE <= SEGMENT_SIZE) {
+                long sequence = segment.index * RECORDS_PER_SEGMENT + offset / RECORD_SIZE + 1;
+                encode(scratch, sequence, timestamp, type, key, result);
+                // 以 8 字节为单位把编码好的记录复制到自己预留的槽位
+                for (int i = 0; i < RECORD_SIZE; i += 8) {
+                    segment.buffer.putLong((int) offset + i, scratch.view.getLong(i));
+                }
+                return;
+            }
+            segment = rotate(segment);
+        }
+    }
+
+    /**
+     * 把所有已写入的记录刷到磁盘
+     * 映射内存在进程崩溃后仍会由系统写回文件；只有需要抵御掉电时才需要调用此方法
+     */
+    public void flush() {
+        Segment segment = current;
+        if (segment != null) {
+            segment.buffer.force();
+        }
+    }
+
+    /**
+     * 在写满的分段之后打开新分段，并删除超出保留数量的旧分段
+     * 多个线程同时发现分段已满时，只有一个线程真正创建新分段
+     *
+     * @param full 已写满的分段
+     * @return 新的当前分段；创建失败时返回 null，审计被禁用
+     */
+    private synchronized Segment rotate(Segment full) {
+        if (current != full) {
+            return current;
+        }
+        try {
+            full.buffer.force();
+            current = mapSegment(full.index + 1, 0);
+            File stale = segmentFile(directory, full.index + 1 - MAX_SEGMENTS);
+            if (stale.exists() && !stale.delete()) {
+                Log.w(TAG, "Cannot delete old audit segment " + stale);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Audit log disabled", e);
+            current = null;
+        }
+        return current;
+    }
+
+    /**
+     * 打开最新的分段，扫描出其中最后一条记录之后的位置
+     * 如果分段中有写了一半的槽位（上次进程在写入中途退出），则改用下一个新分段，
+     * 这样最新分段中的无效槽位总是表示“正在写入”，读取方可以安全地在那里停下等待
+     *
+     * @return 当前分段
+     * @throws IOException 无法映射文件时抛出
+     */
+    private Segment openLatestSegment() throws IOException {
+        long[] indexes = AuditLogReader.listSegments(directory);
+        if (indexes.length == 0) {
+            return mapSegment(0, 0);
+        }
+        long index = indexes[indexes.length - 1];
+        Segment segment = mapSegment(index, 0);
+        ByteBuffer buffer = segment.buffer;
+        long end = 0;
+        boolean torn = false;
+        byte[] slot = new byte[RECORD_SIZE];
+        for (int offset = 0; offset + RECORD_SIZE <= SEGMENT_SIZE; offset += RECORD_SIZE) {
+            buffer.position(offset);
+            buffer.get(slot);
+            if (isEmpty(slot)) {
+                continue;
+            }
+            // 在已写入记录之前出现的空槽位同样是未写完的槽位（预留后进程退出）
+            torn |= end != offset || decode(slot) == null;
+            end = offset + RECORD_SIZE;
+        }
+        if (torn || end == SEGMENT_SIZE) {
+            return mapSegment(index + 1, 0);
+        }
+        segment.reserved.set(end);
+        return segment;
+    }
+
+    /**
+     * 创建或打开指定序号的分段文件并映射到内存
+     *
+     * @param index    分段序号
+     * @param reserved 初始预留位置
+     * @return 分段
+     * @throws IOException 无法创建或映射文件时抛出
+     */
+    private Segment mapSegment(long index, long reserved) throws IOException {
+        File file = segmentFile(directory, index);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(SEGMENT_SIZE);
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return new Segment(index, buffer, reserved);
+        }
+    }
+
+    /**
+     * 获取指定序号的分段文件
+     *
+     * @param directory 审计日志目录
+     * @param index     分段序号
+     * @return 分段文件，序号补零以便按文件名排序
+     */
+    static File segmentFile(File directory, long index) {
+        return new File(directory, String.format(Locale.US, "%s%010d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * 把一条记录编码到线程自己的缓冲区中，并计算 CRC
+     */
+    private static void encode(Scratch scratch, long sequence, long timestamp, AuditRecord.Type type, String key, long result) {
+        byte[] bytes = scratch.bytes;
+        ByteBuffer view = scratch.view;
+        Arrays.fill(bytes, (byte) 0);
+        view.putLong(OFFSET_SEQUENCE, sequence);
+        view.putLong(OFFSET_TIMESTAMP, timestamp);
+        view.putLong(OFFSET_RESULT, result);
+        view.put(OFFSET_TYPE, type.code);
+        int keyLength = 0;
+        if (key != null) {
+            keyLength = encodeKey(scratch, key);
+        }
+        view.put(OFFSET_KEY_LENGTH, (byte) keyLength);
+        scratch.crc.reset();
+        scratch.crc.update(bytes, 0, OFFSET_CRC);
+        view.putInt(OFFSET_CRC, (int) scratch.crc.getValue());
+    }
+
+    /**
+     * 把键编码为 UTF-8 写入缓冲区的键区域
+     * 编码器只写出完整的字符，放不下的字符整个舍去，因此截断总是落在码点边界上；
+     * 只复制了键的前一部分时按“输入未结束”编码，末尾被截开的代理对的前半部分同样被舍去，不会变成替换字符
+     *
+     * @return 写入的字节数
+     */
+    private static int encodeKey(Scratch scratch, String key) {
+        int length = Math.min(key.length(), KEY_CAPACITY);
+        key.getChars(0, length, scratch.chars, 0);
+        CharBuffer in = scratch.keyChars;
+        in.clear();
+        in.limit(length);
+        ByteBuffer out = scratch.keyBytes;
+        out.clear();
+        CharsetEncoder encoder = scratch.encoder;
+        encoder.reset();
+        boolean complete = length == key.length();
+        if (encoder.encode(in, out, complete).isUnderflow() && complete) {
+            encoder.flush(out);
+        }
+        return out.position();
+    }
+
+    /**
+     * 解码一个槽位
+     *
+     * @param slot 槽位的 128 字节
+     * @return 完整的记录；空槽位、写了一半或已损坏的槽位返回 null
+     */
+    static AuditRecord decode(byte[] slot) {
+        ByteBuffer view = ByteBuffer.wrap(slot).order(ByteOrder.LITTLE_ENDIAN);
+        CRC32 crc = new CRC32();
+        crc.update(slot, 0, OFFSET_CRC);
+        if ((int) crc.getValue() != view.getInt(OFFSET_CRC)) {
+            return null;
+        }
+        AuditRecord.Type type = AuditRecord.Type.fromCode(view.get(OFFSET_TYPE));
+        int keyLength = view.get(OFFSET_KEY_LENGTH) & 0xFF;
+        if (type == null || keyLength > KEY_CAPACITY) {
+            return null;
+        }
+        String key = new String(slot, OFFSET_KEY, keyLength, StandardCharsets.UTF_8);
+        return new AuditRecord(view.getLong(OFFSET_SEQUENCE), view.getLong(OFFSET_TIMESTAMP), type, key,
+                view.getLong(OFFSET_RESULT));
+    }
+
+    /**
+     * 判断槽位是否从未被写入
+     *
+     * @param slot 槽位的 128 字节
+     * @return 全部为 0 时返回 true
+     */
+    static boolean isEmpty(byte[] slot) {
+        for (byte b : slot) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
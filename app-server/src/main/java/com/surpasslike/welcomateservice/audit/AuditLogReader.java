@@ -0,0 +1,147 @@
+package com.surpasslike.welcomateservice.audit;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * 审计日志的读取器
+ * 直接以只读方式映射分段文件，不与写入方加锁；写了一半的记录通不过 CRC 校验，会被当作尚未写入
+ * 同一时刻可能有多个线程在写不同的槽位，因此最新分段中出现的第一个无效槽位及其之后的内容留到下一次读取时再处理
+ * 分段轮转的瞬间仍在向旧分段写入的记录，可能会被已经读到新分段的增量读取错过；需要完整记录时使用 {@link #forEach}
+ */
+public class AuditLogReader {
+    private static final String TAG = "AuditLogReader";
+
+    /**
+     * 记录访问者
+     */
+    public interface Visitor {
+        /**
+         * 处理一条记录
+         *
+         * @param record 审计记录
+         * @return 返回 false 停止遍历
+         */
+        boolean visit(AuditRecord record);
+    }
+
+    private final File directory;
+
+    /**
+     * 构造函数
+     *
+     * @param directory 审计日志目录，通常为 {@link AuditLog#getDirectory()}
+     */
+    public AuditLogReader(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * 按写入顺序遍历所有完整的记录
+     *
+     * @param visitor 记录访问者
+     */
+    public void forEach(Visitor visitor) {
+        tail(0, visitor);
+    }
+
+    /**
+     * 遍历序号大于 afterSequence 的记录，用于增量读取（轮询式 tail）
+     * 调用方保存返回值，下一次以它为参数再次调用，即可只读到新增的记录
+     * 序号对应固定的槽位，因此会直接从对应分段的对应偏移开始读，不需要扫描更早的记录
+     *
+     * @param afterSequence 已处理过的最大序号，0 表示从头开始
+     * @param visitor       记录访问者
+     * @return 本次读到的最大序号；没有新记录时返回 afterSequence
+     */
+    public long tail(long afterSequence, Visitor visitor) {
+        long[] indexes = listSegments(directory);
+        long last = afterSequence;
+        long startSegment = afterSequence / AuditLog.RECORDS_PER_SEGMENT;
+        byte[] slot = new byte[AuditLog.RECORD_SIZE];
+        for (int i = 0; i < indexes.length; i++) {
+            if (indexes[i] < startSegment) {
+                continue;
+            }
+            MappedByteBuffer buffer = map(indexes[i]);
+            if (buffer == null) {
+                continue;
+            }
+            boolean newest = i == indexes.length - 1;
+            int firstSlot = indexes[i] == startSegment ? (int) (afterSequence % AuditLog.RECORDS_PER_SEGMENT) : 0;
+            for (int offset = firstSlot * AuditLog.RECORD_SIZE; offset < AuditLog.SEGMENT_SIZE; offset += AuditLog.RECORD_SIZE) {
+                buffer.position(offset);
+                buffer.get(slot);
+                AuditRecord record = AuditLog.decode(slot);
+                if (record == null) {
+                    if (newest) {
+                        // 最新分段中还没写完的位置，之后的记录留到下一次读取
+                        return last;
+                    }
+                    // 较旧分段中的无效槽位是分段写满时被越界预留的位置，或进程退出时未写完的槽位
+                    continue;
+                }
+                last = record.getSequence();
+                if (!visitor.visit(record)) {
+                    return last;
+                }
+            }
+        }
+        return last;
+    }
+
+    /**
+     * 以只读方式映射一个分段
+     *
+     * @param index 分段序号
+     * @return 映射的缓冲区；文件已被轮转删除或无法读取时返回 null
+     */
+    private MappedByteBuffer map(long index) {
+        File file = AuditLog.segmentFile(directory, index);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if (raf.length() < AuditLog.SEGMENT_SIZE) {
+                return null;
+            }
+            return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, AuditLog.SEGMENT_SIZE);
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot read audit segment " + file, e);
+            return null;
+        }
+    }
+
+    /**
+     * 列出目录中所有分段的序号
+     *
+     * @param directory 审计日志目录
+     * @return 按从旧到新排序的分段序号
+     */
+    static long[] listSegments(File directory) {
+        String[] names = directory.list();
+        if (names == null) {
+            return new long[0];
+        }
+        long[] indexes = new long[names.length];
+        int count = 0;
+        for (String name : names) {
+            if (!name.startsWith(AuditLog.SEGMENT_PREFIX) || !name.endsWith(AuditLog.SEGMENT_SUFFIX)) {
+                continue;
+            }
+            try {
+                indexes[count] = Long.parseLong(name.substring(AuditLog.SEGMENT_PREFIX.length(),
+                        name.length() - AuditLog.SEGMENT_SUFFIX.length()));
+                count++;
+            } catch (NumberFormatException e) {
+                Log.w(TAG, "Ignoring unexpected file " + name);
+            }
+        }
+        long[] result = Arrays.copyOf(indexes, count);
+        Arrays.sort(result);
+        return result;
+    }
+}
@@ -0,0 +1,86 @@
+package com.surpasslike.welcomateservice.audit;
+
+/**
+ * 审计日志中的一条记录
+ * 记录一次账户变更：操作类型、发生时间、涉及的账户或用户名以及操作结果
+ */
+public class AuditRecord {
+
+    /**
+     * 审计的操作类型，code 是写入日志文件的稳定编码
+     */
+    public enum Type {
+        REGISTER(1),
+        DELETE(2),
+        PASSWORD_CHANGE(3);
+
+        final byte code;
+
+        Type(int code) {
+            this.code = (byte) code;
+        }
+
+        /**
+         * 根据编码查找操作类型
+         *
+         * @param code 日志中的编码
+         * @return 对应的类型，未知编码返回 null
+         */
+        static Type fromCode(byte code) {
+            for (Type type : values()) {
+                if (type.code == code) {
+                    return type;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final long sequence;
+    private final long timestampMillis;
+    private final Type type;
+    private final String key;
+    private final long result;
+
+    /**
+     * 构造函数
+     *
+     * @param sequence        全局递增的序号
+     * @param timestampMillis 记录时间（毫秒时间戳）
+     * @param type            操作类型
+     * @param key             注册时为账户，删除和改密时为用户名（超长时被截断）
+     * @param result          操作结果：注册为新行 ID（-1 表示失败），删除和改密为受影响的行数
+     */
+    public AuditRecord(long sequence, long timestampMillis, Type type, String key, long result) {
+        this.sequence = sequence;
+        this.timestampMillis = timestampMillis;
+        this.type = type;
+        this.key = key;
+        this.result = result;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public long getResult() {
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "#" + sequence + " " + timestampMillis + " " + type + " " + key + " -> " + result;
+    }
+}
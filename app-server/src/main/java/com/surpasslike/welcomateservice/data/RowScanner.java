@@ -0,0 +1,75 @@
+package com.surpasslike.welcomateservice.data;
+
+import android.database.CharArrayBuffer;
+import android.database.Cursor;
+
+/**
+ * 逐行扫描游标中的文本列，不为每一行创建 String
+ * 列索引在创建时解析一次；每前进一行，各列的文本被复制到该列复用的 {@link CharArrayBuffer} 中，
+ * 缓冲区只在遇到更长的值时扩容，因此扫描大量行时几乎不产生垃圾
+ * 调用方在需要保留某个值时才用 {@link #getString(int)} 创建 String
+ */
+final class RowScanner {
+    private final Cursor cursor;
+    private final int[] columns;
+    private final CharArrayBuffer[] buffers;
+
+    /**
+     * 构造函数
+     *
+     * @param cursor      要扫描的游标，由调用方负责关闭
+     * @param columnNames 要读取的列，之后按此顺序用序号访问
+     * @throws IllegalArgumentException 某一列不存在时抛出
+     */
+    RowScanner(Cursor cursor, String... columnNames) {
+        this.cursor = cursor;
+        this.columns = new int[columnNames.length];
+        this.buffers = new CharArrayBuffer[columnNames.length];
+        for (int i = 0; i < columnNames.length; i++) {
+            columns[i] = cursor.getColumnIndexOrThrow(columnNames[i]);
+            buffers[i] = new CharArrayBuffer(64);
+        }
+    }
+
+    /**
+     * 前进到下一行并复制各列的文本
+     *
+     * @return 没有更多行时返回 false
+     */
+    boolean next() {
+        if (!cursor.moveToNext()) {
+            return false;
+        }
+        for (int i = 0; i < columns.length; i++) {
+            cursor.copyStringToBuffer(columns[i], buffers[i]);
+        }
+        return true;
+    }
+
+    /**
+     * @param column 列序号（构造时的顺序）
+     * @return 当前行该列的字符，有效长度见 {@link #length(int)}；缓冲区在下一次 {@link #next()} 时被覆盖
+     */
+    char[] chars(int column) {
+        return buffers[column].data;
+    }
+
+    /**
+     * @param column 列序号（构造时的顺序）
+     * @return 当前行该列的长度，null 值的长度为 0
+     */
+    int length(int column) {
+        return buffers[column].sizeCopied;
+    }
+
+    /**
+     * @param column 列序号（构造时的顺序）
+     * @return 当前行该列的值，可能为 null
+     */
+    String getString(int column) {
+        if (cursor.isNull(columns[column])) {
+            return null;
+        }
+        return new String(buffers[column].data, 0, buffers[column].sizeCopied);
+    }
+}
@@ -0,0 +1,55 @@
+package com.surpasslike.welcomateservice.data;
+
+/**
+ * 用户名和账户按首字符分桶的规则，用于列表的快速滚动
+ * 首字符按 SQLite BINARY 排序的顺序分桶：空值和空字符串一个桶，每个 ASCII 字符一个桶，所有非 ASCII 字符一个桶，
+ * 因此每个桶在排序后的列表中都是连续的一段，桶的起始位置就是它前面各桶行数之和
+ * 各桶的行数由读模型的视图统计（见 {@link UserView#bucketCounts}），读模型不可用时由 SQL 分组计数得到
+ */
+final class SectionIndex {
+    /** 桶的数量：空值、128 个 ASCII 字符、非 ASCII */
+    static final int BUCKETS = 130;
+    private static final int NON_ASCII_BUCKET = BUCKETS - 1;
+
+    private SectionIndex() {
+    }
+
+    /**
+     * 计算值所在的桶，与 SQL 中 unicode(列) 的结果经 {@link #bucketOfCodePoint} 映射后一致
+     *
+     * @param value 用户名或账户，可以为 null
+     * @return 桶序号
+     */
+    static int bucketOf(String value) {
+        if (value == null || value.isEmpty()) {
+            return 0;
+        }
+        return bucketOfCodePoint(value.charAt(0));
+    }
+
+    /**
+     * @param codePoint 首字符的码点，小于 0 表示空值或空字符串
+     * @return 桶序号
+     */
+    static int bucketOfCodePoint(int codePoint) {
+        if (codePoint < 0) {
+            return 0;
+        }
+        return codePoint < 128 ? codePoint + 1 : NON_ASCII_BUCKET;
+    }
+
+    /**
+     * 桶在快速滚动条上显示的标签
+     * 字母和数字显示本身（大小写分开，与排序一致），其他可见 ASCII 字符显示本身，控制字符和空值显示 #，非 ASCII 显示 …
+     *
+     * @param bucket 桶序号
+     * @return 标签
+     */
+    static String labelOf(int bucket) {
+        if (bucket == NON_ASCII_BUCKET) {
+            return "…";
+        }
+        char c = (char) (bucket - 1);
+        return bucket > 0 && c > ' ' && c < 127 ? String.valueOf(c) : "#";
+    }
+}
@@ -0,0 +1,117 @@
+package com.surpasslike.welcomateservice.data;
+
+import android.content.Context;
+import android.database.DatabaseUtils;
+
+import com.surpasslike.welcomateservice.data.db.DatabaseHelper;
+
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * 用户存储的一组分片
+ * 每个分片是一个独立的数据库文件，拥有自己的 DatabaseHelper 和写管道（写线程），
+ * 因此不同分片上的写操作可以并行提交
+ * 账户按其 UTF-8 字节的 CRC32 稳定地映射到分片，映射结果与进程、设备和系统版本无关
+ */
+final class ShardSet {
+    // 组提交参数：一批最多 64 个写操作，最多等待 2 毫秒
+    private static final int WRITE_BATCH_SIZE = 64;
+    private static final long WRITE_BATCH_DELAY_MS = 2;
+
+    final DatabaseHelper[] helpers;
+    final WritePipeline[] pipelines;
+
+    // 各分片变更日志标识的组合，首次使用时读取，0 表示尚未读取或已被 resetJournalId 丢弃
+    private volatile long journalId;
+
+    /**
+     * 打开（必要时创建）指定数量的分片
+     *
+     * @param context     应用上下文
+     * @param storageName 存储名称，见 {@link DatabaseHelper#databaseName(String, int, int)}
+     * @param count       分片数量，至少为 1
+     */
+    ShardSet(Context context, String storageName, int count) {
+        helpers = new DatabaseHelper[count];
+        pipelines = new WritePipeline[count];
+        for (int i = 0; i < count; i++) {
+            helpers[i] = new DatabaseHelper(context, DatabaseHelper.databaseName(storageName, i, count));
+            pipelines[i] = new WritePipeline(helpers[i], "user-writer-" + i, WRITE_BATCH_SIZE, WRITE_BATCH_DELAY_MS);
+        }
+    }
+
+    /**
+     * @return 分片数量
+     */
+    int size() {
+        return helpers.length;
+    }
+
+    /**
+     * 计算账户所在的分片序号
+     *
+     * @param account 账户
+     * @return 分片序号
+     */
+    int indexFor(String account) {
+        return indexFor(account, helpers.length);
+    }
+
+    /**
+     * 计算账户在给定分片数量下所在的分片序号
+     *
+     * @param account 账户，null 被视为空字符串
+     * @param count   分片数量
+     * @return 分片序号
+     */
+    static int indexFor(String account, int count) {
+        if (count == 1) {
+            return 0;
+        }
+        CRC32 crc = new CRC32();
+        if (account != null) {
+            crc.update(account.getBytes(StandardCharsets.UTF_8));
+        }
+        return (int) (crc.getValue() % count);
+    }
+
+    /**
+     * 获取这一组分片的变更日志标识
+     * 由每个分片数据库创建时生成的标识组合而成，重新分片后的新文件一定得到不同的标识
+     *
+     * @return 日志标识，不为 0
+     */
+    long journalId() {
+        long id = journalId;
+        if (id == 0) {
+            for (DatabaseHelper helper : helpers) {
+                id = id * 31 + DatabaseUtils.longForQuery(helper.getReadableDatabase(), UserStatements.JOURNAL_ID, null);
+            }
+            if (id == 0) {
+                id = 1;
+            }
+            journalId = id;
+        }
+        return id;
+    }
+
+    /**
+     * 丢弃缓存的日志标识，在分片的日志标识可能已经改变（批量载入之后）时调用，下一次使用时重新读取
+     */
+    void resetJournalId() {
+        journalId = 0;
+    }
+
+    /**
+     * 关闭所有分片：先等待写管道提交完已入队的操作，再关闭数据库
+     */
+    void close() {
+        for (WritePipeline pipeline : pipelines) {
+            pipeline.shutdown();
+        }
+        for (DatabaseHelper helper : helpers) {
+            helper.close();
+        }
+    }
+}
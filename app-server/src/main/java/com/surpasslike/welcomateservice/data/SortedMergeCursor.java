@@ -0,0 +1,253 @@
+package com.surpasslike.welcomateservice.data;
+
+import android.database.AbstractCursor;
+import android.database.CharArrayBuffer;
+import android.database.Cursor;
+
+import java.util.Arrays;
+
+/**
+ * 把多个已按同一列排好序的游标归并成一个有序游标
+ * 用于分片存储下的有序查询：每个分片各自用索引排序，这里只做 k 路归并，不把数据复制到内存中
+ * 归并是增量的，只进行到访问过的最大位置；已经归并的每一行记录来自哪个游标的第几行，
+ * 因此向后移动和跳回已访问过的位置是 O(1) 的，只有第一次到达更远的位置才需要继续归并
+ * 各游标下一行的排序键复制到复用的 CharArrayBuffer 中比较，归并不为每次比较创建字符串
+ * 文本按 Unicode 码点比较，与 SQLite 默认的 BINARY 排序规则（按 UTF-8 字节比较）一致
+ */
+final class SortedMergeCursor extends AbstractCursor {
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final Cursor[] cursors;
+    private final int sortColumn;
+    private final boolean descending;
+    private final int count;
+
+    // 每个游标尚未归并的第一行（头部）及其排序键；头部到达游标末尾时等于该游标的行数
+    private final int[] sizes;
+    private final int[] heads;
+    private final CharArrayBuffer[] headKeys;
+    private final long[] headLongs;
+    private final int[] headTypes;
+
+    // 已经归并的行：第 i 行来自 mergedCursor[i] 号游标的第 mergedRow[i] 行
+    private byte[] mergedCursor;
+    private int[] mergedRow;
+    private int merged;
+
+    // 当前所在行来自的游标，已经移动到对应的行
+    private Cursor current;
+
+    /**
+     * 构造函数
+     *
+     * @param cursors    各分片的游标，列结构必须相同，并且都已按 sortColumn 排序；最多 127 个
+     * @param sortColumn 排序列名
+     * @param descending 是否降序
+     * @param limit      最多返回的行数，小于 0 表示不限制
+     */
+    SortedMergeCursor(Cursor[] cursors, String sortColumn, boolean descending, int limit) {
+        if (cursors.length > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many cursors: " + cursors.length);
+        }
+        this.cursors = cursors;
+        this.sortColumn = cursors[0].getColumnIndexOrThrow(sortColumn);
+        this.descending = descending;
+        int n = cursors.length;
+        sizes = new int[n];
+        heads = new int[n];
+        headKeys = new CharArrayBuffer[n];
+        headLongs = new long[n];
+        headTypes = new int[n];
+        int total = 0;
+        for (int i = 0; i < n; i++) {
+            sizes[i] = cursors[i].getCount();
+            total += sizes[i];
+            headKeys[i] = new CharArrayBuffer(32);
+            loadHead(i);
+        }
+        this.count = limit < 0 ? total : Math.min(total, limit);
+        int capacity = Math.min(count, INITIAL_CAPACITY);
+        mergedCursor = new byte[capacity];
+        mergedRow = new int[capacity];
+    }
+
+    @Override
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return cursors[0].getColumnNames();
+    }
+
+    @Override
+    public boolean onMove(int oldPosition, int newPosition) {
+        while (merged <= newPosition) {
+            if (!step()) {
+                return false;
+            }
+        }
+        current = cursors[mergedCursor[newPosition]];
+        return current.moveToPosition(mergedRow[newPosition]);
+    }
+
+    /**
+     * 归并下一行：在各游标的头部中选出排序最靠前的一行，记录它的来源，再推进该游标的头部
+     *
+     * @return 还有下一行时返回 true
+     */
+    private boolean step() {
+        int best = -1;
+        for (int i = 0; i < cursors.length; i++) {
+            if (heads[i] < sizes[i] && (best < 0 || compareHeads(i, best) < 0)) {
+                best = i;
+            }
+        }
+        if (best < 0) {
+            return false;
+        }
+        if (merged == mergedRow.length) {
+            int capacity = Math.min(count, Math.max(INITIAL_CAPACITY, merged * 2));
+            mergedCursor = Arrays.copyOf(mergedCursor, capacity);
+            mergedRow = Arrays.copyOf(mergedRow, capacity);
+        }
+        mergedCursor[merged] = (byte) best;
+        mergedRow[merged] = heads[best];
+        merged++;
+        heads[best]++;
+        loadHead(best);
+        return true;
+    }
+
+    /**
+     * 读取一个游标头部行的排序键
+     */
+    private void loadHead(int index) {
+        if (heads[index] >= sizes[index]) {
+            return;
+        }
+        Cursor cursor = cursors[index];
+        cursor.moveToPosition(heads[index]);
+        int type = cursor.getType(sortColumn);
+        headTypes[index] = type;
+        if (type == FIELD_TYPE_INTEGER) {
+            headLongs[index] = cursor.getLong(sortColumn);
+        }
+        if (type != FIELD_TYPE_NULL) {
+            cursor.copyStringToBuffer(sortColumn, headKeys[index]);
+        }
+    }
+
+    /**
+     * 比较两个游标头部行的排序列
+     *
+     * @return 按排序方向，a 应排在 b 之前时返回负数
+     */
+    private int compareHeads(int a, int b) {
+        int result;
+        if (headTypes[a] == FIELD_TYPE_INTEGER && headTypes[b] == FIELD_TYPE_INTEGER) {
+            result = Long.compare(headLongs[a], headLongs[b]);
+        } else if (headTypes[a] == FIELD_TYPE_NULL || headTypes[b] == FIELD_TYPE_NULL) {
+            // null 排在最前（与 SQLite 一致）
+            result = Boolean.compare(headTypes[b] == FIELD_TYPE_NULL, headTypes[a] == FIELD_TYPE_NULL);
+        } else {
+            CharArrayBuffer ka = headKeys[a];
+            CharArrayBuffer kb = headKeys[b];
+            result = compareCodePoints(ka.data, ka.sizeCopied, kb.data, kb.sizeCopied);
+        }
+        return descending ? -result : result;
+    }
+
+    /**
+     * 按 Unicode 码点比较两段字符，规则与 {@link #compareCodePoints(String, String)} 一致
+     */
+    static int compareCodePoints(char[] a, int aLength, char[] b, int bLength) {
+        int i = 0;
+        int j = 0;
+        while (i < aLength && j < bLength) {
+            int ca = Character.codePointAt(a, i, aLength);
+            int cb = Character.codePointAt(b, j, bLength);
+            if (ca != cb) {
+                return Integer.compare(ca, cb);
+            }
+            i += Character.charCount(ca);
+            j += Character.charCount(cb);
+        }
+        return Integer.compare(aLength - i, bLength - j);
+    }
+
+    /**
+     * 按 Unicode 码点比较两个字符串，null 排在最前（与 SQLite 一致）
+     */
+    static int compareCodePoints(String a, String b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            int ca = a.codePointAt(i);
+            int cb = b.codePointAt(j);
+            if (ca != cb) {
+                return Integer.compare(ca, cb);
+            }
+            i += Character.charCount(ca);
+            j += Character.charCount(cb);
+        }
+        return Integer.compare(a.length() - i, b.length() - j);
+    }
+
+    @Override
+    public String getString(int column) {
+        return current.getString(column);
+    }
+
+    @Override
+    public short getShort(int column) {
+        return current.getShort(column);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return current.getInt(column);
+    }
+
+    @Override
+    public long getLong(int column) {
+        return current.getLong(column);
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return current.getFloat(column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        return current.getDouble(column);
+    }
+
+    @Override
+    public byte[] getBlob(int column) {
+        return current.getBlob(column);
+    }
+
+    @Override
+    public int getType(int column) {
+        return current.getType(column);
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return current.isNull(column);
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        for (Cursor cursor : cursors) {
+            cursor.close();
+        }
+    }
+}
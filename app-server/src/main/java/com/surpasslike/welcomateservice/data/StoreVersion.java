@@ -0,0 +1,205 @@
+package com.surpasslike.welcomateservice.data;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+
+/**
+ * 用户存储的跨进程版本号
+ * 界面进程和服务进程打开同一组用户数据库，各自持有读模型、首字符分组等内存状态；
+ * 每次提交写操作（插入、删除、改密、恢复、重新分片）后，写入方把共享文件中的版本号加一，
+ * 其他进程在读取内存状态前比较版本号，发现不是自己写入的变化时，从各分片的变更日志读取自己上次同步之后的条目，
+ * 只把变化的账户应用到内存状态；版本号只表示"有变化"，具体变化了什么由日志给出（见 DatabaseHelper）
+ * <p>
+ * 版本文件被映射到内存，检查版本只是一次内存读取，不需要系统调用；加一时持有文件锁，保证多个进程的递增不会丢失
+ * 文件同时记录当前的分片数量，重新分片后其他进程据此重新打开分片
+ * <p>
+ * 数据区之后的一个字节用作跨进程的布局锁：写操作期间持有共享锁，重新分片期间持有独占锁，
+ * 因此一个进程复制和删除旧分片时，其他进程不会向这些旧分片提交写入
+ * <pre>
+ *   0  long  版本号
+ *   8  int   分片数量，0 表示尚未记录
+ * </pre>
+ */
+final class StoreVersion {
+    private static final String TAG = "StoreVersion";
+
+    static final String FILE_NAME = "user_store.version";
+    private static final int OFFSET_VERSION = 0;
+    private static final int OFFSET_SHARD_COUNT = 8;
+    private static final int SIZE = 16;
+    // 布局锁的位置，不与版本号所在的区域重叠，等待布局锁时不影响其他进程加一
+    private static final long LAYOUT_LOCK_POSITION = SIZE;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    // 本进程已知的版本号：自己写入后或同步后的值，只在持有 this 时修改
+    private volatile long expected;
+    // 本进程持有的布局锁；同一进程对同一区域重复加锁会抛出 OverlappingFileLockException，共享锁由本进程的写操作共用
+    private final Object layoutMonitor = new Object();
+    private FileLock layoutLock;
+    private int layoutHolders;
+
+    /**
+     * 打开（必要时创建）版本文件
+     *
+     * @param file 版本文件
+     * @throws IOException 无法创建或映射文件时抛出
+     */
+    StoreVersion(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            channel = raf.getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, SIZE);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        expected = buffer.getLong(OFFSET_VERSION);
+    }
+
+    /**
+     * @return 共享的版本号
+     */
+    long current() {
+        return buffer.getLong(OFFSET_VERSION);
+    }
+
+    /**
+     * 检查自上次同步或写入以来是否有其他进程写入
+     *
+     * @return 有其他进程写入时返回 true，调用方应按变更日志更新内存状态
+     */
+    boolean sync() {
+        // 快速路径：没有变化时只读取一次映射内存，不加锁
+        if (current() == expected) {
+            return false;
+        }
+        synchronized (this) {
+            long version = current();
+            if (version == expected) {
+                return false;
+            }
+            expected = version;
+            return true;
+        }
+    }
+
+    /**
+     * 在本进程提交一次写操作后把版本号加一
+     *
+     * @return 期间还有其他进程写入时返回 true，调用方之后需要按变更日志追上这些写入
+     */
+    synchronized boolean bump() {
+        try (FileLock lock = channel.lock(0, SIZE, false)) {
+            long version = buffer.getLong(OFFSET_VERSION) + 1;
+            buffer.putLong(OFFSET_VERSION, version);
+            boolean external = version != expected + 1;
+            expected = version;
+            return external;
+        } catch (IOException e) {
+            // 无法加锁时无法判断其他进程的写入，按有外部变化处理
+            Log.w(TAG, "Cannot lock store version", e);
+            return true;
+        }
+    }
+
+    /**
+     * @return 共享的分片数量，尚未记录时返回 0
+     */
+    int getShardCount() {
+        return buffer.getInt(OFFSET_SHARD_COUNT);
+    }
+
+    /**
+     * 记录新的分片数量并把版本号加一，其他进程同步时会重新打开分片
+     *
+     * @param shardCount 分片数量
+     * @return 期间还有其他进程写入时返回 true，与 {@link #bump()} 相同
+     */
+    synchronized boolean publishShardCount(int shardCount) {
+        try (FileLock lock = channel.lock(0, SIZE, false)) {
+            buffer.putInt(OFFSET_SHARD_COUNT, shardCount);
+            long version = buffer.getLong(OFFSET_VERSION) + 1;
+            buffer.putLong(OFFSET_VERSION, version);
+            boolean external = version != expected + 1;
+            expected = version;
+            return external;
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot lock store version", e);
+            return true;
+        }
+    }
+
+    /**
+     * 获取共享的布局锁，持有期间其他进程不能重新分片；其他进程正在重新分片时等待它完成
+     * 本进程中并发的写操作共用同一把文件锁，最后一个持有者释放时才真正解锁
+     * 无法加锁时只记录日志，写操作照常进行，与无法使用版本文件时相同
+     */
+    void lockLayoutShared() {
+        synchronized (layoutMonitor) {
+            if (layoutHolders == 0) {
+                try {
+                    layoutLock = channel.lock(LAYOUT_LOCK_POSITION, 1, true);
+                } catch (IOException e) {
+                    Log.w(TAG, "Cannot lock store layout", e);
+                }
+            }
+            layoutHolders++;
+        }
+    }
+
+    /**
+     * 释放 {@link #lockLayoutShared()} 获取的共享布局锁
+     */
+    void unlockLayoutShared() {
+        synchronized (layoutMonitor) {
+            if (--layoutHolders == 0) {
+                releaseLayoutLock();
+            }
+        }
+    }
+
+    /**
+     * 获取独占的布局锁，等待所有进程中进行中的写操作结束，供重新分片使用
+     * 调用方必须先阻止本进程的写操作（持有存储布局写锁），本进程不能同时持有共享布局锁
+     *
+     * @throws IOException 无法加锁时抛出，调用方不能继续重新分片
+     */
+    void lockLayoutExclusive() throws IOException {
+        synchronized (layoutMonitor) {
+            if (layoutHolders != 0) {
+                throw new IllegalStateException("Store layout is locked for writing");
+            }
+            layoutLock = channel.lock(LAYOUT_LOCK_POSITION, 1, false);
+        }
+    }
+
+    /**
+     * 释放 {@link #lockLayoutExclusive()} 获取的独占布局锁
+     */
+    void unlockLayoutExclusive() {
+        synchronized (layoutMonitor) {
+            releaseLayoutLock();
+        }
+    }
+
+    private void releaseLayoutLock() {
+        if (layoutLock == null) {
+            return;
+        }
+        try {
+            layoutLock.release();
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot unlock store layout", e);
+        }
+        layoutLock = null;
+    }
+}
@@ -0,0 +1,433 @@
+package com.surpasslike.welcomateservice.data;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * 用户表（用户名和账户两列）的不可变内存快照
+ * 所有字符串首尾相连存放在一个 char 数组中，每行只占两个 int 偏移量，没有逐行的对象开销；
+ * 行按账户排序，另有一个按用户名排序的行号索引，两种查找都是二分查找
+ * 快照创建后不再修改，任意线程都可以不加锁地读取；之后的写操作记录在 {@link UserOverlay} 中，
+ * 积累到一定数量后通过 {@link #merge} 生成新的快照
+ */
+final class UserIndex {
+    // 第 i 行（按账户排序）：用户名位于 [offsets[2i], offsets[2i+1])，账户位于 [offsets[2i+1], offsets[2i+2])
+    private final char[] chars;
+    private final int[] offsets;
+    // 按用户名排序的行号
+    private final int[] byUsername;
+    // 用户名和账户各首字符桶的行数（见 SectionIndex），第一次使用时计算；快照不可变，重复计算的结果相同
+    private volatile int[] usernameBuckets;
+    private volatile int[] accountBuckets;
+
+    private UserIndex(char[] chars, int[] offsets, int[] byUsername) {
+        this.chars = chars;
+        this.offsets = offsets;
+        this.byUsername = byUsername;
+    }
+
+    /**
+     * 逐行收集用户名和账户并创建快照
+     * 字符直接追加到一个按需扩容的数组中，调用方可以传入复用的缓冲区（例如游标的 CharArrayBuffer），
+     * 收集过程中不为每一行创建 String
+     */
+    static final class Builder {
+        private char[] chars = new char[1024];
+        private int[] offsets = new int[129];
+        private int length;
+        private int rows;
+
+        /**
+         * 追加一行，字符被复制，缓冲区可以在返回后复用
+         *
+         * @param username       用户名字符
+         * @param usernameLength 用户名长度
+         * @param account        账户字符
+         * @param accountLength  账户长度
+         */
+        void add(char[] username, int usernameLength, char[] account, int accountLength) {
+            ensureCapacity(usernameLength + accountLength);
+            offsets[rows * 2] = length;
+            System.arraycopy(username, 0, chars, length, usernameLength);
+            length += usernameLength;
+            offsets[rows * 2 + 1] = length;
+            System.arraycopy(account, 0, chars, length, accountLength);
+            length += accountLength;
+            rows++;
+        }
+
+        /**
+         * 追加一行，null 被视为空字符串
+         *
+         * @param username 用户名
+         * @param account  账户
+         */
+        void add(String username, String account) {
+            ensureCapacity(length(username) + length(account));
+            offsets[rows * 2] = length;
+            length = append(chars, length, username);
+            offsets[rows * 2 + 1] = length;
+            length = append(chars, length, account);
+            rows++;
+        }
+
+        private void ensureCapacity(int added) {
+            if (length + added > chars.length) {
+                chars = Arrays.copyOf(chars, Math.max(chars.length * 2, length + added));
+            }
+            if (rows * 2 + 3 > offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+        }
+
+        /**
+         * 按账户排序已收集的行并创建快照，之后不能再使用此 Builder
+         *
+         * @return 新的快照
+         */
+        UserIndex build() {
+            final int count = rows;
+            offsets[count * 2] = length;
+            final UserIndex collected = new UserIndex(chars, offsets, null);
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return collected.compareRanges(collected.offsets[a * 2 + 1], collected.offsets[a * 2 + 2],
+                            collected.offsets[b * 2 + 1], collected.offsets[b * 2 + 2]);
+                }
+            });
+            char[] sortedChars = new char[length];
+            int[] sortedOffsets = new int[count * 2 + 1];
+            int position = 0;
+            for (int row = 0; row < count; row++) {
+                int from = order[row] * 2;
+                int rowLength = offsets[from + 2] - offsets[from];
+                System.arraycopy(chars, offsets[from], sortedChars, position, rowLength);
+                sortedOffsets[row * 2] = position;
+                sortedOffsets[row * 2 + 1] = position + offsets[from + 1] - offsets[from];
+                position += rowLength;
+            }
+            sortedOffsets[count * 2] = position;
+            UserIndex unindexed = new UserIndex(sortedChars, sortedOffsets, null);
+            return new UserIndex(sortedChars, sortedOffsets, unindexed.sortByUsername());
+        }
+    }
+
+    /**
+     * @return 行数
+     */
+    int size() {
+        return offsets.length / 2;
+    }
+
+    /**
+     * 检查账户是否存在
+     *
+     * @param account 账户
+     * @return 存在时返回 true
+     */
+    boolean containsAccount(String account) {
+        return findAccount(account) >= 0;
+    }
+
+    /**
+     * 检查用户名是否存在
+     *
+     * @param username 用户名
+     * @return 存在时返回 true
+     */
+    boolean containsUsername(String username) {
+        int low = 0;
+        int high = byUsername.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int row = byUsername[mid];
+            int cmp = compare(offsets[row * 2], offsets[row * 2 + 1], username);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 按用户名顺序获取第 index 个用户的用户名
+     */
+    String usernameAt(int index) {
+        int row = byUsername[index];
+        return new String(chars, offsets[row * 2], offsets[row * 2 + 1] - offsets[row * 2]);
+    }
+
+    /**
+     * 查找用户名在按用户名排序的顺序中第一次出现的位置
+     *
+     * @param username 用户名
+     * @return 第一个不小于 username 的位置，可能等于 {@link #size()}
+     */
+    int firstUsernameIndex(String username) {
+        int low = 0;
+        int high = byUsername.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int row = byUsername[mid];
+            if (compare(offsets[row * 2], offsets[row * 2 + 1], username) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 检查按用户名顺序的第 index 个用户的用户名，不创建 String
+     */
+    boolean usernameEquals(int index, String username) {
+        int row = byUsername[index];
+        return compare(offsets[row * 2], offsets[row * 2 + 1], username) == 0;
+    }
+
+    /**
+     * 按用户名顺序获取第 index 个用户的账户
+     */
+    String accountAt(int index) {
+        int row = byUsername[index];
+        return new String(chars, offsets[row * 2 + 1], offsets[row * 2 + 2] - offsets[row * 2 + 1]);
+    }
+
+    /**
+     * 把叠加层合并进来，生成新的快照，本快照不变
+     * 两者都按账户排序，行按顺序归并；用户名索引也是把本快照的索引（去掉被覆盖的行）与新增行归并，
+     * 只有新增的几行需要排序，代价与快照大小成线性关系
+     *
+     * @param overlay 本快照之后提交的写操作
+     * @return 新的快照
+     */
+    UserIndex merge(UserOverlay overlay) {
+        int count = size();
+        int extra = 0;
+        for (int j = 0; j < overlay.size(); j++) {
+            if (overlay.usernameAt(j) != null) {
+                extra += overlay.usernameAt(j).length() + overlay.accountAt(j).length();
+            }
+        }
+        char[] newChars = new char[chars.length + extra];
+        int[] newOffsets = new int[(count + overlay.size()) * 2 + 1];
+        // 本快照每一行在新快照中的行号，被覆盖的行为 -1
+        int[] moved = new int[count];
+        int[] added = new int[overlay.size()];
+        int addedCount = 0;
+        int length = 0;
+        int rows = 0;
+        int row = 0;
+        int j = 0;
+        while (row < count || j < overlay.size()) {
+            int cmp = row == count ? 1 : j == overlay.size() ? -1
+                    : compare(offsets[row * 2 + 1], offsets[row * 2 + 2], overlay.accountAt(j));
+            if (cmp < 0) {
+                int start = offsets[row * 2];
+                int rowLength = offsets[row * 2 + 2] - start;
+                System.arraycopy(chars, start, newChars, length, rowLength);
+                newOffsets[rows * 2] = length;
+                newOffsets[rows * 2 + 1] = length + offsets[row * 2 + 1] - start;
+                length += rowLength;
+                moved[row++] = rows++;
+                continue;
+            }
+            if (cmp == 0) {
+                moved[row++] = -1;
+            }
+            String username = overlay.usernameAt(j);
+            if (username != null) {
+                newOffsets[rows * 2] = length;
+                length = append(newChars, length, username);
+                newOffsets[rows * 2 + 1] = length;
+                length = append(newChars, length, overlay.accountAt(j));
+                added[addedCount++] = rows++;
+            }
+            j++;
+        }
+        newOffsets[rows * 2] = length;
+        final UserIndex merged = new UserIndex(Arrays.copyOf(newChars, length), Arrays.copyOf(newOffsets, rows * 2 + 1), null);
+
+        Integer[] addedOrder = new Integer[addedCount];
+        for (int i = 0; i < addedCount; i++) {
+            addedOrder[i] = added[i];
+        }
+        Arrays.sort(addedOrder, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return merged.compareUsernames(a, b);
+            }
+        });
+        int[] newByUsername = new int[rows];
+        int position = 0;
+        int next = 0;
+        for (int old : byUsername) {
+            int kept = moved[old];
+            if (kept < 0) {
+                continue;
+            }
+            while (next < addedCount && merged.compareUsernames(addedOrder[next], kept) < 0) {
+                newByUsername[position++] = addedOrder[next++];
+            }
+            newByUsername[position++] = kept;
+        }
+        while (next < addedCount) {
+            newByUsername[position++] = addedOrder[next++];
+        }
+        return new UserIndex(merged.chars, merged.offsets, newByUsername);
+    }
+
+    /**
+     * 比较两行的用户名
+     */
+    private int compareUsernames(int a, int b) {
+        return compareRanges(offsets[a * 2], offsets[a * 2 + 1], offsets[b * 2], offsets[b * 2 + 1]);
+    }
+
+    /**
+     * 估算快照占用的堆内存（字节），包括数组对象头
+     *
+     * @return 估算的字节数
+     */
+    long estimateBytes() {
+        final int objectHeader = 16;
+        return objectHeader
+                + objectHeader + 2L * chars.length
+                + objectHeader + 4L * offsets.length
+                + objectHeader + 4L * byUsername.length;
+    }
+
+    /**
+     * 统计用户名或账户在各首字符桶中的行数
+     *
+     * @param byUsername true 表示按用户名，false 表示按账户
+     * @return 各桶的行数，调用方不能修改
+     */
+    int[] bucketCounts(boolean byUsername) {
+        int[] counts = byUsername ? usernameBuckets : accountBuckets;
+        if (counts == null) {
+            counts = new int[SectionIndex.BUCKETS];
+            for (int row = 0; row < size(); row++) {
+                counts[bucketAt(row, byUsername)]++;
+            }
+            if (byUsername) {
+                usernameBuckets = counts;
+            } else {
+                accountBuckets = counts;
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * 获取一行（按账户排序的行号）的用户名或账户所在的首字符桶
+     */
+    int bucketAt(int row, boolean byUsername) {
+        int start = offsets[row * 2 + (byUsername ? 0 : 1)];
+        int end = offsets[row * 2 + (byUsername ? 1 : 2)];
+        return start == end ? SectionIndex.bucketOfCodePoint(-1) : SectionIndex.bucketOfCodePoint(chars[start]);
+    }
+
+    /**
+     * 二分查找账户
+     *
+     * @return 找到时返回行号（按账户排序）；否则返回 -(插入位置 + 1)
+     */
+    int findAccount(String account) {
+        int low = 0;
+        int high = size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(offsets[mid * 2 + 1], offsets[mid * 2 + 2], account);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * 生成按用户名排序的行号索引
+     */
+    private int[] sortByUsername() {
+        int count = size();
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return compareRanges(offsets[a * 2], offsets[a * 2 + 1], offsets[b * 2], offsets[b * 2 + 1]);
+            }
+        });
+        int[] index = new int[count];
+        for (int i = 0; i < count; i++) {
+            index[i] = order[i];
+        }
+        return index;
+    }
+
+    /**
+     * 比较 chars 中的一段与给定字符串，规则与 {@link SortedMergeCursor#compareCodePoints} 一致
+     */
+    private int compare(int start, int end, String value) {
+        String other = value == null ? "" : value;
+        int i = start;
+        int j = 0;
+        while (i < end && j < other.length()) {
+            int ca = Character.codePointAt(chars, i, end);
+            int cb = other.codePointAt(j);
+            if (ca != cb) {
+                return Integer.compare(ca, cb);
+            }
+            i += Character.charCount(ca);
+            j += Character.charCount(cb);
+        }
+        return Integer.compare(end - i, other.length() - j);
+    }
+
+    /**
+     * 比较 chars 中的两段
+     */
+    private int compareRanges(int startA, int endA, int startB, int endB) {
+        int i = startA;
+        int j = startB;
+        while (i < endA && j < endB) {
+            int ca = Character.codePointAt(chars, i, endA);
+            int cb = Character.codePointAt(chars, j, endB);
+            if (ca != cb) {
+                return Integer.compare(ca, cb);
+            }
+            i += Character.charCount(ca);
+            j += Character.charCount(cb);
+        }
+        return Integer.compare(endA - i, endB - j);
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    private static int append(char[] target, int position, String value) {
+        if (value == null) {
+            return position;
+        }
+        value.getChars(0, value.length(), target, position);
+        return position + value.length();
+    }
+}
@@ -0,0 +1,135 @@
+package com.surpasslike.welcomateservice.data;
+
+import java.util.Arrays;
+
+/**
+ * 叠加在 {@link UserIndex} 之上的少量已提交写操作，不可变
+ * 每个条目记录一个账户的最终状态：存在（及其用户名）或已删除，条目按账户排序；
+ * 同一个账户再次写入时覆盖原来的条目，因此按提交顺序重复应用同一组写操作得到的结果相同
+ * 写操作只复制这几个小数组，条目数由 {@link UserReadModel} 控制，积累到一定数量后在后台合并进新的基础快照
+ */
+final class UserOverlay {
+    static final UserOverlay EMPTY = new UserOverlay(new String[0], new String[0]);
+
+    // 按账户排序（规则与 UserIndex 相同）
+    private final String[] accounts;
+    // 与 accounts 一一对应，null 表示该账户已被删除
+    private final String[] usernames;
+
+    private UserOverlay(String[] accounts, String[] usernames) {
+        this.accounts = accounts;
+        this.usernames = usernames;
+    }
+
+    /**
+     * @return 条目数
+     */
+    int size() {
+        return accounts.length;
+    }
+
+    String accountAt(int index) {
+        return accounts[index];
+    }
+
+    /**
+     * @return 第 index 个条目的用户名，账户已被删除时返回 null
+     */
+    String usernameAt(int index) {
+        return usernames[index];
+    }
+
+    /**
+     * 二分查找账户
+     *
+     * @return 找到时返回条目序号；否则返回 -(插入位置 + 1)
+     */
+    int find(String account) {
+        int low = 0;
+        int high = accounts.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = SortedMergeCursor.compareCodePoints(accounts[mid], account);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * 生成记录了一次写操作的新叠加层，本叠加层不变
+     *
+     * @param account  账户
+     * @param username 插入时为用户名，删除时为 null
+     * @return 新的叠加层
+     */
+    UserOverlay with(String account, String username) {
+        int found = find(account);
+        if (found >= 0) {
+            if (equal(usernames[found], username)) {
+                return this;
+            }
+            String[] newUsernames = usernames.clone();
+            newUsernames[found] = username;
+            return new UserOverlay(accounts, newUsernames);
+        }
+        int at = -(found + 1);
+        String[] newAccounts = new String[accounts.length + 1];
+        String[] newUsernames = new String[usernames.length + 1];
+        System.arraycopy(accounts, 0, newAccounts, 0, at);
+        System.arraycopy(usernames, 0, newUsernames, 0, at);
+        newAccounts[at] = account;
+        newUsernames[at] = username;
+        System.arraycopy(accounts, at, newAccounts, at + 1, accounts.length - at);
+        System.arraycopy(usernames, at, newUsernames, at + 1, usernames.length - at);
+        return new UserOverlay(newAccounts, newUsernames);
+    }
+
+    /**
+     * 去掉已经合并进基础快照的条目：与 merged 中完全相同的条目被去掉，之后又被覆盖的条目保留
+     *
+     * @param merged 合并进基础快照的叠加层，必须是本叠加层的早期版本
+     * @return 剩余的叠加层
+     */
+    UserOverlay without(UserOverlay merged) {
+        String[] newAccounts = new String[accounts.length];
+        String[] newUsernames = new String[usernames.length];
+        int count = 0;
+        for (int i = 0; i < accounts.length; i++) {
+            int found = merged.find(accounts[i]);
+            if (found >= 0 && equal(merged.usernames[found], usernames[i])) {
+                continue;
+            }
+            newAccounts[count] = accounts[i];
+            newUsernames[count] = usernames[i];
+            count++;
+        }
+        if (count == 0) {
+            return EMPTY;
+        }
+        return new UserOverlay(Arrays.copyOf(newAccounts, count), Arrays.copyOf(newUsernames, count));
+    }
+
+    /**
+     * 估算占用的堆内存（字节），不包括与其他对象共享的字符串
+     */
+    long estimateBytes() {
+        long bytes = 16 + 2 * (16 + 4L * accounts.length);
+        for (int i = 0; i < accounts.length; i++) {
+            bytes += 40 + 2L * accounts[i].length();
+            if (usernames[i] != null) {
+                bytes += 40 + 2L * usernames[i].length();
+            }
+        }
+        return bytes;
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
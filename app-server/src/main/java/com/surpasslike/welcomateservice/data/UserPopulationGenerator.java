@@ -0,0 +1,324 @@
+package com.surpasslike.welcomateservice.data;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.surpasslike.welcomateservice.data.db.DatabaseHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * 合成用户数据生成器，用于大数据量下的测试、基准测试和调试
+ * 生成的是一个完整的 users.db 格式数据库：表结构由 {@link DatabaseHelper} 自己创建，与正式数据库完全相同，
+ * 因此可以直接打开用于测试，也可以交给 {@link UserRepository#restoreFrom(File)} 载入当前存储
+ * <p>
+ * 为了在几秒内写入几十万行：密码只有 {@link Spec#passwordCount} 种，哈希预先计算好；
+ * 插入使用预编译语句，每 {@link Spec#batchSize} 行一个事务，生成期间关闭同步写盘和变更日志触发器
+ * 第 i 个用户的用户名、账户和密码只由规格和 i 决定，测试可以用 {@link #usernameFor}、{@link #accountFor}、{@link #passwordFor} 还原
+ */
+public class UserPopulationGenerator {
+    private static final String TAG = "UserPopulationGenerator";
+
+    /**
+     * 用户名分布
+     */
+    public enum UsernameDistribution {
+        /** 每个用户一个不同的用户名：user_0、user_1 …… */
+        UNIQUE,
+        /** 从 {@link Spec#usernamePoolSize} 个名字中按 Zipf 分布抽取，少数名字被大量用户共用 */
+        ZIPF,
+        /** 随机小写字母，长度 4 到 12 */
+        RANDOM
+    }
+
+    /**
+     * 账户分布
+     */
+    public enum AccountDistribution {
+        /** 按序号递增：acct0000000、acct0000001 ……，插入顺序与索引顺序一致 */
+        SEQUENTIAL,
+        /** 随机前缀加序号，插入顺序与索引顺序无关 */
+        RANDOM,
+        /** 类似邮箱地址：随机名字加序号加少数几个域名，前缀重复较多 */
+        EMAIL
+    }
+
+    /**
+     * 生成规格，默认 10000 个用户，用户名和账户都按序号生成
+     */
+    public static final class Spec {
+        private static final String[] EMAIL_DOMAINS = {"example.com", "mail.test", "corp.test", "users.test"};
+
+        int userCount = 10_000;
+        UsernameDistribution usernames = UsernameDistribution.UNIQUE;
+        int usernamePoolSize = 1_000;
+        double zipfExponent = 1.0;
+        AccountDistribution accounts = AccountDistribution.SEQUENTIAL;
+        int passwordCount = 16;
+        int batchSize = 50_000;
+        long seed = 42;
+
+        public Spec userCount(int userCount) {
+            this.userCount = userCount;
+            return this;
+        }
+
+        public Spec usernames(UsernameDistribution usernames) {
+            this.usernames = usernames;
+            return this;
+        }
+
+        /**
+         * @param poolSize 不同用户名的数量，只用于 {@link UsernameDistribution#ZIPF}
+         * @param exponent Zipf 指数，越大越集中在少数名字上
+         */
+        public Spec zipf(int poolSize, double exponent) {
+            this.usernamePoolSize = poolSize;
+            this.zipfExponent = exponent;
+            return this;
+        }
+
+        public Spec accounts(AccountDistribution accounts) {
+            this.accounts = accounts;
+            return this;
+        }
+
+        /**
+         * @param passwordCount 不同密码的数量，也就是需要预先计算的哈希数量
+         */
+        public Spec passwordCount(int passwordCount) {
+            this.passwordCount = passwordCount;
+            return this;
+        }
+
+        /**
+         * @param batchSize 每个事务插入的行数
+         */
+        public Spec batchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        public Spec seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+    }
+
+    /**
+     * 生成结果
+     */
+    public static final class Result {
+        public final int rows;
+        public final long elapsedMillis;
+
+        Result(int rows, long elapsedMillis) {
+            this.rows = rows;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return rows + " users in " + elapsedMillis + " ms";
+        }
+    }
+
+    private final Context context;
+    private final Spec spec;
+    // Zipf 分布的累积概率，只在 ZIPF 分布时创建
+    private final double[] zipfCumulative;
+
+    /**
+     * 构造函数
+     *
+     * @param context 应用上下文，用于打开数据库
+     * @param spec    生成规格
+     */
+    public UserPopulationGenerator(Context context, Spec spec) {
+        if (spec.userCount < 0 || spec.passwordCount < 1 || spec.batchSize < 1 || spec.usernamePoolSize < 1) {
+            throw new IllegalArgumentException("Invalid population spec");
+        }
+        this.context = context.getApplicationContext();
+        this.spec = spec;
+        this.zipfCumulative = spec.usernames == UsernameDistribution.ZIPF ? zipfTable(spec) : null;
+    }
+
+    /**
+     * 生成一个新的用户数据库
+     *
+     * @param target 目标数据库文件，已存在时会被删除后重新创建
+     * @return 生成结果
+     * @throws IOException 无法删除已有文件时抛出
+     */
+    public Result generate(File target) throws IOException {
+        if (target.exists() && !SQLiteDatabase.deleteDatabase(target)) {
+            throw new IOException("Cannot delete " + target);
+        }
+        long start = SystemClock.elapsedRealtime();
+        // 由 DatabaseHelper 创建表和索引，保证与正式数据库的结构和版本号一致
+        DatabaseHelper helper = new DatabaseHelper(context, target.getAbsolutePath());
+        try {
+            SQLiteDatabase db = helper.getWritableDatabase();
+            // 新文件在生成完成前没有任何价值，不需要每次提交都等待写盘；关闭连接时 WAL 会被合并回主文件
+            db.execSQL("PRAGMA synchronous = OFF");
+            // 生成的行不需要逐行记录变更日志
+            DatabaseHelper.beginBulkLoad(db);
+            insertAll(db);
+            DatabaseHelper.endBulkLoad(db);
+        } finally {
+            helper.close();
+        }
+        Result result = new Result(spec.userCount, SystemClock.elapsedRealtime() - start);
+        Log.d(TAG, "Generated " + result + " into " + target);
+        return result;
+    }
+
+    /**
+     * 生成一个新的用户数据库并替换当前存储中的所有用户
+     *
+     * @param scratch 生成用的临时文件，完成后删除
+     * @return 生成结果，耗时包括载入
+     * @throws IOException 无法创建临时数据库时抛出
+     */
+    public Result replaceAllUsers(File scratch) throws IOException {
+        long start = SystemClock.elapsedRealtime();
+        generate(scratch);
+        try {
+            int rows = UserRepository.getInstance().restoreFrom(scratch);
+            return new Result(rows, SystemClock.elapsedRealtime() - start);
+        } finally {
+            SQLiteDatabase.deleteDatabase(scratch);
+        }
+    }
+
+    /**
+     * 按批插入所有用户
+     */
+    private void insertAll(SQLiteDatabase db) {
+        String[] hashes = new String[spec.passwordCount];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = UserRepository.hashPassword(passwordFor(i));
+        }
+        SQLiteStatement insert = db.compileStatement(UserStatements.INSERT);
+        try {
+            for (int batchStart = 0; batchStart < spec.userCount; batchStart += spec.batchSize) {
+                int batchEnd = Math.min(spec.userCount, batchStart + spec.batchSize);
+                db.beginTransaction();
+                try {
+                    for (int i = batchStart; i < batchEnd; i++) {
+                        insert.bindString(1, usernameFor(i));
+                        insert.bindString(2, accountFor(i));
+                        insert.bindString(3, hashes[i % spec.passwordCount]);
+                        insert.executeInsert();
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+        } finally {
+            insert.close();
+        }
+    }
+
+    /**
+     * 第 index 个用户的用户名
+     *
+     * @param index 用户序号
+     * @return 用户名，长度不超过 20
+     */
+    public String usernameFor(int index) {
+        switch (spec.usernames) {
+            case ZIPF:
+                return "name_" + zipfRank(mix(spec.seed, index));
+            case RANDOM:
+                return randomLetters(mix(spec.seed, index), 4, 12);
+            case UNIQUE:
+            default:
+                return "user_" + index;
+        }
+    }
+
+    /**
+     * 第 index 个用户的账户，不同序号的账户一定不同
+     *
+     * @param index 用户序号
+     * @return 账户，长度不超过 64
+     */
+    public String accountFor(int index) {
+        switch (spec.accounts) {
+            case RANDOM:
+                return randomLetters(mix(spec.seed ^ 0x5bd1e995L, index), 6, 6) + Integer.toString(index, 36);
+            case EMAIL: {
+                long bits = mix(spec.seed ^ 0x27d4eb2fL, index);
+                String domain = Spec.EMAIL_DOMAINS[(int) ((bits >>> 48) % Spec.EMAIL_DOMAINS.length)];
+                return randomLetters(bits, 3, 8) + "." + index + "@" + domain;
+            }
+            case SEQUENTIAL:
+            default:
+                return String.format(Locale.US, "acct%07d", index);
+        }
+    }
+
+    /**
+     * 第 index 个用户的原始密码
+     *
+     * @param index 用户序号
+     * @return 原始密码，长度不超过 20
+     */
+    public String passwordFor(int index) {
+        return "password" + (index % spec.passwordCount);
+    }
+
+    /**
+     * 按 Zipf 分布把随机数映射到名字序号，序号越小出现越多
+     */
+    private int zipfRank(long bits) {
+        double u = (bits >>> 11) * 0x1.0p-53;
+        int rank = Arrays.binarySearch(zipfCumulative, u);
+        return rank >= 0 ? rank : Math.min(-rank - 1, zipfCumulative.length - 1);
+    }
+
+    private static double[] zipfTable(Spec spec) {
+        double[] cumulative = new double[spec.usernamePoolSize];
+        double total = 0;
+        for (int k = 0; k < cumulative.length; k++) {
+            total += 1.0 / Math.pow(k + 1, spec.zipfExponent);
+            cumulative[k] = total;
+        }
+        for (int k = 0; k < cumulative.length; k++) {
+            cumulative[k] /= total;
+        }
+        return cumulative;
+    }
+
+    /**
+     * 用随机位生成小写字母串
+     */
+    private static String randomLetters(long bits, int minLength, int maxLength) {
+        int length = minLength + (int) ((bits >>> 58) % (maxLength - minLength + 1));
+        char[] letters = new char[length];
+        long state = bits;
+        for (int i = 0; i < length; i++) {
+            state = mix(state, i);
+            letters[i] = (char) ('a' + (int) ((state >>> 40) % 26));
+        }
+        return new String(letters);
+    }
+
+    /**
+     * 由种子和序号得到 64 位伪随机数（SplitMix64），同样的输入总是得到同样的结果
+     */
+    private static long mix(long seed, long index) {
+        long z = seed + (index + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
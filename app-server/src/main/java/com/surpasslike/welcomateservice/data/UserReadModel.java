@@ -0,0 +1,263 @@
+package com.surpasslike.welcomateservice.data;
+
+import android.os.Process;
+import android.util.Log;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 用户表的内存读模型
+ * 持有当前的 {@link UserView}（基础快照加上之后的写操作），读操作只读取一个引用，不加锁也不访问数据库；
+ * 写操作提交后把插入和删除记录到视图的叠加层中，叠加层积累到 {@link #MERGE_THRESHOLD} 个条目后在后台合并进新的基础快照
+ * <p>
+ * 视图不存在时（第一次使用、停用后重新启用、无法增量应用的变化之后），读操作不等待，直接查询数据库，
+ * 同时请求后台线程重建：重建期间提交的写操作照常记录到一个单独的叠加层，扫描完成后叠加在扫描结果之上，
+ * 扫描是否已经看到这些写操作都不影响结果（见 {@link UserOverlay}），因此重建不会因为并发写入而作废
+ * <p>
+ * 其他进程的写入由 UserRepository 按变更日志逐条记录到视图中；
+ * 无法增量应用的变化（恢复、重新分片、积压过多的变更日志等）通过 {@link #invalidate()} 使视图失效，并使进行中的重建和合并作废
+ */
+final class UserReadModel {
+    private static final String TAG = "UserReadModel";
+
+    /** 叠加层条目达到这个数量后合并进新的基础快照 */
+    static final int MERGE_THRESHOLD = 512;
+
+    /**
+     * 从数据库扫描所有用户，在后台线程上调用
+     */
+    interface Loader {
+        UserIndex load();
+    }
+
+    private static final class State {
+        // 当前视图，null 表示需要重建
+        final UserView view;
+        // 重建期间提交的写操作；没有进行中的重建时为 null，此时没有视图的写操作无需记录
+        final UserOverlay pending;
+        // 失效的次数，重建和合并只在期间没有失效时安装结果
+        final long epoch;
+
+        State(UserView view, UserOverlay pending, long epoch) {
+            this.view = view;
+            this.pending = pending;
+            this.epoch = epoch;
+        }
+    }
+
+    private final AtomicReference<State> state = new AtomicReference<>(new State(null, null, 0));
+    private final Loader loader;
+    // 重建和合并都在这个线程上依次执行
+    private final ExecutorService worker;
+    // 已经提交到后台、尚未开始的重建或合并，避免重复提交
+    private final AtomicBoolean rebuildQueued = new AtomicBoolean();
+    private final AtomicBoolean mergeQueued = new AtomicBoolean();
+    private volatile boolean enabled;
+
+    UserReadModel(boolean enabled, Loader loader) {
+        this.enabled = enabled;
+        this.loader = loader;
+        this.worker = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, "read-model");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            invalidate();
+        }
+    }
+
+    /**
+     * 检查当前是否有视图，不会请求重建
+     */
+    boolean hasView() {
+        return enabled && state.get().view != null;
+    }
+
+    /**
+     * 获取当前视图；视图不存在时请求后台重建，本次返回 null
+     *
+     * @return 当前视图；未启用或尚未重建完成时返回 null
+     */
+    UserView current() {
+        if (!enabled) {
+            return null;
+        }
+        UserView view = state.get().view;
+        if (view == null && rebuildQueued.compareAndSet(false, true)) {
+            worker.execute(this::rebuild);
+        }
+        return view;
+    }
+
+    /**
+     * 记录一次已提交的插入
+     *
+     * @param username 用户名
+     * @param account  账户
+     */
+    void onInserted(String username, String account) {
+        apply(account, username);
+    }
+
+    /**
+     * 记录一次已提交的删除
+     *
+     * @param accounts 被删除的各行的账户
+     */
+    void onDeleted(Iterable<String> accounts) {
+        for (String account : accounts) {
+            apply(account, null);
+        }
+    }
+
+    /**
+     * 记录一次无法增量应用的已提交写操作（恢复、重新分片等），当前视图失效，下一次读取时重建
+     */
+    void invalidate() {
+        State current;
+        do {
+            current = state.get();
+        } while (!state.compareAndSet(current, new State(null, null, current.epoch + 1)));
+    }
+
+    /**
+     * 等待已经提交到后台的重建和合并完成，供测试使用
+     *
+     * @return 在超时之前完成时返回 true
+     */
+    boolean awaitIdle(long timeoutMillis) throws InterruptedException {
+        final Object done = new Object();
+        final boolean[] finished = new boolean[1];
+        worker.execute(() -> {
+            synchronized (done) {
+                finished[0] = true;
+                done.notifyAll();
+            }
+        });
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        synchronized (done) {
+            while (!finished[0]) {
+                long remaining = end - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(done, remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return 读模型的状态描述，用于诊断输出
+     */
+    String describe() {
+        State current = state.get();
+        if (!enabled) {
+            return "disabled";
+        }
+        if (current.view == null) {
+            return (current.pending != null ? "rebuilding" : "not built") + ", epoch " + current.epoch;
+        }
+        return current.view.size() + " users (" + current.view.overlay().size() + " in overlay), ~"
+                + current.view.estimateBytes() + " bytes, epoch " + current.epoch;
+    }
+
+    /**
+     * 把一个账户的最终状态记录到视图或重建期间的叠加层中
+     *
+     * @param account  账户
+     * @param username 插入时为用户名，删除时为 null
+     */
+    private void apply(String account, String username) {
+        State current;
+        State next;
+        do {
+            current = state.get();
+            if (current.view != null) {
+                next = new State(current.view.with(account, username), null, current.epoch);
+            } else if (current.pending != null) {
+                next = new State(null, current.pending.with(account, username), current.epoch);
+            } else {
+                // 没有视图也没有进行中的重建，之后的重建会扫描到这次写入
+                return;
+            }
+        } while (!state.compareAndSet(current, next));
+        if (next.view != null && next.view.overlay().size() >= MERGE_THRESHOLD
+                && mergeQueued.compareAndSet(false, true)) {
+            worker.execute(this::merge);
+        }
+    }
+
+    /**
+     * 在后台线程上从数据库重建基础快照，并叠加扫描期间提交的写操作
+     */
+    private void rebuild() {
+        rebuildQueued.set(false);
+        State begin;
+        do {
+            begin = state.get();
+            if (!enabled || begin.view != null) {
+                return;
+            }
+        } while (!state.compareAndSet(begin, new State(null, UserOverlay.EMPTY, begin.epoch)));
+        final long epoch = begin.epoch;
+
+        UserIndex base = null;
+        try {
+            base = loader.load();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Read model rebuild failed", e);
+        }
+        State current;
+        State next;
+        do {
+            current = state.get();
+            if (current.epoch != epoch || current.pending == null) {
+                // 期间失效过，扫描结果可能已经过期；下一次读取会重新请求
+                return;
+            }
+            next = base == null ? new State(null, null, epoch)
+                    : new State(UserView.of(base, current.pending), null, epoch);
+        } while (!state.compareAndSet(current, next));
+        if (next.view != null && next.view.overlay().size() >= MERGE_THRESHOLD
+                && mergeQueued.compareAndSet(false, true)) {
+            merge();
+        }
+    }
+
+    /**
+     * 在后台线程上把叠加层合并进新的基础快照；合并期间提交的写操作保留在新视图的叠加层中
+     */
+    private void merge() {
+        mergeQueued.set(false);
+        State begin = state.get();
+        if (begin.view == null) {
+            return;
+        }
+        UserIndex merged = begin.view.base().merge(begin.view.overlay());
+        State current;
+        do {
+            current = state.get();
+            if (current.epoch != begin.epoch || current.view == null || current.view.base() != begin.view.base()) {
+                return;
+            }
+        } while (!state.compareAndSet(current,
+                new State(current.view.rebased(merged, begin.view.overlay()), null, current.epoch)));
+    }
+}
@@ -1,31 +1,132 @@
 package com.surpasslike.welcomateservice.data;
 
-import android.annotation.SuppressLint;
-import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.MergeCursor;
+import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Process;
+import android.provider.BaseColumns;
 import android.util.Base64;
 import android.util.Log;
 
+import com.surpasslike.common.Deadline;
+import com.surpasslike.common.diagnostics.MainThreadCalls;
+import com.surpasslike.common.trace.RequestTrace;
 import com.surpasslike.welcomateservice.MyApplication;
+import com.surpasslike.welcomateservice.audit.AuditLog;
+import com.surpasslike.welcomateservice.audit.AuditRecord;
 import com.surpasslike.welcomateservice.data.db.DatabaseHelper;
+import com.surpasslike.welcomateservice.data.db.MaintenanceJob;
+import com.surpasslike.welcomateservice.data.db.MaintenanceResult;
+import com.surpasslike.welcomateservice.data.model.ChangePage;
 import com.surpasslike.welcomateservice.data.model.User;
+import com.surpasslike.welcomateservice.data.model.UserChange;
+import com.surpasslike.welcomateservice.data.model.UserEdit;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
 
 /**
  * 用户数据的仓库层
  * 作为应用中所有用户数据的唯一真实来源 (Single Source of Truth)
  * 负责处理所有数据操作，无论是来自本地数据库还是未来的网络 API
  * 这是一个单例，以确保整个应用只有一个数据源实例
+ * <p>
+ * 用户数据可以分布在多个分片数据库中（见 {@link ShardSet}），分片数量保存在 SharedPreferences 中，默认为 1，
+ * 即原来的单文件 users.db。按账户的操作只访问账户所在的分片；按用户名的操作和列表查询会分发到所有分片并合并结果
+ * <p>
+ * 服务运行在独立进程中时，界面进程和服务进程各有一个实例，共用同一组数据库文件；
+ * 两个进程的内存状态（读模型、首字符分组、分片布局）通过 {@link StoreVersion} 保持一致
+ * <p>
+ * 来自 AIDL 的请求带有截止时间（见 {@link Deadline}）：哈希、查询数据库和提交写操作之前都会检查，
+ * 已经超时的请求以 {@link Deadline.DeadlineExceededException} 结束，不再继续执行
  */
 public class UserRepository {
     private static final String TAG = "UserRepository";
-    private final DatabaseHelper dbHelper;
+
+    // 保存分片数量的 SharedPreferences
+    private static final String PREFS_NAME = "user_storage";
+    private static final String KEY_SHARD_COUNT = "shard_count";
+    private static final String KEY_READ_MODEL = "read_model";
+
+    // 复制整行数据时使用的列，顺序与 bindRow 一致
+    private static final String[] ROW_COLUMNS = {
+            DatabaseHelper.COLUMN_ID,
+            DatabaseHelper.COLUMN_USERNAME,
+            DatabaseHelper.COLUMN_ACCOUNT,
+            DatabaseHelper.COLUMN_PASSWORD
+    };
+    private static final int ROW_ACCOUNT_INDEX = 2;
+
+    // 每个线程一个 SHA-256 实例，避免每次哈希都重新查找算法提供者
+    private static final ThreadLocal<MessageDigest> SHA256 = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                Log.e(TAG, "SHA-256 algorithm not found", e);
+                return null;
+            }
+        }
+    };
+
+    private final Context context;
+    // 数据库文件名的前缀，见 DatabaseHelper.databaseName
+    private final String storageName;
+    // 保存分片数量和读模型开关
+    private final SharedPreferences preferences;
+
+    private volatile ShardSet shards;
+
+    /**
+     * 存储布局锁
+     * 普通的读写操作持有读锁，互不影响；重新分片需要持有写锁，保证复制期间没有写操作丢失
+     */
+    private final ReadWriteLock storageLock = new ReentrantReadWriteLock();
+
+    /**
+     * 用户名和账户的内存读模型，列表、计数、账户存在性检查和首字符分组优先从这里读取，不再访问数据库
+     */
+    private final UserReadModel readModel;
+
+    /**
+     * 与其他进程共享的存储版本号，无法打开时为 null（此时按单进程运行）
+     */
+    private final StoreVersion storeVersion;
+
+    /**
+     * 其他进程有写入、读模型尚未按变更日志追上时为 true
+     */
+    private volatile boolean journalBehind;
+
+    /**
+     * 读模型已经反映到的变更日志位置：日志标识和每个分片的序号
+     * 由读模型重建时在扫描之前记录，之后每次按日志追上其他进程的写入时推进；
+     * 重建在持有读锁时写入，追赶在持有写锁时读写
+     */
+    private volatile long journalCursorId;
+    private volatile long[] journalCursor;
 
     // 单例模式实现
     private static volatile UserRepository INSTANCE;
@@ -34,7 +135,27 @@ public class UserRepository {
      * 私有构造函数，防止外部直接实例化
      */
     private UserRepository() {
-        this.dbHelper = new DatabaseHelper(MyApplication.getContext());
+        this(MyApplication.getContext(), DatabaseHelper.STORAGE_NAME, PREFS_NAME, StoreVersion.FILE_NAME);
+    }
+
+    /**
+     * 打开一套独立的用户存储，测试用它在单独的文件上运行，不影响正式的用户数据
+     *
+     * @param context         应用上下文
+     * @param storageName     数据库文件名的前缀
+     * @param preferencesName 保存分片数量和读模型开关的 SharedPreferences 名称
+     * @param versionFileName files 目录下与其他进程共享的版本文件名
+     */
+    UserRepository(Context context, String storageName, String preferencesName, String versionFileName) {
+        this.context = context;
+        this.storageName = storageName;
+        this.preferences = context.getSharedPreferences(preferencesName, Context.MODE_PRIVATE);
+        this.storeVersion = openStoreVersion(new File(context.getFilesDir(), versionFileName));
+        // SharedPreferences 在进程间不同步，另一个进程重新分片后以版本文件中记录的分片数量为准
+        int shardCount = storeVersion != null && storeVersion.getShardCount() > 0
+                ? storeVersion.getShardCount() : preferences.getInt(KEY_SHARD_COUNT, 1);
+        this.shards = new ShardSet(context, storageName, shardCount);
+        this.readModel = new UserReadModel(preferences.getBoolean(KEY_READ_MODEL, true), this::loadReadModel);
     }
 
     /**
@@ -53,24 +174,267 @@ public class UserRepository {
         return INSTANCE;
     }
 
+    /**
+     * 替换单例，供测试使用
+     *
+     * @param repository 新的实例，null 表示下一次 getInstance 时重新创建
+     * @return 原来的实例，可能为 null
+     */
+    static UserRepository replaceInstance(UserRepository repository) {
+        synchronized (UserRepository.class) {
+            UserRepository previous = INSTANCE;
+            INSTANCE = repository;
+            return previous;
+        }
+    }
+
+    /**
+     * 关闭所有分片，供测试在删除存储文件之前使用；关闭后不能再使用这个实例
+     * 同步提交一次配置，等待之前 apply 的写入落盘，之后删除的配置文件不会再被写回
+     */
+    void close() {
+        preferences.edit().commit();
+        storageLock.writeLock().lock();
+        try {
+            shards.close();
+        } finally {
+            storageLock.writeLock().unlock();
+        }
+    }
+
+    private static StoreVersion openStoreVersion(File file) {
+        try {
+            return new StoreVersion(file);
+        } catch (IOException e) {
+            Log.e(TAG, "Cross-process store version unavailable", e);
+            return null;
+        }
+    }
+
+    /**
+     * 检查其他进程是否修改过用户存储，分片数量变化时重新打开分片，然后按变更日志把其他进程的写入应用到读模型
+     * 没有变化时只读取一次映射内存，在每个公开操作开始时、获取存储布局锁之前调用
+     */
+    private void syncWithOtherProcesses() {
+        if (storeVersion == null) {
+            return;
+        }
+        if (storeVersion.sync()) {
+            int shardCount = storeVersion.getShardCount();
+            if (shardCount > 0 && shardCount != shards.size()) {
+                reopenShards(shardCount);
+            }
+            // 其他进程恢复数据后日志标识已经改变，重新读取
+            shards.resetJournalId();
+            journalBehind = true;
+        }
+        catchUpWithJournal();
+    }
+
+    /**
+     * 其他进程重新分片后，关闭本进程的旧分片并打开新的分片
+     *
+     * @param shardCount 版本文件中记录的分片数量
+     */
+    private void reopenShards(int shardCount) {
+        storageLock.writeLock().lock();
+        try {
+            if (shardCount != shards.size()) {
+                ShardSet old = shards;
+                shards = new ShardSet(context, storageName, shardCount);
+                old.close();
+                Log.d(TAG, "Reopened " + shardCount + " shards resharded by another process.");
+            }
+        } finally {
+            storageLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 为写操作获取存储布局读锁和跨进程的共享布局锁（见 {@link StoreVersion#lockLayoutShared()}），
+     * 返回的分片在解锁前不会被任何进程重新分片
+     * 其他进程正在重新分片时在这里等待；等到后发现分片数量已经变化，就先打开新的分片再重试，
+     * 写入不会提交到其他进程已经复制完、即将删除的旧分片中
+     * 与 {@link #unlockShardsForWrite()} 成对使用；嵌套调用时外层已经持有锁，分片数量不会再变化
+     *
+     * @return 当前的分片
+     */
+    private ShardSet lockShardsForWrite() {
+        while (true) {
+            storageLock.readLock().lock();
+            if (storeVersion == null) {
+                return shards;
+            }
+            storeVersion.lockLayoutShared();
+            int shardCount = storeVersion.getShardCount();
+            if (shardCount <= 0 || shardCount == shards.size()) {
+                return shards;
+            }
+            storeVersion.unlockLayoutShared();
+            storageLock.readLock().unlock();
+            reopenShards(shardCount);
+            shards.resetJournalId();
+            journalBehind = true;
+        }
+    }
+
+    /**
+     * 释放 {@link #lockShardsForWrite()} 获取的锁
+     */
+    private void unlockShardsForWrite() {
+        if (storeVersion != null) {
+            storeVersion.unlockLayoutShared();
+        }
+        storageLock.readLock().unlock();
+    }
+
+    /**
+     * 读取读模型的日志位置之后的变更，逐个账户从所在分片读取当前的行并记录到读模型中
+     * 持有存储布局写锁，期间没有本进程的写操作处在提交和应用到读模型之间，读到的行就是最终状态；
+     * 本进程自己的写入也会被读到，重复记录同一个最终状态不改变读模型
+     * 日志标识改变（恢复、重新分片）、需要的条目已被截断或积压超过一次合并的量时，改为使读模型失效并在后台重建
+     */
+    private void catchUpWithJournal() {
+        if (!journalBehind) {
+            return;
+        }
+        if (!readModel.isEnabled()) {
+            journalBehind = false;
+            return;
+        }
+        if (!readModel.hasView()) {
+            // 进行中或之后的重建从扫描开始时的日志位置起算，完成后再追赶
+            return;
+        }
+        storageLock.writeLock().lock();
+        try (RequestTrace.Span span = RequestTrace.section("db.journal")) {
+            if (!journalBehind) {
+                return;
+            }
+            // 先清除再读取：读取之后其他进程的写入会再次设置
+            journalBehind = false;
+            ShardSet shards = this.shards;
+            long[] cursor = journalCursor;
+            ChangePage page = cursor == null ? null
+                    : readChanges(shards, journalCursorId, cursor, UserReadModel.MERGE_THRESHOLD + 1);
+            if (page == null || page.isResyncRequired() || page.hasMore()) {
+                journalCursor = null;
+                readModel.invalidate();
+                Log.d(TAG, "Journal cannot be applied incrementally, rebuilding the read model.");
+                return;
+            }
+            for (UserChange change : page.getChanges()) {
+                if (change.getOp() == DatabaseHelper.CHANGE_UPDATE) {
+                    continue;
+                }
+                String account = change.getAccount();
+                String username = null;
+                SQLiteDatabase db = shards.helpers[change.getShard()].getReadableDatabase();
+                try (Cursor row = db.rawQuery(UserStatements.USERNAME_BY_ACCOUNT, new String[]{account})) {
+                    if (row.moveToFirst()) {
+                        username = row.getString(0);
+                    }
+                }
+                if (username != null) {
+                    readModel.onInserted(username, account);
+                } else {
+                    readModel.onDeleted(Collections.singletonList(account));
+                }
+            }
+            journalCursor = page.getSequences();
+        } finally {
+            storageLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 本进程提交了写操作后通知其他进程
+     * 本进程写入的增量已经由写线程按提交顺序应用到读模型；期间其他进程也有写入时，下一个操作开始时按变更日志追上
+     */
+    private void publishWrite() {
+        if (storeVersion != null && storeVersion.bump()) {
+            journalBehind = true;
+        }
+    }
+
     /**
      * 对给定的密码字符串进行 SHA-256 哈希处理
      *
      * @param password 要哈希的原始密码
      * @return 哈希后并经过 Base64 编码的字符串如果算法不可用，则返回 null
      */
-    private String hashPassword(String password) {
+    static String hashPassword(String password) {
+        byte[] hash = digestPassword(password);
+        return hash == null ? null : Base64.encodeToString(hash, Base64.NO_WRAP);
+    }
+
+    /**
+     * 计算密码的 SHA-256 摘要（未编码的原始字节）
+     * 每个线程复用自己的 MessageDigest 实例
+     *
+     * @param password 原始密码
+     * @return 32 字节摘要；密码为 null 或算法不可用时返回 null
+     */
+    static byte[] digestPassword(String password) {
         if (password == null) {
             return null;
         }
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(password.getBytes(StandardCharsets.UTF_8));
-            return Base64.encodeToString(hash, Base64.NO_WRAP);
-        } catch (NoSuchAlgorithmException e) {
-            Log.e(TAG, "SHA-256 algorithm not found", e);
+        MessageDigest digest = SHA256.get();
+        if (digest == null) {
             return null;
         }
+        try (RequestTrace.Span span = RequestTrace.section("hash")) {
+            return digest.digest(password.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * 比较摘要与数据库中 Base64 编码的密码哈希
+     * 直接在字符上逐个解码并按字节比较，不创建解码后的数组或 String；所有字节都参与比较，耗时与哈希内容无关
+     *
+     * @param digest  由 {@link #digestPassword} 得到的摘要
+     * @param encoded 存储的哈希字符（标准 Base64，带填充，不换行）
+     * @param length  有效字符数
+     * @return 两者表示同一摘要时返回 true
+     */
+    static boolean hashMatches(byte[] digest, char[] encoded, int length) {
+        if (digest == null || length != (digest.length + 2) / 3 * 4) {
+            return false;
+        }
+        int diff = 0;
+        int bits = 0;
+        int bitCount = 0;
+        int decoded = 0;
+        for (int i = 0; i < length && encoded[i] != '='; i++) {
+            int value = base64Value(encoded[i]);
+            if (value < 0) {
+                return false;
+            }
+            bits = (bits << 6) | value;
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                if (decoded == digest.length) {
+                    return false;
+                }
+                diff |= (digest[decoded++] ^ (bits >> bitCount)) & 0xff;
+                bits &= (1 << bitCount) - 1;
+            }
+        }
+        return decoded == digest.length && diff == 0;
+    }
+
+    private static int base64Value(char c) {
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A';
+        }
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a' + 26;
+        }
+        if (c >= '0' && c <= '9') {
+            return c - '0' + 52;
+        }
+        return c == '+' ? 62 : c == '/' ? 63 : -1;
     }
 
     /**
@@ -81,23 +445,55 @@ public class UserRepository {
      * @return 如果登录成功，返回用户名；否则返回 null
      */
     public String loginAdmin(String account, String password) {
-        SQLiteDatabase db = dbHelper.getReadableDatabase();
-        String[] columns = {DatabaseHelper.COLUMN_USERNAME, DatabaseHelper.COLUMN_PASSWORD};
-        String selection = DatabaseHelper.COLUMN_ACCOUNT + " = ?";
-        String[] selectionArgs = {account};
-
-        try (Cursor cursor = db.query(DatabaseHelper.TABLE_USERS, columns, selection, selectionArgs, null, null, null)) {
-            if (cursor.moveToFirst()) {
-                @SuppressLint("Range") String storedPasswordHash = cursor.getString(cursor.getColumnIndex(DatabaseHelper.COLUMN_PASSWORD));
-                String inputPasswordHash = hashPassword(password);
+        MainThreadCalls.check("UserRepository.loginAdmin");
+        syncWithOtherProcesses();
+        storageLock.readLock().lock();
+        try {
+            ShardSet shards = this.shards;
+            SQLiteDatabase db = shards.helpers[shards.indexFor(account)].getReadableDatabase();
 
-                if (inputPasswordHash != null && inputPasswordHash.equals(storedPasswordHash)) {
-                    @SuppressLint("Range") String username = cursor.getString(cursor.getColumnIndex(DatabaseHelper.COLUMN_USERNAME));
-                    return username;
+            Deadline.check("db.query");
+            try (RequestTrace.Span span = RequestTrace.section("db.query");
+                 Cursor cursor = db.rawQuery(UserStatements.LOGIN, new String[]{account})) {
+                RowScanner row = new RowScanner(cursor, DatabaseHelper.COLUMN_USERNAME, DatabaseHelper.COLUMN_PASSWORD);
+                if (!row.next()) {
+                    return null;
+                }
+                Deadline.check("hash");
+                // 存储的哈希不转换成 String，直接与输入密码的原始摘要按字节比较
+                if (hashMatches(digestPassword(password), row.chars(1), row.length(1))) {
+                    return row.getString(0);
                 }
             }
+            return null;
+        } finally {
+            storageLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 检查账户是否尚未被注册
+     * 读模型可用时只是一次内存中的二分查找；否则查询账户列的唯一索引，并且只访问账户所在的分片
+     *
+     * @param account 账户
+     * @return 账户未被使用时返回 true
+     */
+    public boolean isAccountAvailable(String account) {
+        MainThreadCalls.check("UserRepository.isAccountAvailable");
+        syncWithOtherProcesses();
+        UserView snapshot = readModel.current();
+        if (snapshot != null) {
+            return !snapshot.containsAccount(account);
+        }
+        Deadline.check("db.query");
+        storageLock.readLock().lock();
+        try (RequestTrace.Span span = RequestTrace.section("db.query")) {
+            ShardSet shards = this.shards;
+            SQLiteDatabase db = shards.helpers[shards.indexFor(account)].getReadableDatabase();
+            return DatabaseUtils.longForQuery(db, UserStatements.COUNT_BY_ACCOUNT, new String[]{account}) == 0;
+        } finally {
+            storageLock.readLock().unlock();
         }
-        return null;
     }
 
     /**
@@ -106,75 +502,1066 @@ public class UserRepository {
      * @param username 用户名
      * @param account  账户
      * @param password 原始密码，将被哈希后存储
-     * @return 新插入行的行 ID，如果发生错误则为 -1
+     * @return 新插入行的行 ID（在其所在分片内唯一），如果发生错误则为 -1
      */
     public long addUser(String username, String account, String password) {
-        SQLiteDatabase db = dbHelper.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(DatabaseHelper.COLUMN_USERNAME, username);
-        values.put(DatabaseHelper.COLUMN_ACCOUNT, account);
-
+        MainThreadCalls.check("UserRepository.addUser");
+        syncWithOtherProcesses();
+        // 账户已存在时插入必然因 UNIQUE 约束失败，先用索引查找排除，省去哈希和一次写事务
+        if (!isAccountAvailable(account)) {
+            return -1;
+        }
+        // 哈希在调用线程上完成，写线程只负责执行 SQL；超时的请求在写线程上轮到它时被跳过
+        Deadline.check("hash");
         String hashedPassword = hashPassword(password);
         if (hashedPassword == null) {
             return -1; // 哈希失败
         }
-        values.put(DatabaseHelper.COLUMN_PASSWORD, hashedPassword);
-
-        return db.insert(DatabaseHelper.TABLE_USERS, null, values);
+        long rowId;
+        ShardSet shards = lockShardsForWrite();
+        try (RequestTrace.Span span = RequestTrace.section("db.insert")) {
+            // 读模型在写线程上按提交顺序更新，见 WritePipeline.Committed
+            rowId = shards.pipelines[shards.indexFor(account)].enqueue(
+                    db -> insert(db, username, account, hashedPassword), Deadline.current(),
+                    id -> {
+                        if (id != -1) {
+                            readModel.onInserted(username, account);
+                        }
+                    }).await();
+            if (rowId != -1) {
+                publishWrite();
+            }
+        } finally {
+            unlockShardsForWrite();
+        }
+        AuditLog.getInstance().append(AuditRecord.Type.REGISTER, account, rowId);
+        return rowId;
     }
 
     /**
      * 获取所有用户的列表
+     * 读模型可用时按用户名排序，直接从内存视图生成，不访问数据库
      *
      * @return 包含所有用户的 List
      */
     public List<User> getAllUsers() {
+        MainThreadCalls.check("UserRepository.getAllUsers");
+        syncWithOtherProcesses();
+        UserView snapshot = readModel.current();
+        if (snapshot != null) {
+            List<User> users = new ArrayList<>(snapshot.size());
+            snapshot.forEachByUsername((username, account) -> users.add(new User(username, account, null)));
+            return users;
+        }
         List<User> userList = new ArrayList<>();
-        SQLiteDatabase db = dbHelper.getReadableDatabase();
-        String[] columns = {DatabaseHelper.COLUMN_USERNAME, DatabaseHelper.COLUMN_ACCOUNT};
-        try (Cursor cursor = db.query(DatabaseHelper.TABLE_USERS, columns, null, null, null, null, null)) {
-            if (cursor.moveToFirst()) {
-                do {
-                    @SuppressLint("Range") String username = cursor.getString(cursor.getColumnIndex(DatabaseHelper.COLUMN_USERNAME));
-                    @SuppressLint("Range") String account = cursor.getString(cursor.getColumnIndex(DatabaseHelper.COLUMN_ACCOUNT));
-                    userList.add(new User(username, account, null));
-                } while (cursor.moveToNext());
+        storageLock.readLock().lock();
+        try {
+            for (DatabaseHelper helper : shards.helpers) {
+                SQLiteDatabase db = helper.getReadableDatabase();
+                try (Cursor cursor = db.rawQuery(UserStatements.LIST_NAMES, null)) {
+                    RowScanner row = new RowScanner(cursor, DatabaseHelper.COLUMN_USERNAME, DatabaseHelper.COLUMN_ACCOUNT);
+                    while (row.next()) {
+                        userList.add(new User(row.getString(0), row.getString(1), null));
+                    }
+                }
             }
+        } finally {
+            storageLock.readLock().unlock();
         }
         return userList;
     }
 
+    /**
+     * 获取用户总数
+     *
+     * @return 所有分片中的用户数
+     */
+    public int getUserCount() {
+        MainThreadCalls.check("UserRepository.getUserCount");
+        syncWithOtherProcesses();
+        UserView snapshot = readModel.current();
+        if (snapshot != null) {
+            return snapshot.size();
+        }
+        storageLock.readLock().lock();
+        try {
+            long count = 0;
+            for (DatabaseHelper helper : shards.helpers) {
+                count += DatabaseUtils.longForQuery(helper.getReadableDatabase(), UserStatements.COUNT_ALL, null);
+            }
+            return (int) count;
+        } finally {
+            storageLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 检查用户名是否存在
+     *
+     * @param username 用户名
+     * @return 至少有一个用户使用该用户名时返回 true
+     */
+    public boolean hasUsername(String username) {
+        MainThreadCalls.check("UserRepository.hasUsername");
+        syncWithOtherProcesses();
+        UserView snapshot = readModel.current();
+        if (snapshot != null) {
+            return snapshot.containsUsername(username);
+        }
+        storageLock.readLock().lock();
+        try {
+            for (DatabaseHelper helper : shards.helpers) {
+                if (DatabaseUtils.longForQuery(helper.getReadableDatabase(), UserStatements.COUNT_BY_USERNAME,
+                        new String[]{username}) > 0) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            storageLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 从所有分片扫描用户名和账户，生成读模型的基础快照
+     * 在读模型的后台线程上调用，不受请求的截止时间限制；扫描期间提交的写操作由读模型另行叠加
+     * 文本从游标直接复制进快照的字符数组，扫描过程中不为每一行创建 String
+     *
+     * @return 新的基础快照
+     */
+    private UserIndex loadReadModel() {
+        UserIndex.Builder builder = new UserIndex.Builder();
+        storageLock.readLock().lock();
+        try (RequestTrace.Span span = RequestTrace.section("db.readModel")) {
+            ShardSet shards = this.shards;
+            // 扫描之前记录日志位置，扫描期间其他进程的写入之后按日志追上
+            journalCursorId = shards.journalId();
+            journalCursor = journalHeads(shards);
+            for (DatabaseHelper helper : shards.helpers) {
+                try (Cursor cursor = helper.getReadableDatabase().rawQuery(UserStatements.LIST_NAMES, null)) {
+                    RowScanner row = new RowScanner(cursor, DatabaseHelper.COLUMN_USERNAME, DatabaseHelper.COLUMN_ACCOUNT);
+                    while (row.next()) {
+                        builder.add(row.chars(0), row.length(0), row.chars(1), row.length(1));
+                    }
+                }
+            }
+        } finally {
+            storageLock.readLock().unlock();
+        }
+        return builder.build();
+    }
+
+    /**
+     * 等待读模型在后台的重建和合并完成，供测试使用
+     *
+     * @param timeoutMillis 最长等待时间
+     * @return 在超时之前完成时返回 true
+     */
+    boolean awaitReadModel(long timeoutMillis) throws InterruptedException {
+        return readModel.awaitIdle(timeoutMillis);
+    }
+
+    /**
+     * 启用或停用内存读模型，设置会被保存
+     * 停用后快照立即释放，所有读操作回到数据库查询
+     *
+     * @param enabled 是否启用
+     */
+    public void setReadModelEnabled(boolean enabled) {
+        preferences.edit().putBoolean(KEY_READ_MODEL, enabled).apply();
+        readModel.setEnabled(enabled);
+    }
+
+    /**
+     * 获取与其他进程共享的存储版本号，用于诊断输出
+     *
+     * @return 版本号；版本文件不可用时返回 -1
+     */
+    public long getStoreVersion() {
+        return storeVersion != null ? storeVersion.current() : -1;
+    }
+
+    /**
+     * 获取读模型的状态描述（行数、估算内存占用），用于诊断输出
+     *
+     * @return 状态描述
+     */
+    public String describeReadModel() {
+        return readModel.describe();
+    }
+
+    /**
+     * 以游标形式查询所有用户，每个分片内按插入顺序排列，分片之间依次拼接
+     * 与 getAllUsers 不同，此方法不会为每一行创建 User 对象，行数据保存在按窗口加载的 CursorWindow 中，
+     * 调用方只在真正需要时读取当前行，因此内存占用与表的总行数基本无关
+     * 返回的游标包含 {@link BaseColumns#_ID}、用户名和账户三列，调用方负责关闭
+     *
+     * @return 用户游标
+     */
+    public Cursor queryUsers() {
+        MainThreadCalls.check("UserRepository.queryUsers");
+        syncWithOtherProcesses();
+        storageLock.readLock().lock();
+        try {
+            ShardSet shards = this.shards;
+            Cursor[] cursors = new Cursor[shards.size()];
+            for (int i = 0; i < cursors.length; i++) {
+                cursors[i] = shards.helpers[i].getReadableDatabase().rawQuery(UserStatements.LIST_BY_ID, null);
+            }
+            return cursors.length == 1 ? cursors[0] : new MergeCursor(cursors);
+        } finally {
+            storageLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 以游标形式查询所有用户，按指定方式排序
+     * 每个分片沿排序列的索引按序读取，多个分片时做 k 路归并，见 {@link #queryUsers(String[], String, String[], String, boolean, int)}
+     * 返回的游标与 {@link #queryUsers()} 的列相同，调用方负责关闭
+     *
+     * @param sort 排序方式
+     * @return 用户游标
+     */
+    public Cursor queryUsers(UserSort sort) {
+        if (sort.column == null) {
+            return queryUsers();
+        }
+        return queryUsers(UserStatements.LIST_COLUMNS, null, null, sort.column, sort.descending, -1);
+    }
+
+    /**
+     * 获取排序列表按首字符的分组，用于快速滚动直接跳到某个字母开头的第一行
+     * 读模型可用时由内存视图统计，不查询数据库，也不需要任何锁；
+     * 否则在每个分片上执行分组计数，只持有存储布局读锁，不影响写操作，结果不缓存，调用方应在后台线程上调用
+     *
+     * @param sort 排序方式
+     * @return 分组；插入顺序没有分组，返回 null
+     */
+    public UserSections getSections(UserSort sort) {
+        MainThreadCalls.check("UserRepository.getSections");
+        syncWithOtherProcesses();
+        if (sort.column == null) {
+            return null;
+        }
+        boolean byUsername = UserSort.USERNAME_ASC.column.equals(sort.column);
+        UserView snapshot = readModel.current();
+        if (snapshot != null) {
+            return UserSections.fromBuckets(snapshot.bucketCounts(byUsername), sort.descending);
+        }
+        int[] counts = new int[SectionIndex.BUCKETS];
+        storageLock.readLock().lock();
+        try (RequestTrace.Span span = RequestTrace.section("db.sections")) {
+            for (DatabaseHelper helper : shards.helpers) {
+                Deadline.check("db.query");
+                countFirstChars(helper.getReadableDatabase(),
+                        byUsername ? UserStatements.FIRST_CHARS_USERNAME : UserStatements.FIRST_CHARS_ACCOUNT, counts);
+            }
+        } finally {
+            storageLock.readLock().unlock();
+        }
+        return UserSections.fromBuckets(counts, sort.descending);
+    }
+
+    /**
+     * 把按首字符码点分组的计数累加到各桶中
+     *
+     * @param db     分片数据库
+     * @param sql    分组计数语句
+     * @param counts 各桶的行数
+     */
+    private static void countFirstChars(SQLiteDatabase db, String sql, int[] counts) {
+        try (Cursor cursor = db.rawQuery(sql, null)) {
+            while (cursor.moveToNext()) {
+                int codePoint = cursor.isNull(0) ? -1 : cursor.getInt(0);
+                counts[SectionIndex.bucketOfCodePoint(codePoint)] += cursor.getInt(1);
+            }
+        }
+    }
+
+    /**
+     * 按条件查询用户，供只读内容提供者等批量读取方使用
+     * 条件、排序和数量限制会下推到每个分片的 SQL 中执行；多个分片的结果按排序列做 k 路归并，
+     * 没有排序时按分片顺序拼接，两种情况都不会把结果复制到内存中
+     * 调用方负责保证 columns、selection 和 sortColumn 只引用允许的列
+     *
+     * @param columns       要返回的列
+     * @param selection     WHERE 条件，可以为 null
+     * @param selectionArgs 条件参数
+     * @param sortColumn    排序列，null 表示不排序；不在 columns 中时会被追加为最后一列
+     * @param descending    是否降序
+     * @param limit         最多返回的行数，小于 0 表示不限制
+     * @return 结果游标，调用方负责关闭
+     */
+    public Cursor queryUsers(String[] columns, String selection, String[] selectionArgs,
+                             String sortColumn, boolean descending, int limit) {
+        MainThreadCalls.check("UserRepository.queryUsers");
+        syncWithOtherProcesses();
+        if (sortColumn != null && !Arrays.asList(columns).contains(sortColumn)) {
+            columns = Arrays.copyOf(columns, columns.length + 1);
+            columns[columns.length - 1] = sortColumn;
+        }
+        String orderBy = sortColumn == null ? null : sortColumn + (descending ? " DESC" : " ASC");
+        storageLock.readLock().lock();
+        try {
+            ShardSet shards = this.shards;
+            Cursor[] cursors = new Cursor[shards.size()];
+            int remaining = limit;
+            for (int i = 0; i < cursors.length; i++) {
+                // 不排序时依次拼接各分片，后面的分片只需要补足剩余的行数
+                int shardLimit = sortColumn == null ? remaining : limit;
+                cursors[i] = shards.helpers[i].getReadableDatabase().rawQuery(
+                        UserStatements.query(columns, selection, orderBy, shardLimit), selectionArgs);
+                if (sortColumn == null && remaining > 0) {
+                    remaining = Math.max(0, remaining - cursors[i].getCount());
+                }
+            }
+            if (cursors.length == 1) {
+                return cursors[0];
+            }
+            if (sortColumn == null) {
+                return new MergeCursor(cursors);
+            }
+            return new SortedMergeCursor(cursors, sortColumn, descending, limit);
+        } finally {
+            storageLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 将所有用户以流的方式写入输出流
+     * 每个用户占一行，格式为 "账户\t用户名\n"，字段中的反斜杠、制表符和换行符会被转义
+     * 数据直接从游标逐行写出，不在内存中构建完整列表，因此可以导出任意数量的用户
+     * 此方法不会关闭输出流
+     *
+     * @param out 目标输出流
+     * @return 导出的行数
+     * @throws IOException 写入失败时抛出（例如读端已关闭）
+     */
+    public int exportUsers(OutputStream out) throws IOException {
+        MainThreadCalls.check("UserRepository.exportUsers");
+        syncWithOtherProcesses();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 16 * 1024);
+        int rows = 0;
+        storageLock.readLock().lock();
+        try (RequestTrace.Span span = RequestTrace.section("db.export")) {
+            for (DatabaseHelper helper : shards.helpers) {
+                SQLiteDatabase db = helper.getReadableDatabase();
+                try (Cursor cursor = db.rawQuery(UserStatements.EXPORT, null)) {
+                    // 字段从复用的缓冲区直接写出，不为每一行创建 String
+                    RowScanner row = new RowScanner(cursor, DatabaseHelper.COLUMN_ACCOUNT, DatabaseHelper.COLUMN_USERNAME);
+                    while (row.next()) {
+                        writeEscaped(writer, row.chars(0), row.length(0));
+                        writer.write('\t');
+                        writeEscaped(writer, row.chars(1), row.length(1));
+                        writer.write('\n');
+                        rows++;
+                    }
+                }
+            }
+        } finally {
+            storageLock.readLock().unlock();
+        }
+        writer.flush();
+        return rows;
+    }
+
+    /**
+     * 按导出格式转义并写出一个字段，null 值的长度为 0，写为空字段
+     *
+     * @param writer 目标 Writer
+     * @param value  字段字符
+     * @param length 有效字符数
+     * @throws IOException 写入失败时抛出
+     */
+    private static void writeEscaped(Writer writer, char[] value, int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            char c = value[i];
+            switch (c) {
+                case '\\':
+                    writer.write("\\\\");
+                    break;
+                case '\t':
+                    writer.write("\\t");
+                    break;
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                default:
+                    writer.write(c);
+            }
+        }
+    }
+
     /**
      * 根据用户名删除一个用户
+     * 用户名不是分片键，因此删除会分发到所有分片
      *
      * @param username 要删除的用户的用户名
      */
     public void deleteUser(String username) {
-        SQLiteDatabase db = dbHelper.getWritableDatabase();
-        String selection = DatabaseHelper.COLUMN_USERNAME + " = ?";
-        String[] selectionArgs = {username};
-        db.delete(DatabaseHelper.TABLE_USERS, selection, selectionArgs);
+        MainThreadCalls.check("UserRepository.deleteUser");
+        syncWithOtherProcesses();
+        long deleted;
+        lockShardsForWrite();
+        try {
+            deleted = submitToEachShard(pipeline -> enqueueDeletion(pipeline, username));
+            if (deleted > 0) {
+                publishWrite();
+            }
+        } catch (RuntimeException e) {
+            // 部分分片可能已经提交，无法确定读模型的变化，下次使用时重建
+            readModel.invalidate();
+            throw e;
+        } finally {
+            unlockShardsForWrite();
+        }
+        AuditLog.getInstance().append(AuditRecord.Type.DELETE, username, deleted);
     }
 
     /**
      * 更新指定用户的密码
+     * 用户名不是分片键，因此更新会分发到所有分片
      *
      * @param username    要更新密码的用户的用户名
      * @param newPassword 新的原始密码
      */
     public void updateUserPassword(String username, String newPassword) {
-        SQLiteDatabase db = dbHelper.getWritableDatabase();
-        ContentValues values = new ContentValues();
-
+        MainThreadCalls.check("UserRepository.updateUserPassword");
+        syncWithOtherProcesses();
+        Deadline.check("hash");
         String hashedPassword = hashPassword(newPassword);
         if (hashedPassword == null) {
             Log.e(TAG, "Password hashing failed, update aborted.");
             return;
         }
-        values.put(DatabaseHelper.COLUMN_PASSWORD, hashedPassword);
+        long updated = submitToAllShards(db -> executeUpdateDelete(db, UserStatements.UPDATE_PASSWORD, hashedPassword, username));
+        if (updated > 0) {
+            // 改密不影响读模型，只让其他进程（例如维护调度）知道存储有写入
+            publishWrite();
+        }
+        AuditLog.getInstance().append(AuditRecord.Type.PASSWORD_CHANGE, username, updated);
+    }
+
+    /**
+     * 一次执行一批改密和删除
+     * 所有新密码先在调用线程上完成哈希，然后把整批修改同时放入各分片的写管道，
+     * 这样一批修改在每个分片上通常只占一个事务、一次日志同步，而不是每个修改各等一次提交
+     * 单个修改失败不影响同一批的其他修改
+     *
+     * @param edits 按顺序执行的修改
+     * @return 与 edits 一一对应的结果：受影响的总行数，失败时为 -1
+     */
+    public long[] applyUserEdits(List<UserEdit> edits) {
+        MainThreadCalls.check("UserRepository.applyUserEdits");
+        syncWithOtherProcesses();
+        int count = edits.size();
+        long[] results = new long[count];
+        // 改密的写操作；删除在入队时为每个分片单独创建，见 enqueueDeletion
+        WritePipeline.Mutation[] mutations = new WritePipeline.Mutation[count];
+        for (int i = 0; i < count; i++) {
+            final UserEdit edit = edits.get(i);
+            final String username = edit.getUsername();
+            if (edit.getType() == UserEdit.Type.DELETE) {
+                continue;
+            }
+            Deadline.check("hash");
+            final String hashedPassword = hashPassword(edit.getNewPassword());
+            if (hashedPassword == null) {
+                results[i] = -1;
+                continue;
+            }
+            mutations[i] = db -> executeUpdateDelete(db, UserStatements.UPDATE_PASSWORD, hashedPassword, username);
+        }
+
+        Deadline.check("db.write");
+        boolean anyWritten = false;
+        boolean deletesKnown = true;
+        ShardSet shards = lockShardsForWrite();
+        try (RequestTrace.Span span = RequestTrace.section("db.write")) {
+            WritePipeline.Pending[][] pending = new WritePipeline.Pending[count][];
+            // 先全部入队再等待，同一批修改由各分片的写线程合并提交
+            for (int i = 0; i < count; i++) {
+                boolean deletion = edits.get(i).getType() == UserEdit.Type.DELETE;
+                if (!deletion && mutations[i] == null) {
+                    continue;
+                }
+                pending[i] = new WritePipeline.Pending[shards.size()];
+                for (int shard = 0; shard < pending[i].length; shard++) {
+                    WritePipeline pipeline = shards.pipelines[shard];
+                    pending[i][shard] = deletion ? enqueueDeletion(pipeline, edits.get(i).getUsername())
+                            : pipeline.enqueue(mutations[i], Deadline.NONE);
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                if (pending[i] == null) {
+                    continue;
+                }
+                long total = 0;
+                boolean failed = false;
+                for (WritePipeline.Pending p : pending[i]) {
+                    try {
+                        total += p.await();
+                    } catch (RuntimeException e) {
+                        Log.e(TAG, "Batched edit failed", e);
+                        failed = true;
+                    }
+                }
+                if (failed) {
+                    results[i] = -1;
+                    // 部分分片可能已经提交，无法确定读模型的变化
+                    deletesKnown &= edits.get(i).getType() != UserEdit.Type.DELETE;
+                    anyWritten = true;
+                } else {
+                    results[i] = total;
+                    anyWritten |= total > 0;
+                }
+            }
+            if (!deletesKnown) {
+                readModel.invalidate();
+            }
+            if (anyWritten) {
+                publishWrite();
+            }
+        } finally {
+            unlockShardsForWrite();
+        }
+        for (int i = 0; i < count; i++) {
+            UserEdit edit = edits.get(i);
+            AuditLog.getInstance().append(edit.getType() == UserEdit.Type.DELETE
+                    ? AuditRecord.Type.DELETE : AuditRecord.Type.PASSWORD_CHANGE, edit.getUsername(), results[i]);
+        }
+        return results;
+    }
+
+    /**
+     * 在一个分片的写管道中按用户名删除，所在批次提交后在写线程上把被删除的账户应用到读模型
+     * 同一个账户总在同一个分片中，写线程按提交顺序应用，同一账户并发的插入和删除不会以相反的顺序到达读模型
+     *
+     * @param pipeline 分片的写管道
+     * @param username 用户名
+     * @return 可用于等待删除行数的句柄
+     */
+    private WritePipeline.Pending enqueueDeletion(WritePipeline pipeline, String username) {
+        // 只在该分片的写线程上读写
+        final List<String> accounts = new ArrayList<>();
+        return pipeline.enqueue(db -> deleteByUsername(db, username, accounts), Deadline.NONE, deleted -> {
+            if (deleted > 0) {
+                readModel.onDeleted(accounts);
+            }
+        });
+    }
+
+    /**
+     * 在写线程上按用户名删除，删除前记录被删除各行的账户
+     *
+     * @param db              已开启事务的可写数据库
+     * @param username        用户名
+     * @param deletedAccounts 接收被删除行的账户
+     * @return 删除的行数
+     */
+    private static int deleteByUsername(SQLiteDatabase db, String username, List<String> deletedAccounts) {
+        try (Cursor cursor = db.rawQuery(UserStatements.ACCOUNTS_BY_USERNAME, new String[]{username})) {
+            while (cursor.moveToNext()) {
+                deletedAccounts.add(cursor.getString(0));
+            }
+        }
+        return executeUpdateDelete(db, UserStatements.DELETE_BY_USERNAME, username);
+    }
+
+    /**
+     * 在写线程上插入一个用户
+     *
+     * @return 新行的行 ID，失败时返回 -1
+     */
+    private static long insert(SQLiteDatabase db, String username, String account, String hashedPassword) {
+        try (SQLiteStatement statement = db.compileStatement(UserStatements.INSERT)) {
+            statement.bindString(1, username);
+            statement.bindString(2, account);
+            statement.bindString(3, hashedPassword);
+            return statement.executeInsert();
+        } catch (SQLiteConstraintException e) {
+            // 与 SQLiteDatabase.insert 一致：约束冲突记录日志并返回 -1
+            // 其他错误可能已经使整个事务回滚，交给写管道让整批失败
+            Log.e(TAG, "Error inserting user", e);
+            return -1;
+        }
+    }
+
+    /**
+     * 在写线程上执行一条 UPDATE 或 DELETE 语句
+     *
+     * @param sql  UserStatements 中的语句
+     * @param args 按顺序绑定的字符串参数
+     * @return 受影响的行数
+     */
+    private static int executeUpdateDelete(SQLiteDatabase db, String sql, String... args) {
+        try (SQLiteStatement statement = db.compileStatement(sql)) {
+            statement.bindAllArgsAsStrings(args);
+            return statement.executeUpdateDelete();
+        }
+    }
+
+    /**
+     * 将同一个写操作提交到所有分片的写管道，各分片并行提交
+     * 截止时间只在入队前检查一次：一旦入队，所有分片都会执行，不会出现只有部分分片超时跳过的情况
+     *
+     * @param mutation 写操作
+     * @return 各分片结果之和（例如受影响的总行数）
+     */
+    private long submitToAllShards(WritePipeline.Mutation mutation) {
+        return submitToEachShard(pipeline -> pipeline.enqueue(mutation, Deadline.NONE));
+    }
+
+    /**
+     * 在所有分片的写管道中各放入一个写操作并等待，各分片并行提交
+     *
+     * @param enqueue 把写操作放入给定管道并返回句柄
+     * @return 各分片结果之和
+     */
+    private long submitToEachShard(Function<WritePipeline, WritePipeline.Pending> enqueue) {
+        Deadline.check("db.write");
+        ShardSet shards = lockShardsForWrite();
+        try (RequestTrace.Span span = RequestTrace.section("db.write")) {
+            WritePipeline.Pending[] pending = new WritePipeline.Pending[shards.size()];
+            for (int i = 0; i < pending.length; i++) {
+                pending[i] = enqueue.apply(shards.pipelines[i]);
+            }
+            long total = 0;
+            for (WritePipeline.Pending p : pending) {
+                total += p.await();
+            }
+            return total;
+        } finally {
+            unlockShardsForWrite();
+        }
+    }
+
+    /**
+     * 读取变更日志中游标之后的变更，供镜像用户列表的一方增量同步
+     * 每个分片有自己的日志和序号（见 {@link DatabaseHelper}），游标由日志标识和每个分片已读到的序号组成；
+     * 同一个账户总是在同一个分片中，因此同一个账户的变更总是按发生的顺序返回
+     * 以下情况返回需要重新同步的结果，并给出日志的最新位置：调用方从未同步过、日志标识不一致（分片布局已改变）、
+     * 需要的条目已被自动截断，或者游标比日志还新（数据库文件被替换过）
+     *
+     * @param journalId 上一次结果中的日志标识，从未同步过时传 0
+     * @param since     上一次结果中的序号，从未同步过时传 null
+     * @param limit     最多返回的变更数，至少为 1
+     * @return 变更和下一次使用的游标
+     */
+    public ChangePage getChangesSince(long journalId, long[] since, int limit) {
+        MainThreadCalls.check("UserRepository.getChangesSince");
+        syncWithOtherProcesses();
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be positive: " + limit);
+        }
+        storageLock.readLock().lock();
+        try {
+            return readChanges(this.shards, journalId, since, limit);
+        } finally {
+            storageLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * {@link #getChangesSince} 的实现，调用方必须持有存储布局锁
+     */
+    private static ChangePage readChanges(ShardSet shards, long journalId, long[] since, int limit) {
+        long currentId = shards.journalId();
+        if (journalId != currentId || since == null || since.length != shards.size()) {
+            return resyncPage(shards, currentId);
+        }
+        long[] next = since.clone();
+        List<UserChange> changes = new ArrayList<>();
+        for (int i = 0; i < shards.size() && changes.size() < limit; i++) {
+            Deadline.check("db.query");
+            SQLiteDatabase db = shards.helpers[i].getReadableDatabase();
+            int first = changes.size();
+            String[] args = {String.valueOf(since[i]), String.valueOf(limit - first)};
+            try (Cursor cursor = db.rawQuery(UserStatements.CHANGES_SINCE, args)) {
+                while (cursor.moveToNext()) {
+                    long seq = cursor.getLong(0);
+                    if (changes.size() == first && seq != since[i] + 1) {
+                        // 已提交的序号是连续的，第一条不紧接在游标之后说明中间的条目已被截断
+                        return resyncPage(shards, currentId);
+                    }
+                    changes.add(new UserChange(i, seq, cursor.getInt(1), cursor.getString(2)));
+                    next[i] = seq;
+                }
+            }
+            if (changes.size() == first
+                    && since[i] > DatabaseUtils.longForQuery(db, UserStatements.JOURNAL_HEAD, null)) {
+                return resyncPage(shards, currentId);
+            }
+        }
+        return new ChangePage(currentId, next, changes, false, changes.size() >= limit);
+    }
+
+    /**
+     * 生成需要重新同步的结果，游标指向每个分片日志的最新位置；调用方必须持有存储布局锁
+     */
+    private static ChangePage resyncPage(ShardSet shards, long journalId) {
+        return new ChangePage(journalId, journalHeads(shards), Collections.<UserChange>emptyList(), true, false);
+    }
+
+    /**
+     * 读取每个分片日志的最新序号；调用方必须持有存储布局锁
+     */
+    private static long[] journalHeads(ShardSet shards) {
+        long[] heads = new long[shards.size()];
+        for (int i = 0; i < heads.length; i++) {
+            heads[i] = DatabaseUtils.longForQuery(shards.helpers[i].getReadableDatabase(),
+                    UserStatements.JOURNAL_HEAD, null);
+        }
+        return heads;
+    }
+
+    /**
+     * 获取各分片写操作组提交的统计数据（批大小、提交耗时）
+     *
+     * @return 每个分片一个统计快照
+     */
+    public List<WritePipeline.Stats> getWriteStats() {
+        List<WritePipeline.Stats> stats = new ArrayList<>();
+        for (WritePipeline pipeline : shards.pipelines) {
+            stats.add(pipeline.getStats());
+        }
+        return stats;
+    }
+
+    /**
+     * 在每个分片上依次执行一项数据库维护任务，见 {@link MaintenanceJob}
+     * 执行期间持有存储布局读锁，不会与重新分片同时进行；任务让出后不再继续后面的分片
+     *
+     * @param job         维护任务
+     * @param shouldYield 每一步之前调用，返回 true 时尽快结束
+     * @return 已执行的分片的结果，让出的分片也包含在内
+     */
+    public List<MaintenanceResult> runMaintenance(MaintenanceJob job, BooleanSupplier shouldYield) {
+        MainThreadCalls.check("UserRepository.runMaintenance");
+        syncWithOtherProcesses();
+        List<MaintenanceResult> results = new ArrayList<>();
+        storageLock.readLock().lock();
+        try {
+            for (DatabaseHelper helper : shards.helpers) {
+                MaintenanceResult result = job.run(helper.getWritableDatabase(), shouldYield);
+                results.add(result);
+                if (result.yielded) {
+                    break;
+                }
+            }
+        } finally {
+            storageLock.readLock().unlock();
+        }
+        return results;
+    }
+
+    /**
+     * 获取当前的分片数量
+     *
+     * @return 分片数量，1 表示单文件存储
+     */
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    /**
+     * 重新分片：把现有数据（包括原来的单文件 users.db）重新分布到指定数量的分片中
+     * 复制期间持有存储布局写锁，所有读写操作会等待复制完成；复制成功后才切换到新分片并删除旧文件，
+     * 复制失败时保持原有存储不变
+     * 存储布局写锁只在本进程内有效，因此从复制到删除旧文件还持有跨进程的独占布局锁（见 {@link StoreVersion}）：
+     * 开始前等待其他进程进行中的写操作提交，期间其他进程的写操作等待，结束后它们按新的分片数量重新打开分片再写入
+     * 从多个分片合并时用户 ID 会被重新分配，密码哈希原样保留
+     *
+     * @param shardCount 目标分片数量，至少为 1
+     */
+    public void reshard(int shardCount) {
+        MainThreadCalls.check("UserRepository.reshard");
+        syncWithOtherProcesses();
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Shard count must be positive: " + shardCount);
+        }
+        storageLock.writeLock().lock();
+        try {
+            lockLayoutExclusive();
+        } catch (RuntimeException e) {
+            storageLock.writeLock().unlock();
+            throw e;
+        }
+        try {
+            // 等待布局锁期间其他进程可能已经重新分片
+            int published = storeVersion == null ? 0 : storeVersion.getShardCount();
+            if (published > 0 && published != shards.size()) {
+                reopenShards(published);
+                shards.resetJournalId();
+                journalBehind = true;
+            }
+            ShardSet old = shards;
+            if (old.size() == shardCount) {
+                return;
+            }
+            // 清理之前重新分片可能遗留的同名文件
+            deleteShardFiles(shardCount);
+            ShardSet next = new ShardSet(context, storageName, shardCount);
+            int rows = 0;
+            try {
+                for (DatabaseHelper helper : old.helpers) {
+                    try (Cursor cursor = queryRows(helper.getReadableDatabase())) {
+                        // 只有单一来源时用户 ID 才不会冲突，可以保留
+                        rows += copyIntoShards(cursor, next, old.size() == 1, false);
+                    }
+                }
+                next.resetJournalId();
+            } catch (RuntimeException e) {
+                next.close();
+                deleteShardFiles(shardCount);
+                throw e;
+            }
+            preferences.edit().putInt(KEY_SHARD_COUNT, shardCount).commit();
+            shards = next;
+            if ((storeVersion != null && storeVersion.publishShardCount(shardCount)) || journalBehind) {
+                // 复制前其他进程的写入可能还没有应用到读模型
+                journalCursor = null;
+                readModel.invalidate();
+            } else {
+                // 内容没有变化，读模型继续有效，日志位置换成新分片的
+                journalCursorId = next.journalId();
+                journalCursor = journalHeads(next);
+            }
+            old.close();
+            deleteShardFiles(old.size());
+            Log.d(TAG, "Resharded " + rows + " users from " + old.size() + " to " + shardCount + " shards.");
+        } finally {
+            if (storeVersion != null) {
+                storeVersion.unlockLayoutExclusive();
+            }
+            storageLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 获取跨进程的独占布局锁，调用方持有存储布局写锁
+     * 无法加锁时不能保证其他进程不向旧分片写入，放弃重新分片
+     */
+    private void lockLayoutExclusive() {
+        if (storeVersion == null) {
+            return;
+        }
+        try {
+            storeVersion.lockLayoutExclusive();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot lock store layout for resharding", e);
+        }
+    }
+
+    /**
+     * 删除给定分片数量下的所有分片数据库文件
+     *
+     * @param count 分片数量
+     */
+    private void deleteShardFiles(int count) {
+        for (int i = 0; i < count; i++) {
+            context.deleteDatabase(DatabaseHelper.databaseName(storageName, i, count));
+        }
+    }
+
+    /**
+     * 生成用户数据库的一致性快照，期间登录和注册可以照常进行
+     * 快照先写入同目录下的临时文件，完成后再重命名为目标文件，因此目标文件要么不存在，要么是完整的快照
+     * 为了不抢占前台请求的 CPU 和 I/O，调用线程在生成快照期间会被临时降为后台优先级
+     * 快照总是一个单文件的 users.db 格式数据库；分片存储时每个分片各自一致，再合并到同一个文件中
+     *
+     * @param target 快照文件，已存在时会被覆盖
+     * @throws IOException 无法写入目标文件时抛出
+     */
+    public void snapshotTo(File target) throws IOException {
+        MainThreadCalls.check("UserRepository.snapshotTo");
+        syncWithOtherProcesses();
+        File temp = new File(target.getPath() + ".tmp");
+        deleteStale(temp);
+        int tid = Process.myTid();
+        int previousPriority = Process.getThreadPriority(tid);
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        storageLock.readLock().lock();
+        try {
+            ShardSet shards = this.shards;
+            shards.helpers[0].snapshotTo(temp);
+            for (int i = 1; i < shards.size(); i++) {
+                File part = new File(target.getPath() + ".part" + i);
+                deleteStale(part);
+                try {
+                    shards.helpers[i].snapshotTo(part);
+                    appendSnapshot(temp, part);
+                } finally {
+                    part.delete();
+                }
+            }
+        } catch (SQLiteException e) {
+            temp.delete();
+            throw new IOException("Snapshot failed", e);
+        } finally {
+            storageLock.readLock().unlock();
+            Process.setThreadPriority(previousPriority);
+        }
+        if (!temp.renameTo(target)) {
+            temp.delete();
+            throw new IOException("Cannot move snapshot to " + target);
+        }
+    }
+
+    /**
+     * 删除遗留的临时文件
+     *
+     * @param file 要删除的文件
+     * @throws IOException 文件存在但无法删除时抛出
+     */
+    private static void deleteStale(File file) throws IOException {
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot delete stale snapshot " + file);
+        }
+    }
+
+    /**
+     * 把一个分片快照中的所有用户追加到合并后的快照中，用户 ID 重新分配
+     *
+     * @param merged 合并后的快照文件
+     * @param part   单个分片的快照文件
+     */
+    private static void appendSnapshot(File merged, File part) {
+        SQLiteDatabase target = SQLiteDatabase.openDatabase(merged.getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+        SQLiteDatabase source = SQLiteDatabase.openDatabase(part.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+        target.beginTransaction();
+        try (Cursor cursor = queryRows(source);
+             SQLiteStatement insert = compileInsert(target, false)) {
+            while (cursor.moveToNext()) {
+                bindRow(insert, cursor, false);
+                insert.executeInsert();
+            }
+            target.setTransactionSuccessful();
+        } finally {
+            target.endTransaction();
+            source.close();
+            target.close();
+        }
+    }
+
+    /**
+     * 用快照文件的内容替换当前所有用户
+     * 每个分片的替换在一个事务中完成：读操作在此期间仍然看到旧数据，事务提交后一次性切换到快照中的数据
+     * 用户 ID 和密码哈希原样保留，行按账户重新分配到当前的分片中
+     * 恢复的行不逐条记录变更日志，日志换成新的标识，客户端和其他进程下一次读取时直接重新同步
+     *
+     * @param snapshot 由 {@link #snapshotTo(File)} 生成的快照文件
+     * @return 恢复的用户数
+     */
+    public int restoreFrom(File snapshot) {
+        MainThreadCalls.check("UserRepository.restoreFrom");
+        syncWithOtherProcesses();
+        SQLiteDatabase source = SQLiteDatabase.openDatabase(snapshot.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+        int rows;
+        ShardSet shards = lockShardsForWrite();
+        try (Cursor cursor = queryRows(source)) {
+            rows = copyIntoShards(cursor, shards, true, true);
+        } finally {
+            shards.resetJournalId();
+            readModel.invalidate();
+            publishWrite();
+            unlockShardsForWrite();
+            source.close();
+        }
+        Log.d(TAG, "Restored " + rows + " users from " + snapshot);
+        return rows;
+    }
 
-        String selection = DatabaseHelper.COLUMN_USERNAME + " = ?";
-        String[] selectionArgs = {username};
-        db.update(DatabaseHelper.TABLE_USERS, values, selection, selectionArgs);
+    /**
+     * 查询数据库中的所有完整行（包括密码哈希），按 ID 排序
+     *
+     * @param db 来源数据库
+     * @return 包含 ROW_COLUMNS 各列的游标
+     */
+    private static Cursor queryRows(SQLiteDatabase db) {
+        return db.rawQuery(UserStatements.ROWS, null);
+    }
+
+    /**
+     * 把游标中的完整行按账户分配并写入目标分片
+     * 每个目标分片在各自的事务中写入，所有行写完后才依次提交；写入期间不逐行记录变更日志，
+     * 提交时各分片的日志被清空并换成新的标识（见 {@link DatabaseHelper#beginBulkLoad}），调用方需要 {@link ShardSet#resetJournalId}
+     *
+     * @param cursor  由 queryRows 返回的游标
+     * @param target  目标分片
+     * @param keepIds 是否保留原来的用户 ID
+     * @param replace 是否先清空目标分片中的现有用户
+     * @return 复制的行数
+     */
+    private static int copyIntoShards(Cursor cursor, ShardSet target, boolean keepIds, boolean replace) {
+        int count = target.size();
+        SQLiteDatabase[] dbs = new SQLiteDatabase[count];
+        SQLiteStatement[] inserts = new SQLiteStatement[count];
+        int started = 0;
+        int rows = 0;
+        try {
+            for (int i = 0; i < count; i++) {
+                dbs[i] = target.helpers[i].getWritableDatabase();
+                dbs[i].beginTransaction();
+                started++;
+                DatabaseHelper.beginBulkLoad(dbs[i]);
+                if (replace) {
+                    dbs[i].delete(DatabaseHelper.TABLE_USERS, null, null);
+                }
+                inserts[i] = compileInsert(dbs[i], keepIds);
+            }
+            while (cursor.moveToNext()) {
+                SQLiteStatement insert = inserts[target.indexFor(cursor.getString(ROW_ACCOUNT_INDEX))];
+                bindRow(insert, cursor, keepIds);
+                insert.executeInsert();
+                rows++;
+            }
+            for (int i = 0; i < count; i++) {
+                DatabaseHelper.endBulkLoad(dbs[i]);
+                dbs[i].setTransactionSuccessful();
+            }
+        } finally {
+            for (int i = 0; i < started; i++) {
+                if (inserts[i] != null) {
+                    inserts[i].close();
+                }
+                dbs[i].endTransaction();
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * 编译整行插入语句
+     *
+     * @param db      目标数据库
+     * @param keepIds 是否插入原来的用户 ID
+     * @return 插入语句，调用方负责关闭
+     */
+    private static SQLiteStatement compileInsert(SQLiteDatabase db, boolean keepIds) {
+        return db.compileStatement(keepIds ? UserStatements.INSERT_WITH_ID : UserStatements.INSERT);
+    }
+
+    /**
+     * 把游标当前行绑定到整行插入语句
+     *
+     * @param insert  由 compileInsert 编译的语句
+     * @param cursor  由 queryRows 返回的游标
+     * @param keepIds 是否绑定原来的用户 ID
+     */
+    private static void bindRow(SQLiteStatement insert, Cursor cursor, boolean keepIds) {
+        insert.clearBindings();
+        int index = 1;
+        if (keepIds) {
+            insert.bindLong(index++, cursor.getLong(0));
+        }
+        for (int column = 1; column < ROW_COLUMNS.length; column++) {
+            String value = cursor.getString(column);
+            if (value == null) {
+                insert.bindNull(index++);
+            } else {
+                insert.bindString(index++, value);
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,108 @@
+package com.surpasslike.welcomateservice.data;
+
+import java.util.Arrays;
+
+/**
+ * 排序后的用户列表按首字符划分的分组，供快速滚动条使用
+ * 每个分组记录标签、在列表中的起始位置和行数；只包含非空分组，标签相同的相邻分组会被合并
+ * 这是一个不可变的快照，由 {@link UserRepository#getSections(UserSort)} 从读模型的统计中生成，不需要数行
+ */
+public final class UserSections {
+    private final String[] labels;
+    private final int[] positions;
+    private final int[] counts;
+    private final int total;
+
+    private UserSections(String[] labels, int[] positions, int[] counts, int total) {
+        this.labels = labels;
+        this.positions = positions;
+        this.counts = counts;
+        this.total = total;
+    }
+
+    /**
+     * 由各桶的行数生成分组
+     *
+     * @param bucketCounts 按 BINARY 排序的桶顺序排列的行数
+     * @param descending   列表是否降序，降序时分组顺序相反
+     * @return 分组
+     */
+    static UserSections fromBuckets(int[] bucketCounts, boolean descending) {
+        String[] labels = new String[bucketCounts.length];
+        int[] positions = new int[bucketCounts.length];
+        int[] counts = new int[bucketCounts.length];
+        int size = 0;
+        int position = 0;
+        for (int i = 0; i < bucketCounts.length; i++) {
+            int bucket = descending ? bucketCounts.length - 1 - i : i;
+            int count = bucketCounts[bucket];
+            if (count <= 0) {
+                continue;
+            }
+            String label = SectionIndex.labelOf(bucket);
+            if (size > 0 && labels[size - 1].equals(label)) {
+                counts[size - 1] += count;
+            } else {
+                labels[size] = label;
+                positions[size] = position;
+                counts[size] = count;
+                size++;
+            }
+            position += count;
+        }
+        return new UserSections(Arrays.copyOf(labels, size), Arrays.copyOf(positions, size),
+                Arrays.copyOf(counts, size), position);
+    }
+
+    /**
+     * @return 分组数量
+     */
+    public int size() {
+        return labels.length;
+    }
+
+    /**
+     * @return 所有分组的行数之和
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * @param section 分组序号
+     * @return 分组标签，例如 "A"
+     */
+    public String getLabel(int section) {
+        return labels[section];
+    }
+
+    /**
+     * @param section 分组序号
+     * @return 分组第一行在列表中的位置
+     */
+    public int getPosition(int section) {
+        return positions[section];
+    }
+
+    /**
+     * @param section 分组序号
+     * @return 分组的行数
+     */
+    public int getCount(int section) {
+        return counts[section];
+    }
+
+    /**
+     * 查找列表位置所在的分组
+     *
+     * @param position 列表位置
+     * @return 分组序号；没有分组时返回 -1
+     */
+    public int sectionForPosition(int position) {
+        if (positions.length == 0) {
+            return -1;
+        }
+        int index = Arrays.binarySearch(positions, position);
+        return index >= 0 ? index : Math.max(0, -index - 2);
+    }
+}
@@ -0,0 +1,31 @@
+package com.surpasslike.welcomateservice.data;
+
+import com.surpasslike.welcomateservice.data.db.DatabaseHelper;
+
+/**
+ * 用户列表的排序方式
+ * 除插入顺序外，每种排序都由对应列上的索引直接按序读取（用户名索引、账户的唯一约束索引），不需要临时排序；
+ * 文本按 SQLite 默认的 BINARY 规则（Unicode 码点）比较，大写字母排在小写字母之前
+ */
+public enum UserSort {
+    /** 插入顺序，即用户 ID 顺序 */
+    INSERTION(null, false),
+    /** 按用户名升序 */
+    USERNAME_ASC(DatabaseHelper.COLUMN_USERNAME, false),
+    /** 按用户名降序 */
+    USERNAME_DESC(DatabaseHelper.COLUMN_USERNAME, true),
+    /** 按账户升序 */
+    ACCOUNT_ASC(DatabaseHelper.COLUMN_ACCOUNT, false),
+    /** 按账户降序 */
+    ACCOUNT_DESC(DatabaseHelper.COLUMN_ACCOUNT, true);
+
+    /** 排序列，插入顺序时为 null */
+    public final String column;
+    /** 是否降序 */
+    public final boolean descending;
+
+    UserSort(String column, boolean descending) {
+        this.column = column;
+        this.descending = descending;
+    }
+}
@@ -0,0 +1,116 @@
+package com.surpasslike.welcomateservice.data;
+
+import android.database.sqlite.SQLiteQueryBuilder;
+
+import com.surpasslike.welcomateservice.data.db.DatabaseHelper;
+
+/**
+ * UserRepository 执行的所有 SQL 语句
+ * 语句集中在这里，查询计划测试逐条检查的就是仓库实际执行的文本，两者不会逐渐不一致；
+ * 新增语句时请同时在 UserQueryPlanTest 中登记它应当使用的索引
+ */
+final class UserStatements {
+    private static final String T = DatabaseHelper.TABLE_USERS;
+    private static final String ID = DatabaseHelper.COLUMN_ID;
+    private static final String USERNAME = DatabaseHelper.COLUMN_USERNAME;
+    private static final String ACCOUNT = DatabaseHelper.COLUMN_ACCOUNT;
+    private static final String PASSWORD = DatabaseHelper.COLUMN_PASSWORD;
+
+    /** 登录：按账户取用户名和密码哈希，参数为账户 */
+    static final String LOGIN =
+            "SELECT " + USERNAME + ", " + PASSWORD + " FROM " + T + " WHERE " + ACCOUNT + " = ?";
+
+    /** 按账户取用户名（按变更日志更新读模型），参数为账户 */
+    static final String USERNAME_BY_ACCOUNT =
+            "SELECT " + USERNAME + " FROM " + T + " WHERE " + ACCOUNT + " = ?";
+
+    /** 账户是否已存在，参数为账户 */
+    static final String COUNT_BY_ACCOUNT =
+            "SELECT COUNT(*) FROM " + T + " WHERE " + ACCOUNT + " = ?";
+
+    /** 用户名是否存在，参数为用户名 */
+    static final String COUNT_BY_USERNAME =
+            "SELECT COUNT(*) FROM " + T + " WHERE " + USERNAME + " = ?";
+
+    /** 用户总数 */
+    static final String COUNT_ALL =
+            "SELECT COUNT(*) FROM " + T;
+
+    /** 插入用户，参数依次为用户名、账户、密码哈希 */
+    static final String INSERT =
+            "INSERT INTO " + T + " (" + USERNAME + ", " + ACCOUNT + ", " + PASSWORD + ") VALUES (?, ?, ?)";
+
+    /** 保留原 ID 插入整行（重新分片和恢复），参数依次为 ID、用户名、账户、密码哈希 */
+    static final String INSERT_WITH_ID =
+            "INSERT INTO " + T + " (" + ID + ", " + USERNAME + ", " + ACCOUNT + ", " + PASSWORD + ") VALUES (?, ?, ?, ?)";
+
+    /** 按用户名删除，参数为用户名 */
+    static final String DELETE_BY_USERNAME =
+            "DELETE FROM " + T + " WHERE " + USERNAME + " = ?";
+
+    /** 按用户名改密，参数依次为密码哈希、用户名 */
+    static final String UPDATE_PASSWORD =
+            "UPDATE " + T + " SET " + PASSWORD + " = ? WHERE " + USERNAME + " = ?";
+
+    /** 全部用户名和账户，不排序（列表和读模型重建） */
+    static final String LIST_NAMES =
+            "SELECT " + USERNAME + ", " + ACCOUNT + " FROM " + T;
+
+    /** 按插入顺序列出用户，供列表游标使用 */
+    static final String LIST_BY_ID =
+            "SELECT " + ID + " AS _id, " + USERNAME + ", " + ACCOUNT + " FROM " + T + " ORDER BY " + ID;
+
+    /** 排序列表返回的列，与 {@link #LIST_BY_ID} 相同，排序和分片归并见 {@link #query} */
+    static final String[] LIST_COLUMNS = {ID + " AS _id", USERNAME, ACCOUNT};
+
+    /** 某个用户名下所有用户的账户（删除前记录被删除的行），参数为用户名 */
+    static final String ACCOUNTS_BY_USERNAME =
+            "SELECT " + ACCOUNT + " FROM " + T + " WHERE " + USERNAME + " = ?";
+
+    /** 按用户名首字符码点分组计数，空值和空字符串的码点为 NULL */
+    static final String FIRST_CHARS_USERNAME =
+            "SELECT unicode(" + USERNAME + "), COUNT(*) FROM " + T + " GROUP BY 1";
+
+    /** 按账户首字符码点分组计数，空值和空字符串的码点为 NULL */
+    static final String FIRST_CHARS_ACCOUNT =
+            "SELECT unicode(" + ACCOUNT + "), COUNT(*) FROM " + T + " GROUP BY 1";
+
+    /** 按插入顺序导出账户和用户名 */
+    static final String EXPORT =
+            "SELECT " + ACCOUNT + ", " + USERNAME + " FROM " + T + " ORDER BY " + ID;
+
+    /** 按插入顺序读取完整行（重新分片、快照合并和恢复），列顺序与 UserRepository.ROW_COLUMNS 一致 */
+    static final String ROWS =
+            "SELECT " + ID + ", " + USERNAME + ", " + ACCOUNT + ", " + PASSWORD + " FROM " + T + " ORDER BY " + ID;
+
+    /** 变更日志中某个序号之后的条目，按序号排列，参数依次为序号、最多返回的条数 */
+    static final String CHANGES_SINCE =
+            "SELECT " + DatabaseHelper.COLUMN_SEQ + ", " + DatabaseHelper.COLUMN_OP + ", " + ACCOUNT +
+                    " FROM " + DatabaseHelper.TABLE_CHANGES + " WHERE " + DatabaseHelper.COLUMN_SEQ + " > ?" +
+                    " ORDER BY " + DatabaseHelper.COLUMN_SEQ + " LIMIT ?";
+
+    /** 变更日志中最新的序号，日志为空时为 0 */
+    static final String JOURNAL_HEAD =
+            "SELECT IFNULL(MAX(" + DatabaseHelper.COLUMN_SEQ + "), 0) FROM " + DatabaseHelper.TABLE_CHANGES;
+
+    /** 变更日志的标识 */
+    static final String JOURNAL_ID =
+            "SELECT " + DatabaseHelper.COLUMN_JOURNAL_ID + " FROM " + DatabaseHelper.TABLE_JOURNAL_INFO;
+
+    private UserStatements() {
+    }
+
+    /**
+     * 生成条件查询的语句，供 {@link UserRepository#queryUsers(String[], String, String[], String, boolean, int)} 使用
+     *
+     * @param columns   要返回的列
+     * @param selection WHERE 条件，可以为 null
+     * @param orderBy   ORDER BY 子句，可以为 null
+     * @param limit     最多返回的行数，小于 0 表示不限制
+     * @return SQL 语句
+     */
+    static String query(String[] columns, String selection, String orderBy, int limit) {
+        return SQLiteQueryBuilder.buildQueryString(false, T, columns, selection, null, null, orderBy,
+                limit < 0 ? null : String.valueOf(limit));
+    }
+}
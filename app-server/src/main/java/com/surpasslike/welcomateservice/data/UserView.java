@@ -0,0 +1,174 @@
+package com.surpasslike.welcomateservice.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * 读模型的一个不可变视图：基础快照 {@link UserIndex} 加上之后提交的写操作 {@link UserOverlay}
+ * 叠加层中有条目的账户以叠加层为准，基础快照中的同一账户被忽略；行数在生成视图时增量计算，读取时不需要遍历
+ */
+final class UserView {
+    private final UserIndex base;
+    private final UserOverlay overlay;
+    private final int size;
+
+    private UserView(UserIndex base, UserOverlay overlay, int size) {
+        this.base = base;
+        this.overlay = overlay;
+        this.size = size;
+    }
+
+    /**
+     * 在基础快照上叠加写操作，行数需要对叠加层的每个条目查找一次基础快照
+     *
+     * @param base    基础快照
+     * @param overlay 基础快照之后提交的写操作
+     * @return 新的视图
+     */
+    static UserView of(UserIndex base, UserOverlay overlay) {
+        int size = base.size();
+        for (int i = 0; i < overlay.size(); i++) {
+            size += (overlay.usernameAt(i) != null ? 1 : 0) - (base.containsAccount(overlay.accountAt(i)) ? 1 : 0);
+        }
+        return new UserView(base, overlay, size);
+    }
+
+    UserIndex base() {
+        return base;
+    }
+
+    UserOverlay overlay() {
+        return overlay;
+    }
+
+    /**
+     * 生成记录了一次写操作的新视图，本视图不变；只复制叠加层
+     *
+     * @param account  账户
+     * @param username 插入时为用户名，删除时为 null
+     * @return 新的视图
+     */
+    UserView with(String account, String username) {
+        UserOverlay next = overlay.with(account, username);
+        if (next == overlay) {
+            return this;
+        }
+        int found = overlay.find(account);
+        boolean wasPresent = found >= 0 ? overlay.usernameAt(found) != null : base.containsAccount(account);
+        int delta = (username != null ? 1 : 0) - (wasPresent ? 1 : 0);
+        return new UserView(base, next, size + delta);
+    }
+
+    /**
+     * 换成合并后的基础快照，内容不变
+     *
+     * @param merged   由本视图的基础快照合并 applied 得到的新基础快照
+     * @param applied  合并进新基础快照的叠加层
+     * @return 新的视图，叠加层只保留合并之后的写操作
+     */
+    UserView rebased(UserIndex merged, UserOverlay applied) {
+        return new UserView(merged, overlay.without(applied), size);
+    }
+
+    /**
+     * @return 行数
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * 检查账户是否存在
+     */
+    boolean containsAccount(String account) {
+        int found = overlay.find(account);
+        return found >= 0 ? overlay.usernameAt(found) != null : base.containsAccount(account);
+    }
+
+    /**
+     * 检查用户名是否存在
+     */
+    boolean containsUsername(String username) {
+        for (int i = 0; i < overlay.size(); i++) {
+            if (username.equals(overlay.usernameAt(i))) {
+                return true;
+            }
+        }
+        // 同一用户名通常只有很少几行，逐行检查其账户是否被叠加层覆盖
+        for (int i = base.firstUsernameIndex(username); i < base.size() && base.usernameEquals(i, username); i++) {
+            if (overlay.find(base.accountAt(i)) < 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 统计用户名或账户在各首字符桶中的行数，用于生成快速滚动的分组
+     * 基础快照的统计只计算一次，这里只按叠加层的条目修正
+     *
+     * @param byUsername true 表示按用户名，false 表示按账户
+     * @return 各桶的行数
+     */
+    int[] bucketCounts(boolean byUsername) {
+        int[] counts = base.bucketCounts(byUsername).clone();
+        for (int i = 0; i < overlay.size(); i++) {
+            int row = base.findAccount(overlay.accountAt(i));
+            if (row >= 0) {
+                counts[base.bucketAt(row, byUsername)]--;
+            }
+            String username = overlay.usernameAt(i);
+            if (username != null) {
+                counts[SectionIndex.bucketOf(byUsername ? username : overlay.accountAt(i))]++;
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * 按用户名顺序依次访问每一行
+     *
+     * @param action 接收用户名和账户
+     */
+    void forEachByUsername(BiConsumer<String, String> action) {
+        final List<Integer> added = new ArrayList<>();
+        for (int i = 0; i < overlay.size(); i++) {
+            if (overlay.usernameAt(i) != null) {
+                added.add(i);
+            }
+        }
+        Collections.sort(added, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return SortedMergeCursor.compareCodePoints(overlay.usernameAt(a), overlay.usernameAt(b));
+            }
+        });
+        int next = 0;
+        for (int i = 0; i < base.size(); i++) {
+            String username = base.usernameAt(i);
+            while (next < added.size()
+                    && SortedMergeCursor.compareCodePoints(overlay.usernameAt(added.get(next)), username) < 0) {
+                int entry = added.get(next++);
+                action.accept(overlay.usernameAt(entry), overlay.accountAt(entry));
+            }
+            String account = base.accountAt(i);
+            if (overlay.find(account) < 0) {
+                action.accept(username, account);
+            }
+        }
+        while (next < added.size()) {
+            int entry = added.get(next++);
+            action.accept(overlay.usernameAt(entry), overlay.accountAt(entry));
+        }
+    }
+
+    /**
+     * 估算占用的堆内存（字节）
+     */
+    long estimateBytes() {
+        return base.estimateBytes() + overlay.estimateBytes();
+    }
+}
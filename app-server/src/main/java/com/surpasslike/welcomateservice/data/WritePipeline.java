@@ -0,0 +1,432 @@
+package com.surpasslike.welcomateservice.data;
+
+import android.database.sqlite.SQLiteConstraintException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import com.surpasslike.common.Deadline;
+import com.surpasslike.welcomateservice.scheduler.Lane;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 写操作的组提交 (Group Commit) 管道
+ * 来自不同 Binder 线程的写操作先进入队列，由唯一的写线程按批取出，在同一个事务中执行并一次提交，
+ * 这样一批操作只需要一次日志同步 (fsync)，而不是每个操作一次
+ * 一批在凑满 maxBatchSize 个操作或者等待 maxDelayMillis 毫秒后提交；每个调用方仍然得到自己操作的结果
+ * 写操作按提交线程所属的 {@link Lane} 分别排队，组批时按通道权重轮流取出（加权轮询），
+ * 因此批量任务积压时，交互式和普通请求的写操作仍然能进入最近的一批
+ * 操作可以带一个提交后的回调（见 {@link Committed}），它们在写线程上按提交顺序执行
+ * 写操作入队时记下所属请求的截止时间（见 {@link Deadline}），轮到它执行时已经超时的操作不再执行，
+ * 以 {@link Deadline.DeadlineExceededException} 结束，不影响同一批的其他操作
+ */
+public class WritePipeline {
+    private static final String TAG = "WritePipeline";
+
+    // 每提交多少批输出一次统计日志
+    private static final int LOG_INTERVAL_BATCHES = 256;
+
+    /**
+     * 一个写操作，在写线程的事务中执行
+     */
+    public interface Mutation {
+        /**
+         * 在给定的数据库上执行写操作
+         *
+         * @param db 已开启事务的可写数据库
+         * @return 操作结果，例如插入的行 ID 或受影响的行数
+         */
+        long apply(SQLiteDatabase db);
+    }
+
+    /**
+     * 写操作提交后的回调，在写线程上、调用方得到结果之前执行
+     * 同一个管道中的回调严格按提交顺序执行，用于把写操作的效果应用到内存状态（例如读模型），
+     * 不会因为各调用线程被调度的先后而以与提交相反的顺序到达
+     */
+    public interface Committed {
+        /**
+         * @param result 写操作自己的结果，只有操作成功并且所在批次已提交时才会调用
+         */
+        void onCommitted(long result);
+    }
+
+    /**
+     * 一个已入队的写操作，用于等待其结果
+     * 同时向多个管道提交操作时（例如分片存储中的按用户名更新），可以先全部入队再逐个等待，让各管道并行提交
+     */
+    public static final class Pending {
+        final Mutation mutation;
+        final long deadline;
+        final Committed committed;
+        final CountDownLatch done = new CountDownLatch(1);
+        long result;
+        RuntimeException error;
+
+        Pending(Mutation mutation, long deadline, Committed committed) {
+            this.mutation = mutation;
+            this.deadline = deadline;
+            this.committed = committed;
+        }
+
+        /**
+         * 等待该操作所在的批次提交
+         *
+         * @return 该操作自己的结果
+         * @throws RuntimeException 操作本身或其所在批次的提交失败时抛出
+         */
+        public long await() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                } catch (InterruptedException e) {
+                    // 操作已经入队，必须等到它的结果，中断状态稍后恢复
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (error != null) {
+                throw error;
+            }
+            return result;
+        }
+    }
+
+    private static final Lane[] LANES = Lane.values();
+
+    private final SQLiteOpenHelper dbHelper;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    // 每个通道一个队列，全部由 lock 保护
+    private final Object lock = new Object();
+    private final List<ArrayDeque<Pending>> queues = new ArrayList<>(LANES.length);
+    private int queued;
+    private boolean shutdown;
+    private final Thread writer;
+
+    // 统计数据，只由写线程更新，读取时加锁得到一致的快照
+    private final Object statsLock = new Object();
+    private long batchCount;
+    private long operationCount;
+    private int maxBatch;
+    private long totalCommitNanos;
+    private long maxCommitNanos;
+    private long lastCommitNanos;
+
+    /**
+     * 构造函数，创建并启动写线程
+     *
+     * @param dbHelper       写入的数据库
+     * @param name           写线程名称，便于在日志和调试器中区分
+     * @param maxBatchSize   一批最多包含的操作数
+     * @param maxDelayMillis 一批在提交前最多等待后续操作的毫秒数
+     */
+    public WritePipeline(SQLiteOpenHelper dbHelper, String name, int maxBatchSize, long maxDelayMillis) {
+        this.dbHelper = dbHelper;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        for (int i = 0; i < LANES.length; i++) {
+            queues.add(new ArrayDeque<Pending>());
+        }
+        writer = new Thread(this::runWriter, name);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * 提交一个写操作并等待它所在的批次提交
+     *
+     * @param mutation 写操作
+     * @return 该操作自己的结果
+     * @throws RuntimeException 操作本身或其所在批次的提交失败时抛出
+     */
+    public long submit(Mutation mutation) {
+        return enqueue(mutation).await();
+    }
+
+    /**
+     * 将一个写操作放入当前线程所属通道的队列，不等待其结果
+     * 操作使用当前请求的截止时间
+     *
+     * @param mutation 写操作
+     * @return 可用于等待结果的句柄
+     * @throws IllegalStateException 管道已关闭时抛出
+     */
+    public Pending enqueue(Mutation mutation) {
+        return enqueue(mutation, Deadline.current());
+    }
+
+    /**
+     * 将一个写操作放入当前线程所属通道的队列，不等待其结果
+     *
+     * @param mutation 写操作
+     * @param deadline 截止时间，轮到执行时已过则不再执行；{@link Deadline#NONE} 表示总是执行
+     * @return 可用于等待结果的句柄
+     * @throws IllegalStateException 管道已关闭时抛出
+     */
+    public Pending enqueue(Mutation mutation, long deadline) {
+        return enqueue(mutation, deadline, null);
+    }
+
+    /**
+     * 将一个写操作放入当前线程所属通道的队列，不等待其结果；所在批次提交后在写线程上执行回调
+     *
+     * @param mutation  写操作
+     * @param deadline  截止时间，轮到执行时已过则不再执行；{@link Deadline#NONE} 表示总是执行
+     * @param committed 提交后的回调，可以为 null
+     * @return 可用于等待结果的句柄
+     * @throws IllegalStateException 管道已关闭时抛出
+     */
+    public Pending enqueue(Mutation mutation, long deadline, Committed committed) {
+        Pending pending = new Pending(mutation, deadline, committed);
+        // 与 shutdown 互斥，保证关闭之后不会再有请求入队
+        synchronized (lock) {
+            if (shutdown) {
+                throw new IllegalStateException("Write pipeline has been shut down");
+            }
+            queues.get(Lane.current().ordinal()).add(pending);
+            queued++;
+            lock.notifyAll();
+        }
+        return pending;
+    }
+
+    /**
+     * 关闭管道：已入队的操作仍会被提交，之后写线程退出
+     * 此方法会等待写线程结束
+     */
+    public void shutdown() {
+        synchronized (lock) {
+            shutdown = true;
+            lock.notifyAll();
+        }
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 获取当前的批处理统计
+     *
+     * @return 统计快照
+     */
+    public Stats getStats() {
+        synchronized (statsLock) {
+            return new Stats(batchCount, operationCount, maxBatch, totalCommitNanos, maxCommitNanos, lastCommitNanos);
+        }
+    }
+
+    /**
+     * 写线程主循环：取出一批请求，在一个事务中执行并提交
+     */
+    private void runWriter() {
+        List<Pending> batch = new ArrayList<>(maxBatchSize);
+        while (true) {
+            try {
+                if (!collectBatch(batch)) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Log.w(TAG, "Writer interrupted, pipeline stopped.");
+                return;
+            }
+            commit(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * 阻塞直到有请求到达，然后在 maxDelay 内继续收集，直到凑满一批或管道被关闭
+     *
+     * @param batch 用于接收请求的列表
+     * @return 管道已关闭且队列已空时返回 false，写线程应退出
+     * @throws InterruptedException 写线程被中断时抛出
+     */
+    private boolean collectBatch(List<Pending> batch) throws InterruptedException {
+        synchronized (lock) {
+            while (queued == 0) {
+                if (shutdown) {
+                    return false;
+                }
+                lock.wait();
+            }
+            drainWeighted(batch);
+            long deadline = System.nanoTime() + maxDelayNanos;
+            while (batch.size() < maxBatchSize && !shutdown) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                if (queued == 0) {
+                    TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                }
+                drainWeighted(batch);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 按通道权重轮流从各队列取出请求：每一轮从交互式通道开始，每个通道最多取出其权重个，直到凑满一批或队列为空
+     * 调用方必须持有 lock
+     *
+     * @param batch 用于接收请求的列表
+     */
+    private void drainWeighted(List<Pending> batch) {
+        while (queued > 0 && batch.size() < maxBatchSize) {
+            for (Lane lane : LANES) {
+                ArrayDeque<Pending> queue = queues.get(lane.ordinal());
+                for (int i = 0; i < lane.writeWeight && !queue.isEmpty() && batch.size() < maxBatchSize; i++) {
+                    batch.add(queue.poll());
+                    queued--;
+                }
+            }
+        }
+    }
+
+    /**
+     * 在一个事务中执行一批请求
+     * 单个操作失败只影响该操作自己的结果；事务本身提交失败时，整批操作都以该错误结束
+     * 约束冲突以外的 SQLiteException（磁盘已满、I/O 错误、数据库忙等）之后，SQLite 可能已经自行回滚了整个事务，
+     * 之前的操作不再有效，之后的操作会在自动提交模式下逐条生效；因此不再执行后续操作，也不标记事务成功，
+     * 整批操作都以该异常结束
+     *
+     * @param batch 要执行的请求
+     */
+    private void commit(List<Pending> batch) {
+        long start = System.nanoTime();
+        RuntimeException batchError = null;
+        try {
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            db.beginTransactionNonExclusive();
+            try {
+                for (Pending request : batch) {
+                    if (Deadline.isExpired(request.deadline)) {
+                        request.error = new Deadline.DeadlineExceededException("commit");
+                        continue;
+                    }
+                    try {
+                        request.result = request.mutation.apply(db);
+                    } catch (SQLiteConstraintException e) {
+                        // 约束冲突只回滚这一条语句，事务仍然有效
+                        request.error = e;
+                    } catch (SQLiteException e) {
+                        throw e;
+                    } catch (RuntimeException e) {
+                        request.error = e;
+                    }
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Batch of " + batch.size() + " writes failed to commit", e);
+            batchError = e;
+        }
+        long elapsed = System.nanoTime() - start;
+        recordBatch(batch.size(), elapsed);
+        for (Pending request : batch) {
+            if (batchError != null) {
+                request.error = batchError;
+            } else if (request.error == null && request.committed != null) {
+                try {
+                    request.committed.onCommitted(request.result);
+                } catch (RuntimeException e) {
+                    // 数据已经提交，回调失败不改变操作的结果
+                    Log.e(TAG, "Commit callback failed", e);
+                }
+            }
+            request.done.countDown();
+        }
+    }
+
+    /**
+     * 记录一批的大小和提交耗时
+     *
+     * @param size         批大小
+     * @param elapsedNanos 事务执行和提交的耗时
+     */
+    private void recordBatch(int size, long elapsedNanos) {
+        Stats stats = null;
+        synchronized (statsLock) {
+            batchCount++;
+            operationCount += size;
+            maxBatch = Math.max(maxBatch, size);
+            totalCommitNanos += elapsedNanos;
+            maxCommitNanos = Math.max(maxCommitNanos, elapsedNanos);
+            lastCommitNanos = elapsedNanos;
+            if (batchCount % LOG_INTERVAL_BATCHES == 0) {
+                stats = new Stats(batchCount, operationCount, maxBatch, totalCommitNanos, maxCommitNanos, lastCommitNanos);
+            }
+        }
+        if (stats != null) {
+            Log.d(TAG, stats.toString());
+        }
+    }
+
+    /**
+     * 批处理统计的不可变快照
+     */
+    public static final class Stats {
+        public final long batches;
+        public final long operations;
+        public final int maxBatchSize;
+        public final long totalCommitNanos;
+        public final long maxCommitNanos;
+        public final long lastCommitNanos;
+
+        Stats(long batches, long operations, int maxBatchSize, long totalCommitNanos, long maxCommitNanos, long lastCommitNanos) {
+            this.batches = batches;
+            this.operations = operations;
+            this.maxBatchSize = maxBatchSize;
+            this.totalCommitNanos = totalCommitNanos;
+            this.maxCommitNanos = maxCommitNanos;
+            this.lastCommitNanos = lastCommitNanos;
+        }
+
+        /**
+         * @return 平均每批的操作数
+         */
+        public double averageBatchSize() {
+            return batches == 0 ? 0 : (double) operations / batches;
+        }
+
+        /**
+         * @return 平均每批的提交耗时（微秒）
+         */
+        public long averageCommitMicros() {
+            return batches == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalCommitNanos / batches);
+        }
+
+        @Override
+        public String toString() {
+            return "batches=" + batches +
+                    ", operations=" + operations +
+                    ", avgBatch=" + String.format(Locale.US, "%.2f", averageBatchSize()) +
+                    ", maxBatch=" + maxBatchSize +
+                    ", avgCommitUs=" + averageCommitMicros() +
+                    ", maxCommitUs=" + TimeUnit.NANOSECONDS.toMicros(maxCommitNanos) +
+                    ", lastCommitUs=" + TimeUnit.NANOSECONDS.toMicros(lastCommitNanos);
+        }
+    }
+}
@@ -5,6 +5,9 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.util.Log;
 
+import java.io.File;
+import java.security.SecureRandom;
+
 /**
  * 数据库帮助类，用于创建和管理应用的 SQLite 数据库
  * 此类负责处理数据库的创建、版本升级等
@@ -13,8 +16,12 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     private static final String TAG = "DatabaseHelper";
 
     // 数据库和表的常量定义
-    private static final String DATABASE_NAME = "users.db";
-    private static final int DATABASE_VERSION = 1;
+    // 正式用户存储的名称，数据库文件名由它加上 .db 或分片后缀组成
+    public static final String STORAGE_NAME = "users";
+    private static final String DATABASE_NAME = STORAGE_NAME + ".db";
+    // 版本 2：为用户名增加索引
+    // 版本 3：增加变更日志
+    private static final int DATABASE_VERSION = 3;
 
     public static final String TABLE_USERS = "users";
     public static final String COLUMN_ID = "id";
@@ -22,6 +29,22 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     public static final String COLUMN_ACCOUNT = "account";
     public static final String COLUMN_PASSWORD = "password";
 
+    public static final String TABLE_CHANGES = "change_journal";
+    public static final String COLUMN_SEQ = "seq";
+    public static final String COLUMN_OP = "op";
+    public static final String TABLE_JOURNAL_INFO = "change_journal_info";
+    public static final String COLUMN_JOURNAL_ID = "journal_id";
+
+    // 变更日志中的操作类型，取值与 IAdminService.CHANGE_* 相同，可以直接传给客户端
+    public static final int CHANGE_INSERT = 1;
+    public static final int CHANGE_UPDATE = 2;
+    public static final int CHANGE_DELETE = 3;
+
+    /**
+     * 变更日志最多保留的条数，更早的条目由触发器自动删除
+     */
+    public static final int JOURNAL_LIMIT = 10_000;
+
     /**
      * 创建用户表的 SQL 语句
      * 定义了表的结构，包括用户ID（主键）、用户名、账户和密码
@@ -34,13 +57,126 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                     COLUMN_PASSWORD + " TEXT" +
                     ")";
 
+    /**
+     * 用户名索引
+     * 按用户名删除、改密以及内容提供者中按用户名的查询都依赖此索引，避免全表扫描
+     */
+    private static final String CREATE_INDEX_USERNAME =
+            "CREATE INDEX IF NOT EXISTS idx_" + TABLE_USERS + "_" + COLUMN_USERNAME +
+                    " ON " + TABLE_USERS + " (" + COLUMN_USERNAME + ")";
+
+    /**
+     * 变更日志
+     * 用户表的每一次插入、修改和删除都由触发器追加一条：单调递增的序号、操作类型和账户
+     * 序号使用 AUTOINCREMENT，删除旧条目后也不会被重复使用；同一个数据库中已提交的序号是连续的
+     */
+    private static final String CREATE_TABLE_CHANGES =
+            "CREATE TABLE " + TABLE_CHANGES + " (" +
+                    COLUMN_SEQ + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    COLUMN_OP + " INTEGER NOT NULL, " +
+                    COLUMN_ACCOUNT + " TEXT" +
+                    ")";
+
+    /**
+     * 变更日志的标识，每个数据库文件创建时随机生成一次，批量载入后重新生成
+     * 重新分片后的新文件和恢复后的数据库有新的标识，客户端据此发现它保存的序号已经不再有效
+     */
+    private static final String CREATE_TABLE_JOURNAL_INFO =
+            "CREATE TABLE " + TABLE_JOURNAL_INFO + " (" + COLUMN_JOURNAL_ID + " INTEGER NOT NULL)";
+
+    // 用户表上记录变更的触发器名称，依次对应 CREATE_JOURNAL_TRIGGERS 的前三条，批量载入时暂时删除
+    private static final String[] JOURNAL_TRIGGERS = {
+            TABLE_USERS + "_journal_insert",
+            TABLE_USERS + "_journal_update",
+            TABLE_USERS + "_journal_delete"
+    };
+
+    // 记录变更的触发器；账户被修改时先记录旧账户的删除
+    private static final String[] CREATE_JOURNAL_TRIGGERS = {
+            "CREATE TRIGGER " + TABLE_USERS + "_journal_insert AFTER INSERT ON " + TABLE_USERS + " BEGIN " +
+                    "INSERT INTO " + TABLE_CHANGES + " (" + COLUMN_OP + ", " + COLUMN_ACCOUNT + ") " +
+                    "VALUES (" + CHANGE_INSERT + ", NEW." + COLUMN_ACCOUNT + "); END",
+            "CREATE TRIGGER " + TABLE_USERS + "_journal_update AFTER UPDATE ON " + TABLE_USERS + " BEGIN " +
+                    "INSERT INTO " + TABLE_CHANGES + " (" + COLUMN_OP + ", " + COLUMN_ACCOUNT + ") " +
+                    "SELECT " + CHANGE_DELETE + ", OLD." + COLUMN_ACCOUNT +
+                    " WHERE OLD." + COLUMN_ACCOUNT + " IS NOT NEW." + COLUMN_ACCOUNT + "; " +
+                    "INSERT INTO " + TABLE_CHANGES + " (" + COLUMN_OP + ", " + COLUMN_ACCOUNT + ") " +
+                    "VALUES (" + CHANGE_UPDATE + ", NEW." + COLUMN_ACCOUNT + "); END",
+            "CREATE TRIGGER " + TABLE_USERS + "_journal_delete AFTER DELETE ON " + TABLE_USERS + " BEGIN " +
+                    "INSERT INTO " + TABLE_CHANGES + " (" + COLUMN_OP + ", " + COLUMN_ACCOUNT + ") " +
+                    "VALUES (" + CHANGE_DELETE + ", OLD." + COLUMN_ACCOUNT + "); END",
+            // 自动截断：每追加一条就删除超出保留条数的旧条目，按主键范围删除，通常只删除一行
+            "CREATE TRIGGER " + TABLE_CHANGES + "_truncate AFTER INSERT ON " + TABLE_CHANGES + " BEGIN " +
+                    "DELETE FROM " + TABLE_CHANGES + " WHERE " + COLUMN_SEQ + " <= NEW." + COLUMN_SEQ +
+                    " - " + JOURNAL_LIMIT + "; END"
+    };
+
     /**
      * 构造函数
      *
      * @param context 应用上下文
      */
     public DatabaseHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME);
+    }
+
+    /**
+     * 构造函数，打开指定名称的用户数据库（用于分片存储）
+     *
+     * @param context 应用上下文
+     * @param name    数据库文件名
+     */
+    public DatabaseHelper(Context context, String name) {
+        super(context, name, null, DATABASE_VERSION);
+        // 使用 WAL 日志模式：读操作（包括快照）不会阻塞写操作，写操作也不会阻塞读操作
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    /**
+     * 在创建表之前设置 auto_vacuum：新建的数据库直接使用增量回收，空闲页可以由维护任务分步归还
+     * 对已经有表的旧数据库这条设置只在下一次 VACUUM 时生效，见 {@link MaintenanceJob#CONVERT_TO_INCREMENTAL}
+     *
+     * @param db 正在打开的数据库
+     */
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+    }
+
+    /**
+     * 获取分片存储中某个分片的数据库文件名
+     * 只有一个分片时就是原来的 users.db；多个分片时文件名包含分片总数，
+     * 因此重新分片时新旧文件不会冲突
+     *
+     * @param storageName 存储名称，正式存储为 {@link #STORAGE_NAME}
+     * @param index       分片序号，从 0 开始
+     * @param count       分片总数
+     * @return 数据库文件名
+     */
+    public static String databaseName(String storageName, int index, int count) {
+        if (count == 1) {
+            return storageName + ".db";
+        }
+        return storageName + "_shard_" + index + "_of_" + count + ".db";
+    }
+
+    /**
+     * 将数据库的一致性快照写入目标文件
+     * 快照在一个独立的只读连接上通过 VACUUM INTO 生成，它只占用一个读事务，
+     * 在 WAL 模式下不会阻塞同时进行的登录和注册；生成的文件是一个紧凑、完整的 SQLite 数据库
+     *
+     * @param target 快照文件，必须尚不存在
+     */
+    public void snapshotTo(File target) {
+        String sourcePath = getReadableDatabase().getPath();
+        SQLiteDatabase source = SQLiteDatabase.openDatabase(sourcePath, null, SQLiteDatabase.OPEN_READONLY);
+        try {
+            source.execSQL("VACUUM INTO ?", new Object[]{target.getAbsolutePath()});
+        } finally {
+            source.close();
+        }
+        Log.d(TAG, "Snapshot written to " + target.getAbsolutePath());
     }
 
     /**
@@ -52,6 +188,8 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     public void onCreate(SQLiteDatabase db) {
         Log.d(TAG, "Creating database and users table...");
         db.execSQL(CREATE_TABLE_USERS);
+        db.execSQL(CREATE_INDEX_USERNAME);
+        createJournal(db);
         Log.d(TAG, "Database created successfully.");
     }
 
@@ -64,11 +202,65 @@ public class DatabaseHelper extends SQLiteOpenHelper {
      */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        Log.w(TAG, "Upgrading database from version " + oldVersion + " to " + newVersion + ", which will destroy all old data.");
-        // 简单的升级策略：删除旧表并重新创建
-        // 注意：在生产环境中，这应该被一个迁移策略所取代，以保留用户数据
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_USERS);
-        onCreate(db);
+        Log.w(TAG, "Upgrading database from version " + oldVersion + " to " + newVersion);
+        // 逐个版本迁移，保留用户数据
+        if (oldVersion < 2) {
+            db.execSQL(CREATE_INDEX_USERNAME);
+        }
+        if (oldVersion < 3) {
+            // 升级前的修改没有记录，客户端第一次同步时总是需要完整读取
+            createJournal(db);
+        }
         Log.d(TAG, "Database upgraded successfully.");
     }
+
+    /**
+     * 创建变更日志、日志标识和触发器
+     *
+     * @param db SQLiteDatabase 实例
+     */
+    private static void createJournal(SQLiteDatabase db) {
+        db.execSQL(CREATE_TABLE_CHANGES);
+        db.execSQL(CREATE_TABLE_JOURNAL_INFO);
+        db.execSQL("INSERT INTO " + TABLE_JOURNAL_INFO + " (" + COLUMN_JOURNAL_ID + ") VALUES (?)",
+                new Object[]{newJournalId()});
+        for (String trigger : CREATE_JOURNAL_TRIGGERS) {
+            db.execSQL(trigger);
+        }
+    }
+
+    /**
+     * 开始批量载入：删除用户表上记录变更的触发器，之后的插入和删除不再逐行写入日志
+     * 应当与 {@link #endBulkLoad} 在同一个事务中调用，其他连接在提交之前看不到触发器被删除
+     *
+     * @param db 要载入的数据库
+     */
+    public static void beginBulkLoad(SQLiteDatabase db) {
+        for (String trigger : JOURNAL_TRIGGERS) {
+            db.execSQL("DROP TRIGGER IF EXISTS " + trigger);
+        }
+    }
+
+    /**
+     * 结束批量载入：换一个新的日志标识并重新创建触发器
+     * 载入的内容没有逐条记录，之前保存的序号都已无效；新标识让客户端和其他进程下一次读取时直接重新同步，
+     * 从最新的序号继续。已有的日志条目保留，保证下一个序号紧接在最新序号之后，它们随后被自动截断
+     *
+     * @param db 要载入的数据库
+     */
+    public static void endBulkLoad(SQLiteDatabase db) {
+        db.execSQL("UPDATE " + TABLE_JOURNAL_INFO + " SET " + COLUMN_JOURNAL_ID + " = ?",
+                new Object[]{newJournalId()});
+        for (int i = 0; i < JOURNAL_TRIGGERS.length; i++) {
+            db.execSQL(CREATE_JOURNAL_TRIGGERS[i]);
+        }
+    }
+
+    /**
+     * @return 随机的日志标识；0 表示客户端还没有同步过，不能用作标识
+     */
+    private static long newJournalId() {
+        long journalId = new SecureRandom().nextLong();
+        return journalId == 0 ? 1 : journalId;
+    }
 }
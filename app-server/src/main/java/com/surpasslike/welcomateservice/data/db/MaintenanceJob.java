@@ -0,0 +1,163 @@
+package com.surpasslike.welcomateservice.data.db;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 在服务空闲时执行的数据库维护任务
+ * 每个任务都在写连接上执行，执行期间写管道的提交会等待，因此任务分成很短的步骤，
+ * 每一步之前询问调用方是否应当让出（时间预算用完或者有前台请求），让出时剩余的工作留给下一次空闲时
+ */
+public enum MaintenanceJob {
+    /**
+     * 收集查询优化器使用的统计信息（sqlite_stat1）
+     * 通过 analysis_limit 限制每个索引的采样行数，单个语句的耗时与表的大小基本无关
+     */
+    ANALYZE(TimeUnit.HOURS.toMillis(24)) {
+        @Override
+        MaintenanceResult execute(SQLiteDatabase db, BooleanSupplier shouldYield) {
+            long start = SystemClock.elapsedRealtime();
+            drain(db, "PRAGMA analysis_limit = " + ANALYSIS_LIMIT);
+            try {
+                db.execSQL("ANALYZE");
+            } finally {
+                drain(db, "PRAGMA analysis_limit = 0");
+            }
+            return new MaintenanceResult(this, nameOf(db), SystemClock.elapsedRealtime() - start, 0, 0, false);
+        }
+    },
+
+    /**
+     * 把 WAL 中已提交的帧写回数据库文件，避免 WAL 文件持续增长、读操作越来越慢
+     * 使用 PASSIVE 模式：不等待读写操作，遇到正在使用的帧就停下，剩余的帧留给下一次
+     */
+    CHECKPOINT(TimeUnit.MINUTES.toMillis(15)) {
+        @Override
+        MaintenanceResult execute(SQLiteDatabase db, BooleanSupplier shouldYield) {
+            long start = SystemClock.elapsedRealtime();
+            long frames = 0;
+            boolean complete = true;
+            try (Cursor cursor = db.rawQuery("PRAGMA wal_checkpoint(PASSIVE)", null)) {
+                if (cursor.moveToFirst()) {
+                    // 三列依次为：是否被阻塞、WAL 中的帧数、已写回的帧数
+                    frames = Math.max(cursor.getLong(2), 0);
+                    complete = cursor.getLong(2) >= cursor.getLong(1);
+                }
+            }
+            return new MaintenanceResult(this, nameOf(db), SystemClock.elapsedRealtime() - start, 0, frames, !complete);
+        }
+    },
+
+    /**
+     * 把空闲页归还给文件系统，每一步最多 {@link #VACUUM_STEP_PAGES} 页
+     * 只有 auto_vacuum 为 INCREMENTAL 的数据库才能分步回收，新建的数据库在 {@link DatabaseHelper#onConfigure} 中已经设置；
+     * 旧数据库需要一次无法分步的完整 VACUUM 才能转换，这里只转换不超过 {@link #CONVERT_MAX_PAGES} 页、
+     * 空闲页达到四分之一的小数据库，更大的数据库只能通过 {@link #CONVERT_TO_INCREMENTAL} 明确转换
+     */
+    INCREMENTAL_VACUUM(TimeUnit.HOURS.toMillis(6)) {
+        @Override
+        MaintenanceResult execute(SQLiteDatabase db, BooleanSupplier shouldYield) {
+            long start = SystemClock.elapsedRealtime();
+            long before = freelistCount(db);
+            boolean yielded = false;
+            if (DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum", null) == AUTO_VACUUM_INCREMENTAL) {
+                long remaining = before;
+                while (remaining > 0) {
+                    if (shouldYield.getAsBoolean()) {
+                        yielded = true;
+                        break;
+                    }
+                    drain(db, "PRAGMA incremental_vacuum(" + VACUUM_STEP_PAGES + ")");
+                    remaining = freelistCount(db);
+                }
+            } else {
+                long pages = DatabaseUtils.longForQuery(db, "PRAGMA page_count", null);
+                if (before > 0 && before * 4 >= pages && pages <= CONVERT_MAX_PAGES) {
+                    convertToIncremental(db);
+                }
+            }
+            long freed = before - freelistCount(db);
+            return new MaintenanceResult(this, nameOf(db), SystemClock.elapsedRealtime() - start, freed, 0, yielded);
+        }
+    },
+
+    /**
+     * 把 auto_vacuum 不是 INCREMENTAL 的旧数据库转换过来，之后由 {@link #INCREMENTAL_VACUUM} 分步回收
+     * 完整的 VACUUM 重写整个文件，耗时与文件大小成正比，既不能分步也不能中途让出，
+     * 因此不由空闲调度执行，只在明确要求时运行（调试菜单）；已经是 INCREMENTAL 的数据库直接返回
+     */
+    CONVERT_TO_INCREMENTAL(0) {
+        @Override
+        MaintenanceResult execute(SQLiteDatabase db, BooleanSupplier shouldYield) {
+            long start = SystemClock.elapsedRealtime();
+            long before = freelistCount(db);
+            if (DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum", null) != AUTO_VACUUM_INCREMENTAL) {
+                convertToIncremental(db);
+            }
+            long freed = before - freelistCount(db);
+            return new MaintenanceResult(this, nameOf(db), SystemClock.elapsedRealtime() - start, freed, 0, false);
+        }
+    };
+
+    // ANALYZE 每个索引最多采样的行数
+    private static final int ANALYSIS_LIMIT = 400;
+    // 增量回收每一步的页数，每页 4 KB，一步通常在几毫秒内完成
+    private static final int VACUUM_STEP_PAGES = 64;
+    // PRAGMA auto_vacuum 的取值：0 NONE，1 FULL，2 INCREMENTAL
+    private static final long AUTO_VACUUM_INCREMENTAL = 2;
+    // 空闲时顺带转换的数据库最多的页数（1 MB），这样大小的 VACUUM 通常在一个任务的时间预算之内完成
+    static final long CONVERT_MAX_PAGES = 256;
+
+    /** 两次执行之间的最短间隔（毫秒） */
+    public final long intervalMillis;
+
+    MaintenanceJob(long intervalMillis) {
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * 在一个数据库上执行维护任务；调用线程应当是后台线程
+     *
+     * @param db          数据库的写连接
+     * @param shouldYield 每一步之前调用，返回 true 时尽快结束并在结果中标记为已让出
+     * @return 执行结果
+     */
+    public MaintenanceResult run(SQLiteDatabase db, BooleanSupplier shouldYield) {
+        if (shouldYield.getAsBoolean()) {
+            return new MaintenanceResult(this, nameOf(db), 0, 0, 0, true);
+        }
+        return execute(db, shouldYield);
+    }
+
+    abstract MaintenanceResult execute(SQLiteDatabase db, BooleanSupplier shouldYield);
+
+    private static void convertToIncremental(SQLiteDatabase db) {
+        db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+        db.execSQL("VACUUM");
+    }
+
+    private static long freelistCount(SQLiteDatabase db) {
+        return DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null);
+    }
+
+    /**
+     * 执行可能返回结果行的 PRAGMA；execSQL 遇到结果行会报错，因此通过游标逐行读完
+     */
+    private static void drain(SQLiteDatabase db, String sql) {
+        try (Cursor cursor = db.rawQuery(sql, null)) {
+            while (cursor.moveToNext()) {
+                // 只需要执行语句，忽略结果
+            }
+        }
+    }
+
+    private static String nameOf(SQLiteDatabase db) {
+        return new File(db.getPath()).getName();
+    }
+}
@@ -0,0 +1,38 @@
+package com.surpasslike.welcomateservice.data.db;
+
+import java.util.Locale;
+
+/**
+ * 一次数据库维护任务在一个数据库上的执行结果，见 {@link MaintenanceJob}
+ */
+public final class MaintenanceResult {
+    public final MaintenanceJob job;
+    /** 数据库文件名 */
+    public final String database;
+    /** 完成时刻，{@link System#currentTimeMillis()} */
+    public final long finishedAt;
+    public final long durationMillis;
+    /** 归还给文件系统的页数，只有 INCREMENTAL_VACUUM 和 CONVERT_TO_INCREMENTAL 不为 0 */
+    public final long pagesFreed;
+    /** 写回数据库文件的 WAL 帧数，只有 CHECKPOINT 不为 0 */
+    public final long framesCheckpointed;
+    /** 因为时间预算用完或者有前台请求而提前让出，剩余的工作留给下一次空闲时 */
+    public final boolean yielded;
+
+    MaintenanceResult(MaintenanceJob job, String database, long durationMillis,
+                      long pagesFreed, long framesCheckpointed, boolean yielded) {
+        this.job = job;
+        this.database = database;
+        this.finishedAt = System.currentTimeMillis();
+        this.durationMillis = durationMillis;
+        this.pagesFreed = pagesFreed;
+        this.framesCheckpointed = framesCheckpointed;
+        this.yielded = yielded;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%s %s: %d ms, pagesFreed=%d, framesCheckpointed=%d%s",
+                job, database, durationMillis, pagesFreed, framesCheckpointed, yielded ? ", yielded" : "");
+    }
+}
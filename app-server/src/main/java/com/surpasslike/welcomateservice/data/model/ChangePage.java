@@ -0,0 +1,55 @@
+package com.surpasslike.welcomateservice.data.model;
+
+import java.util.List;
+
+/**
+ * 数据模型类，代表一次读取变更日志的结果，见 UserRepository#getChangesSince
+ * 游标由日志标识和每个分片的序号组成，调用方在下一次读取时原样传回
+ */
+public class ChangePage {
+    private final long journalId;
+    private final long[] sequences;
+    private final List<UserChange> changes;
+    private final boolean resyncRequired;
+    private final boolean hasMore;
+
+    /**
+     * @param journalId      日志标识
+     * @param sequences      下一次读取时使用的序号，每个分片一个
+     * @param changes        按分片、序号排列的变更
+     * @param resyncRequired 调用方的游标已经失效，需要重新完整读取所有用户
+     * @param hasMore        变更数达到上限，可能还有更多
+     */
+    public ChangePage(long journalId, long[] sequences, List<UserChange> changes,
+                      boolean resyncRequired, boolean hasMore) {
+        this.journalId = journalId;
+        this.sequences = sequences;
+        this.changes = changes;
+        this.resyncRequired = resyncRequired;
+        this.hasMore = hasMore;
+    }
+
+    public long getJournalId() {
+        return journalId;
+    }
+
+    public long[] getSequences() {
+        return sequences;
+    }
+
+    public List<UserChange> getChanges() {
+        return changes;
+    }
+
+    /**
+     * 游标失效的原因：从未同步过、日志中需要的条目已被截断，或者分片布局已经改变
+     * 此时 changes 为空，sequences 指向日志的最新位置：调用方先完整读取所有用户，再从这里继续
+     */
+    public boolean isResyncRequired() {
+        return resyncRequired;
+    }
+
+    public boolean hasMore() {
+        return hasMore;
+    }
+}
@@ -0,0 +1,41 @@
+package com.surpasslike.welcomateservice.data.model;
+
+/**
+ * 数据模型类，代表变更日志中的一条记录
+ * 只记录哪个账户发生了什么操作，不包含用户数据本身；镜像用户列表的一方据此重新读取这个账户
+ */
+public class UserChange {
+    private final int shard;
+    private final long seq;
+    private final int op;
+    private final String account;
+
+    /**
+     * @param shard   所在分片的序号
+     * @param seq     在该分片的日志中的序号
+     * @param op      操作类型，DatabaseHelper.CHANGE_INSERT、CHANGE_UPDATE 或 CHANGE_DELETE
+     * @param account 账户
+     */
+    public UserChange(int shard, long seq, int op, String account) {
+        this.shard = shard;
+        this.seq = seq;
+        this.op = op;
+        this.account = account;
+    }
+
+    public int getShard() {
+        return shard;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public int getOp() {
+        return op;
+    }
+
+    public String getAccount() {
+        return account;
+    }
+}
@@ -0,0 +1,58 @@
+package com.surpasslike.welcomateservice.data.model;
+
+/**
+ * 数据模型类，代表一次按用户名执行的修改：改密或删除
+ * 客户端离线时积累的修改以一批的形式提交，见 UserRepository#applyUserEdits
+ */
+public class UserEdit {
+
+    /**
+     * 修改类型
+     */
+    public enum Type {
+        PASSWORD_CHANGE,
+        DELETE
+    }
+
+    private final Type type;
+    private final String username;
+    private final String newPassword;
+
+    private UserEdit(Type type, String username, String newPassword) {
+        this.type = type;
+        this.username = username;
+        this.newPassword = newPassword;
+    }
+
+    /**
+     * @param username    用户名
+     * @param newPassword 新的原始密码
+     * @return 改密修改
+     */
+    public static UserEdit passwordChange(String username, String newPassword) {
+        return new UserEdit(Type.PASSWORD_CHANGE, username, newPassword);
+    }
+
+    /**
+     * @param username 用户名
+     * @return 删除修改
+     */
+    public static UserEdit deletion(String username) {
+        return new UserEdit(Type.DELETE, username, null);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * @return 新的原始密码，删除时为 null
+     */
+    public String getNewPassword() {
+        return newPassword;
+    }
+}
@@ -0,0 +1,219 @@
+package com.surpasslike.welcomateservice.provider;
+
+import android.content.ContentProvider;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.UriMatcher;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.CancellationSignal;
+import android.provider.BaseColumns;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.surpasslike.welcomateservice.data.UserRepository;
+import com.surpasslike.welcomateservice.data.db.DatabaseHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 用户数据的只读内容提供者
+ * 为报表类客户端提供用户名和账户的批量读取，数据来自 UserRepository，密码哈希永远不会被返回
+ * 返回的游标以共享内存的 CursorWindow 形式跨进程传递，大量读取不需要逐行 Parcel 序列化
+ * <p>
+ * 支持的 URI：
+ * content://com.surpasslike.welcomateservice.users/users                  所有用户
+ * content://com.surpasslike.welcomateservice.users/users/account/{account} 按账户查询单个用户
+ * <p>
+ * 查询参数：
+ * 投影：_id、username、account 的任意组合，默认全部
+ * 条件：只允许在有索引的列（username、account）上使用 =、&lt;、&lt;=、&gt;、&gt;= 和 ? 占位符，多个条件用 AND 连接
+ * 排序：username 或 account，可加 ASC / DESC
+ * 数量：URI 参数 limit，或 ContentResolver.QUERY_ARG_LIMIT
+ */
+public class UserProvider extends ContentProvider {
+    public static final String AUTHORITY = "com.surpasslike.welcomateservice.users";
+    public static final Uri CONTENT_URI = Uri.parse("content://" + AUTHORITY + "/users");
+    public static final String PARAM_LIMIT = "limit";
+
+    private static final int MATCH_USERS = 1;
+    private static final int MATCH_USER_BY_ACCOUNT = 2;
+    private static final UriMatcher URI_MATCHER = new UriMatcher(UriMatcher.NO_MATCH);
+
+    static {
+        URI_MATCHER.addURI(AUTHORITY, "users", MATCH_USERS);
+        URI_MATCHER.addURI(AUTHORITY, "users/account/*", MATCH_USER_BY_ACCOUNT);
+    }
+
+    // 允许出现在条件中的单个比较项：有索引的列、比较运算符和占位符
+    private static final Pattern SELECTION_TERM = Pattern.compile(
+            "\\s*(" + DatabaseHelper.COLUMN_USERNAME + "|" + DatabaseHelper.COLUMN_ACCOUNT + ")\\s*(=|<=|>=|<|>)\\s*\\?\\s*",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern AND = Pattern.compile("\\bAND\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern SORT_ORDER = Pattern.compile(
+            "\\s*(" + DatabaseHelper.COLUMN_USERNAME + "|" + DatabaseHelper.COLUMN_ACCOUNT + ")(?:\\s+(ASC|DESC))?\\s*",
+            Pattern.CASE_INSENSITIVE);
+
+    private static final String[] DEFAULT_PROJECTION = {
+            BaseColumns._ID, DatabaseHelper.COLUMN_USERNAME, DatabaseHelper.COLUMN_ACCOUNT
+    };
+
+    @Override
+    public boolean onCreate() {
+        // 仓库在第一次查询时才初始化，此时 Application 已经创建完成
+        return true;
+    }
+
+    @Nullable
+    @Override
+    public Cursor query(@NonNull Uri uri, @Nullable String[] projection, @Nullable String selection,
+                        @Nullable String[] selectionArgs, @Nullable String sortOrder) {
+        Bundle queryArgs = ContentResolver.createSqlQueryBundle(selection, selectionArgs, sortOrder);
+        return query(uri, projection, queryArgs, null);
+    }
+
+    @Nullable
+    @Override
+    public Cursor query(@NonNull Uri uri, @Nullable String[] projection, @Nullable Bundle queryArgs,
+                        @Nullable CancellationSignal cancellationSignal) {
+        if (queryArgs == null) {
+            queryArgs = Bundle.EMPTY;
+        }
+        String selection = queryArgs.getString(ContentResolver.QUERY_ARG_SQL_SELECTION);
+        String[] selectionArgs = queryArgs.getStringArray(ContentResolver.QUERY_ARG_SQL_SELECTION_ARGS);
+        String sortOrder = queryArgs.getString(ContentResolver.QUERY_ARG_SQL_SORT_ORDER);
+        int limit = queryArgs.getInt(ContentResolver.QUERY_ARG_LIMIT, parseLimit(uri));
+
+        switch (URI_MATCHER.match(uri)) {
+            case MATCH_USERS:
+                validateSelection(selection, selectionArgs);
+                break;
+            case MATCH_USER_BY_ACCOUNT:
+                if (selection != null) {
+                    throw new IllegalArgumentException("Selection is not supported for " + uri);
+                }
+                selection = DatabaseHelper.COLUMN_ACCOUNT + " = ?";
+                selectionArgs = new String[]{uri.getLastPathSegment()};
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown URI " + uri);
+        }
+
+        String sortColumn = null;
+        boolean descending = false;
+        if (sortOrder != null) {
+            Matcher matcher = SORT_ORDER.matcher(sortOrder);
+            if (!matcher.matches()) {
+                throw new IllegalArgumentException("Unsupported sort order: " + sortOrder);
+            }
+            sortColumn = matcher.group(1).toLowerCase(Locale.ROOT);
+            descending = "DESC".equalsIgnoreCase(matcher.group(2));
+        }
+
+        return UserRepository.getInstance().queryUsers(
+                toColumns(projection), selection, selectionArgs, sortColumn, descending, limit);
+    }
+
+    /**
+     * 把客户端的投影转换为查询列，只允许 _id、username 和 account
+     *
+     * @param projection 客户端请求的列，null 表示默认的全部列
+     * @return 查询列
+     */
+    private static String[] toColumns(String[] projection) {
+        if (projection == null) {
+            projection = DEFAULT_PROJECTION;
+        }
+        List<String> columns = new ArrayList<>(projection.length);
+        for (String column : projection) {
+            if (BaseColumns._ID.equals(column)) {
+                columns.add(DatabaseHelper.COLUMN_ID + " AS " + BaseColumns._ID);
+            } else if (DatabaseHelper.COLUMN_USERNAME.equals(column) || DatabaseHelper.COLUMN_ACCOUNT.equals(column)) {
+                columns.add(column);
+            } else {
+                throw new IllegalArgumentException("Unsupported column: " + column);
+            }
+        }
+        return columns.toArray(new String[0]);
+    }
+
+    /**
+     * 校验条件只由有索引列上的简单比较组成，且占位符数量与参数数量一致
+     *
+     * @param selection     WHERE 条件
+     * @param selectionArgs 条件参数
+     */
+    private static void validateSelection(String selection, String[] selectionArgs) {
+        int placeholders = 0;
+        if (selection != null && !selection.trim().isEmpty()) {
+            for (String term : AND.split(selection)) {
+                if (!SELECTION_TERM.matcher(term).matches()) {
+                    throw new IllegalArgumentException("Unsupported selection: " + selection);
+                }
+                placeholders++;
+            }
+        }
+        int args = selectionArgs == null ? 0 : selectionArgs.length;
+        if (placeholders != args) {
+            throw new IllegalArgumentException("Expected " + placeholders + " selection arguments, got " + args);
+        }
+    }
+
+    /**
+     * 解析 URI 中的 limit 参数
+     *
+     * @param uri 请求的 URI
+     * @return 数量限制，未指定时返回 -1
+     */
+    private static int parseLimit(Uri uri) {
+        String limit = uri.getQueryParameter(PARAM_LIMIT);
+        if (limit == null) {
+            return -1;
+        }
+        try {
+            int value = Integer.parseInt(limit);
+            if (value < 0) {
+                throw new IllegalArgumentException("Invalid limit: " + limit);
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid limit: " + limit);
+        }
+    }
+
+    @Nullable
+    @Override
+    public String getType(@NonNull Uri uri) {
+        switch (URI_MATCHER.match(uri)) {
+            case MATCH_USERS:
+                return ContentResolver.CURSOR_DIR_BASE_TYPE + "/vnd." + AUTHORITY + ".user";
+            case MATCH_USER_BY_ACCOUNT:
+                return ContentResolver.CURSOR_ITEM_BASE_TYPE + "/vnd." + AUTHORITY + ".user";
+            default:
+                return null;
+        }
+    }
+
+    @Nullable
+    @Override
+    public Uri insert(@NonNull Uri uri, @Nullable ContentValues values) {
+        throw new UnsupportedOperationException("UserProvider is read-only");
+    }
+
+    @Override
+    public int delete(@NonNull Uri uri, @Nullable String selection, @Nullable String[] selectionArgs) {
+        throw new UnsupportedOperationException("UserProvider is read-only");
+    }
+
+    @Override
+    public int update(@NonNull Uri uri, @Nullable ContentValues values, @Nullable String selection,
+                      @Nullable String[] selectionArgs) {
+        throw new UnsupportedOperationException("UserProvider is read-only");
+    }
+}
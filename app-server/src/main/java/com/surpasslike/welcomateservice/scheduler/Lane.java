@@ -0,0 +1,60 @@
+package com.surpasslike.welcomateservice.scheduler;
+
+import android.os.Process;
+
+/**
+ * 服务端工作的优先级通道
+ * 每个通道有自己的线程数、排队上限、线程优先级，以及在共享的数据库写线程上的权重
+ */
+public enum Lane {
+    /** 交互式请求：用户正在等待结果，例如登录和账户可用性查询 */
+    INTERACTIVE(4, 32, Process.THREAD_PRIORITY_DEFAULT, 8),
+    /** 普通请求：单个用户的增删改 */
+    NORMAL(2, 16, Process.THREAD_PRIORITY_DEFAULT, 4),
+    /** 批量任务：导入、导出、批量改密等，允许变慢，不能拖慢前两类请求 */
+    BULK(1, 4, Process.THREAD_PRIORITY_BACKGROUND, 1);
+
+    /** 执行该通道任务的线程数 */
+    final int threads;
+    /** 排队等待执行的任务上限，超过后新任务被拒绝 */
+    final int queueLimit;
+    /** 线程优先级，见 {@link Process#setThreadPriority(int)} */
+    final int threadPriority;
+    /** 写线程组批时该通道每轮最多取出的操作数 */
+    public final int writeWeight;
+
+    private static final ThreadLocal<Lane> CURRENT = new ThreadLocal<>();
+
+    Lane(int threads, int queueLimit, int threadPriority, int writeWeight) {
+        this.threads = threads;
+        this.queueLimit = queueLimit;
+        this.threadPriority = threadPriority;
+        this.writeWeight = writeWeight;
+    }
+
+    /**
+     * 获取当前线程所属的通道
+     * 通道线程在启动时登记自己的通道；其他线程（界面线程、ContentProvider 的 Binder 线程等）视为 NORMAL
+     *
+     * @return 当前线程的通道
+     */
+    public static Lane current() {
+        Lane lane = CURRENT.get();
+        return lane != null ? lane : NORMAL;
+    }
+
+    /**
+     * @return 当前线程登记的通道；不是通道线程时返回 null
+     */
+    static Lane bound() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 登记当前线程所属的通道，由通道线程在启动时调用
+     */
+    void bindCurrentThread() {
+        CURRENT.set(this);
+        Process.setThreadPriority(threadPriority);
+    }
+}
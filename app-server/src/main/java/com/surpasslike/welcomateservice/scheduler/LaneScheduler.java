@@ -0,0 +1,239 @@
+package com.surpasslike.welcomateservice.scheduler;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.surpasslike.common.Deadline;
+import com.surpasslike.common.trace.RequestTrace;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 按优先级通道调度服务端工作
+ * 每个通道有独立的线程池和有界队列：批量任务排满自己的队列后只会被拒绝，不会占用交互式请求的线程；
+ * 通道线程按通道设置线程优先级，并登记为 {@link Lane#current()}，写操作据此在写线程上按权重公平分享
+ * 提交任务时当前的请求 ID 和截止时间随任务带到通道线程，见 {@link RequestTrace#wrap} 和 {@link Deadline#wrap}；
+ * 在队列中等到截止时间之后才开始的任务直接以 {@link Deadline.DeadlineExceededException} 结束
+ * 这是一个单例，以确保整个进程只有一套通道
+ */
+public class LaneScheduler {
+    private static final String TAG = "LaneScheduler";
+
+    /**
+     * 通道已满，请求被拒绝
+     */
+    public static class LaneFullException extends Exception {
+        LaneFullException(Lane lane) {
+            super("Lane " + lane + " is full");
+        }
+    }
+
+    // 单例模式实现
+    private static volatile LaneScheduler INSTANCE;
+
+    private final Map<Lane, ThreadPoolExecutor> executors = new EnumMap<>(Lane.class);
+    private final AtomicLongArray completed = new AtomicLongArray(Lane.values().length);
+    private final AtomicLongArray rejected = new AtomicLongArray(Lane.values().length);
+    // 最近一个任务提交或结束的时刻（elapsedRealtime），用于判断服务是否空闲
+    private volatile long lastActivity = SystemClock.elapsedRealtime();
+
+    /**
+     * 私有构造函数，为每个通道创建线程池
+     */
+    private LaneScheduler() {
+        for (final Lane lane : Lane.values()) {
+            final AtomicInteger count = new AtomicInteger();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(lane.threads, lane.threads,
+                    30, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(lane.queueLimit),
+                    runnable -> {
+                        Thread thread = new Thread(() -> {
+                            lane.bindCurrentThread();
+                            runnable.run();
+                        }, "lane-" + lane.name().toLowerCase(Locale.US) + "-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            executors.put(lane, executor);
+        }
+    }
+
+    /**
+     * 获取 LaneScheduler 的单例
+     *
+     * @return LaneScheduler 的唯一实例
+     */
+    public static LaneScheduler getInstance() {
+        if (INSTANCE == null) {
+            synchronized (LaneScheduler.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new LaneScheduler();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * 在指定通道上执行任务并等待其结果
+     * 调用线程（通常是 Binder 线程）在此等待；通道的排队上限同时限制了为该通道等待的 Binder 线程数
+     * 如果调用线程本身就是通道线程，任务直接在当前线程执行，避免同一通道内互相等待
+     *
+     * @param lane 通道
+     * @param task 任务
+     * @param <T>  结果类型
+     * @return 任务结果
+     * @throws LaneFullException 通道队列已满时抛出
+     */
+    public <T> T call(Lane lane, Callable<T> task) throws LaneFullException {
+        if (isLaneThread(lane)) {
+            return runInline(lane, task);
+        }
+        Future<T> future;
+        lastActivity = SystemClock.elapsedRealtime();
+        try {
+            future = executors.get(lane).submit(Deadline.wrap(RequestTrace.wrap(traced(lane, task))));
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet(lane.ordinal());
+            Log.w(TAG, "Rejected work on lane " + lane);
+            throw new LaneFullException(lane);
+        }
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    T result = future.get();
+                    completed.incrementAndGet(lane.ordinal());
+                    lastActivity = SystemClock.elapsedRealtime();
+                    return result;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    completed.incrementAndGet(lane.ordinal());
+                    lastActivity = SystemClock.elapsedRealtime();
+                    throw rethrow(e.getCause());
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 在指定通道上异步执行任务，不等待结果
+     *
+     * @param lane 通道
+     * @param task 任务
+     * @throws LaneFullException 通道队列已满时抛出
+     */
+    public void execute(final Lane lane, final Runnable task) throws LaneFullException {
+        lastActivity = SystemClock.elapsedRealtime();
+        try {
+            final String section = sectionName(lane);
+            executors.get(lane).execute(Deadline.wrap(RequestTrace.wrap(() -> {
+                try (RequestTrace.Span span = RequestTrace.section(section)) {
+                    task.run();
+                } finally {
+                    completed.incrementAndGet(lane.ordinal());
+                    lastActivity = SystemClock.elapsedRealtime();
+                }
+            })));
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet(lane.ordinal());
+            Log.w(TAG, "Rejected work on lane " + lane);
+            throw new LaneFullException(lane);
+        }
+    }
+
+    /**
+     * 获取各通道的统计
+     *
+     * @return 每个通道一行：排队数、执行中、已完成、已拒绝
+     */
+    public String getStats() {
+        StringBuilder stats = new StringBuilder();
+        for (Lane lane : Lane.values()) {
+            ThreadPoolExecutor executor = executors.get(lane);
+            stats.append(lane)
+                    .append(": queued=").append(executor.getQueue().size())
+                    .append(", active=").append(executor.getActiveCount())
+                    .append(", completed=").append(completed.get(lane.ordinal()))
+                    .append(", rejected=").append(rejected.get(lane.ordinal()))
+                    .append('\n');
+        }
+        return stats.toString();
+    }
+
+    /**
+     * 获取服务已经空闲的时间
+     * 只统计经过通道的工作（即来自 AIDL 的请求），界面进程直接访问仓库的操作不计算在内
+     *
+     * @return 所有通道都没有排队或执行中的任务时，返回距最近一个任务提交或结束的毫秒数；否则返回 0
+     */
+    public long getIdleMillis() {
+        for (ThreadPoolExecutor executor : executors.values()) {
+            if (executor.getActiveCount() > 0 || !executor.getQueue().isEmpty()) {
+                return 0;
+            }
+        }
+        return Math.max(SystemClock.elapsedRealtime() - lastActivity, 0);
+    }
+
+    /**
+     * 给任务加上通道区段，在追踪中与 Binder 线程上的区段对比即可看出排队时间
+     * 任务开始前检查截止时间，排队期间已经超时的请求不再执行
+     */
+    private static <T> Callable<T> traced(Lane lane, final Callable<T> task) {
+        final String section = sectionName(lane);
+        return () -> {
+            try (RequestTrace.Span span = RequestTrace.section(section)) {
+                Deadline.check(section);
+                return task.call();
+            }
+        };
+    }
+
+    private static String sectionName(Lane lane) {
+        return "lane." + lane.name().toLowerCase(Locale.US);
+    }
+
+    private static boolean isLaneThread(Lane lane) {
+        return Lane.bound() == lane;
+    }
+
+    private <T> T runInline(Lane lane, Callable<T> task) {
+        try {
+            return task.call();
+        } catch (Exception e) {
+            throw rethrow(e);
+        } finally {
+            completed.incrementAndGet(lane.ordinal());
+        }
+    }
+
+    /**
+     * 把任务抛出的异常原样抛给调用方：运行时异常和错误直接抛出，受检异常包装为运行时异常
+     */
+    private static RuntimeException rethrow(Throwable cause) {
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        throw new RuntimeException(cause);
+    }
+}
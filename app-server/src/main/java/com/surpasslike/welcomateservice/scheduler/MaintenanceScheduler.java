@@ -0,0 +1,180 @@
+package com.surpasslike.welcomateservice.scheduler;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.surpasslike.welcomateservice.MyApplication;
+import com.surpasslike.welcomateservice.data.UserRepository;
+import com.surpasslike.welcomateservice.data.db.MaintenanceJob;
+import com.surpasslike.welcomateservice.data.db.MaintenanceResult;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在服务空闲时执行数据库维护，见 {@link MaintenanceJob}
+ * 每分钟检查一次：所有通道已经空闲、用户存储也有一段时间没有写入时，依次执行到期的维护任务；
+ * 界面进程的写入不经过本进程的通道，只体现在跨进程的存储版本号上，因此两者都要检查；
+ * 每个任务有自己的时间预算，预算用完或者期间有新的请求进入通道时让出，剩余的工作留给下一次空闲时
+ * 每个任务上次完整执行的时间保存在 SharedPreferences 中，服务重启后不会立刻重复执行；
+ * 最近的执行结果保存在内存中，通过 dumpsys 查看
+ * 这是一个单例，只在服务进程中启动
+ */
+public class MaintenanceScheduler {
+    private static final String TAG = "MaintenanceScheduler";
+
+    private static final long CHECK_INTERVAL_MS = TimeUnit.MINUTES.toMillis(1);
+    // 所有通道空闲这么久之后才开始维护，期间有请求则让出
+    private static final long IDLE_THRESHOLD_MS = TimeUnit.MINUTES.toMillis(2);
+    // 每个任务在所有分片上的总时间预算
+    private static final long JOB_BUDGET_MS = 250;
+    private static final int HISTORY_SIZE = 32;
+
+    private static final String PREFS_NAME = "maintenance";
+    private static final String KEY_LAST_RUN_PREFIX = "last_run_";
+
+    // 回收在前，写回 WAL 在后：回收产生的 WAL 帧可以在同一次空闲中写回
+    private static final MaintenanceJob[] ORDER = {
+            MaintenanceJob.INCREMENTAL_VACUUM,
+            MaintenanceJob.ANALYZE,
+            MaintenanceJob.CHECKPOINT
+    };
+
+    // 单例模式实现
+    private static volatile MaintenanceScheduler INSTANCE;
+
+    private final ScheduledThreadPoolExecutor executor;
+    // 最近的执行结果，最早的在最前面；由 history 自身保护
+    private final ArrayDeque<MaintenanceResult> history = new ArrayDeque<>();
+    private boolean started;
+    // 上一次看到的存储版本号和它变化的时刻，只在维护线程上访问
+    private long lastStoreVersion = -1;
+    private long storeChangedAt;
+
+    /**
+     * 私有构造函数，创建以后台优先级运行的维护线程
+     */
+    private MaintenanceScheduler() {
+        executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, "db-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 获取 MaintenanceScheduler 的单例
+     *
+     * @return MaintenanceScheduler 的唯一实例
+     */
+    public static MaintenanceScheduler getInstance() {
+        if (INSTANCE == null) {
+            synchronized (MaintenanceScheduler.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new MaintenanceScheduler();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * 开始定期检查，重复调用不会重复检查
+     */
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        executor.scheduleWithFixedDelay(this::runIfIdle, CHECK_INTERVAL_MS, CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 获取最近的执行结果
+     *
+     * @return 每个结果一行，最早的在前；没有结果时返回 "none"
+     */
+    public String getStats() {
+        StringBuilder stats = new StringBuilder();
+        synchronized (history) {
+            for (MaintenanceResult result : history) {
+                stats.append('\n').append("  ").append(result);
+            }
+        }
+        return stats.length() == 0 ? "none" : stats.toString();
+    }
+
+    /**
+     * 定期检查：服务空闲时执行到期的任务
+     * 异常只记录日志，否则定期任务会被取消
+     */
+    private void runIfIdle() {
+        try {
+            SharedPreferences preferences = getPreferences();
+            for (MaintenanceJob job : ORDER) {
+                if (isBusy()) {
+                    return;
+                }
+                long lastRun = preferences.getLong(KEY_LAST_RUN_PREFIX + job.name(), 0);
+                if (System.currentTimeMillis() - lastRun < job.intervalMillis) {
+                    continue;
+                }
+                if (runJob(job)) {
+                    preferences.edit().putLong(KEY_LAST_RUN_PREFIX + job.name(), System.currentTimeMillis()).apply();
+                }
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Database maintenance failed", e);
+        }
+    }
+
+    /**
+     * 在所有分片上执行一个任务并记录结果
+     *
+     * @return 所有分片都完整执行时返回 true
+     */
+    private boolean runJob(MaintenanceJob job) {
+        final long budgetEnd = SystemClock.elapsedRealtime() + JOB_BUDGET_MS;
+        List<MaintenanceResult> results = UserRepository.getInstance().runMaintenance(job,
+                () -> SystemClock.elapsedRealtime() >= budgetEnd || isBusy());
+        boolean complete = true;
+        synchronized (history) {
+            for (MaintenanceResult result : results) {
+                Log.i(TAG, result.toString());
+                history.addLast(result);
+                if (history.size() > HISTORY_SIZE) {
+                    history.removeFirst();
+                }
+                complete &= !result.yielded;
+            }
+        }
+        return complete;
+    }
+
+    /**
+     * 有请求在通道中，或者通道、用户存储的空闲时间还不够长
+     * 存储版本号在任何进程提交插入、删除或改密后变化，只读一次映射内存
+     */
+    private boolean isBusy() {
+        long now = SystemClock.elapsedRealtime();
+        long version = UserRepository.getInstance().getStoreVersion();
+        if (version != lastStoreVersion) {
+            lastStoreVersion = version;
+            storeChangedAt = now;
+        }
+        return LaneScheduler.getInstance().getIdleMillis() < IDLE_THRESHOLD_MS
+                || now - storeChangedAt < IDLE_THRESHOLD_MS;
+    }
+
+    private static SharedPreferences getPreferences() {
+        return MyApplication.getContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
@@ -1,5 +1,6 @@
 package com.surpasslike.welcomateservice.service;
 
+import android.app.Application;
 import android.app.Service;
 import android.content.Intent;
 import android.os.IBinder;
@@ -8,6 +9,13 @@ import android.util.Log;
 import androidx.annotation.Nullable;
 
 import com.surpasslike.welcomateservice.aidl.AdminApiImpl;
+import com.surpasslike.welcomateservice.data.UserRepository;
+import com.surpasslike.welcomateservice.data.WritePipeline;
+import com.surpasslike.welcomateservice.scheduler.LaneScheduler;
+import com.surpasslike.welcomateservice.scheduler.MaintenanceScheduler;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 
 /**
  * 后台服务，作为 AIDL 接口的宿主
@@ -21,16 +29,17 @@ public class AdminService extends Service {
      * AIDL 接口的实现实例
      * 为了效率，我们只创建一个实例
      */
-    private IBinder binder;
+    private AdminApiImpl binder;
 
     /**
      * 服务首次创建时调用
-     * 在这里始化 Binder 对象
+     * 在这里始化 Binder 对象，并开始在空闲时维护数据库
      */
     @Override
     public void onCreate() {
         super.onCreate();
         binder = new AdminApiImpl();
+        MaintenanceScheduler.getInstance().start();
         Log.d(TAG, "AdminService has been created.");
     }
 
@@ -47,6 +56,28 @@ public class AdminService extends Service {
         return binder;
     }
 
+    /**
+     * 输出诊断信息，通过 adb shell dumpsys activity service
+     * com.surpasslike.welcomateservice/.service.AdminService 查看
+     */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        UserRepository repository = UserRepository.getInstance();
+        writer.println("Process: " + Application.getProcessName() + ", store version " + repository.getStoreVersion());
+        writer.println("Read model: " + repository.describeReadModel());
+        writer.println("Shards: " + repository.getShardCount());
+        for (WritePipeline.Stats stats : repository.getWriteStats()) {
+            writer.println("  " + stats);
+        }
+        writer.println("Lanes: " + LaneScheduler.getInstance().getStats());
+        writer.println("Maintenance: " + MaintenanceScheduler.getInstance().getStats());
+        if (binder != null) {
+            writer.println("Rejections: " + binder.getRejectionCounts());
+            writer.println("Deadline exceeded: " + binder.getDeadlineExceededCount());
+            writer.println("Idempotency keys: " + binder.getIdempotencyStats());
+        }
+    }
+
     /**
      * 服务销毁时调用
      */
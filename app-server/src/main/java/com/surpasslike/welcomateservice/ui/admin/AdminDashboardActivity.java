@@ -7,23 +7,59 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import android.content.DialogInterface;
+import android.content.pm.ApplicationInfo;
+import android.database.Cursor;
 import android.os.Bundle;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.view.View;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
 import android.widget.EditText;
 import android.widget.Toast;
 
 import com.surpasslike.welcomateservice.R;
-import com.surpasslike.welcomateservice.data.model.User;
+import com.surpasslike.welcomateservice.data.UserPopulationGenerator;
+import com.surpasslike.welcomateservice.data.UserSections;
+import com.surpasslike.welcomateservice.data.UserSort;
+import com.surpasslike.welcomateservice.data.db.DatabaseHelper;
 import com.surpasslike.welcomateservice.databinding.ActivityAdminDashboardBinding;
 
-import java.util.List;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class AdminDashboardActivity extends AppCompatActivity {
 
+    // 调试菜单中可选的合成用户数量
+    private static final int[] GENERATED_USER_COUNTS = {1_000, 10_000, 100_000, 500_000};
+    // 调试菜单中可选的分片数量
+    private static final int[] SHARD_COUNTS = {1, 2, 4, 8};
+
+    // 滑出屏幕后按位置保留、回来时不需要重新绑定的行数（默认 2）
+    private static final int ROW_CACHE_SIZE = 8;
+    // 回收池保留的行视图数，也是列表显示后在主线程空闲时预先创建的行数，快速滑动时不再当场加载布局
+    private static final int POOLED_ROWS = 12;
+
+    // 排序下拉框中的选项，与 SORT_LABELS 一一对应
+    private static final UserSort[] SORT_OPTIONS = {
+            UserSort.USERNAME_ASC, UserSort.USERNAME_DESC, UserSort.ACCOUNT_ASC, UserSort.ACCOUNT_DESC, UserSort.INSERTION
+    };
+    private static final String[] SORT_LABELS = {
+            "Username A-Z", "Username Z-A", "Account A-Z", "Account Z-A", "Newest last"
+    };
+
     private ActivityAdminDashboardBinding binding;
     private AdminViewModel adminViewModel;
-    private List<User> userList;
     private AdminUserAdapter adapter;
+    private LinearLayoutManager layoutManager;
+    private UserSort sort = SORT_OPTIONS[0];
+
+    // 查询列表、统计分组和执行增删改的后台线程；单线程保证修改之后的刷新能看到修改的结果
+    private ExecutorService worker;
+    // 每次刷新加一，较早的刷新结果到达时直接丢弃
+    private int listGeneration;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -32,12 +68,46 @@ public class AdminDashboardActivity extends AppCompatActivity {
         View view = binding.getRoot();
         setContentView(view);
         adminViewModel = new ViewModelProvider(this).get(AdminViewModel.class);
+        worker = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "admin-dashboard"));
         // 初始化 RecyclerView 和用户列表
+        // 使用游标模式，只为屏幕上可见的行准备数据，内存占用不随用户总数增长；游标在后台查询好之后再交给适配器
         RecyclerView recyclerView = binding.recyclerView;
-        userList = adminViewModel.getAllUsers();
-        adapter = new AdminUserAdapter(userList);
-        recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        adapter = new AdminUserAdapter((Cursor) null);
+        layoutManager = new LinearLayoutManager(this);
+        // 滑动时在两帧之间的空闲时间预先创建和绑定即将出现的行
+        layoutManager.setItemPrefetchEnabled(true);
+        recyclerView.setLayoutManager(layoutManager);
+        // 列表的大小由布局约束决定，数据变化时不需要重新测量 RecyclerView 本身
+        recyclerView.setHasFixedSize(true);
+        recyclerView.setItemViewCacheSize(ROW_CACHE_SIZE);
+        recyclerView.getRecycledViewPool().setMaxRecycledViews(AdminUserAdapter.VIEW_TYPE_USER, POOLED_ROWS);
         recyclerView.setAdapter(adapter);
+        prewarmRows(recyclerView);
+
+        // 快速滚动条：分组与列表一起在后台加载，点击字母直接跳到该位置
+        binding.sectionScrollBar.setOnSectionSelectedListener(new SectionScrollBar.OnSectionSelectedListener() {
+            @Override
+            public void onSectionSelected(int position, String label) {
+                layoutManager.scrollToPositionWithOffset(position, 0);
+            }
+        });
+
+        ArrayAdapter<String> sortAdapter = new ArrayAdapter<>(this, android.R.layout.simple_spinner_item, SORT_LABELS);
+        sortAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        binding.spinnerSort.setAdapter(sortAdapter);
+        binding.spinnerSort.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                if (SORT_OPTIONS[position] != sort) {
+                    sort = SORT_OPTIONS[position];
+                    loadUserList(true);
+                }
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+            }
+        });
 
         binding.btnChangePassword.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -56,6 +126,17 @@ public class AdminDashboardActivity extends AppCompatActivity {
             }
         });
 
+        // 调试版本中长按“增加用户”打开调试菜单：用合成数据替换全部用户、重新分片、转换旧数据库的回收方式
+        if ((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0) {
+            binding.btnAddUser.setOnLongClickListener(new View.OnLongClickListener() {
+                @Override
+                public boolean onLongClick(View v) {
+                    showDebugMenu();
+                    return true;
+                }
+            });
+        }
+
         binding.btnDeleteUser.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
@@ -63,6 +144,75 @@ public class AdminDashboardActivity extends AppCompatActivity {
                 showDeleteUserDialog();
             }
         });
+
+        loadUserList(false);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // 尚未执行的任务不再执行，已经在执行的查询完成后发现页面已销毁，自行关闭游标
+        worker.shutdown();
+        // 关闭适配器持有的游标
+        adapter.swapCursor(null);
+    }
+
+    // 在主线程空闲时逐个创建行视图放入回收池，每次只创建一个，不会占用一整帧
+    private void prewarmRows(final RecyclerView recyclerView) {
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                if (isDestroyed()) {
+                    return false;
+                }
+                RecyclerView.RecycledViewPool pool = recyclerView.getRecycledViewPool();
+                if (pool.getRecycledViewCount(AdminUserAdapter.VIEW_TYPE_USER) >= POOLED_ROWS) {
+                    return false;
+                }
+                pool.putRecycledView(adapter.createViewHolder(recyclerView, AdminUserAdapter.VIEW_TYPE_USER));
+                return true;
+            }
+        });
+    }
+
+    // 刷新用户列表和快速滚动分组
+    private void refreshUserList() {
+        loadUserList(false);
+    }
+
+    // 在后台线程查询游标（包括填充第一个窗口）和分组，完成后在主线程替换列表
+    private void loadUserList(final boolean scrollToTop) {
+        final UserSort requested = sort;
+        final int generation = ++listGeneration;
+        runInBackground(new Runnable() {
+            @Override
+            public void run() {
+                final Cursor cursor = adminViewModel.queryUsers(requested);
+                cursor.getCount();
+                final UserSections sections = adminViewModel.getSections(requested);
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (isDestroyed() || generation != listGeneration) {
+                            cursor.close();
+                            return;
+                        }
+                        adapter.swapCursor(cursor);
+                        binding.sectionScrollBar.setSections(sections);
+                        if (scrollToTop) {
+                            layoutManager.scrollToPosition(0);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    // 在后台线程执行一个任务；页面已经销毁时不再执行
+    private void runInBackground(Runnable task) {
+        if (!worker.isShutdown()) {
+            worker.execute(task);
+        }
     }
 
     // 显示Toast提示信息的方法
@@ -72,29 +222,42 @@ public class AdminDashboardActivity extends AppCompatActivity {
 
     //显示用户列表对话框
     private void showUserListDialog() {
+        // 与 loadUserList 相同，在后台线程打开游标并填充第一个窗口（计数会访问所有分片），完成后在主线程显示对话框
+        runInBackground(() -> {
+            final Cursor cursor = adminViewModel.queryUsers();
+            cursor.getCount();
+            runOnUiThread(() -> {
+                if (isDestroyed()) {
+                    cursor.close();
+                    return;
+                }
+                showUserListDialog(cursor);
+            });
+        });
+    }
+
+    // 用已经填充好的游标显示用户列表对话框，对话框关闭时关闭游标
+    private void showUserListDialog(final Cursor cursor) {
         AlertDialog.Builder builder = new AlertDialog.Builder(this);
         builder.setTitle("Select User to Change Password");
 
-        //将其替换为数据库中的实际用户列表
-        List<User> userList = adminViewModel.getAllUsers();
-
-        // 将用户列表转换为要在对话框中显示的用户名数组
-        String[] usernames = new String[userList.size()];
-        for (int i = 0; i < userList.size(); i++) {
-            usernames[i] = userList.get(i).getUsername();
-        }
-
+        // 直接用游标填充对话框列表，不把全部用户名复制成数组
         // 在对话框中显示用户名列表
-        builder.setItems(usernames, new DialogInterface.OnClickListener() {
+        builder.setCursor(cursor, new DialogInterface.OnClickListener() {
             @Override
             public void onClick(DialogInterface dialog, int which) {
                 // 获取所选用户名
-                String selectedUsername = userList.get(which).getUsername();
+                if (!cursor.moveToPosition(which)) {
+                    return;
+                }
+                String selectedUsername = cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_USERNAME));
 
                 // 调用方法以更改所选用户的密码
                 showChangePasswordDialog(selectedUsername);
             }
-        });
+        }, DatabaseHelper.COLUMN_USERNAME);
+        // 对话框关闭后释放游标
+        builder.setOnDismissListener(dialog -> cursor.close());
 
         //显示对话框
         builder.create().show();
@@ -117,9 +280,8 @@ public class AdminDashboardActivity extends AppCompatActivity {
                 String newPassword = etNewPassword.getText().toString();
 
                 // 调用方法以更改所选用户的密码
-                adminViewModel.changeUserPassword(username, newPassword);
-                userList = adminViewModel.getAllUsers(); // 添加用户后刷新用户列表
-                adapter.setUserList(userList); // 使用新用户列表更新适配器
+                runInBackground(() -> adminViewModel.changeUserPassword(username, newPassword));
+                refreshUserList(); // 修改密码后刷新用户列表
                 showToast("Password changed for " + username);
             }
         });
@@ -154,14 +316,20 @@ public class AdminDashboardActivity extends AppCompatActivity {
                 String newPassword = etNewPassword.getText().toString();
 
                 // 调用方法以添加新用户
-                long rowId = adminViewModel.addUser(newUsername, newAccount, newPassword);
-                if (rowId != -1) {
-                    showToast("User added");
-                    userList = adminViewModel.getAllUsers(); // 添加用户后刷新用户列表
-                    adapter.setUserList(userList); // 使用新用户列表更新适配器
-                } else {
-                    showToast("Failed to add user");
-                }
+                runInBackground(() -> {
+                    final long rowId = adminViewModel.addUser(newUsername, newAccount, newPassword);
+                    runOnUiThread(() -> {
+                        if (isDestroyed()) {
+                            return;
+                        }
+                        if (rowId != -1) {
+                            showToast("User added");
+                            refreshUserList(); // 添加用户后刷新用户列表
+                        } else {
+                            showToast("Failed to add user");
+                        }
+                    });
+                });
             }
         });
 
@@ -175,6 +343,136 @@ public class AdminDashboardActivity extends AppCompatActivity {
         builder.create().show();
     }
 
+    // 调试菜单
+    private void showDebugMenu() {
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle("Debug");
+        builder.setItems(new String[]{"Replace all users with generated data", "Reshard storage",
+                        "Convert databases to incremental vacuum"},
+                new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        if (which == 0) {
+                            showGenerateUsersDialog();
+                        } else if (which == 1) {
+                            showReshardDialog();
+                        } else {
+                            convertToIncrementalVacuum();
+                        }
+                    }
+                });
+        builder.setNegativeButton("Cancel", null);
+        builder.create().show();
+    }
+
+    // 调试菜单：生成合成用户并替换全部用户
+    private void showGenerateUsersDialog() {
+        String[] labels = new String[GENERATED_USER_COUNTS.length];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = GENERATED_USER_COUNTS[i] + " users";
+        }
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle("Replace all users with generated data");
+        builder.setItems(labels, new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                generateUsers(GENERATED_USER_COUNTS[which]);
+            }
+        });
+        builder.setNegativeButton("Cancel", null);
+        builder.create().show();
+    }
+
+    // 在后台线程生成并载入合成用户，完成后刷新列表
+    private void generateUsers(int count) {
+        showToast("Generating " + count + " users...");
+        final UserPopulationGenerator generator = new UserPopulationGenerator(this,
+                new UserPopulationGenerator.Spec()
+                        .userCount(count)
+                        .usernames(UserPopulationGenerator.UsernameDistribution.ZIPF)
+                        .accounts(UserPopulationGenerator.AccountDistribution.EMAIL));
+        final File scratch = new File(getCacheDir(), "generated-users.db");
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                String message;
+                try {
+                    message = "Generated " + generator.replaceAllUsers(scratch);
+                } catch (IOException | RuntimeException e) {
+                    message = "Generation failed: " + e.getMessage();
+                }
+                final String result = message;
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!isDestroyed()) {
+                            refreshUserList();
+                            showToast(result);
+                        }
+                    }
+                });
+            }
+        }, "generate-users").start();
+    }
+
+    // 调试菜单：选择新的分片数量
+    private void showReshardDialog() {
+        String[] labels = new String[SHARD_COUNTS.length];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = SHARD_COUNTS[i] == 1 ? "1 shard" : SHARD_COUNTS[i] + " shards";
+        }
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle("Reshard storage (currently " + adminViewModel.getShardCount() + ")");
+        builder.setItems(labels, new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                reshard(SHARD_COUNTS[which]);
+            }
+        });
+        builder.setNegativeButton("Cancel", null);
+        builder.create().show();
+    }
+
+    // 在列表的后台线程上重新分片，之后的刷新排在它后面，完成后刷新列表
+    private void reshard(final int shardCount) {
+        showToast("Resharding into " + shardCount + "...");
+        runInBackground(() -> {
+            String message;
+            try {
+                adminViewModel.reshard(shardCount);
+                message = "Storage now has " + adminViewModel.getShardCount() + " shards";
+            } catch (RuntimeException e) {
+                message = "Reshard failed: " + e.getMessage();
+            }
+            final String result = message;
+            runOnUiThread(() -> {
+                if (!isDestroyed()) {
+                    refreshUserList();
+                    showToast(result);
+                }
+            });
+        });
+    }
+
+    // 在后台线程上把旧数据库转换为增量回收，期间其他操作会等待
+    private void convertToIncrementalVacuum() {
+        showToast("Converting databases...");
+        runInBackground(() -> {
+            String message;
+            try {
+                message = "Converted, " + adminViewModel.convertToIncrementalVacuum() + " pages freed";
+            } catch (RuntimeException e) {
+                message = "Conversion failed: " + e.getMessage();
+            }
+            final String result = message;
+            runOnUiThread(() -> {
+                if (!isDestroyed()) {
+                    showToast(result);
+                }
+            });
+        });
+    }
+
     private void showDeleteUserDialog() {
         AlertDialog.Builder builder = new AlertDialog.Builder(this);
         builder.setTitle("Delete User");
@@ -190,10 +488,9 @@ public class AdminDashboardActivity extends AppCompatActivity {
                 String usernameToDelete = etUsernameToDelete.getText().toString();
 
                 // 调用方法删除用户
-                adminViewModel.deleteUser(usernameToDelete);
+                runInBackground(() -> adminViewModel.deleteUser(usernameToDelete));
                 showToast("User deleted");
-                userList = adminViewModel.getAllUsers(); // 删除用户后刷新用户列表
-                adapter.setUserList(userList); // 使用更新的用户列表更新适配器
+                refreshUserList(); // 删除用户后刷新用户列表
             }
         });
 
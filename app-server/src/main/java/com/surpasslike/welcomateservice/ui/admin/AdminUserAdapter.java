@@ -1,27 +1,55 @@
 package com.surpasslike.welcomateservice.ui.admin;
 
+import android.database.Cursor;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.appcompat.widget.AppCompatTextView;
+import androidx.core.text.PrecomputedTextCompat;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.surpasslike.welcomateservice.R;
+import com.surpasslike.welcomateservice.data.db.DatabaseHelper;
 import com.surpasslike.welcomateservice.data.model.User;
 
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 /**
  * 用于在 RecyclerView 中显示用户列表的适配器
+ * 支持两种数据模式：
+ * 1. 列表模式：直接绑定一个 List&lt;User&gt;，适合数据量较小的场景
+ * 2. 游标模式：直接从按窗口加载的 Cursor 绑定，只为屏幕上可见的行准备数据，不会为每一行创建 User 对象
+ * <p>
+ * 每一行只有一个 TextView，用户名和账户分两行显示；行文本的布局（断行、字形测量）通过
+ * {@link PrecomputedTextCompat} 在后台线程计算，主线程绑定时只提交任务，测量时直接使用计算结果
  */
 public class AdminUserAdapter extends RecyclerView.Adapter<AdminUserAdapter.UserViewHolder> {
 
+    /**
+     * 列表中唯一的视图类型，回收池按它设置容量和预先创建行视图
+     */
+    public static final int VIEW_TYPE_USER = 0;
+
+    // 计算行文本布局的后台线程；绑定通常比显示早一帧（RecyclerView 的预取），计算在显示前就已完成
+    private static final Executor TEXT_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "user-row-text");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private List<User> userList;
 
+    // 游标模式下的数据源及其列索引（每个游标只解析一次）
+    private Cursor cursor;
+    private int usernameColumn = -1;
+    private int accountColumn = -1;
+
     /**
-     * 构造函数
+     * 构造函数（列表模式）
      *
      * @param userList 初始的用户数据列表
      */
@@ -29,6 +57,15 @@ public class AdminUserAdapter extends RecyclerView.Adapter<AdminUserAdapter.User
         this.userList = userList;
     }
 
+    /**
+     * 构造函数（游标模式）
+     *
+     * @param cursor 初始的用户游标，适配器接管其生命周期
+     */
+    public AdminUserAdapter(Cursor cursor) {
+        bindCursor(cursor);
+    }
+
     /**
      * 当 RecyclerView 需要一个新的 ViewHolder 时调用
      *
@@ -51,10 +88,24 @@ public class AdminUserAdapter extends RecyclerView.Adapter<AdminUserAdapter.User
      */
     @Override
     public void onBindViewHolder(@NonNull UserViewHolder holder, int position) {
+        if (cursor != null) {
+            // 游标模式：行已经不存在（游标在两次刷新之间变短）时清空，不能留下复用前的内容
+            if (!cursor.moveToPosition(position)) {
+                holder.clearText();
+                return;
+            }
+            // 后台计算期间文本不能再被修改，因此交给它一个不可变的字符串
+            holder.bindText(cursor.getString(usernameColumn) + "\n" + cursor.getString(accountColumn));
+            return;
+        }
         User user = userList.get(position);
-        holder.tvUsername.setText(user.getUsername());
-        holder.tvAccount.setText(user.getAccount());
         // 安全起见，我们不在此处显示密码或密码哈希
+        holder.bindText(user.getUsername() + "\n" + user.getAccount());
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        return VIEW_TYPE_USER;
     }
 
     /**
@@ -64,31 +115,85 @@ public class AdminUserAdapter extends RecyclerView.Adapter<AdminUserAdapter.User
      */
     @Override
     public int getItemCount() {
+        if (cursor != null) {
+            return cursor.getCount();
+        }
         return userList != null ? userList.size() : 0;
     }
 
     /**
-     * 更新适配器的数据集
+     * 更新适配器的数据集（切换到列表模式）
      *
      * @param newUserList 新的用户列表
      */
     public void setUserList(List<User> newUserList) {
+        bindCursor(null);
         this.userList = newUserList;
         // 刷新整个列表注意：对于大型列表，使用 DiffUtil 会更高效
         notifyDataSetChanged();
     }
 
+    /**
+     * 替换游标数据源（切换到游标模式），旧游标会被关闭
+     * 传入 null 表示释放当前游标，例如在 Activity 销毁时
+     *
+     * @param newCursor 新的用户游标
+     */
+    public void swapCursor(Cursor newCursor) {
+        if (newCursor == cursor) {
+            return;
+        }
+        bindCursor(newCursor);
+        notifyDataSetChanged();
+    }
+
+    /**
+     * 关闭旧游标并记录新游标的列索引
+     *
+     * @param newCursor 新的用户游标，可以为 null
+     */
+    private void bindCursor(Cursor newCursor) {
+        if (cursor != null && cursor != newCursor) {
+            cursor.close();
+        }
+        cursor = newCursor;
+        if (newCursor != null) {
+            userList = null;
+            usernameColumn = newCursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_USERNAME);
+            accountColumn = newCursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_ACCOUNT);
+        } else {
+            usernameColumn = -1;
+            accountColumn = -1;
+        }
+    }
+
     /**
      * ViewHolder 类，用于缓存 item view 中的视图
      */
     static class UserViewHolder extends RecyclerView.ViewHolder {
-        TextView tvUsername, tvAccount;
+        final AppCompatTextView tvUser;
 
         UserViewHolder(@NonNull View itemView) {
             super(itemView);
-            tvUsername = itemView.findViewById(R.id.tvUsername);
-            tvAccount = itemView.findViewById(R.id.tvAccount);
-            // 移除了 tvPassword 的绑定
+            tvUser = itemView.findViewById(R.id.tvUser);
+        }
+
+        /**
+         * 在后台线程计算文本布局，TextView 在测量时取用结果，尚未完成时才会等待
+         *
+         * @param text 行文本
+         */
+        void bindText(CharSequence text) {
+            tvUser.setTextFuture(PrecomputedTextCompat.getTextFuture(text,
+                    tvUser.getTextMetricsParamsCompat(), TEXT_EXECUTOR));
+        }
+
+        /**
+         * 清空行文本，同时丢弃上一次绑定尚未取用的计算结果，否则它会在测量时被显示出来
+         */
+        void clearText() {
+            tvUser.setTextFuture(null);
+            tvUser.setText(null);
         }
     }
 }
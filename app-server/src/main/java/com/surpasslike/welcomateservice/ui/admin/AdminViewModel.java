@@ -1,8 +1,14 @@
 package com.surpasslike.welcomateservice.ui.admin;
 
+import android.database.Cursor;
+
 import androidx.lifecycle.ViewModel;
 
 import com.surpasslike.welcomateservice.data.UserRepository;
+import com.surpasslike.welcomateservice.data.UserSections;
+import com.surpasslike.welcomateservice.data.UserSort;
+import com.surpasslike.welcomateservice.data.db.MaintenanceJob;
+import com.surpasslike.welcomateservice.data.db.MaintenanceResult;
 import com.surpasslike.welcomateservice.data.model.User;
 
 import java.util.List;
@@ -56,6 +62,35 @@ public class AdminViewModel extends ViewModel {
         return userRepository.getAllUsers();
     }
 
+    /**
+     * 以游标形式获取所有用户，供列表按需绑定，避免一次性创建全部 User 对象
+     *
+     * @return 用户游标，调用方负责关闭
+     */
+    public Cursor queryUsers() {
+        return userRepository.queryUsers();
+    }
+
+    /**
+     * 以游标形式获取按指定方式排序的所有用户
+     *
+     * @param sort 排序方式
+     * @return 用户游标，调用方负责关闭
+     */
+    public Cursor queryUsers(UserSort sort) {
+        return userRepository.queryUsers(sort);
+    }
+
+    /**
+     * 获取排序列表的首字符分组，用于快速滚动
+     *
+     * @param sort 排序方式
+     * @return 分组；插入顺序没有分组，返回 null
+     */
+    public UserSections getSections(UserSort sort) {
+        return userRepository.getSections(sort);
+    }
+
     /**
      * 根据用户名删除一个用户
      *
@@ -65,6 +100,38 @@ public class AdminViewModel extends ViewModel {
         userRepository.deleteUser(username);
     }
 
+    /**
+     * 获取用户存储当前的分片数量
+     *
+     * @return 分片数量
+     */
+    public int getShardCount() {
+        return userRepository.getShardCount();
+    }
+
+    /**
+     * 把用户存储重新分布到指定数量的分片中，耗时与用户数成正比，必须在后台线程上调用
+     *
+     * @param shardCount 目标分片数量
+     */
+    public void reshard(int shardCount) {
+        userRepository.reshard(shardCount);
+    }
+
+    /**
+     * 把 auto_vacuum 尚未设置为增量回收的旧数据库转换过来，每个分片执行一次完整的 VACUUM
+     * 耗时与数据库大小成正比，必须在后台线程上调用
+     *
+     * @return 所有分片归还给文件系统的总页数
+     */
+    public long convertToIncrementalVacuum() {
+        long freed = 0;
+        for (MaintenanceResult result : userRepository.runMaintenance(MaintenanceJob.CONVERT_TO_INCREMENTAL, () -> false)) {
+            freed += result.pagesFreed;
+        }
+        return freed;
+    }
+
     /**
      * 更新指定用户的密码
      *
@@ -0,0 +1,128 @@
+package com.surpasslike.welcomateservice.ui.admin;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.MotionEvent;
+import android.view.View;
+
+import com.surpasslike.welcomateservice.data.UserSections;
+
+/**
+ * 列表右侧的快速滚动条
+ * 竖直排列排序列表的各个首字符分组，触摸或拖动到某个标签时回调该分组第一行的位置，
+ * 位置直接来自 {@link UserSections}，不需要在列表中查找或数行
+ */
+public class SectionScrollBar extends View {
+
+    /**
+     * 分组选择回调
+     */
+    public interface OnSectionSelectedListener {
+        /**
+         * @param position 分组第一行在列表中的位置
+         * @param label    分组标签
+         */
+        void onSectionSelected(int position, String label);
+    }
+
+    private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint highlightPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private UserSections sections;
+    private OnSectionSelectedListener listener;
+    // 当前触摸的分组，没有时为 -1
+    private int activeSection = -1;
+
+    public SectionScrollBar(Context context) {
+        this(context, null);
+    }
+
+    public SectionScrollBar(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        textPaint.setColor(Color.DKGRAY);
+        textPaint.setTextAlign(Paint.Align.CENTER);
+        textPaint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, 11,
+                getResources().getDisplayMetrics()));
+        highlightPaint.setColor(0x33000000);
+    }
+
+    /**
+     * 设置要显示的分组，传入 null 或空分组时隐藏滚动条
+     *
+     * @param sections 分组
+     */
+    public void setSections(UserSections sections) {
+        this.sections = sections;
+        activeSection = -1;
+        setVisibility(sections != null && sections.size() > 1 ? VISIBLE : GONE);
+        invalidate();
+    }
+
+    public void setOnSectionSelectedListener(OnSectionSelectedListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (sections == null || sections.size() == 0) {
+            return;
+        }
+        int size = sections.size();
+        float slot = (float) (getHeight() - getPaddingTop() - getPaddingBottom()) / size;
+        float centerX = getWidth() / 2f;
+        // 分组很多时标签会重叠，按可用高度只画一部分标签，触摸仍然可以选中每一个分组
+        int step = Math.max(1, (int) Math.ceil(textPaint.getTextSize() / Math.max(1f, slot)));
+        for (int i = 0; i < size; i++) {
+            float top = getPaddingTop() + i * slot;
+            if (i == activeSection) {
+                canvas.drawRect(0, top, getWidth(), top + slot, highlightPaint);
+            }
+            if (i % step == 0 || i == activeSection) {
+                float baseline = top + slot / 2 - (textPaint.ascent() + textPaint.descent()) / 2;
+                canvas.drawText(sections.getLabel(i), centerX, baseline, textPaint);
+            }
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (sections == null || sections.size() == 0) {
+            return false;
+        }
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+            case MotionEvent.ACTION_MOVE:
+                getParent().requestDisallowInterceptTouchEvent(true);
+                select(sectionAt(event.getY()));
+                return true;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                activeSection = -1;
+                invalidate();
+                return true;
+            default:
+                return super.onTouchEvent(event);
+        }
+    }
+
+    private int sectionAt(float y) {
+        int height = getHeight() - getPaddingTop() - getPaddingBottom();
+        int section = (int) ((y - getPaddingTop()) * sections.size() / Math.max(1, height));
+        return Math.max(0, Math.min(sections.size() - 1, section));
+    }
+
+    private void select(int section) {
+        if (section == activeSection) {
+            return;
+        }
+        activeSection = section;
+        invalidate();
+        if (listener != null) {
+            listener.onSectionSelected(sections.getPosition(section), sections.getLabel(section));
+        }
+    }
+}
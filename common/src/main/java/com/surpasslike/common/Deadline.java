@@ -0,0 +1,154 @@
+package com.surpasslike.common;
+
+import android.os.SystemClock;
+
+import java.util.concurrent.Callable;
+
+/**
+ * 请求的截止时间
+ * 客户端在提交每次 IAdminService 调用时确定截止时间，随请求头传给服务端；两端都用
+ * {@link SystemClock#elapsedRealtime()} 表示截止时间，同一台设备上的两个进程共用这个时钟，不需要换算
+ * <p>
+ * 服务端把截止时间绑定到处理请求的线程（{@link #bind}），在哈希、查询和提交之前用 {@link #check} 检查，
+ * 已经超时的请求不再继续消耗 CPU 和写事务；切换线程时用 {@link #wrap} 把截止时间带到执行任务的线程，
+ * 与 {@link com.surpasslike.common.trace.RequestTrace} 传递请求 ID 的方式相同
+ */
+public final class Deadline {
+
+    /** 表示没有截止时间 */
+    public static final long NONE = 0;
+
+    private static final ThreadLocal<long[]> CURRENT = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[]{NONE};
+        }
+    };
+
+    /**
+     * 请求在截止时间之后仍未完成
+     * 服务端把它转换为 IAdminService.ERROR_DEADLINE_EXCEEDED 返回给客户端
+     */
+    public static class DeadlineExceededException extends RuntimeException {
+        public DeadlineExceededException(String stage) {
+            super("Deadline exceeded before " + stage);
+        }
+    }
+
+    private Deadline() {
+    }
+
+    /**
+     * 根据超时时长计算截止时间
+     *
+     * @param timeoutMillis 超时毫秒数，小于等于 0 表示不限时
+     * @return 截止时间，不限时返回 {@link #NONE}
+     */
+    public static long after(long timeoutMillis) {
+        return timeoutMillis <= 0 ? NONE : SystemClock.elapsedRealtime() + timeoutMillis;
+    }
+
+    /**
+     * @return 当前线程正在处理的请求的截止时间，没有时返回 {@link #NONE}
+     */
+    public static long current() {
+        return CURRENT.get()[0];
+    }
+
+    /**
+     * 在作用域结束前把当前线程绑定到给定的截止时间
+     *
+     * @param deadline 截止时间，{@link #NONE} 表示不限时
+     * @return 作用域，必须在同一线程上关闭，关闭时恢复原来的截止时间
+     */
+    public static Scope bind(long deadline) {
+        return new Scope(deadline);
+    }
+
+    /**
+     * @param deadline 截止时间
+     * @param now      当前的 elapsedRealtime
+     * @return 剩余毫秒数，已经超时返回 0，不限时返回 Long.MAX_VALUE
+     */
+    public static long remainingMillis(long deadline, long now) {
+        if (deadline == NONE) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, deadline - now);
+    }
+
+    /**
+     * @param deadline 截止时间
+     * @return true表示截止时间已过；不限时总是返回 false
+     */
+    public static boolean isExpired(long deadline) {
+        return deadline != NONE && remainingMillis(deadline, SystemClock.elapsedRealtime()) == 0;
+    }
+
+    /**
+     * 检查当前请求是否已经超时
+     *
+     * @param stage 即将开始的步骤，例如 hash、db.query，只用于异常信息
+     * @throws DeadlineExceededException 当前请求的截止时间已过时抛出
+     */
+    public static void check(String stage) {
+        if (isExpired(current())) {
+            throw new DeadlineExceededException(stage);
+        }
+    }
+
+    /**
+     * 包装一个任务，让它在执行线程上也使用当前请求的截止时间
+     *
+     * @param task 任务
+     * @param <T>  结果类型
+     * @return 包装后的任务；当前没有截止时间时返回原任务
+     */
+    public static <T> Callable<T> wrap(final Callable<T> task) {
+        final long deadline = current();
+        if (deadline == NONE) {
+            return task;
+        }
+        return () -> {
+            try (Scope scope = bind(deadline)) {
+                return task.call();
+            }
+        };
+    }
+
+    /**
+     * 包装一个任务，让它在执行线程上也使用当前请求的截止时间
+     *
+     * @param task 任务
+     * @return 包装后的任务；当前没有截止时间时返回原任务
+     */
+    public static Runnable wrap(final Runnable task) {
+        final long deadline = current();
+        if (deadline == NONE) {
+            return task;
+        }
+        return () -> {
+            try (Scope scope = bind(deadline)) {
+                task.run();
+            }
+        };
+    }
+
+    /**
+     * 截止时间的绑定作用域
+     */
+    public static final class Scope implements AutoCloseable {
+        private final long previous;
+
+        private Scope(long deadline) {
+            long[] current = CURRENT.get();
+            previous = current[0];
+            current[0] = deadline;
+        }
+
+        @Override
+        public void close() {
+            CURRENT.get()[0] = previous;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.surpasslike.common;
+
+/**
+ * 客户端与服务端共用的输入规则
+ * 客户端用它在提交前提示用户，服务端用它在哈希和数据库操作之前拒绝非法请求，两边的判断因此始终一致
+ * 所有检查只做长度和空白判断，不分配对象，也不依赖 Android 框架，可以在 Binder 线程上以微秒级完成
+ * <p>
+ * 长度规则只约束新的输入（注册和新密码）；按已有的用户名或账户查找、用已有的密码登录时，
+ * 只排除空值和超过 {@link #KEY_MAX_LENGTH} 的请求，规则收紧之前创建的用户仍然可以登录、改密和被删除
+ */
+public final class InputRules {
+
+    /** 用户名最小长度（去除首尾空白后） */
+    public static final int USERNAME_MIN_LENGTH = 1;
+    /** 用户名最大长度（去除首尾空白后） */
+    public static final int USERNAME_MAX_LENGTH = 20;
+    /** 账户最大长度 */
+    public static final int ACCOUNT_MAX_LENGTH = 64;
+    /** 密码最小长度 */
+    public static final int PASSWORD_MIN_LENGTH = 1;
+    /** 密码最大长度 */
+    public static final int PASSWORD_MAX_LENGTH = 20;
+    /** 查找已有的用户名、账户或验证已有的密码时允许的最大长度，只用于拒绝异常的请求 */
+    public static final int KEY_MAX_LENGTH = 256;
+
+    /**
+     * 输入被拒绝的原因
+     */
+    public enum Violation {
+        USERNAME_EMPTY,
+        USERNAME_TOO_LONG,
+        ACCOUNT_EMPTY,
+        ACCOUNT_TOO_LONG,
+        PASSWORD_EMPTY,
+        PASSWORD_TOO_LONG
+    }
+
+    private InputRules() {
+    }
+
+    /**
+     * 检查用户名
+     *
+     * @param username 用户名
+     * @return 不合法的原因；合法时返回 null
+     */
+    public static Violation checkUsername(String username) {
+        int length = trimmedLength(username);
+        if (length < USERNAME_MIN_LENGTH) {
+            return Violation.USERNAME_EMPTY;
+        }
+        if (length > USERNAME_MAX_LENGTH) {
+            return Violation.USERNAME_TOO_LONG;
+        }
+        return null;
+    }
+
+    /**
+     * 检查账户：不能为空白，也不能超过最大长度
+     *
+     * @param account 账户
+     * @return 不合法的原因；合法时返回 null
+     */
+    public static Violation checkAccount(String account) {
+        if (trimmedLength(account) == 0) {
+            return Violation.ACCOUNT_EMPTY;
+        }
+        if (account.length() > ACCOUNT_MAX_LENGTH) {
+            return Violation.ACCOUNT_TOO_LONG;
+        }
+        return null;
+    }
+
+    /**
+     * 检查密码，密码中的空白是有效字符，因此不去除首尾空白
+     *
+     * @param password 原始密码
+     * @return 不合法的原因；合法时返回 null
+     */
+    public static Violation checkPassword(String password) {
+        int length = password == null ? 0 : password.length();
+        if (length < PASSWORD_MIN_LENGTH) {
+            return Violation.PASSWORD_EMPTY;
+        }
+        if (length > PASSWORD_MAX_LENGTH) {
+            return Violation.PASSWORD_TOO_LONG;
+        }
+        return null;
+    }
+
+    /**
+     * 检查用于查找已有用户的用户名：不能为空白，也不能超过 {@link #KEY_MAX_LENGTH}
+     *
+     * @param username 用户名
+     * @return 不合法的原因；合法时返回 null
+     */
+    public static Violation checkExistingUsername(String username) {
+        if (trimmedLength(username) == 0) {
+            return Violation.USERNAME_EMPTY;
+        }
+        if (username.length() > KEY_MAX_LENGTH) {
+            return Violation.USERNAME_TOO_LONG;
+        }
+        return null;
+    }
+
+    /**
+     * 检查用于查找已有用户的账户：不能为空白，也不能超过 {@link #KEY_MAX_LENGTH}
+     *
+     * @param account 账户
+     * @return 不合法的原因；合法时返回 null
+     */
+    public static Violation checkExistingAccount(String account) {
+        if (trimmedLength(account) == 0) {
+            return Violation.ACCOUNT_EMPTY;
+        }
+        if (account.length() > KEY_MAX_LENGTH) {
+            return Violation.ACCOUNT_TOO_LONG;
+        }
+        return null;
+    }
+
+    /**
+     * 检查登录时输入的已有密码：不能为空，也不能超过 {@link #KEY_MAX_LENGTH}
+     *
+     * @param password 原始密码
+     * @return 不合法的原因；合法时返回 null
+     */
+    public static Violation checkExistingPassword(String password) {
+        if (password == null || password.isEmpty()) {
+            return Violation.PASSWORD_EMPTY;
+        }
+        if (password.length() > KEY_MAX_LENGTH) {
+            return Violation.PASSWORD_TOO_LONG;
+        }
+        return null;
+    }
+
+    /**
+     * 检查注册请求
+     *
+     * @return 第一个不合法的原因；全部合法时返回 null
+     */
+    public static Violation checkRegistration(String username, String account, String password) {
+        Violation violation = checkUsername(username);
+        if (violation == null) {
+            violation = checkAccount(account);
+        }
+        if (violation == null) {
+            violation = checkPassword(password);
+        }
+        return violation;
+    }
+
+    /**
+     * 检查登录请求
+     *
+     * @return 第一个不合法的原因；全部合法时返回 null
+     */
+    public static Violation checkLogin(String account, String password) {
+        Violation violation = checkExistingAccount(account);
+        return violation != null ? violation : checkExistingPassword(password);
+    }
+
+    /**
+     * 检查修改密码请求：用户名按已有用户查找，新密码与注册时的规则相同
+     *
+     * @return 第一个不合法的原因；全部合法时返回 null
+     */
+    public static Violation checkPasswordChange(String username, String newPassword) {
+        Violation violation = checkExistingUsername(username);
+        return violation != null ? violation : checkPassword(newPassword);
+    }
+
+    /**
+     * 计算去除首尾空白后的长度，与 String.trim() 的规则相同，但不创建新字符串
+     *
+     * @param value 字符串，可以为 null
+     * @return 去除首尾空白后的长度，null 视为 0
+     */
+    static int trimmedLength(String value) {
+        if (value == null) {
+            return 0;
+        }
+        int start = 0;
+        int end = value.length();
+        while (start < end && value.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && value.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end - start;
+    }
+}
@@ -0,0 +1,63 @@
+package com.surpasslike.common.diagnostics;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.os.StrictMode;
+import android.util.Log;
+
+import com.surpasslike.common.trace.TraceRecorder;
+
+import java.util.concurrent.Executors;
+
+/**
+ * 调试版本的诊断组件，在 Application.onCreate 中调用 {@link #install}
+ * 只在可调试 (debuggable) 的安装包中生效，包含：
+ * 1. StrictMode：检测主线程磁盘和网络访问以及资源泄漏，违规写入报告
+ * 2. 主线程看门狗：消息执行超过阈值时采样主线程堆栈
+ * 3. 主线程调用标记：见 {@link MainThreadCalls}
+ * 4. 请求追踪记录：请求区段写入本地 Chrome trace 文件，见 {@link TraceRecorder}
+ * 前三项的报告写入同一个本地文件，见 {@link DiagnosticsReport}
+ */
+public final class Diagnostics {
+    private static final String TAG = "Diagnostics";
+
+    // 主线程消息超过多少毫秒视为有 ANR 风险
+    private static final long SLOW_MESSAGE_THRESHOLD_MS = 200;
+
+    private static boolean installed;
+
+    private Diagnostics() {
+    }
+
+    /**
+     * 安装诊断组件，非调试版本中什么都不做
+     *
+     * @param context      应用上下文
+     * @param processLabel 报告中的进程标识，例如 client 或 server
+     */
+    public static synchronized void install(Context context, String processLabel) {
+        if (installed || (context.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) == 0) {
+            return;
+        }
+        installed = true;
+        final DiagnosticsReport report = new DiagnosticsReport(context.getFilesDir(), processLabel);
+
+        StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                .detectAll()
+                .penaltyLog()
+                .penaltyListener(Executors.newSingleThreadExecutor(),
+                        violation -> report.append("strict-mode", Log.getStackTraceString(violation)))
+                .build());
+        StrictMode.setVmPolicy(new StrictMode.VmPolicy.Builder()
+                .detectAll()
+                .penaltyLog()
+                .penaltyListener(Executors.newSingleThreadExecutor(),
+                        violation -> report.append("strict-mode", Log.getStackTraceString(violation)))
+                .build());
+
+        new MainLooperWatchdog(report, SLOW_MESSAGE_THRESHOLD_MS).start();
+        MainThreadCalls.enable(report);
+        TraceRecorder.install(context.getFilesDir(), processLabel);
+        Log.i(TAG, "Debug diagnostics installed for " + processLabel);
+    }
+}
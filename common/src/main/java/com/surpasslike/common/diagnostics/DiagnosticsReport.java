@@ -0,0 +1,78 @@
+package com.surpasslike.common.diagnostics;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 诊断报告文件
+ * 报告在单独的线程上追加写入 filesDir/diagnostics/anr-risk.log，写满后轮转为 .1 文件，
+ * 可以用 adb shell run-as &lt;包名&gt; cat files/diagnostics/anr-risk.log 取出
+ */
+public class DiagnosticsReport {
+    private static final String TAG = "DiagnosticsReport";
+
+    static final String DIRECTORY_NAME = "diagnostics";
+    static final String FILE_NAME = "anr-risk.log";
+
+    // 单个文件的最大字节数，超过后轮转
+    private static final long MAX_FILE_BYTES = 512 * 1024;
+
+    private final File file;
+    private final File rotated;
+    private final String processLabel;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+
+    /**
+     * 构造函数
+     *
+     * @param filesDir     应用的 files 目录
+     * @param processLabel 写在每条报告前的进程标识，用于区分客户端和服务端
+     */
+    DiagnosticsReport(File filesDir, String processLabel) {
+        File directory = new File(filesDir, DIRECTORY_NAME);
+        this.file = new File(directory, FILE_NAME);
+        this.rotated = new File(directory, FILE_NAME + ".1");
+        this.processLabel = processLabel;
+    }
+
+    /**
+     * 追加一条报告，不阻塞调用线程
+     *
+     * @param kind 报告类型，例如 slow-message、main-thread-call、strict-mode
+     * @param body 报告内容，可以包含多行
+     */
+    void append(final String kind, final String body) {
+        final long now = System.currentTimeMillis();
+        writer.execute(() -> write(now, kind, body));
+    }
+
+    private void write(long timestamp, String kind, String body) {
+        File directory = file.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            Log.w(TAG, "Cannot create " + directory);
+            return;
+        }
+        if (file.length() > MAX_FILE_BYTES && !file.renameTo(rotated)) {
+            Log.w(TAG, "Cannot rotate " + file);
+        }
+        String time = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.US).format(new Date(timestamp));
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8)) {
+            out.write(time + " [" + processLabel + "] " + kind + "\n");
+            out.write(body);
+            out.write("\n\n");
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot write diagnostics report", e);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.surpasslike.common.diagnostics;
+
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Printer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 主线程消息看门狗
+ * 通过 Looper 的消息日志得知每条消息的开始和结束，主线程上只更新两个 volatile 字段；
+ * 采样线程周期性检查当前消息已经执行了多久，超过阈值后开始采样主线程堆栈，
+ * 消息结束时把相同的堆栈合并计数后写入报告，出现次数最多的堆栈就是卡顿所在的位置
+ */
+class MainLooperWatchdog implements Printer {
+
+    // Looper 在分发消息前后打印的日志前缀
+    private static final String DISPATCH_PREFIX = ">>>>> Dispatching";
+    private static final String FINISH_PREFIX = "<<<<< Finished";
+
+    // 每条慢消息最多保留的不同堆栈数量
+    private static final int MAX_DISTINCT_STACKS = 8;
+    // 每个堆栈最多保留的帧数
+    private static final int MAX_FRAMES = 32;
+
+    private final DiagnosticsReport report;
+    private final long thresholdMillis;
+    private final long sampleIntervalMillis;
+    private final Thread mainThread = Looper.getMainLooper().getThread();
+
+    // 主线程写、采样线程读：当前消息的开始时间（0 表示空闲）和消息序号
+    private volatile long dispatchStart;
+    private volatile long dispatchSequence;
+    private volatile String dispatchDescription;
+
+    // 以下字段只在采样线程上访问
+    private long sampledSequence = -1;
+    private long sampledStart;
+    private String sampledDescription;
+    private final Map<String, Integer> samples = new LinkedHashMap<>();
+
+    /**
+     * 构造函数
+     *
+     * @param report          报告文件
+     * @param thresholdMillis 消息执行超过多少毫秒视为慢消息
+     */
+    MainLooperWatchdog(DiagnosticsReport report, long thresholdMillis) {
+        this.report = report;
+        this.thresholdMillis = thresholdMillis;
+        this.sampleIntervalMillis = Math.max(10, thresholdMillis / 4);
+    }
+
+    /**
+     * 安装到主线程 Looper 并启动采样线程
+     */
+    void start() {
+        Looper.getMainLooper().setMessageLogging(this);
+        Thread sampler = new Thread(this::runSampler, "main-looper-watchdog");
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    /**
+     * 由主线程 Looper 在每条消息前后调用，只记录时间，不做其他工作
+     */
+    @Override
+    public void println(String line) {
+        if (line.startsWith(DISPATCH_PREFIX)) {
+            dispatchDescription = line;
+            dispatchSequence++;
+            dispatchStart = SystemClock.uptimeMillis();
+        } else if (line.startsWith(FINISH_PREFIX)) {
+            dispatchStart = 0;
+        }
+    }
+
+    private void runSampler() {
+        while (true) {
+            SystemClock.sleep(sampleIntervalMillis);
+            long start = dispatchStart;
+            long sequence = dispatchSequence;
+            if (sequence != sampledSequence || start == 0) {
+                // 之前采样的那条消息已经结束
+                flush(start == 0 ? SystemClock.uptimeMillis() : start);
+            }
+            if (start != 0 && SystemClock.uptimeMillis() - start >= thresholdMillis) {
+                if (sampledSequence != sequence) {
+                    sampledSequence = sequence;
+                    sampledStart = start;
+                    sampledDescription = dispatchDescription;
+                }
+                sample();
+            }
+        }
+    }
+
+    /**
+     * 采样一次主线程堆栈
+     */
+    private void sample() {
+        StackTraceElement[] frames = mainThread.getStackTrace();
+        StringBuilder stack = new StringBuilder();
+        for (int i = 0; i < frames.length && i < MAX_FRAMES; i++) {
+            stack.append("    at ").append(frames[i]).append('\n');
+        }
+        String key = stack.toString();
+        Integer count = samples.get(key);
+        if (count != null) {
+            samples.put(key, count + 1);
+        } else if (samples.size() < MAX_DISTINCT_STACKS) {
+            samples.put(key, 1);
+        }
+    }
+
+    /**
+     * 把已结束的慢消息及其堆栈样本写入报告
+     *
+     * @param end 消息结束时间的近似值
+     */
+    private void flush(long end) {
+        if (samples.isEmpty()) {
+            sampledSequence = -1;
+            return;
+        }
+        StringBuilder body = new StringBuilder();
+        body.append("message ran for at least ").append(end - sampledStart).append(" ms: ")
+                .append(sampledDescription).append('\n');
+        for (Map.Entry<String, Integer> entry : samples.entrySet()) {
+            body.append("  ").append(entry.getValue()).append(" sample(s):\n").append(entry.getKey());
+        }
+        report.append("slow-message", body.toString());
+        samples.clear();
+        sampledSequence = -1;
+    }
+}
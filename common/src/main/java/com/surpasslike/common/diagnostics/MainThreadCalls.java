@@ -0,0 +1,93 @@
+package com.surpasslike.common.diagnostics;
+
+import android.os.Looper;
+import android.util.Log;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 标记在主线程上发生的服务调用和数据访问
+ * 未启用诊断时 {@link #check} 只读取一个 volatile 字段；启用后每个调用点第一次在主线程上出现时记录完整堆栈，
+ * 之后只累计次数，避免同一个调用点刷屏
+ */
+public final class MainThreadCalls {
+    private static final String TAG = "MainThreadCalls";
+
+    // 同一调用点每出现多少次再写一次报告
+    private static final int REPORT_INTERVAL = 50;
+
+    private static volatile DiagnosticsReport report;
+    private static final ConcurrentHashMap<String, AtomicInteger> counts = new ConcurrentHashMap<>();
+
+    private MainThreadCalls() {
+    }
+
+    /**
+     * 启用检查，由 {@link Diagnostics#install} 调用
+     */
+    static void enable(DiagnosticsReport target) {
+        report = target;
+    }
+
+    /**
+     * 在可能阻塞的调用入口处调用；如果当前是主线程则记录下来
+     *
+     * @param call 调用名称，例如 UserRepository.addUser
+     */
+    public static void check(String call) {
+        DiagnosticsReport target = report;
+        if (target == null || Looper.myLooper() != Looper.getMainLooper()) {
+            return;
+        }
+        AtomicInteger counter = counts.get(call);
+        if (counter == null) {
+            AtomicInteger created = new AtomicInteger();
+            counter = counts.putIfAbsent(call, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        int count = counter.incrementAndGet();
+        if (count == 1) {
+            Log.w(TAG, call + " called on the main thread");
+            target.append("main-thread-call", call + "\n" + Log.getStackTraceString(new Throwable(call)));
+        } else if (count % REPORT_INTERVAL == 0) {
+            target.append("main-thread-call", call + " x" + count);
+        }
+    }
+
+    /**
+     * 为接口包一层代理，在每次方法调用前执行 {@link #check}
+     * 未启用诊断时直接返回原对象，不增加任何开销
+     *
+     * @param type     接口类型，例如 IAdminService
+     * @param delegate 实际对象
+     * @param <T>      接口类型
+     * @return 代理对象或原对象
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T wrap(Class<T> type, final T delegate) {
+        if (report == null || delegate == null) {
+            return delegate;
+        }
+        final String prefix = type.getSimpleName() + ".";
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getDeclaringClass() != Object.class) {
+                    check(prefix + method.getName());
+                }
+                try {
+                    return method.invoke(delegate, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,212 @@
+package com.surpasslike.common.trace;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.Trace;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 跨进程请求追踪
+ * 客户端为每次 IAdminService 调用生成请求 ID，随调用传给服务端；两端在调用、哈希和查询等步骤外包一层
+ * {@link Span}，同时输出 android.os.Trace 区段（名称带请求 ID，在 Perfetto 中按 ID 搜索即可串起两个进程）
+ * 和本地 Chrome trace 记录（见 {@link TraceRecorder}）
+ * <p>
+ * 当前请求 ID 保存在线程局部变量中，{@link #begin} 绑定、{@link Span#close()} 恢复；
+ * 切换线程时用 {@link #wrap} 把 ID 带到执行任务的线程
+ */
+public final class RequestTrace {
+
+    /** 表示没有请求 ID */
+    public static final long NO_REQUEST = 0;
+
+    private static final AtomicInteger SEQUENCE = new AtomicInteger();
+    private static final ThreadLocal<long[]> CURRENT = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[]{NO_REQUEST};
+        }
+    };
+
+    // 调试版本中由 Diagnostics 安装，未安装时只输出 android.os.Trace 区段
+    private static volatile TraceRecorder recorder;
+
+    private RequestTrace() {
+    }
+
+    /**
+     * 生成新的请求 ID：高 32 位是进程号，低 32 位是进程内序号，不同进程生成的 ID 不会相同
+     *
+     * @return 请求 ID，不等于 {@link #NO_REQUEST}
+     */
+    public static long newRequestId() {
+        return ((long) Process.myPid() << 32) | (SEQUENCE.incrementAndGet() & 0xffffffffL);
+    }
+
+    /**
+     * @return 当前线程正在处理的请求 ID，没有时返回 {@link #NO_REQUEST}
+     */
+    public static long currentRequestId() {
+        return CURRENT.get()[0];
+    }
+
+    /**
+     * 开始一个请求的区段，并在区段结束前把当前线程绑定到该请求
+     *
+     * @param requestId 请求 ID
+     * @param name      区段名称
+     * @return 区段，必须在同一线程上关闭
+     */
+    public static Span begin(long requestId, String name) {
+        return new Span(requestId, name);
+    }
+
+    /**
+     * 在当前请求中开始一个区段
+     *
+     * @param name 区段名称，例如 hash、db.query
+     * @return 区段，必须在同一线程上关闭
+     */
+    public static Span section(String name) {
+        return new Span(currentRequestId(), name);
+    }
+
+    /**
+     * 包装一个任务，让它在执行线程上也属于当前请求
+     *
+     * @param task 任务
+     * @param <T>  结果类型
+     * @return 包装后的任务；当前没有请求时返回原任务
+     */
+    public static <T> Callable<T> wrap(final Callable<T> task) {
+        final long requestId = currentRequestId();
+        if (requestId == NO_REQUEST) {
+            return task;
+        }
+        return () -> {
+            long[] current = CURRENT.get();
+            long previous = current[0];
+            current[0] = requestId;
+            try {
+                return task.call();
+            } finally {
+                current[0] = previous;
+            }
+        };
+    }
+
+    /**
+     * 包装一个任务，让它在执行线程上也属于当前请求
+     *
+     * @param task 任务
+     * @return 包装后的任务；当前没有请求时返回原任务
+     */
+    public static Runnable wrap(final Runnable task) {
+        final long requestId = currentRequestId();
+        if (requestId == NO_REQUEST) {
+            return task;
+        }
+        return () -> {
+            long[] current = CURRENT.get();
+            long previous = current[0];
+            current[0] = requestId;
+            try {
+                task.run();
+            } finally {
+                current[0] = previous;
+            }
+        };
+    }
+
+    /**
+     * 开始一个跨线程的异步区段，例如从界面发起调用到收到结果
+     *
+     * @param requestId 请求 ID，同时用作区段的标识
+     * @param name      区段名称
+     */
+    public static void beginAsync(long requestId, String name) {
+        if (Trace.isEnabled()) {
+            Trace.beginAsyncSection(label(name, requestId), (int) requestId);
+        }
+        TraceRecorder r = recorder;
+        if (r != null) {
+            r.recordAsync(name, requestId, true, SystemClock.elapsedRealtimeNanos());
+        }
+    }
+
+    /**
+     * 结束由 {@link #beginAsync} 开始的区段，可以在任意线程上调用
+     *
+     * @param requestId 请求 ID
+     * @param name      区段名称，与开始时相同
+     */
+    public static void endAsync(long requestId, String name) {
+        if (Trace.isEnabled()) {
+            Trace.endAsyncSection(label(name, requestId), (int) requestId);
+        }
+        TraceRecorder r = recorder;
+        if (r != null) {
+            r.recordAsync(name, requestId, false, SystemClock.elapsedRealtimeNanos());
+        }
+    }
+
+    static void install(TraceRecorder traceRecorder) {
+        recorder = traceRecorder;
+    }
+
+    /**
+     * 请求 ID 的文本形式，十六进制
+     */
+    static String formatId(long requestId) {
+        return Long.toHexString(requestId);
+    }
+
+    private static String label(String name, long requestId) {
+        return requestId == NO_REQUEST ? name : name + " #" + formatId(requestId);
+    }
+
+    /**
+     * 一个同步区段
+     * 关闭时结束 android.os.Trace 区段、记录耗时，并恢复线程原来绑定的请求 ID
+     */
+    public static final class Span implements AutoCloseable {
+        private final long requestId;
+        private final String name;
+        private final long previousRequestId;
+        private final long startNanos;
+        private final boolean traced;
+
+        private Span(long requestId, String name) {
+            this.requestId = requestId;
+            this.name = name;
+            long[] current = CURRENT.get();
+            this.previousRequestId = current[0];
+            current[0] = requestId;
+            this.traced = Trace.isEnabled();
+            if (traced) {
+                Trace.beginSection(label(name, requestId));
+            }
+            this.startNanos = recorder != null ? SystemClock.elapsedRealtimeNanos() : 0;
+        }
+
+        /**
+         * @return 区段所属的请求 ID
+         */
+        public long getRequestId() {
+            return requestId;
+        }
+
+        @Override
+        public void close() {
+            TraceRecorder r = recorder;
+            if (r != null && startNanos != 0) {
+                r.recordSpan(name, requestId, startNanos, SystemClock.elapsedRealtimeNanos());
+            }
+            if (traced) {
+                Trace.endSection();
+            }
+            CURRENT.get()[0] = previousRequestId;
+        }
+    }
+}
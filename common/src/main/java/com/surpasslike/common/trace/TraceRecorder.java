@@ -0,0 +1,234 @@
+package com.surpasslike.common.trace;
+
+import android.os.Process;
+import android.util.Log;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 把 {@link RequestTrace} 的区段写入本地的 Chrome trace JSON 文件，供离线分析
+ * 文件位于 filesDir/diagnostics/trace-&lt;进程标识&gt;.json，采用 JSON 数组格式（结尾的 ] 可以省略），
+ * 可以直接拖入 ui.perfetto.dev 或 chrome://tracing；时间戳取自 elapsedRealtime，客户端和服务端的文件可以合并查看
+ * <p>
+ * 记录方只把事件放入有界队列，格式化和写文件都在单独的线程上完成；队列满时丢弃事件并计数，不阻塞请求
+ */
+public final class TraceRecorder {
+    private static final String TAG = "TraceRecorder";
+
+    static final String DIRECTORY_NAME = "diagnostics";
+
+    // 单个文件的最大字节数，超过后轮转为 .1 文件
+    private static final long MAX_FILE_BYTES = 8 * 1024 * 1024;
+    // 等待写入的最大事件数
+    private static final int QUEUE_CAPACITY = 4096;
+
+    /** 一个待写入的事件 */
+    private static final class Event {
+        final String name;
+        final char phase;
+        final long requestId;
+        final long startNanos;
+        final long durationNanos;
+        final int tid;
+
+        Event(String name, char phase, long requestId, long startNanos, long durationNanos, int tid) {
+            this.name = name;
+            this.phase = phase;
+            this.requestId = requestId;
+            this.startNanos = startNanos;
+            this.durationNanos = durationNanos;
+            this.tid = tid;
+        }
+    }
+
+    private final File file;
+    private final File rotated;
+    private final String processLabel;
+    private final int pid = Process.myPid();
+    private final BlockingQueue<Event> events = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicLong dropped = new AtomicLong();
+
+    // 以下字段只在写线程上访问
+    private Writer out;
+    private long written;
+
+    private TraceRecorder(File filesDir, String processLabel) {
+        File directory = new File(filesDir, DIRECTORY_NAME);
+        this.file = new File(directory, "trace-" + processLabel + ".json");
+        this.rotated = new File(directory, file.getName() + ".1");
+        this.processLabel = processLabel;
+    }
+
+    /**
+     * 创建记录器并开始记录，由 Diagnostics 在调试版本中调用
+     *
+     * @param filesDir     应用的 files 目录
+     * @param processLabel 进程标识，例如 client 或 server，同时用作文件名和 trace 中的进程名
+     */
+    public static void install(File filesDir, String processLabel) {
+        TraceRecorder recorder = new TraceRecorder(filesDir, processLabel);
+        Thread writer = new Thread(recorder::runWriter, "trace-recorder");
+        writer.setDaemon(true);
+        writer.start();
+        RequestTrace.install(recorder);
+    }
+
+    void recordSpan(String name, long requestId, long startNanos, long endNanos) {
+        offer(new Event(name, 'X', requestId, startNanos, endNanos - startNanos, Process.myTid()));
+    }
+
+    void recordAsync(String name, long requestId, boolean begin, long nanos) {
+        offer(new Event(name, begin ? 'b' : 'e', requestId, nanos, 0, Process.myTid()));
+    }
+
+    private void offer(Event event) {
+        if (!events.offer(event)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void runWriter() {
+        StringBuilder line = new StringBuilder(256);
+        while (true) {
+            try {
+                Event event = events.take();
+                do {
+                    line.setLength(0);
+                    appendEvent(line, event.name, event.phase, event.requestId,
+                            event.startNanos, event.durationNanos, pid, event.tid);
+                    write(line);
+                    event = events.poll();
+                } while (event != null);
+                long lost = dropped.getAndSet(0);
+                if (lost > 0) {
+                    Log.w(TAG, "Dropped " + lost + " trace events");
+                }
+                if (out != null) {
+                    out.flush();
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                Log.w(TAG, "Cannot write trace file, recording stopped", e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 写入一个事件，需要时打开或轮转文件
+     */
+    private void write(CharSequence event) throws IOException {
+        if (out != null && written > MAX_FILE_BYTES) {
+            out.close();
+            out = null;
+            if (!file.renameTo(rotated)) {
+                Log.w(TAG, "Cannot rotate " + file);
+            }
+        }
+        if (out == null) {
+            open();
+        }
+        out.append(",\n").append(event);
+        written += event.length() + 2;
+    }
+
+    /**
+     * 打开文件；新文件先写数组开头，每次打开都写一个进程名元数据事件
+     */
+    private void open() throws IOException {
+        File directory = file.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        boolean fresh = !file.exists() || file.length() == 0;
+        written = fresh ? 0 : file.length();
+        out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+        StringBuilder header = new StringBuilder();
+        if (fresh) {
+            header.append('[');
+        } else {
+            header.append(",\n");
+        }
+        header.append("{\"name\":\"process_name\",\"ph\":\"M\",\"pid\":").append(pid)
+                .append(",\"args\":{\"name\":");
+        appendString(header, processLabel);
+        header.append("}}");
+        out.append(header);
+        written += header.length();
+    }
+
+    /**
+     * 按 Chrome trace 事件格式输出一个事件
+     *
+     * @param out           目标
+     * @param name          区段名称
+     * @param phase         X 表示完整区段，b 和 e 表示异步区段的开始和结束
+     * @param requestId     请求 ID，{@link RequestTrace#NO_REQUEST} 时不输出
+     * @param startNanos    开始时间（elapsedRealtime 纳秒）
+     * @param durationNanos 持续时间，只用于完整区段
+     * @param pid           进程号
+     * @param tid           线程号
+     */
+    static void appendEvent(StringBuilder out, String name, char phase, long requestId,
+                            long startNanos, long durationNanos, int pid, int tid) {
+        out.append("{\"name\":");
+        appendString(out, name);
+        out.append(",\"cat\":\"request\",\"ph\":\"").append(phase).append("\",\"ts\":");
+        appendMicros(out, startNanos);
+        if (phase == 'X') {
+            out.append(",\"dur\":");
+            appendMicros(out, durationNanos);
+        } else {
+            out.append(",\"id\":\"0x").append(RequestTrace.formatId(requestId)).append('"');
+        }
+        out.append(",\"pid\":").append(pid).append(",\"tid\":").append(tid);
+        if (requestId != RequestTrace.NO_REQUEST) {
+            out.append(",\"args\":{\"requestId\":\"").append(RequestTrace.formatId(requestId)).append("\"}");
+        }
+        out.append('}');
+    }
+
+    /**
+     * 以微秒输出纳秒时间，保留三位小数
+     */
+    private static void appendMicros(StringBuilder out, long nanos) {
+        out.append(nanos / 1000).append('.');
+        long fraction = nanos % 1000;
+        if (fraction < 100) {
+            out.append('0');
+        }
+        if (fraction < 10) {
+            out.append('0');
+        }
+        out.append(fraction);
+    }
+
+    /**
+     * 输出 JSON 字符串，转义引号、反斜杠和控制字符
+     */
+    private static void appendString(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0, n = value.length(); i < n; i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append(String.format(Locale.US, "\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+}
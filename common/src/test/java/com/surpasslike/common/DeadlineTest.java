@@ -0,0 +1,56 @@
+package com.surpasslike.common;
+
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Deadline 绑定和传递的本地单元测试
+ */
+public class DeadlineTest {
+
+    @Test
+    public void remainingIsClampedAndUnboundedWithoutDeadline() {
+        assertEquals(Long.MAX_VALUE, Deadline.remainingMillis(Deadline.NONE, 1_000));
+        assertEquals(250, Deadline.remainingMillis(1_250, 1_000));
+        assertEquals(0, Deadline.remainingMillis(1_000, 1_000));
+        assertEquals(0, Deadline.remainingMillis(900, 1_000));
+    }
+
+    @Test
+    public void scopesRestoreThePreviousDeadline() {
+        assertEquals(Deadline.NONE, Deadline.current());
+        try (Deadline.Scope outer = Deadline.bind(100)) {
+            try (Deadline.Scope inner = Deadline.bind(200)) {
+                assertEquals(200, Deadline.current());
+            }
+            assertEquals(100, Deadline.current());
+        }
+        assertEquals(Deadline.NONE, Deadline.current());
+    }
+
+    @Test
+    public void wrappedTaskSeesTheSubmittersDeadline() throws Exception {
+        final long[] seen = new long[1];
+        Callable<Void> task;
+        try (Deadline.Scope scope = Deadline.bind(42)) {
+            task = Deadline.wrap(() -> {
+                seen[0] = Deadline.current();
+                return null;
+            });
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                task.call();
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+        });
+        thread.start();
+        thread.join();
+        assertEquals(42, seen[0]);
+        assertEquals(Deadline.NONE, Deadline.current());
+    }
+}
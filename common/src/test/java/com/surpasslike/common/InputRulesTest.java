@@ -0,0 +1,73 @@
+package com.surpasslike.common;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * InputRules 的本地单元测试
+ */
+public class InputRulesTest {
+
+    @Test
+    public void usernameIsMeasuredWithoutSurroundingWhitespace() {
+        assertEquals(InputRules.Violation.USERNAME_EMPTY, InputRules.checkUsername(null));
+        assertEquals(InputRules.Violation.USERNAME_EMPTY, InputRules.checkUsername("   "));
+        assertNull(InputRules.checkUsername("  alice  "));
+        assertNull(InputRules.checkUsername(" " + repeat('a', InputRules.USERNAME_MAX_LENGTH) + " "));
+        assertEquals(InputRules.Violation.USERNAME_TOO_LONG,
+                InputRules.checkUsername(repeat('a', InputRules.USERNAME_MAX_LENGTH + 1)));
+    }
+
+    @Test
+    public void accountMustNotBeBlankOrOversized() {
+        assertEquals(InputRules.Violation.ACCOUNT_EMPTY, InputRules.checkAccount(""));
+        assertEquals(InputRules.Violation.ACCOUNT_EMPTY, InputRules.checkAccount("\t"));
+        assertNull(InputRules.checkAccount("admin"));
+        assertEquals(InputRules.Violation.ACCOUNT_TOO_LONG,
+                InputRules.checkAccount(repeat('x', InputRules.ACCOUNT_MAX_LENGTH + 1)));
+    }
+
+    @Test
+    public void passwordKeepsWhitespace() {
+        assertEquals(InputRules.Violation.PASSWORD_EMPTY, InputRules.checkPassword(null));
+        assertNull(InputRules.checkPassword(" "));
+        assertEquals(InputRules.Violation.PASSWORD_TOO_LONG,
+                InputRules.checkPassword(repeat('p', InputRules.PASSWORD_MAX_LENGTH + 1)));
+    }
+
+    @Test
+    public void existingUsersAreNotHeldToRegistrationLengths() {
+        String longUsername = repeat('u', InputRules.USERNAME_MAX_LENGTH + 1);
+        String longPassword = repeat('p', InputRules.PASSWORD_MAX_LENGTH + 1);
+        assertNull(InputRules.checkExistingUsername(longUsername));
+        assertNull(InputRules.checkLogin(repeat('a', InputRules.ACCOUNT_MAX_LENGTH + 1), longPassword));
+        assertNull(InputRules.checkPasswordChange(longUsername, "secret"));
+        assertEquals(InputRules.Violation.USERNAME_EMPTY, InputRules.checkExistingUsername(" "));
+        assertEquals(InputRules.Violation.USERNAME_TOO_LONG,
+                InputRules.checkExistingUsername(repeat('u', InputRules.KEY_MAX_LENGTH + 1)));
+        assertEquals(InputRules.Violation.ACCOUNT_TOO_LONG,
+                InputRules.checkExistingAccount(repeat('a', InputRules.KEY_MAX_LENGTH + 1)));
+        assertEquals(InputRules.Violation.PASSWORD_TOO_LONG,
+                InputRules.checkExistingPassword(repeat('p', InputRules.KEY_MAX_LENGTH + 1)));
+        // 新密码仍然按注册规则检查
+        assertEquals(InputRules.Violation.PASSWORD_TOO_LONG, InputRules.checkPasswordChange("bob", longPassword));
+    }
+
+    @Test
+    public void compositeChecksReportTheFirstViolation() {
+        assertEquals(InputRules.Violation.USERNAME_EMPTY, InputRules.checkRegistration("", "", ""));
+        assertEquals(InputRules.Violation.ACCOUNT_EMPTY, InputRules.checkRegistration("bob", null, ""));
+        assertEquals(InputRules.Violation.PASSWORD_EMPTY, InputRules.checkLogin("bob", ""));
+        assertNull(InputRules.checkPasswordChange("bob", "secret"));
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder builder = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,35 @@
+package com.surpasslike.common.trace;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * TraceRecorder 事件格式的本地单元测试
+ */
+public class TraceRecorderTest {
+
+    @Test
+    public void completeEventCarriesDurationAndRequestId() {
+        StringBuilder out = new StringBuilder();
+        TraceRecorder.appendEvent(out, "hash", 'X', 0x1234L, 5_000_042L, 1_500L, 10, 11);
+        assertEquals("{\"name\":\"hash\",\"cat\":\"request\",\"ph\":\"X\",\"ts\":5000.042,\"dur\":1.500"
+                + ",\"pid\":10,\"tid\":11,\"args\":{\"requestId\":\"1234\"}}", out.toString());
+    }
+
+    @Test
+    public void asyncEventUsesRequestIdAsIdentity() {
+        StringBuilder out = new StringBuilder();
+        TraceRecorder.appendEvent(out, "client.login", 'b', 0xabL, 7_000L, 0, 1, 2);
+        assertEquals("{\"name\":\"client.login\",\"cat\":\"request\",\"ph\":\"b\",\"ts\":7.000,\"id\":\"0xab\""
+                + ",\"pid\":1,\"tid\":2,\"args\":{\"requestId\":\"ab\"}}", out.toString());
+    }
+
+    @Test
+    public void namesAreEscaped() {
+        StringBuilder out = new StringBuilder();
+        TraceRecorder.appendEvent(out, "a\"b\\c\n", 'X', RequestTrace.NO_REQUEST, 0, 0, 1, 1);
+        assertEquals("{\"name\":\"a\\\"b\\\\c\\u000a\",\"cat\":\"request\",\"ph\":\"X\",\"ts\":0.000,\"dur\":0.000"
+                + ",\"pid\":1,\"tid\":1}", out.toString());
+    }
+}